@@ -0,0 +1,438 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt;
+
+import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import java.time.Instant;
+import java.time.InstantSource;
+import java.security.cert.X509Certificate;
+
+import java.lang.System.Logger.Level;
+
+/**
+ * <code>CredentialsStore</code> that keeps in memory the <code>Credentials</code>
+ * loaded from another store, so their private keys are decrypted only once.
+ * <p>Up to <code>maxSize</code> credentials are kept, evicting the least
+ * recently used ones when the limit is exceeded. Credentials whose certificate
+ * has expired are evicted when requested and loaded again from the source
+ * store, since the certificate may have been renewed; expired credentials
+ * are returned but not cached.</p>
+ * <p>Only one load per RFC runs at a time; threads that request credentials
+ * being loaded wait for that load and get its result.</p>
+ * <p>The {@link CachingCredentialsStore#warmUp(java.util.Collection, java.util.concurrent.Executor)}
+ * method loads several RFCs in parallel, it is meant to be called before a
+ * <code>Batch</code> connects to the web service.</p>
+ * <p>This class keeps counters of hits, misses, evictions and loading time.
+ * It is thread safe, the source store must also be thread safe if warm up
+ * is used.</p>
+ *
+ * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
+ * @version 2025.02.05
+ * @since 1.0
+ *
+ */
+public class CachingCredentialsStore implements CredentialsStore {
+
+    private static final System.Logger LOG = System.getLogger(CachingCredentialsStore.class.getName());
+
+    /**
+     * Default maximum credentials to keep = 256.
+     */
+    public static final int DEFAULT_MAX_SIZE = 256;
+
+    /**
+     * Store credentials are loaded from
+     */
+    protected CredentialsStore store;
+
+    /**
+     * Source of the current instant, used to check certificate's expiration
+     */
+    protected InstantSource clock;
+
+    /**
+     * Maximum credentials to keep
+     */
+    protected int maxSize;
+
+    /**
+     * Loaded credentials mapped by RFC, in access order
+     */
+    private final LinkedHashMap<String,Credentials> cache;
+
+    /**
+     * Loads in progress mapped by RFC
+     */
+    private final Map<String,CompletableFuture<Credentials>> loading = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+    private final AtomicLong maxLoadNanos = new AtomicLong();
+
+    /**
+     * Creates a new <code>CachingCredentialsStore</code> that will keep up to
+     * {@link CachingCredentialsStore#DEFAULT_MAX_SIZE} credentials loaded from
+     * the specified store.
+     *
+     * @param store store to load credentials from
+     * @throws IllegalArgumentException if store is null
+     */
+    public CachingCredentialsStore(CredentialsStore store) {
+        this(store, DEFAULT_MAX_SIZE, InstantSource.system());
+    }
+
+    /**
+     * Creates a new <code>CachingCredentialsStore</code> with the specified
+     * parameters.
+     *
+     * @param store store to load credentials from
+     * @param maxSize maximum credentials to keep
+     * @param clock source of the instant used to check certificate's expiration
+     * @throws IllegalArgumentException if store or clock are null, or if
+     *         maxSize is less than one
+     */
+    public CachingCredentialsStore(CredentialsStore store, int maxSize, InstantSource clock) {
+        if (store == null || clock == null || maxSize < 1) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        this.store = store;
+        this.maxSize = maxSize;
+        this.clock = clock;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 20250205L;
+            @Override protected boolean removeEldestEntry(Map.Entry<String,Credentials> eldest) {
+                if (size() > CachingCredentialsStore.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the credentials of the specified RFC, loading them from the
+     * source store if they are not kept in memory or their certificate has
+     * expired. If they are already being loaded by another thread, waits
+     * for that load.
+     *
+     * @param rfc RFC of the contributor, will be upper casted before the search
+     * @return credentials of the contributor with the given RFC or null if not found
+     * @throws IllegalArgumentException if rfc is null
+     * @throws RepositoryException if there were repository problems
+     */
+    @Override public Credentials getCredentials(String rfc) {
+        if (rfc == null) {
+            throw new IllegalArgumentException("invalid rfc");
+        }
+        String key = rfc.toUpperCase();
+        Credentials credentials = getCached(key);
+        if (credentials != null) {
+            hits.incrementAndGet();
+            return credentials;
+        }
+        misses.incrementAndGet();
+        CompletableFuture<Credentials> future = new CompletableFuture<>();
+        CompletableFuture<Credentials> current = loading.putIfAbsent(key, future);
+        if (current != null) {
+            return join(current);
+        }
+        try {
+            credentials = getCached(key); //loaded before this load was registered
+            if (credentials == null) {
+                credentials = load(key);
+                if (credentials != null && !isExpired(credentials)) {
+                    synchronized (cache) {
+                        cache.put(key, credentials);
+                    }
+                }
+            }
+            future.complete(credentials);
+            return credentials;
+        }
+        catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        }
+        finally {
+            loading.remove(key, future);
+        }
+    }
+
+    /**
+     * Loads in parallel, using the specified executor, the credentials of all
+     * the specified RFCs that are not already kept in memory.
+     * <p>This method returns when all credentials have been loaded. Errors
+     * are logged and counted as loads without credentials. RFCs are compared
+     * ignoring case, so each one is loaded once.</p>
+     *
+     * @param rfcs RFCs to load
+     * @param executor executor that will load the credentials
+     * @return the number of credentials that were loaded
+     * @throws IllegalArgumentException if rfcs or executor are null
+     */
+    public int warmUp(Collection<String> rfcs, Executor executor) {
+        if (rfcs == null || executor == null) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        LinkedHashSet<String> keys = new LinkedHashSet<>();
+        for (String rfc : rfcs) {
+            if (rfc != null) {
+                keys.add(rfc.toUpperCase());
+            }
+        }
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (String key : keys) {
+            if (getCached(key) == null) {
+                futures.add(CompletableFuture.supplyAsync(
+                        ()->getCredentials(key) != null, executor));
+            }
+        }
+        int loaded = 0;
+        for (CompletableFuture<Boolean> future : futures) {
+            try {
+                if (future.join()) {
+                    loaded++;
+                }
+            }
+            catch (CompletionException e) {
+                LOG.log(Level.ERROR, "Unable to warm up credentials", e.getCause());
+            }
+        }
+        LOG.log(Level.DEBUG, "Warm up loaded {0} of {1} credentials", loaded, keys.size());
+        return loaded;
+    }
+
+    /**
+     * Removes the credentials of the specified RFC from memory.
+     *
+     * @param rfc RFC of the credentials to remove
+     * @throws NullPointerException if rfc is null
+     */
+    public void invalidate(String rfc) {
+        synchronized (cache) {
+            cache.remove(rfc.toUpperCase());
+        }
+    }
+
+    /**
+     * Removes all credentials from memory.
+     */
+    public void invalidateAll() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Returns the number of credentials kept in memory.
+     *
+     * @return the number of credentials kept in memory
+     */
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Returns the maximum credentials this store keeps in memory.
+     *
+     * @return the maximum credentials this store keeps in memory
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    /// Metrics
+
+    /**
+     * Returns the number of requests answered with credentials kept in memory.
+     *
+     * @return the number of hits
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of requests that had to load credentials.
+     *
+     * @return the number of misses
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of credentials evicted because of the size limit.
+     *
+     * @return the number of evictions
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the number of credentials evicted because their certificate expired.
+     *
+     * @return the number of expirations
+     */
+    public long getExpiredCount() {
+        return expirations.get();
+    }
+
+    /**
+     * Returns the number of loads from the source store.
+     *
+     * @return the number of loads
+     */
+    public long getLoadCount() {
+        return loads.get();
+    }
+
+    /**
+     * Returns the total time spent loading from the source store, in nanoseconds.
+     *
+     * @return the total load time in nanoseconds
+     */
+    public long getTotalLoadNanos() {
+        return loadNanos.get();
+    }
+
+    /**
+     * Returns the longest time spent in a single load, in nanoseconds.
+     *
+     * @return the longest load time in nanoseconds
+     */
+    public long getMaxLoadNanos() {
+        return maxLoadNanos.get();
+    }
+
+    /**
+     * Returns the average time of the loads from the source store, in
+     * nanoseconds, or zero if nothing has been loaded.
+     *
+     * @return the average load time in nanoseconds
+     */
+    public long getAverageLoadNanos() {
+        long count = loads.get();
+        return (count == 0 ? 0 : loadNanos.get() / count);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Returns the credentials kept in memory for the specified upper cased
+     * RFC, or null if there are none or their certificate has expired, in
+     * which case they are removed.
+     *
+     * @param key upper cased RFC
+     * @return the credentials kept in memory or null
+     */
+    protected Credentials getCached(String key) {
+        synchronized (cache) {
+            Credentials credentials = cache.get(key);
+            if (credentials != null && isExpired(credentials)) {
+                cache.remove(key);
+                expirations.incrementAndGet();
+                LOG.log(Level.DEBUG, "Credentials of {0} expired", key);
+                return null;
+            }
+            return credentials;
+        }
+    }
+
+    /**
+     * Loads the credentials of the specified RFC from the source store,
+     * updating load metrics.
+     *
+     * @param key upper cased RFC
+     * @return credentials loaded from the source store, may be null
+     * @throws RepositoryException if there were repository problems
+     */
+    protected Credentials load(String key) {
+        long start = System.nanoTime();
+        try {
+            return store.getCredentials(key);
+        }
+        finally {
+            long nanos = System.nanoTime() - start;
+            loads.incrementAndGet();
+            loadNanos.addAndGet(nanos);
+            maxLoadNanos.accumulateAndGet(nanos, Math::max);
+            LOG.log(Level.TRACE, "Credentials of {0} loaded in {1} ms", key, nanos / 1_000_000);
+        }
+    }
+
+    /**
+     * Waits for the specified load and returns its credentials, throwing the
+     * exception it failed with.
+     *
+     * @param future load in progress
+     * @return credentials loaded, may be null
+     * @throws RepositoryException if there were repository problems
+     */
+    private Credentials join(CompletableFuture<Credentials> future) {
+        try {
+            return future.join();
+        }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns true if the certificate of the specified credentials has expired.
+     *
+     * @param credentials credentials to check
+     * @return true if the certificate of the specified credentials has expired
+     */
+    protected boolean isExpired(Credentials credentials) {
+        X509Certificate cert = credentials.getCertificate();
+        if (cert == null) {
+            return false;
+        }
+        Instant notAfter = cert.getNotAfter().toInstant();
+        return notAfter.isBefore(clock.instant());
+    }
+
+    /**
+     * Returns a string representation of this store.
+     *
+     * @return a string representation of this store
+     */
+    @Override public String toString() {
+        return new StringBuilder("CachingCredentialsStore{")
+                .append("size=").append(size())
+                .append(",maxSize=").append(maxSize)
+                .append(",hits=").append(getHitCount())
+                .append(",misses=").append(getMissCount())
+                .append(",evictions=").append(getEvictionCount())
+                .append(",expired=").append(getExpiredCount())
+                .append(",avgLoadNanos=").append(getAverageLoadNanos())
+                .append("}").toString();
+    }
+}
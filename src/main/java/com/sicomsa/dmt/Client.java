@@ -13,6 +13,10 @@ import jakarta.xml.soap.SOAPException;
 import jakarta.xml.ws.WebServiceException;
 
 import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * <code>Client</code> is an implementation of <code>DMTClient</code> that calls
@@ -22,11 +26,14 @@ import java.security.cert.X509Certificate;
  * renews it when needed. SAT tokens usually last 5 minutes.<p>
  * 
  * You can specify a <code>DMTService</code> to use. If not, a default implementation
- * will be used.
+ * will be used.<p>
+ * 
+ * A {@link TokenPrefetcher} may renew the token in the background before it
+ * expires, so requests do not wait for the authentication.
  * 
  * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
  * @since 1.0
- * @version 2025.01.03
+ * @version 2025.02.19
  * 
  */
 public class Client  implements DMTClient {
@@ -44,7 +51,12 @@ public class Client  implements DMTClient {
     /**
      * The latest <code>Authorization</code> this client has available.
      */
-    protected Authorization authorization;
+    protected volatile Authorization authorization;
+
+    /**
+     * Authentication in progress, null if none; guarded by this client.
+     */
+    private CompletableFuture<Authorization> authenticating;
     
     /**
      * Returns a <code>Client</code> with the given <code>Credentials</code>
@@ -108,17 +120,113 @@ public class Client  implements DMTClient {
      * Verifies the current <code>Authorization</code> to detect if the token
      * is still valid and requests a new one if it is expired or has not yet
      * gotten one. And returns a wrapped and ready to use valid token.
+     * <p>A valid token is returned without locking, even while a
+     * {@link TokenPrefetcher} renews it in the background.</p>
      * 
      * @param conn the connection to use
      * @return a wrapped valid token
      * @throws SOAPException if there were SOAP related problems
      * @throws WebServiceException if there were service related problems
      */
-    protected synchronized String getValidToken(SOAPConnection conn) throws SOAPException {
-        if (!isValid(authorization)) {
-            authorization = autentica(conn);
+    protected String getValidToken(SOAPConnection conn) throws SOAPException {
+        Authorization current = authorization;
+        if (!isValid(current)) {
+            current = authenticate(conn, Duration.ZERO);
+        }
+        return Authorization.wrapp(current.getToken());
+    }
+    
+    /**
+     * Requests a new token if the current <code>Authorization</code> expires
+     * within the specified lead time or if there is none, and returns the
+     * <code>Authorization</code> this client will use.
+     * 
+     * @param conn the connection to use
+     * @param lead time before the expiration when the token is renewed
+     * @return the current <code>Authorization</code>
+     * @throws SOAPException if there were SOAP related problems
+     * @throws WebServiceException if there were service related problems
+     * @throws IllegalArgumentException if lead is null or negative
+     * @see TokenPrefetcher
+     */
+    public Authorization refreshToken(SOAPConnection conn, Duration lead) throws SOAPException {
+        if (lead == null || lead.isNegative()) {
+            throw new IllegalArgumentException("invalid lead");
+        }
+        Authorization current = authorization;
+        if (!isValid(current, lead)) {
+            current = authenticate(conn, lead);
+        }
+        return current;
+    }
+    
+    /**
+     * Returns the latest <code>Authorization</code> of this client, or null
+     * if it has not authenticated yet.
+     * 
+     * @return the latest <code>Authorization</code> or null
+     */
+    public Authorization getAuthorization() {
+        return authorization;
+    }
+
+    /**
+     * Authenticates if the current <code>Authorization</code> expires within
+     * the specified lead time, outside the lock of this client. Only one
+     * authentication runs at a time; other callers wait for it and use its
+     * result, or fail with its exception.
+     * 
+     * @param conn the connection to use
+     * @param lead time before the expiration when the token is renewed
+     * @return an <code>Authorization</code> valid for at least lead time
+     * @throws SOAPException if there were SOAP related problems
+     * @throws WebServiceException if there were service related problems
+     */
+    private Authorization authenticate(SOAPConnection conn, Duration lead) throws SOAPException {
+        while (true) {
+            CompletableFuture<Authorization> future;
+            boolean owner = false;
+            synchronized (this) {
+                Authorization current = authorization;
+                if (isValid(current, lead)) {
+                    return current;
+                }
+                future = authenticating;
+                if (future == null) {
+                    future = authenticating = new CompletableFuture<>();
+                    owner = true;
+                }
+            }
+            if (owner) {
+                try {
+                    Authorization received = autentica(conn);
+                    authorization = received;
+                    future.complete(received);
+                    return received;
+                }
+                catch (SOAPException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                    throw e;
+                }
+                finally {
+                    synchronized (this) {
+                        authenticating = null;
+                    }
+                }
+            }
+            try {
+                future.join();
+            }
+            catch (CompletionException e) {
+                if (e.getCause() instanceof SOAPException cause) {
+                    throw new SOAPException(cause.getMessage(), cause);
+                }
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
         }
-        return Authorization.wrapp(authorization.getToken());
     }
     
     /**
@@ -145,6 +253,16 @@ public class Client  implements DMTClient {
         return service.getRepository();
     }
 
+    /**
+     * Returns the current instant according to the instant source of the
+     * service used by this client, the one its tokens are validated against.
+     *
+     * @return the current instant of the service used by this client
+     */
+    public Instant instant() {
+        return service.instant();
+    }
+
     /**
      * Returns true if the <code>Authorization</code> has not expired according
      * to the instant source of the service used by this client.
@@ -156,6 +274,20 @@ public class Client  implements DMTClient {
         return (authorization != null
                 && authorization.getExpires().isAfter(service.instant()));
     }
+    
+    /**
+     * Returns true if the <code>Authorization</code> will not expire within
+     * the specified lead time, according to the instant source of the
+     * service used by this client.
+     * 
+     * @param authorization the authorization to test
+     * @param lead time before the expiration
+     * @return true if the authorization will not expire within lead time
+     */
+    protected boolean isValid(Authorization authorization, Duration lead) {
+        return (authorization != null
+                && authorization.getExpires().minus(lead).isAfter(service.instant()));
+    }
         
     
 }
@@ -16,7 +16,7 @@ import java.security.cert.X509Certificate;
  * requests for the massive cfdi download service, for a singular contributor.
  * 
  * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
- * @version 2024-9-28
+ * @version 2025.02.18
  * @since 1.0
  *
  */
@@ -51,4 +51,32 @@ public interface Credentials {
      */
     public void sign(XMLSignature signature, SOAPElement element);
     
+    /**
+     * Signs the specified data with the private key of this credentials
+     * using the specified signature algorithm; used to sign requests that
+     * are written without a DOM, see {@link com.sicomsa.dmt.svc.SignedRequestWriter}.
+     * <p>This default implementation throws <code>UnsupportedOperationException</code>,
+     * callers should check {@link Credentials#canSignBytes()} first.</p>
+     * 
+     * @param algorithm name of the signature algorithm, for example "SHA1withRSA"
+     * @param data the data to sign
+     * @return the signature bytes
+     * @throws IllegalArgumentException if algorithm or data are null
+     * @throws SvcSignatureException if there were signature related problems
+     * @throws UnsupportedOperationException if this credentials can not sign bytes
+     */
+    public default byte[] sign(String algorithm, byte[] data) {
+        throw new UnsupportedOperationException("byte signatures not supported");
+    }
+    
+    /**
+     * Returns true if this credentials implement {@link Credentials#sign(java.lang.String, byte[])}.
+     * <p>This default implementation returns false.</p>
+     * 
+     * @return true if this credentials can sign bytes
+     */
+    public default boolean canSignBytes() {
+        return false;
+    }
+    
 }
@@ -20,7 +20,7 @@ import javax.xml.crypto.dsig.XMLSignature;
  * 
  * 
  * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
- * @version 2025.01.03
+ * @version 2025.02.18
  * @since 1.0
  * 
  */
@@ -74,6 +74,14 @@ public abstract class CredentialsProxy implements Credentials {
         getCredentials().sign(signature, element);
     }
     
+    @Override public byte[] sign(String algorithm, byte[] data) {
+        return getCredentials().sign(algorithm, data);
+    }
+    
+    @Override public boolean canSignBytes() {
+        return getCredentials().canSignBytes();
+    }
+    
     ////////////////////////////////////////////////////////////////////////////
     
     /**
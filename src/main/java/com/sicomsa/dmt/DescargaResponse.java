@@ -13,7 +13,7 @@ import java.time.Instant;
  * 
  * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
  *
- * @version 2025.01.04
+ * @version 2025.02.10
  * @since 1.0
  * 
  */
@@ -36,6 +36,11 @@ public class DescargaResponse extends SatResponse {
      */
     protected boolean disposed;
 
+    /**
+     * Number of holders that retained this response and have not disposed it.
+     */
+    private transient int retained;
+
     /**
      * Builds a <code>DescargaResponse</code> using the parameters received.
      * 
@@ -129,13 +134,44 @@ public class DescargaResponse extends SatResponse {
         return disposed;
     }
     
+    /**
+     * Retains the package of this response, so it is not cleared until
+     * <code>dispose</code> is called once more for each time it was retained.
+     * <p>A listener that uses the package of a downloaded response after
+     * returning, for example in another thread, must retain it while it is
+     * notified and dispose it when done.</p>
+     * 
+     * @return true if retained, false if there is no package to retain
+     */
+    public synchronized boolean retain() {
+        if (encodedPackage == null) {
+            return false;
+        }
+        retained++;
+        return true;
+    }
+    
     /**
      * Clears <code>encodedPackage</code> property which contains the
      * downloaded encoded package and sets this response as disposed if it 
      * is an accepted response.
+     * <p>If this response was retained, the package is kept until
+     * <code>dispose</code> is called once more for each retention.</p>
      * 
      */
-    public void dispose() {
+    public synchronized void dispose() {
+        if (retained > 0) {
+            retained--;
+            return;
+        }
+        disposePackage();
+    }
+    
+    /**
+     * Clears the package of this response, called by <code>dispose</code>
+     * once no retention is pending.
+     */
+    protected void disposePackage() {
         if (isAccept()) {
             disposed = true;
         }
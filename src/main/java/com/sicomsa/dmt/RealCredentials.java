@@ -6,7 +6,9 @@
 
 package com.sicomsa.dmt;
 
+import java.security.GeneralSecurityException;
 import java.security.PrivateKey;
+import java.security.Signature;
 import java.security.cert.X509Certificate;
 
 import jakarta.xml.soap.SOAPElement;
@@ -22,7 +24,7 @@ import javax.xml.crypto.dsig.dom.DOMSignContext;
  * a private key in order to implement the <code>sign</code> method.
  * 
  * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
- * @version 2024-9-28
+ * @version 2025.02.18
  * @since 1.0
  * 
  * 
@@ -96,6 +98,26 @@ public class RealCredentials implements Credentials {
         }
     }
     
+    @Override public boolean canSignBytes() {
+        return true;
+    }
+    
+    @Override public byte[] sign(String algorithm, byte[] data) {
+        if (algorithm == null || data == null) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        try {
+            Signature signature = Signature.getInstance(algorithm);
+            signature.initSign(privateKey);
+            signature.update(data);
+            return signature.sign();
+        }
+        catch (GeneralSecurityException e) {
+            LOG.log(System.Logger.Level.ERROR, e.getMessage(), e);
+            throw new SvcSignatureException(e.getMessage(), e);
+        }
+    }
+    
     ////////////////////////////////////////////////////////////////////////////
   
 }
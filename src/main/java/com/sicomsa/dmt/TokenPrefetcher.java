@@ -0,0 +1,442 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt;
+
+
+import jakarta.xml.soap.SOAPConnection;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.InstantSource;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import java.lang.System.Logger.Level;
+
+/**
+ * <code>TokenPrefetcher</code> renews in the background the tokens of the
+ * clients with pending work, shortly before they expire, so requests always
+ * find a valid token instead of waiting for the authentication.
+ * <p>Clients are {@link TokenPrefetcher#register(com.sicomsa.dmt.Client) registered}
+ * while they have pending work and {@link TokenPrefetcher#unregister(com.sicomsa.dmt.Client) unregistered}
+ * afterwards. A client without a valid token authenticates right away, but
+ * clients registered together start <code>startSpacing</code> apart, so
+ * hundreds of them do not authenticate at once; otherwise its token is
+ * renewed <code>lead</code> time before its expiration, see
+ * {@link TokenPrefetcher#getLeadTime(com.sicomsa.dmt.Authorization)}.</p>
+ * <p>The lead time is <code>minLead</code> plus the difference between the
+ * instant the authorization was received and the instant SAT says it was
+ * created, which accounts for the clock skew with SAT and the latency of the
+ * response; but never more than half the life of the token.</p>
+ * <p>Renewals are scheduled with the instant source of the service of each
+ * client, the one its token is validated against, unless another
+ * <code>clock</code> is specified. After a renewal the next one waits at
+ * least <code>retryDelay</code>, so a lead longer than the life of the token
+ * or clocks that disagree never renew in a loop.</p>
+ * <p>If a renewal fails it is tried again after <code>retryDelay</code>; the
+ * client still authenticates by itself if its token expires meanwhile.
+ * A single daemon thread schedules the renewals, which run on a pool of
+ * <code>threads</code> daemon threads, so an authentication that hangs does
+ * not delay the renewals of the other clients. This class is thread safe.</p>
+ *
+ * @see Client#refreshToken(jakarta.xml.soap.SOAPConnection, java.time.Duration)
+ *
+ * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
+ * @version 2025.02.19
+ * @since 1.0
+ *
+ */
+public class TokenPrefetcher implements AutoCloseable {
+
+    private static final System.Logger LOG = System.getLogger(TokenPrefetcher.class.getName());
+
+    /**
+     * Default minimum time before the expiration to renew a token = 30 seconds.
+     */
+    public static final Duration DEFAULT_MIN_LEAD = Duration.ofSeconds(30);
+
+    /**
+     * Default time to wait before trying again a failed renewal = 10 seconds.
+     */
+    public static final Duration DEFAULT_RETRY_DELAY = Duration.ofSeconds(10);
+
+    /**
+     * Default number of threads that renew tokens = 4.
+     */
+    public static final int DEFAULT_THREADS = 4;
+
+    /**
+     * Default time between the first renewals of clients registered
+     * together = 50 milliseconds.
+     */
+    public static final Duration DEFAULT_START_SPACING = Duration.ofMillis(50);
+
+    /**
+     * Connection used to authenticate
+     */
+    protected final SOAPConnection connection;
+
+    /**
+     * Minimum time before the expiration to renew a token
+     */
+    protected final Duration minLead;
+
+    /**
+     * Time to wait before trying again a failed renewal
+     */
+    protected final Duration retryDelay;
+
+    /**
+     * Instant source used to schedule renewals, null to use the instant
+     * source of the service of each client
+     */
+    protected final InstantSource clock;
+
+    /**
+     * Time between the first renewals of clients registered together
+     */
+    protected final Duration startSpacing;
+
+    /**
+     * Renewals of the registered clients mapped by rfc
+     */
+    private final Map<String,Renewal> renewals = new ConcurrentHashMap<>();
+
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final ThreadPoolExecutor workers;
+    private final AtomicLong nextStart = new AtomicLong(System.nanoTime());
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * Creates a new <code>TokenPrefetcher</code> that uses the specified
+     * connection and default parameters.
+     *
+     * @param connection connection used to authenticate
+     * @throws IllegalArgumentException if connection is null
+     */
+    public TokenPrefetcher(SOAPConnection connection) {
+        this(connection, DEFAULT_MIN_LEAD, DEFAULT_RETRY_DELAY, null);
+    }
+
+    /**
+     * Creates a new <code>TokenPrefetcher</code> with the specified parameters.
+     *
+     * @param connection connection used to authenticate
+     * @param minLead minimum time before the expiration to renew a token
+     * @param retryDelay time to wait before trying again a failed renewal
+     * @param clock instant source used to schedule renewals, or null to use
+     *        the one of the service of each client, see {@link Client#instant()}
+     * @throws IllegalArgumentException if connection, minLead or retryDelay
+     *         are null, if minLead is negative or if retryDelay is zero or negative
+     */
+    public TokenPrefetcher(SOAPConnection connection, Duration minLead, Duration retryDelay, InstantSource clock) {
+        this(connection, minLead, retryDelay, clock, DEFAULT_THREADS, DEFAULT_START_SPACING);
+    }
+
+    /**
+     * Creates a new <code>TokenPrefetcher</code> with the specified parameters.
+     *
+     * @param connection connection used to authenticate
+     * @param minLead minimum time before the expiration to renew a token
+     * @param retryDelay time to wait before trying again a failed renewal
+     * @param clock instant source used to schedule renewals, or null to use
+     *        the one of the service of each client, see {@link Client#instant()}
+     * @param threads number of threads that renew tokens
+     * @param startSpacing time between the first renewals of clients
+     *        registered together
+     * @throws IllegalArgumentException if connection, minLead, retryDelay or
+     *         startSpacing are null, if minLead or startSpacing are negative,
+     *         if retryDelay is zero or negative or if threads is not positive
+     */
+    public TokenPrefetcher(SOAPConnection connection, Duration minLead, Duration retryDelay, InstantSource clock,
+            int threads, Duration startSpacing) {
+        if (connection == null || minLead == null || retryDelay == null || startSpacing == null
+                || minLead.isNegative() || retryDelay.isNegative() || retryDelay.isZero()
+                || threads <= 0 || startSpacing.isNegative()) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        this.connection = connection;
+        this.minLead = minLead;
+        this.retryDelay = retryDelay;
+        this.clock = clock;
+        this.startSpacing = startSpacing;
+        this.scheduler = new ScheduledThreadPoolExecutor(1, newThreadFactory("token-prefetcher"));
+        this.scheduler.setRemoveOnCancelPolicy(true);
+        this.workers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), newThreadFactory("token-prefetcher-worker"));
+        this.workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Starts renewing the token of the specified client, authenticating right
+     * away if it has no valid token. Does nothing if a client with the same
+     * rfc is already registered.
+     *
+     * @param client the client with pending work
+     * @return true if the client was registered
+     * @throws IllegalArgumentException if client is null
+     * @throws java.util.concurrent.RejectedExecutionException if this prefetcher is closed
+     */
+    public boolean register(Client client) {
+        if (client == null) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        Renewal renewal = new Renewal(client);
+        if (renewals.putIfAbsent(client.getRfc(), renewal) != null) {
+            return false;
+        }
+        long delay = getDelay(client, client.getAuthorization());
+        renewal.schedule(delay > 0 ? delay : getStartDelay());
+        return true;
+    }
+
+    /**
+     * Stops renewing the token of the specified client.
+     *
+     * @param client the client without pending work
+     * @return true if the client was registered
+     * @throws IllegalArgumentException if client is null
+     */
+    public boolean unregister(Client client) {
+        if (client == null) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        Renewal renewal = renewals.get(client.getRfc());
+        if (renewal == null || renewal.client != client || !renewals.remove(client.getRfc(), renewal)) {
+            return false;
+        }
+        renewal.cancel();
+        return true;
+    }
+
+    /**
+     * Returns true if the specified client is registered.
+     *
+     * @param client the client
+     * @return true if the client is registered
+     * @throws IllegalArgumentException if client is null
+     */
+    public boolean isRegistered(Client client) {
+        if (client == null) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        Renewal renewal = renewals.get(client.getRfc());
+        return (renewal != null && renewal.client == client);
+    }
+
+    /**
+     * Returns the time before the expiration of the specified authorization
+     * when it should be renewed: <code>minLead</code> plus the difference
+     * between the instant it was received and the instant it was created, but
+     * no more than half the life of the token.
+     *
+     * @param authorization the authorization, may be null
+     * @return the time before the expiration to renew the authorization
+     */
+    public Duration getLeadTime(Authorization authorization) {
+        if (authorization == null) {
+            return minLead;
+        }
+        Duration skew = Duration.between(authorization.getCreated(), authorization.getInstant()).abs();
+        Duration lead = minLead.plus(skew);
+        Duration half = Duration.between(authorization.getCreated(), authorization.getExpires()).dividedBy(2);
+        return (lead.compareTo(half) > 0 ? half : lead);
+    }
+
+    /**
+     * Stops renewing tokens. The connection is not closed.
+     */
+    @Override public void close() {
+        scheduler.shutdownNow();
+        workers.shutdownNow();
+        renewals.clear();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    /// Metrics
+
+    /**
+     * Returns the number of registered clients.
+     *
+     * @return the number of registered clients
+     */
+    public int getActiveCount() {
+        return renewals.size();
+    }
+
+    /**
+     * Returns the number of tokens renewed.
+     *
+     * @return the number of tokens renewed
+     */
+    public long getRefreshCount() {
+        return refreshes.get();
+    }
+
+    /**
+     * Returns the number of renewals that failed.
+     *
+     * @return the number of renewals that failed
+     */
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    /**
+     * Returns a string representation of this prefetcher.
+     *
+     * @return a string representation of this prefetcher
+     */
+    @Override public String toString() {
+        return new StringBuilder("TokenPrefetcher{")
+                .append("minLead=").append(minLead)
+                .append(",active=").append(getActiveCount())
+                .append(",refreshes=").append(getRefreshCount())
+                .append(",failures=").append(getFailureCount())
+                .append("}").toString();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Returns the nanoseconds to wait before renewing the specified
+     * authorization of the specified client, zero if it should be renewed
+     * right away.
+     *
+     * @param client the client
+     * @param authorization the authorization, may be null
+     * @return the nanoseconds to wait
+     */
+    protected long getDelay(Client client, Authorization authorization) {
+        if (authorization == null) {
+            return 0;
+        }
+        Instant now = (clock == null ? client.instant() : clock.instant());
+        Instant renewAt = authorization.getExpires().minus(getLeadTime(authorization));
+        return Math.max(0, Duration.between(now, renewAt).toNanos());
+    }
+
+    /**
+     * Returns the nanoseconds to wait before the first renewal of a client
+     * that has no valid token, <code>startSpacing</code> after the previous
+     * one if it was registered together.
+     *
+     * @return the nanoseconds to wait
+     */
+    protected long getStartDelay() {
+        long now = System.nanoTime();
+        long spacing = startSpacing.toNanos();
+        long previous = nextStart.getAndAccumulate(now, (next, time)->Math.max(next, time) + spacing);
+        return Math.max(0, previous - now);
+    }
+
+    /**
+     * Renews the token of the client of the specified renewal and schedules
+     * the next one, no sooner than <code>retryDelay</code>.
+     *
+     * @param renewal the renewal
+     */
+    protected void refresh(Renewal renewal) {
+        if (renewals.get(renewal.client.getRfc()) != renewal) {
+            return;
+        }
+        Client client = renewal.client;
+        long delay;
+        try {
+            Authorization before = client.getAuthorization();
+            Authorization after = client.refreshToken(connection, getLeadTime(before));
+            if (after != before) {
+                refreshes.incrementAndGet();
+                LOG.log(Level.DEBUG, "Token of {0} renewed, expires {1}", client.getRfc(), after.getExpires());
+            }
+            delay = Math.max(getDelay(client, after), retryDelay.toNanos());
+        }
+        catch (Exception e) {
+            failures.incrementAndGet();
+            LOG.log(Level.WARNING, "Unable to renew token of {0}: {1}", client.getRfc(), e.getMessage());
+            delay = retryDelay.toNanos();
+        }
+        if (renewals.get(client.getRfc()) == renewal && !scheduler.isShutdown()) {
+            try {
+                renewal.schedule(delay);
+            }
+            catch (RejectedExecutionException e) {
+                LOG.log(Level.DEBUG, "Renewal of {0} rejected, prefetcher closed", client.getRfc());
+            }
+        }
+    }
+
+    /**
+     * Hands the specified renewal to the worker threads.
+     *
+     * @param renewal the renewal
+     */
+    private void submit(Renewal renewal) {
+        try {
+            workers.execute(()->refresh(renewal));
+        }
+        catch (RejectedExecutionException e) {
+            LOG.log(Level.DEBUG, "Renewal of {0} rejected, prefetcher closed", renewal.client.getRfc());
+        }
+    }
+
+    private static ThreadFactory newThreadFactory(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable->{
+            Thread thread = new Thread(runnable, name+"-"+count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Scheduled renewal of the token of a client.
+     */
+    protected class Renewal {
+
+        private final Client client;
+        private ScheduledFuture<?> future;
+
+        /**
+         * Creates a new renewal of the specified client.
+         *
+         * @param client the client
+         */
+        protected Renewal(Client client) {
+            this.client = client;
+        }
+
+        /**
+         * Schedules the renewal after the specified nanoseconds.
+         *
+         * @param delay nanoseconds to wait
+         */
+        protected synchronized void schedule(long delay) {
+            future = scheduler.schedule(()->submit(this), delay, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Cancels the scheduled renewal.
+         */
+        protected synchronized void cancel() {
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+}
@@ -21,7 +21,6 @@ import jakarta.xml.ws.WebServiceException;
 
 import java.time.Instant;
 import java.lang.System.Logger.Level;
-import javax.swing.event.EventListenerList;
 
 /**
  * DownloadRequest (Solicitude) implementation.
@@ -30,7 +29,7 @@ import javax.swing.event.EventListenerList;
  * 
  *
  * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
- * @version 2024.11.23
+ * @version 2025.02.10
  * @since 1.0
  * 
  * 
@@ -64,9 +63,9 @@ public class DefaultSolicitude implements Solicitude {
     public static final MutableRegistry UNVERIFIED_REGISTRY = new EmptyRegistry();
     
     /**
-     * list of listeners
+     * Bus that delivers download events to listeners
      */
-    protected EventListenerList listenerList;
+    protected DownloadEventBus eventBus;
     
   
     private boolean _paused = false;
@@ -139,7 +138,18 @@ public class DefaultSolicitude implements Solicitude {
         this.state = NEW_STATE;
         this.registry = UNVERIFIED_REGISTRY;
         this.context = new Context();
-        this.listenerList = new EventListenerList();
+        this.eventBus = new DownloadEventBus();
+    }
+    
+    /**
+     * Returns the bus that delivers the download events of this solicitude.
+     * <p>It can be used to deliver events asynchronously, see
+     * {@link DownloadEventBus#setExecutor(java.util.concurrent.Executor)}.</p>
+     * 
+     * @return the bus that delivers the download events of this solicitude
+     */
+    public DownloadEventBus getEventBus() {
+        return eventBus;
     }
     
     ///////////////////////////////////////////////////////////////////////////
@@ -230,11 +240,11 @@ public class DefaultSolicitude implements Solicitude {
     }
         
     @Override public void addDownloadListener(DownloadListener listener) {
-        listenerList.add(DownloadListener.class, listener);
+        eventBus.addListener(listener);
     }
     
     @Override public void removeDownloadListener(DownloadListener listener) {
-        listenerList.remove(DownloadListener.class, listener);
+        eventBus.removeListener(listener);
     }
     
     ///////////////////////////////////////////////////////////////////////////
@@ -521,6 +531,12 @@ public class DefaultSolicitude implements Solicitude {
     
     /**
      * Updates this solicitude with the specified download package response.
+     * <p>An accepted package is saved through the client, listeners are
+     * notified and then the response is disposed, releasing the package and
+     * any memory budget reserved for it. Listeners that use the package after
+     * they return must {@link com.sicomsa.dmt.DescargaResponse#retain() retain}
+     * the response and dispose it when done; a {@link DownloadEventBus} with an
+     * executor does it for its listeners.</p>
      * 
      * @param response the download package response received from the web service
      * @throws IllegalStateException if this solicitude is not verified
@@ -537,15 +553,20 @@ public class DefaultSolicitude implements Solicitude {
             return;
         }
         setReject(null);
-        if (!response.isDisposed()) {
-            getClient().save(packageId, response.getEncodedPackage());
+        try {
+            if (!response.isDisposed()) {
+                getClient().save(packageId, response.getEncodedPackage());
+            }
+
+            boolean marked = registry.updateDownloaded(packageId);
+            if (!marked) {
+                LOG.log(System.Logger.Level.ERROR, "packagesInfo returning not found package ({0})", packageId);
+            }
+            fireDownloadEvent(DownloadEvent.Result.DOWNLOADED, response);
         }
-                
-        boolean marked = registry.updateDownloaded(packageId);
-        if (!marked) {
-            LOG.log(System.Logger.Level.ERROR, "packagesInfo returning not found package ({0})", packageId);
+        finally {
+            response.dispose();
         }
-        fireDownloadEvent(DownloadEvent.Result.DOWNLOADED, response);
     }
     
     /**
@@ -610,15 +631,8 @@ public class DefaultSolicitude implements Solicitude {
      * @throws IllegalArgumentException if result or response are null
      */
     protected void fireDownloadEvent(DownloadEvent.Result result, SatResponse response) {
-        Object[] listeners = listenerList.getListenerList();
-        DownloadEvent downloadEvent = null;
-        for (int i = listeners.length-2; i>=0; i-=2) {
-            if (listeners[i] == DownloadListener.class) {
-                if (downloadEvent == null) {
-                    downloadEvent = new DownloadEvent(this, result, response);
-                }
-                ((DownloadListener)listeners[i+1]).stateChanged(downloadEvent);
-            }
+        if (eventBus.hasListeners()) {
+            eventBus.post(new DownloadEvent(this, result, response));
         }
     }
    
@@ -0,0 +1,372 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.solicitude;
+
+import com.sicomsa.dmt.DescargaResponse;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import java.lang.System.Logger.Level;
+
+/**
+ * <code>DownloadEventBus</code> keeps a list of <code>DownloadListener</code>s
+ * and delivers <code>DownloadEvent</code>s to them.
+ * <p>Listeners are kept in a copy-on-write array, so they can be added and
+ * removed from any thread while events are being delivered; an event is
+ * delivered to the listeners registered when it was posted, starting with
+ * the last one added.</p>
+ * <p>By default events are delivered synchronously in the thread that posts
+ * them, and exceptions thrown by listeners are propagated to that thread.
+ * If an executor is set, events are queued and delivered in order by a task
+ * run in that executor; all events queued when the task runs are delivered
+ * together, so {@link DownloadEventBus.BatchListener}s receive them in a single
+ * call. Exceptions thrown by listeners in asynchronous mode are logged, and
+ * the first one is thrown to the thread that posts the next event or calls
+ * {@link DownloadEventBus#checkFailure()}, so a listener that persists the
+ * events can stop the download as it does in synchronous mode.
+ * The <code>DescargaResponse</code> of an event queued for asynchronous
+ * delivery is retained until all listeners received it, so its package is
+ * available to them after the solicitude disposes the response.
+ * If the executor rejects the delivery task, for example once it is shut
+ * down, queued events are delivered in the thread that posts them.</p>
+ *
+ * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
+ * @version 2025.02.10
+ * @since 1.0
+ *
+ */
+public class DownloadEventBus {
+
+    private static final System.Logger LOG = System.getLogger(DownloadEventBus.class.getName());
+
+    private static final DownloadListener[] EMPTY = new DownloadListener[0];
+
+    /**
+     * Registered listeners, replaced on every change
+     */
+    private volatile DownloadListener[] _listeners = EMPTY;
+
+    /**
+     * Executor for asynchronous delivery, null for synchronous delivery
+     */
+    private Executor _executor;
+
+    /**
+     * Events waiting for asynchronous delivery
+     */
+    private final Queue<Posted> queue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * True while a delivery task is scheduled or running
+     */
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    /**
+     * First exception thrown by a listener in asynchronous mode, not yet thrown
+     * to a poster
+     */
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+    /**
+     * Creates a new <code>DownloadEventBus</code> that delivers events
+     * synchronously.
+     */
+    public DownloadEventBus() {
+    }
+
+    /**
+     * Adds the specified listener to this bus.
+     *
+     * @param listener the listener to add, ignored if null
+     */
+    public synchronized void addListener(DownloadListener listener) {
+        if (listener == null) {
+            return;
+        }
+        DownloadListener[] array = Arrays.copyOf(_listeners, _listeners.length + 1);
+        array[array.length - 1] = listener;
+        _listeners = array;
+    }
+
+    /**
+     * Removes the last registration of the specified listener from this bus.
+     *
+     * @param listener the listener to remove, ignored if null or not registered
+     */
+    public synchronized void removeListener(DownloadListener listener) {
+        DownloadListener[] array = _listeners;
+        for (int idx = array.length - 1; idx >= 0; idx--) {
+            if (array[idx] == listener) {
+                DownloadListener[] copy = new DownloadListener[array.length - 1];
+                System.arraycopy(array, 0, copy, 0, idx);
+                System.arraycopy(array, idx + 1, copy, idx, array.length - idx - 1);
+                _listeners = copy;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of the array of registered listeners, in the order they
+     * were added.
+     *
+     * @return a copy of the array of registered listeners
+     */
+    public DownloadListener[] getListeners() {
+        return _listeners.clone();
+    }
+
+    /**
+     * Returns true if this bus has any listener registered.
+     *
+     * @return true if this bus has any listener registered
+     */
+    public boolean hasListeners() {
+        return (_listeners.length > 0);
+    }
+
+    /**
+     * Returns the executor used for asynchronous delivery, or null if events
+     * are delivered synchronously.
+     *
+     * @return the executor used for asynchronous delivery, or null
+     */
+    public synchronized Executor getExecutor() {
+        return _executor;
+    }
+
+    /**
+     * Sets the executor used for asynchronous delivery; if null, events will
+     * be delivered synchronously.
+     *
+     * @param executor the executor to use, may be null
+     */
+    public synchronized void setExecutor(Executor executor) {
+        this._executor = executor;
+    }
+
+    /**
+     * Delivers the specified event to the registered listeners, either in
+     * this thread or in this bus' executor.
+     * <p>The event is queued before a pending exception thrown by a listener
+     * in asynchronous mode is thrown, see <code>checkFailure</code>.</p>
+     *
+     * @param event the event to deliver
+     * @throws IllegalArgumentException if event is null
+     * @throws RuntimeException any exception thrown by a listener if events
+     *         are delivered synchronously, or the first exception a listener
+     *         threw since the last one was thrown if delivered asynchronously
+     */
+    public void post(DownloadEvent event) {
+        if (event == null) {
+            throw new IllegalArgumentException("null event");
+        }
+        DownloadListener[] listeners = _listeners;
+        if (listeners.length > 0) {
+            Executor executor = getExecutor();
+            if (executor == null) {
+                for (int idx = listeners.length - 1; idx >= 0; idx--) {
+                    listeners[idx].stateChanged(event);
+                }
+            }
+            else {
+                queue.add(new Posted(event, listeners, retain(event)));
+                schedule(executor);
+            }
+        }
+        checkFailure();
+    }
+
+    /**
+     * Throws the first exception a listener threw while events were delivered
+     * asynchronously, if it has not been thrown yet. Exceptions thrown by
+     * listeners after it, before it is thrown, are only logged.
+     *
+     * @throws RuntimeException the first exception a listener threw since
+     *         the last one was thrown
+     */
+    public void checkFailure() {
+        RuntimeException e = failure.getAndSet(null);
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Schedules a delivery task in the specified executor, if there is none
+     * already scheduled. If the executor rejects the task, queued events
+     * are delivered in this thread.
+     *
+     * @param executor executor to run the task
+     */
+    protected void schedule(Executor executor) {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            }
+            catch (RejectedExecutionException e) {
+                LOG.log(Level.WARNING, "Delivery task rejected, delivering events in calling thread: {0}",
+                        e.getMessage());
+                drain(); //resets draining
+            }
+        }
+    }
+
+    /**
+     * Delivers all queued events, grouping consecutive events that have the
+     * same listeners.
+     */
+    protected void drain() {
+        try {
+            ArrayList<DownloadEvent> batch = new ArrayList<>();
+            ArrayList<DescargaResponse> retained = new ArrayList<>();
+            DownloadListener[] batchListeners = null;
+            Posted posted;
+            while ((posted = queue.poll()) != null) {
+                if (batchListeners != null && batchListeners != posted.listeners) {
+                    deliver(batchListeners, batch, retained);
+                    batch = new ArrayList<>();
+                }
+                batchListeners = posted.listeners;
+                batch.add(posted.event);
+                if (posted.retained != null) {
+                    retained.add(posted.retained);
+                }
+            }
+            if (batchListeners != null) {
+                deliver(batchListeners, batch, retained);
+            }
+        }
+        finally {
+            draining.set(false);
+        }
+        Executor executor = getExecutor();
+        if (!queue.isEmpty() && executor != null) {
+            schedule(executor); //events posted while finishing
+        }
+    }
+
+    /**
+     * Delivers the specified events to the specified listeners, and then
+     * disposes and clears the specified retained responses.
+     *
+     * @param listeners listeners to deliver to
+     * @param events events to deliver, in order
+     * @param retained responses retained for the events
+     */
+    private void deliver(DownloadListener[] listeners, List<DownloadEvent> events,
+            List<DescargaResponse> retained) {
+        try {
+            deliver(listeners, events);
+        }
+        finally {
+            retained.forEach(DescargaResponse::dispose);
+            retained.clear();
+        }
+    }
+
+    /**
+     * Retains the response of the specified event if it has a downloaded
+     * package, so it is not cleared before asynchronous delivery.
+     *
+     * @param event the event
+     * @return the retained response, or null if none was retained
+     */
+    protected DescargaResponse retain(DownloadEvent event) {
+        if (event.getResponse() instanceof DescargaResponse response && response.retain()) {
+            return response;
+        }
+        return null;
+    }
+
+    /**
+     * Delivers the specified events to the specified listeners, logging any
+     * exception they throw and keeping the first one to be thrown to a poster.
+     *
+     * @param listeners listeners to deliver to
+     * @param events events to deliver, in order
+     */
+    protected void deliver(DownloadListener[] listeners, List<DownloadEvent> events) {
+        List<DownloadEvent> list = Collections.unmodifiableList(events);
+        for (int idx = listeners.length - 1; idx >= 0; idx--) {
+            DownloadListener listener = listeners[idx];
+            try {
+                if (listener instanceof BatchListener batchListener) {
+                    batchListener.stateChanged(list);
+                }
+                else {
+                    for (DownloadEvent event : list) {
+                        listener.stateChanged(event);
+                    }
+                }
+            }
+            catch (RuntimeException e) {
+                LOG.log(Level.ERROR, "Listener failed to process download events", e);
+                failure.compareAndSet(null, e);
+            }
+        }
+    }
+
+    /**
+     * Returns a string representation of this bus.
+     *
+     * @return a string representation of this bus
+     */
+    @Override public String toString() {
+        return new StringBuilder("DownloadEventBus{")
+                .append("listeners=").append(_listeners.length)
+                .append(",async=").append(getExecutor() != null)
+                .append(",queued=").append(queue.size())
+                .append("}").toString();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * A <code>DownloadListener</code> that can receive several events in a
+     * single call when events are delivered asynchronously.
+     */
+    public interface BatchListener extends DownloadListener {
+
+        /**
+         * Invoked with events that were queued together, in the order they
+         * were posted. Default implementation calls <code>stateChanged</code>
+         * for each event.
+         *
+         * @param events unmodifiable list of events
+         */
+        default void stateChanged(List<DownloadEvent> events) {
+            events.forEach(this::stateChanged);
+        }
+    }
+
+    /**
+     * An event together with the listeners registered when it was posted,
+     * and its response if it was retained.
+     */
+    private static class Posted {
+        final DownloadEvent event;
+        final DownloadListener[] listeners;
+        final DescargaResponse retained;
+
+        Posted(DownloadEvent event, DownloadListener[] listeners, DescargaResponse retained) {
+            this.event = event;
+            this.listeners = listeners;
+            this.retained = retained;
+        }
+    }
+}
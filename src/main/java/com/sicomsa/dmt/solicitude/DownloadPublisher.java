@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.solicitude;
+
+import com.sicomsa.dmt.DescargaResponse;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * <code>DownloadPublisher</code> is a <code>DownloadListener</code> that
+ * publishes the <code>DownloadEvent</code>s it hears to
+ * {@link java.util.concurrent.Flow.Subscriber}s.
+ * <p>Add it to a <code>Solicitude</code> or a
+ * {@link com.sicomsa.dmt.solicitude.batch.Batch} and subscribe consumers to
+ * it; each subscriber receives events in its own thread of this publisher's
+ * executor, at the pace it requests them.</p>
+ * <p>Each subscriber has a buffer of <code>maxBufferCapacity</code> events;
+ * when a subscriber's buffer is full the download loop waits until the
+ * subscriber requests more events, so a slow subscriber can fall behind up
+ * to its buffer size before it slows down the downloads.</p>
+ * <p>Subscribers receive events after the solicitude disposed the response,
+ * so the event of a downloaded package is published with a copy of its
+ * <code>DescargaResponse</code> that keeps the package until subscribers
+ * drop it. Packages held that way are not counted by a
+ * {@link com.sicomsa.dmt.svc.MemoryBudget}; the buffer size of subscribers
+ * bounds them.</p>
+ * <p>Events heard after this publisher is closed are ignored.</p>
+ *
+ * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
+ * @version 2025.02.10
+ * @since 1.0
+ *
+ */
+public class DownloadPublisher implements Flow.Publisher<DownloadEvent>, DownloadListener, AutoCloseable {
+
+    /**
+     * Publisher that delivers events to subscribers
+     */
+    protected SubmissionPublisher<DownloadEvent> publisher;
+
+    /**
+     * Creates a new <code>DownloadPublisher</code> that uses the common pool
+     * and a buffer of {@link java.util.concurrent.Flow#defaultBufferSize()}
+     * events per subscriber.
+     */
+    public DownloadPublisher() {
+        this.publisher = new SubmissionPublisher<>();
+    }
+
+    /**
+     * Creates a new <code>DownloadPublisher</code> with the specified parameters.
+     *
+     * @param executor executor that delivers events to subscribers
+     * @param maxBufferCapacity maximum events buffered per subscriber
+     * @throws NullPointerException if executor is null
+     * @throws IllegalArgumentException if maxBufferCapacity is not positive
+     */
+    public DownloadPublisher(Executor executor, int maxBufferCapacity) {
+        this.publisher = new SubmissionPublisher<>(executor, maxBufferCapacity);
+    }
+
+    @Override public void subscribe(Flow.Subscriber<? super DownloadEvent> subscriber) {
+        publisher.subscribe(subscriber);
+    }
+
+    /**
+     * Publishes the specified event to all current subscribers, waiting if
+     * a subscriber's buffer is full.
+     *
+     * @param evt the event to publish
+     * @throws NullPointerException if evt is null
+     */
+    @Override public void stateChanged(DownloadEvent evt) {
+        if (!publisher.isClosed()) {
+            try {
+                publisher.submit(detach(evt));
+            }
+            catch (IllegalStateException e) {
+                //closed after the check, events heard after closing are ignored
+            }
+        }
+    }
+
+    /**
+     * Returns the specified event, or a copy with a copy of its response if
+     * it has a downloaded package that will be disposed.
+     *
+     * @param evt the event
+     * @return an event that subscribers can use after the response is disposed
+     */
+    protected DownloadEvent detach(DownloadEvent evt) {
+        if (evt.getResponse() instanceof DescargaResponse response
+                && response.getEncodedPackage() != null) {
+            DescargaResponse copy = new DescargaResponse(response.getInstant(), response.getStatusCode(),
+                    response.getMessage(), response.getPackageId(), response.getEncodedPackage());
+            return new DownloadEvent(evt.getSolicitude(), evt.getResult(), copy);
+        }
+        return evt;
+    }
+
+    /**
+     * Returns the number of current subscribers.
+     *
+     * @return the number of current subscribers
+     */
+    public int getNumberOfSubscribers() {
+        return publisher.getNumberOfSubscribers();
+    }
+
+    /**
+     * Returns an estimate of the maximum number of events published but
+     * not yet consumed among all current subscribers.
+     *
+     * @return an estimate of the maximum lag of subscribers
+     */
+    public int estimateMaximumLag() {
+        return publisher.estimateMaximumLag();
+    }
+
+    /**
+     * Returns true if this publisher is closed.
+     *
+     * @return true if this publisher is closed
+     */
+    public boolean isClosed() {
+        return publisher.isClosed();
+    }
+
+    /**
+     * Closes this publisher, current subscribers are notified with
+     * <code>onComplete</code> after consuming buffered events.
+     */
+    @Override public void close() {
+        publisher.close();
+    }
+
+    /**
+     * Closes this publisher, current subscribers are notified with
+     * <code>onError</code> with the specified cause.
+     *
+     * @param error the cause
+     * @throws NullPointerException if error is null
+     */
+    public void closeExceptionally(Throwable error) {
+        publisher.closeExceptionally(error);
+    }
+}
@@ -0,0 +1,419 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.solicitude;
+
+import com.sicomsa.dmt.PackageIds;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary codec of {@link SolicitudeData} snapshots, and of the
+ * {@link PackageIds} and {@link DownloadRegistry} they contain; a smaller and
+ * faster alternative to Java serialization for storing many snapshots.
+ * <p>Snapshots are written to and read from a <code>ByteBuffer</code>, starting
+ * with the {@link SolicitudeDataCodec#VERSION} of the format so it can evolve.
+ * Format version 1 is:</p>
+ * <ul>
+ * <li>snapshot: version byte, state byte (1 accepted, 2 delayed, 3 verified),
+ *     request id, instant; then the delay byte if delayed; or the cfdis as
+ *     varint, the package ids and the download flags if verified.</li>
+ * <li>string: varint length and UTF-8 bytes.</li>
+ * <li>instant: zigzag varint of the epoch seconds and varint of the nanos.</li>
+ * <li>package ids: varint count, then for each id the varint number of
+ *     bytes it shares with the previous id as prefix, and the rest as string;
+ *     ids of a verification usually share the request id as prefix.</li>
+ * <li>download flags: packed bitset, one bit per package, least significant first.</li>
+ * <li>registry: version byte, package ids and download flags.</li>
+ * </ul>
+ * <p>Snapshots of any <code>SolicitudeData</code> subclass are written from
+ * its getters and read back as the classes of this package, ready to
+ * {@link Solicitude#restore(com.sicomsa.dmt.solicitude.SolicitudeData) restore}
+ * a <code>Solicitude</code>.</p>
+ *
+ * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
+ * @version 2025.02.19
+ * @since 1.0
+ *
+ */
+public final class SolicitudeDataCodec {
+
+    /**
+     * Version of the format written = 1
+     */
+    public static final int VERSION = 1;
+
+    private static final int ACCEPTED = 1;
+    private static final int DELAYED = 2;
+    private static final int VERIFIED = 3;
+
+    private static final Delay[] DELAYS = Delay.values();
+
+    private SolicitudeDataCodec() {
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    /// SolicitudeData
+
+    /**
+     * Returns the specified snapshot encoded in a new array.
+     *
+     * @param data the snapshot to encode
+     * @return the encoded snapshot
+     * @throws IllegalArgumentException if data is null or its state is not
+     *         accepted, delayed or verified
+     */
+    public static byte[] encode(SolicitudeData data) {
+        ByteBuffer buffer = ByteBuffer.allocate(encodedSize(data));
+        encode(data, buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Writes the specified snapshot to the buffer, starting at its position.
+     *
+     * @param data the snapshot to encode
+     * @param buffer the buffer to write to
+     * @throws IllegalArgumentException if data or buffer are null, or if the
+     *         state of data is not accepted, delayed or verified
+     * @throws java.nio.BufferOverflowException if the buffer has less than
+     *         <code>encodedSize(data)</code> bytes remaining
+     */
+    public static void encode(SolicitudeData data, ByteBuffer buffer) {
+        if (data == null || buffer == null) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        int state = stateOf(data);
+        buffer.put((byte)VERSION);
+        buffer.put((byte)state);
+        putString(buffer, data.getRequestId());
+        putInstant(buffer, data.getLastAccepted());
+        if (state == DELAYED) {
+            buffer.put((byte)data.getDelay().ordinal());
+        }
+        else if (state == VERIFIED) {
+            putVarLong(buffer, data.getCfdis());
+            putPackageIds(buffer, data.getPackageIds());
+            putFlags(buffer, data);
+        }
+    }
+
+    /**
+     * Returns the number of bytes the specified snapshot takes encoded.
+     *
+     * @param data the snapshot
+     * @return the number of bytes the snapshot takes encoded
+     * @throws IllegalArgumentException if data is null or its state is not
+     *         accepted, delayed or verified
+     */
+    public static int encodedSize(SolicitudeData data) {
+        if (data == null) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        int state = stateOf(data);
+        Instant instant = data.getLastAccepted();
+        int size = 2 + stringSize(data.getRequestId())
+                + varLongSize(zigzag(instant.getEpochSecond())) + varLongSize(instant.getNano());
+        if (state == DELAYED) {
+            size++;
+        }
+        else if (state == VERIFIED) {
+            PackageIds ids = data.getPackageIds();
+            size += varLongSize(data.getCfdis()) + packageIdsSize(ids) + (ids.size() + 7) / 8;
+        }
+        return size;
+    }
+
+    /**
+     * Reads a snapshot from the buffer, starting at its position.
+     *
+     * @param buffer the buffer to read from
+     * @return the snapshot read
+     * @throws IllegalArgumentException if buffer is null, or if it does not
+     *         contain a snapshot of a supported version
+     * @throws java.nio.BufferUnderflowException if the snapshot is incomplete
+     */
+    public static SolicitudeData decode(ByteBuffer buffer) {
+        if (buffer == null) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        checkVersion(buffer.get());
+        int state = buffer.get();
+        String requestId = getString(buffer);
+        Instant instant = getInstant(buffer);
+        switch (state) {
+            case ACCEPTED:
+                return new SolicitudeData(requestId, instant);
+            case DELAYED:
+                int delay = buffer.get();
+                if (delay < 0 || delay >= DELAYS.length) {
+                    throw new IllegalArgumentException("invalid delay "+delay);
+                }
+                return new SolicitudeData.Delayed(requestId, DELAYS[delay], instant);
+            case VERIFIED:
+                int cfdis = toInt(getVarLong(buffer));
+                PackageIds ids = getPackageIds(buffer);
+                return new SolicitudeData.Verified(requestId, instant, cfdis,
+                        new DownloadRegistryImpl(ids, getFlags(buffer, ids.size())));
+            default:
+                throw new IllegalArgumentException("invalid state "+state);
+        }
+    }
+
+    /**
+     * Returns the snapshot encoded in the specified array.
+     *
+     * @param bytes the encoded snapshot
+     * @return the snapshot
+     * @throws IllegalArgumentException if bytes is null, or if it does not
+     *         contain a snapshot of a supported version
+     * @throws java.nio.BufferUnderflowException if the snapshot is incomplete
+     */
+    public static SolicitudeData decode(byte[] bytes) {
+        if (bytes == null) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        return decode(ByteBuffer.wrap(bytes));
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    /// DownloadRegistry
+
+    /**
+     * Writes the package ids and download flags of the specified registry to
+     * the buffer, starting at its position.
+     *
+     * @param registry the registry to encode, with package ids
+     * @param buffer the buffer to write to
+     * @throws IllegalArgumentException if registry or buffer are null, or if
+     *         registry has no package ids
+     * @throws java.nio.BufferOverflowException if the buffer has not enough
+     *         bytes remaining
+     */
+    public static void encodeRegistry(DownloadRegistry registry, ByteBuffer buffer) {
+        if (registry == null || buffer == null || registry.getPackageIds() == null) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        buffer.put((byte)VERSION);
+        putPackageIds(buffer, registry.getPackageIds());
+        putFlags(buffer, registry);
+    }
+
+    /**
+     * Reads a registry from the buffer, starting at its position.
+     *
+     * @param buffer the buffer to read from
+     * @return the registry read
+     * @throws IllegalArgumentException if buffer is null, or if it does not
+     *         contain a registry of a supported version
+     * @throws java.nio.BufferUnderflowException if the registry is incomplete
+     */
+    public static DownloadRegistryImpl decodeRegistry(ByteBuffer buffer) {
+        if (buffer == null) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        checkVersion(buffer.get());
+        PackageIds ids = getPackageIds(buffer);
+        return new DownloadRegistryImpl(ids, getFlags(buffer, ids.size()));
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    /// PackageIds
+
+    /**
+     * Writes the specified package ids to the buffer, each one as the length
+     * of the prefix it shares with the previous one and the rest.
+     *
+     * @param buffer the buffer to write to
+     * @param ids the package ids
+     * @throws java.nio.BufferOverflowException if the buffer has not enough
+     *         bytes remaining
+     */
+    public static void putPackageIds(ByteBuffer buffer, PackageIds ids) {
+        putVarLong(buffer, ids.size());
+        byte[] previous = new byte[0];
+        for (int idx = 0; idx < ids.size(); idx++) {
+            byte[] current = ids.getPackageId(idx).getBytes(StandardCharsets.UTF_8);
+            int shared = sharedPrefix(previous, current);
+            putVarLong(buffer, shared);
+            putVarLong(buffer, current.length - shared);
+            buffer.put(current, shared, current.length - shared);
+            previous = current;
+        }
+    }
+
+    /**
+     * Reads package ids from the buffer, written by <code>putPackageIds</code>.
+     *
+     * @param buffer the buffer to read from
+     * @return the package ids read
+     * @throws IllegalArgumentException if the package ids are invalid
+     * @throws java.nio.BufferUnderflowException if the package ids are incomplete
+     */
+    public static PackageIds getPackageIds(ByteBuffer buffer) {
+        int count = toInt(getVarLong(buffer));
+        if (count == 0 || count > buffer.remaining()) {
+            throw new IllegalArgumentException("invalid package count "+count);
+        }
+        List<String> list = new ArrayList<>(count);
+        byte[] previous = new byte[0];
+        for (int idx = 0; idx < count; idx++) {
+            int shared = toInt(getVarLong(buffer));
+            int rest = toInt(getVarLong(buffer));
+            if (shared > previous.length || rest > buffer.remaining()) {
+                throw new IllegalArgumentException("invalid package id at "+idx);
+            }
+            byte[] current = new byte[shared + rest];
+            System.arraycopy(previous, 0, current, 0, shared);
+            buffer.get(current, shared, rest);
+            list.add(new String(current, StandardCharsets.UTF_8));
+            previous = current;
+        }
+        return new PackageIds(list);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    private static void checkVersion(int version) {
+        if (version < 1 || version > VERSION) {
+            throw new IllegalArgumentException("unsupported version "+version);
+        }
+    }
+
+    private static int stateOf(SolicitudeData data) {
+        StateValue value = data.getStateValue();
+        if (value == StateValue.ACCEPTED) {
+            return ACCEPTED;
+        }
+        if (value == StateValue.DELAYED && data.getDelay() != null) {
+            return DELAYED;
+        }
+        if (value == StateValue.VERIFIED && data.getPackageIds() != null) {
+            return VERIFIED;
+        }
+        throw new IllegalArgumentException("unable to encode state "+value);
+    }
+
+    private static void putFlags(ByteBuffer buffer, DownloadRegistry registry) {
+        int size = registry.getPackageIds().size();
+        for (int base = 0; base < size; base += 8) {
+            int bits = 0;
+            for (int bit = 0; bit < 8 && base + bit < size; bit++) {
+                if (registry.isDownloaded(base + bit)) {
+                    bits |= (1 << bit);
+                }
+            }
+            buffer.put((byte)bits);
+        }
+    }
+
+    private static boolean[] getFlags(ByteBuffer buffer, int size) {
+        boolean[] flags = new boolean[size];
+        for (int base = 0; base < size; base += 8) {
+            int bits = buffer.get();
+            for (int bit = 0; bit < 8 && base + bit < size; bit++) {
+                flags[base + bit] = ((bits & (1 << bit)) != 0);
+            }
+        }
+        return flags;
+    }
+
+    private static void putString(ByteBuffer buffer, String string) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        putVarLong(buffer, bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = toInt(getVarLong(buffer));
+        if (length > buffer.remaining()) {
+            throw new IllegalArgumentException("invalid string length "+length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int stringSize(String string) {
+        int length = string.getBytes(StandardCharsets.UTF_8).length;
+        return varLongSize(length) + length;
+    }
+
+    private static void putInstant(ByteBuffer buffer, Instant instant) {
+        putVarLong(buffer, zigzag(instant.getEpochSecond()));
+        putVarLong(buffer, instant.getNano());
+    }
+
+    private static Instant getInstant(ByteBuffer buffer) {
+        long encoded = getVarLong(buffer);
+        long seconds = (encoded >>> 1) ^ -(encoded & 1);
+        return Instant.ofEpochSecond(seconds, getVarLong(buffer));
+    }
+
+    private static int packageIdsSize(PackageIds ids) {
+        int size = varLongSize(ids.size());
+        byte[] previous = new byte[0];
+        for (int idx = 0; idx < ids.size(); idx++) {
+            byte[] current = ids.getPackageId(idx).getBytes(StandardCharsets.UTF_8);
+            int shared = sharedPrefix(previous, current);
+            size += varLongSize(shared) + varLongSize(current.length - shared) + current.length - shared;
+            previous = current;
+        }
+        return size;
+    }
+
+    private static int sharedPrefix(byte[] previous, byte[] current) {
+        int max = Math.min(previous.length, current.length);
+        int shared = 0;
+        while (shared < max && previous[shared] == current[shared]) {
+            shared++;
+        }
+        return shared;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte)value);
+    }
+
+    private static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long)(b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("invalid varint");
+    }
+
+    private static int varLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int toInt(long value) {
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("invalid value "+value);
+        }
+        return (int)value;
+    }
+}
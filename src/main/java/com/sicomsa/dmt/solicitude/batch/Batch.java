@@ -9,6 +9,7 @@ import com.sicomsa.dmt.DMTClient;
 import com.sicomsa.dmt.solicitude.Solicitude;
 import com.sicomsa.dmt.solicitude.DownloadEvent;
 import com.sicomsa.dmt.solicitude.DownloadListener;
+import com.sicomsa.dmt.svc.CircuitOpenException;
 
 import jakarta.xml.soap.SOAPConnection;
 import jakarta.xml.soap.SOAPException;
@@ -17,6 +18,7 @@ import jakarta.xml.ws.WebServiceException;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import java.time.LocalDateTime;
 import java.time.DateTimeException;
@@ -26,6 +28,8 @@ import java.security.GeneralSecurityException;
 import java.security.cert.CertificateExpiredException;
 import java.security.cert.CertificateNotYetValidException;
 
+import java.lang.System.Logger.Level;
+
 /***
  * <code>Batch</code> downloads all available digital certificates (CFDIs) from
  * the <code>BatchSolicitude</code>s it receives through a map; and saves the
@@ -36,12 +40,14 @@ import java.security.cert.CertificateNotYetValidException;
 *
  *
  * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
- * @version 2025.01.02
+ * @version 2025.02.13
  * @since 1.0
  * 
  */
 public class Batch {
     
+    private static final System.Logger LOG = System.getLogger(Batch.class.getName());
+    
     /**
      * Batch's file
      */
@@ -52,6 +58,11 @@ public class Batch {
      */
     protected Map<Long,Solicitude> batchMap; ///unmodifiableMap
     
+    /**
+     * Listeners added to every solicitude while it is downloaded
+     */
+    protected List<DownloadListener> listeners = new CopyOnWriteArrayList<>();
+    
     /**
      * Creates a new <code>Batch</code> that will write web servide responses to
      * the specified file, and will able to download <code>BatchSolicitude</code>s
@@ -120,7 +131,50 @@ public class Batch {
     public boolean isPending() {
         return batchMap.values().stream().anyMatch(solicitude->solicitude.isPending());
     }
-    
+
+    /**
+     * Returns a set with the upper cased RFCs of the clients that have pending
+     * solicitudes in this <code>Batch</code>.
+     * <p>It can be used to load their credentials before downloading, see
+     * {@link com.sicomsa.dmt.CachingCredentialsStore#warmUp(java.util.Collection, java.util.concurrent.Executor)}.</p>
+     *
+     * @return a set with the RFCs of the clients that have pending solicitudes
+     */
+    public Set<String> getPendingRfcs() {
+        TreeSet<String> set = new TreeSet<>();
+        batchMap.values().forEach(solicitude-> {
+            if (solicitude.isPending()) {
+                set.add(solicitude.getClient().getRfc().toUpperCase());
+            }
+        });
+        return set;
+    }
+
+    /**
+     * Adds a listener that will hear the download events of every solicitude
+     * downloaded by this batch, after they are written to the batch file.
+     * <p>A {@link com.sicomsa.dmt.solicitude.DownloadPublisher} can be added to
+     * publish the events of the whole batch to reactive subscribers.</p>
+     *
+     * @param listener the listener to add
+     * @throws IllegalArgumentException if listener is null
+     */
+    public void addDownloadListener(DownloadListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes the specified listener from this batch.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeDownloadListener(DownloadListener listener) {
+        listeners.remove(listener);
+    }
+
     /**
      * Tries to download all pending solicitudes of this batch, saving all
      * solicitude's states and responses to its file so it can be reloaded in
@@ -146,6 +200,53 @@ public class Batch {
         }
     }
     
+    /**
+     * Tries to download all pending solicitudes of this batch with the specified
+     * planner, which splits the solicitudes whose queries cover too many CFDIs.
+     * The children of split solicitudes are saved to this batch's file along
+     * with all solicitude's states and responses, so they are restored when
+     * the batch is reloaded.
+     * <p>The child identifiers of the planner must not collide with other
+     * identifiers of this batch, including the ones of children that were
+     * restored.</p>
+     * 
+     * @param conn <code>SOAPConnection</code> to use
+     * @param planner planner to download solicitudes with
+     * @throws BatchException if there was a batch error
+     * @throws NullPointerException if conn or planner are null
+     */
+    public void download(SOAPConnection conn, SplitPlanner planner) throws BatchException {
+        if (conn == null || planner == null) {
+            throw new NullPointerException("null connection or planner");
+        }
+        if (!isPending()) {
+            return;
+        }
+        try {
+            verifyCredentials();
+            try (BatchWriter writer = new BatchWriter(file)) {
+                writer.writeComment(getBatchComment("Batch begin"));
+                DownloadHandler handler = new DownloadHandler(writer);
+                try {
+                    Iterator<Solicitude> iterator = this.solicitudes();
+                    while (iterator.hasNext()) {
+                        BatchSolicitude solicitude = (BatchSolicitude)iterator.next();
+                        if (solicitude.isPending()) {
+                            planner.download(conn, solicitude, new BatchListener(handler), writer);
+                        }
+                    }
+                    writer.writeComment(getBatchComment("Batch end"));
+                }
+                finally {
+                    handler.dispose();
+                }
+            }
+        }
+        catch (SOAPException | IOException | GeneralSecurityException e) {
+            throw new BatchException(e.getMessage(), e);
+        }
+    }
+    
     /**
      * Tries to download all pending solicitudes of this batch, writing all
      * responses received from the web service in this batch's file.
@@ -182,7 +283,13 @@ public class Batch {
      * they are halted or all of its certificates have been downloaded.</p>
      * <p>The specified listener will be added to all the solicitudes that
      * will be downloaded, and will be removed from them before this method
-     * exits.</p>
+     * exits. Listeners added to this batch are added to the solicitudes
+     * before the specified listener, so they hear each event after it.</p>
+     * <p>A solicitude whose call is rejected because the circuit of a web
+     * service location is open remains pending, and the rest of the
+     * solicitudes are downloaded.</p>
+     * <p>Solicitudes that were split are not downloaded themselves, their
+     * pending descendants that were not split are downloaded instead.</p>
      * 
      * @param conn <code>SOAPConnection</code> to use
      * @param listener to add to solicitudes to download
@@ -193,19 +300,28 @@ public class Batch {
         throws BatchException {
         
         Iterator<Solicitude> iterator = this.solicitudes();
+        ArrayList<BatchSolicitude> leaves = new ArrayList<>();
         while (iterator.hasNext()) {
-            BatchSolicitude solicitude = (BatchSolicitude)iterator.next();
+            addLeaves((BatchSolicitude)iterator.next(), leaves);
+        }
+        for (BatchSolicitude solicitude : leaves) {
             if (solicitude.isPending()) {
                 try {
+                    listeners.forEach(solicitude::addDownloadListener);
                     solicitude.addDownloadListener(listener);
                     solicitude.download(conn);
                 }
+                catch (CircuitOpenException e) {
+                    LOG.log(Level.DEBUG, "Skipping batchId:{0}, {1}",
+                            solicitude.getBatchId(), e.getMessage());
+                }
                 catch (SOAPException | WebServiceException e) {
                     throw new BatchException("Error while downloading batchId:"
                             +solicitude.getBatchId(), e);
                 }
                 finally {
                     solicitude.removeDownloadListener(listener);
+                    listeners.forEach(solicitude::removeDownloadListener);
                 }
             }
         }
@@ -214,6 +330,22 @@ public class Batch {
     
     ///////////////////////////////////////////////////////////////////////////
     
+    /**
+     * Adds the specified solicitude to the specified list if it was not split,
+     * or its descendants that were not split otherwise.
+     * 
+     * @param solicitude root solicitude
+     * @param list list to add to
+     */
+    protected void addLeaves(BatchSolicitude solicitude, List<BatchSolicitude> list) {
+        if (solicitude.isSplit()) {
+            solicitude.getChildren().forEach(child->addLeaves(child, list));
+        }
+        else {
+            list.add(solicitude);
+        }
+    }
+    
     /**
      * Checks certificate's validity of all clients with pending solicitudes
      * in this Batch.
@@ -336,7 +468,9 @@ public class Batch {
          */
         protected void write(DownloadEvent de) {
             try {
-                writer.writeResponse(de);
+                synchronized (writer) {
+                    writer.writeResponse(de);
+                }
             }
             catch (SOAPException | IOException e) {
                 throw new DownloadEventException(e.getMessage(), e);
@@ -344,6 +478,35 @@ public class Batch {
         }
         
     }//handler
+    
+    ///////////////////////////////////////////////////////////////////////////
+    
+    /**
+     * <code>DownloadListener</code> that passes the events it hears to a
+     * <code>DownloadHandler</code> and then to the listeners of this batch,
+     * used when solicitudes are downloaded by a {@link SplitPlanner}.
+     */
+    protected class BatchListener implements DownloadListener {
+        
+        /**
+         * Handler that writes the events heard
+         */
+        protected final DownloadHandler handler;
+        
+        /**
+         * Creates a new <code>BatchListener</code> with the specified handler.
+         * 
+         * @param handler handler that writes the events heard
+         */
+        protected BatchListener(DownloadHandler handler) {
+            this.handler = handler;
+        }
+        
+        @Override public void stateChanged(DownloadEvent de) {
+            handler.stateChanged(de);
+            listeners.forEach(listener->listener.stateChanged(de));
+        }
+    }
     ///////////////////////////////////////////////////////////////////////////
     
 }
@@ -23,6 +23,8 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.ArrayList;
 
 import java.io.File;
 import java.io.IOException;
@@ -128,6 +130,8 @@ public class BatchFactory {
     /**
      * Creates a <code>BatchSolicitude</code> map with iterators provided from
      * the specified <code>BatchReader</code>,
+     * <p>Solicitudes that were split are restored with their children, the
+     * map only contains the solicitudes the batch was built with.</p>
      * 
      * @param reader <code>BatchReader</code> to read from
      * @return a <code>BatchSolicitude</code> map
@@ -142,10 +146,11 @@ public class BatchFactory {
         if (map.isEmpty()) {
             throw new StreamCorruptedException("no requests found in batch file");
         }
+        Map<Long,BatchSolicitude> index = buildSplitIndex(map, reader.getSplitRequests()); //throws soap
         Iterator<EventResponse> iterator = reader.getResponses(); //throws soap, svc
         while (iterator.hasNext()) {
             EventResponse response = iterator.next();
-            BatchSolicitude  solicitude = map.get(response.getProcessId());
+            BatchSolicitude  solicitude = index.get(response.getProcessId());
             if (solicitude == null) {
                 throw new StreamCorruptedException("downloadProcess not found, id:"
                         +response.getProcessId());
@@ -284,6 +289,42 @@ public class BatchFactory {
         return map;
     }
     
+    /**
+     * Creates the children of the split solicitudes of the specified map with
+     * the requests provided by the specified iterator, and returns a new map
+     * with the solicitudes of the specified map and all of their descendants.
+     * 
+     * @param map map of solicitudes the batch was built with
+     * @param iterator iterator of split requests
+     * @return a map with all the solicitudes of the batch
+     * @throws StreamCorruptedException if a parent was not found or its
+     *         identifier is repeated
+     * @throws NullPointerException if map or iterator are null
+     */
+    protected Map<Long,BatchSolicitude> buildSplitIndex(Map<Long,BatchSolicitude> map,
+            Iterator<SplitRequest> iterator) throws StreamCorruptedException {
+        
+        HashMap<Long,BatchSolicitude> index = new HashMap<>(map);
+        LinkedHashMap<Long,List<BatchSolicitude>> childrenMap = new LinkedHashMap<>();
+        while (iterator.hasNext()) {
+            SplitRequest request = iterator.next();
+            if (!index.containsKey(request.getParentId())) {
+                throw new StreamCorruptedException("split parent not found, id:"
+                        +request.getParentId());
+            }
+            BatchSolicitude child =
+                    newSolicitude(request.getRfc(), request.getQuery(), request.getId());
+            if (index.putIfAbsent(child.getBatchId(), child) != null) {
+                throw new StreamCorruptedException("repeated batchId:"+child.getBatchId());
+            }
+            childrenMap.computeIfAbsent(request.getParentId(), id->new ArrayList<>()).add(child);
+        }
+        for (Map.Entry<Long,List<BatchSolicitude>> entry : childrenMap.entrySet()) {
+            index.get(entry.getKey()).setChildren(entry.getValue());
+        }
+        return index;
+    }
+    
     /**
      * Returns a new <code>BatchSolicitude</code> with the specified parameters.
      * 
@@ -28,6 +28,7 @@ import javax.xml.namespace.QName;
 import java.io.File;
 import java.io.IOException;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -149,6 +150,31 @@ public class BatchReader {
                 message.getSOAPBody().getChildElements(BatchWriter.RESPONSE));
     }
     
+    /**
+     * Returns a <code>SplitRequest</code> iterator, with the requests of the
+     * children of every split request in the order they were written.
+     * 
+     * @return a <code>SplitRequest</code> iterator
+     * @throws SOAPException if there were SOAP related problems
+     * @throws SvcParseException if unable to parse a split request
+     */
+    public Iterator<SplitRequest> getSplitRequests() throws SOAPException {
+        ArrayList<SplitRequest> list = new ArrayList<>();
+        Iterator<Node> splits = message.getSOAPBody().getChildElements(BatchWriter.SPLIT);
+        while (splits.hasNext()) {
+            SOAPElement split = (SOAPElement)splits.next();
+            long parentId = SOAPUtils.parseLongAttributeValue(split, BatchWriter.BATCH_ID);
+            RequestsIterator iterator = new RequestsIterator(
+                    split.getChildElements(BatchWriter.REQUEST));
+            while (iterator.hasNext()) {
+                BatchRequest request = iterator.next();
+                list.add(new SplitRequest(parentId,
+                        request.getId(), request.getRfc(), request.getQuery()));
+            }
+        }
+        return list.iterator();
+    }
+    
     ////////////////////////////////////////////////////////////////////////////
     
     /**
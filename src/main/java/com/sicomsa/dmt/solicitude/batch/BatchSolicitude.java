@@ -12,6 +12,9 @@ import com.sicomsa.dmt.SolicitaResponse;
 import com.sicomsa.dmt.VerificaResponse;
 import com.sicomsa.dmt.solicitude.DefaultSolicitude;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * <code>BatchSolicitude</code> extends {@link com.sicomsa.dmt.solicitude.DefaultSolicitude}
  * to implement a {@link com.sicomsa.dmt.solicitude.Solicitude} that can be
@@ -31,6 +34,11 @@ public class BatchSolicitude extends DefaultSolicitude {
      */
     protected long batchId;
 
+    /**
+     * Solicitudes this solicitude was split into, null if not split.
+     */
+    private volatile List<BatchSolicitude> _children;
+
     /**
      * Creates a new <code>BatchSolicitude</code> with the specified parameters.
      * 
@@ -53,6 +61,60 @@ public class BatchSolicitude extends DefaultSolicitude {
         return batchId;
     }
     
+    /**
+     * Returns true if this solicitude was split into children solicitudes.
+     *
+     * @return true if this solicitude was split
+     * @see SplitPlanner
+     */
+    public boolean isSplit() {
+        return (_children != null);
+    }
+
+    /**
+     * Returns the solicitudes this solicitude was split into, or an empty
+     * list if it has not been split.
+     *
+     * @return the children of this solicitude
+     */
+    public List<BatchSolicitude> getChildren() {
+        List<BatchSolicitude> children = _children;
+        return (children == null ? Collections.emptyList() : children);
+    }
+
+    /**
+     * Sets the solicitudes this solicitude was split into. Once split, this
+     * solicitude is pending while any of its children is pending, and its own
+     * packages are not downloaded by a <code>Batch</code>.
+     *
+     * @param children solicitudes this solicitude was split into
+     * @throws IllegalArgumentException if children is null or empty
+     * @throws IllegalStateException if this solicitude was already split
+     */
+    public synchronized void setChildren(List<BatchSolicitude> children) {
+        if (children == null || children.isEmpty()) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        if (_children != null) {
+            throw new IllegalStateException("solicitude already split:"+batchId);
+        }
+        _children = List.copyOf(children);
+    }
+
+    /**
+     * Returns true if this download request is pending; a solicitude that
+     * was split is pending while any of its children is pending.
+     *
+     * @return true if this download request is pending
+     */
+    @Override public boolean isPending() {
+        List<BatchSolicitude> children = _children;
+        if (children == null) {
+            return super.isPending();
+        }
+        return children.stream().anyMatch(child->child.isPending());
+    }
+
     /**
      * Updates this solicitude with the specified download request response.
      * 
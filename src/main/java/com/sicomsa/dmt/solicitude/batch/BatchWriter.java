@@ -32,6 +32,7 @@ import jakarta.xml.soap.SOAPElement;
 import jakarta.xml.soap.SOAPException;
 
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * <code>BatchWriter</code> formats a file with a <code>SOAPMessage</code> containing
@@ -78,6 +79,11 @@ public class BatchWriter implements AutoCloseable {
      */
     public static final QName RESPONSE = new QName(URI, "Response", PREFIX);
     
+    /**
+     * Name of split Nodes, containing the requests a request was split into
+     */
+    public static final QName SPLIT = new QName(URI, "Split", PREFIX);
+    
     /**
      * Attribute name of batch identifier
      */
@@ -235,6 +241,34 @@ public class BatchWriter implements AutoCloseable {
         getWriter().writeAppendedElement();
     }
     
+    /**
+     * Adds a new element with the requests of the children the specified
+     * solicitude was split into, to the <code>SOAPMessage</code> this writer
+     * keeps updated in this writer's file; so the children are restored when
+     * the batch is loaded again.
+     * 
+     * @param parent solicitude that was split
+     * @param children solicitudes the parent was split into
+     * @throws SOAPException if there were any SOAP problems.
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if parent or children are null
+     * @see SplitPlanner
+     */
+    public void writeSplit(BatchSolicitude parent, List<BatchSolicitude> children)
+            throws SOAPException, IOException {
+        
+        if (parent == null || children == null) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        checkNotClosed(); //throws IOEx
+        SOAPElement split = getWriter().addChildElement(SPLIT)
+                .addAttribute(BATCH_ID, Long.toString(parent.getBatchId()));
+        for (BatchSolicitude child : children) {
+            addRequest(split, child);
+        }
+        getWriter().writeAppendedElement();
+    }
+    
     /**
      * Adds a new comment element with the specified text to the <code>SOAPMessage</code>
      * this writer keeps updated in this writer's file.
@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.solicitude.batch;
+
+import com.sicomsa.dmt.Query;
+import com.sicomsa.dmt.SatResponse;
+import com.sicomsa.dmt.VerificaResponse;
+import com.sicomsa.dmt.solicitude.DownloadEvent;
+import com.sicomsa.dmt.solicitude.DownloadListener;
+import com.sicomsa.dmt.util.QuerySplitter;
+
+import java.io.IOException;
+
+import jakarta.xml.soap.SOAPConnection;
+import jakarta.xml.soap.SOAPException;
+import jakarta.xml.ws.WebServiceException;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import java.lang.System.Logger.Level;
+
+/**
+ * <code>SplitPlanner</code> downloads a <code>BatchSolicitude</code> and, when
+ * SAT reports that its query covers too many CFDIs, recursively splits the
+ * query's period with a {@link com.sicomsa.dmt.util.QuerySplitter} and
+ * downloads the resulting sub-queries in parallel.
+ * <p>A solicitude is split when it is rejected with the status code
+ * {@link SplitPlanner#MAX_LIMIT_STS_CODE}, or when it is verified with more
+ * CFDIs than this planner's <code>maxCfdis</code> property; in the latter
+ * case the solicitude is paused before any package is downloaded.</p>
+ * <p>Sub-queries are kept as children of the solicitude they were split from
+ * and can be obtained with {@link BatchSolicitude#getChildren()}. Each child
+ * receives a new batch identifier taken from a sequence that starts at the
+ * value specified when creating this planner, it should not collide with
+ * other identifiers of the <code>Batch</code>.</p>
+ * <p>When a <code>BatchWriter</code> is specified, children are written to the
+ * batch file before they are downloaded, so they are restored when the batch
+ * is loaded again, see {@link Batch#download(SOAPConnection, SplitPlanner)}.
+ * Calling <code>download</code> again on the same solicitude will continue
+ * its pending children instead of splitting it again.</p>
+ * <p>Solicitudes are downloaded in the threads of this planner's executor, so
+ * the listener used must be thread safe.</p>
+ *
+ * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
+ * @version 2025.02.03
+ * @since 1.0
+ *
+ */
+public class SplitPlanner {
+
+    private static final System.Logger LOG = System.getLogger(SplitPlanner.class.getName());
+
+    /**
+     * Status code SAT uses when a query exceeds the maximum of CFDIs allowed = "5003".
+     */
+    public static final String MAX_LIMIT_STS_CODE = "5003";
+
+    /**
+     * Default maximum CFDIs per solicitude = 200000.
+     */
+    public static final int DEFAULT_MAX_CFDIS = 200000;
+
+    /**
+     * Splitter of queries
+     */
+    protected QuerySplitter splitter;
+
+    /**
+     * Executor that runs the downloads
+     */
+    protected Executor executor;
+
+    /**
+     * Maximum CFDIs a solicitude may have before being split
+     */
+    protected int maxCfdis;
+
+    /**
+     * Sequence of batch identifiers for children solicitudes
+     */
+    protected AtomicLong sequence;
+
+    /**
+     * Creates a new <code>SplitPlanner</code> with a default
+     * <code>QuerySplitter</code> and maximum of {@link SplitPlanner#DEFAULT_MAX_CFDIS}.
+     *
+     * @param executor executor that will run the downloads
+     * @param firstChildId batch identifier of the first child solicitude
+     * @throws IllegalArgumentException if executor is null
+     */
+    public SplitPlanner(Executor executor, long firstChildId) {
+        this(new QuerySplitter(), executor, DEFAULT_MAX_CFDIS, firstChildId);
+    }
+
+    /**
+     * Creates a new <code>SplitPlanner</code> with the specified parameters.
+     *
+     * @param splitter splitter of queries
+     * @param executor executor that will run the downloads
+     * @param maxCfdis maximum CFDIs a solicitude may have before being split
+     * @param firstChildId batch identifier of the first child solicitude
+     * @throws IllegalArgumentException if splitter or executor are null, or
+     *         if maxCfdis is less than one
+     */
+    public SplitPlanner(QuerySplitter splitter, Executor executor, int maxCfdis, long firstChildId) {
+        if (splitter == null || executor == null || maxCfdis < 1) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        this.splitter = splitter;
+        this.executor = executor;
+        this.maxCfdis = maxCfdis;
+        this.sequence = new AtomicLong(firstChildId);
+    }
+
+    /**
+     * Returns the maximum CFDIs a solicitude may have before being split.
+     *
+     * @return the maximum CFDIs a solicitude may have before being split
+     */
+    public int getMaxCfdis() {
+        return maxCfdis;
+    }
+
+    /**
+     * Returns a list with the solicitudes that resulted from splitting the
+     * specified solicitude and its descendants, that were not split themselves.
+     * Returns a list containing only the specified solicitude if it has not
+     * been split.
+     *
+     * @param solicitude root solicitude
+     * @return a list with the leaves of the specified solicitude
+     * @throws NullPointerException if solicitude is null
+     */
+    public List<BatchSolicitude> getLeaves(BatchSolicitude solicitude) {
+        ArrayList<BatchSolicitude> list = new ArrayList<>();
+        addLeaves(solicitude, list);
+        return list;
+    }
+
+    /**
+     * Returns true if the specified solicitude or any of its descendants
+     * is pending.
+     *
+     * @param solicitude root solicitude
+     * @return true if the specified solicitude or any of its descendants
+     *         is pending
+     * @throws NullPointerException if solicitude is null
+     */
+    public boolean isPending(BatchSolicitude solicitude) {
+        return getLeaves(solicitude).stream().anyMatch(leaf->leaf.isPending());
+    }
+
+    /**
+     * Downloads the specified solicitude, splitting it and downloading its
+     * children in parallel as needed; this method returns when every leaf
+     * of the solicitude's tree has been halted, rejected or downloaded.
+     *
+     * @param conn <code>SOAPConnection</code> to use
+     * @param solicitude solicitude to download
+     * @param listener listener to add to solicitudes while downloading, may
+     *        be null
+     * @throws BatchException if any problems arose while downloading a solicitude
+     * @throws IllegalArgumentException if conn or solicitude are null
+     */
+    public void download(SOAPConnection conn, BatchSolicitude solicitude,
+            DownloadListener listener) throws BatchException {
+
+        download(conn, solicitude, listener, null);
+    }
+
+    /**
+     * Downloads the specified solicitude, splitting it and downloading its
+     * children in parallel as needed; this method returns when every leaf
+     * of the solicitude's tree has been halted, rejected or downloaded.
+     * <p>Children are written with the specified writer, if not null, before
+     * they are downloaded. The writer is used while holding its lock, so the
+     * listener can write the events it hears holding the same lock.</p>
+     *
+     * @param conn <code>SOAPConnection</code> to use
+     * @param solicitude solicitude to download
+     * @param listener listener to add to solicitudes while downloading, may
+     *        be null
+     * @param writer writer of the batch file, may be null
+     * @throws BatchException if any problems arose while downloading a solicitude,
+     *         or while writing its children
+     * @throws IllegalArgumentException if conn or solicitude are null
+     */
+    public void download(SOAPConnection conn, BatchSolicitude solicitude,
+            DownloadListener listener, BatchWriter writer) throws BatchException {
+
+        if (conn == null || solicitude == null) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        CompletionService<BatchSolicitude> service = new ExecutorCompletionService<>(executor);
+        int running = 0;
+        for (BatchSolicitude leaf : getLeaves(solicitude)) {
+            if (leaf.isPending()) {
+                submit(service, conn, leaf, listener);
+                running++;
+            }
+        }
+        BatchException exception = null;
+        while (running > 0) {
+            BatchSolicitude done;
+            try {
+                done = service.take().get();
+                running--;
+            }
+            catch (ExecutionException e) {
+                running--;
+                if (exception == null) {
+                    exception = new BatchException(
+                            "Error while downloading split solicitude", e.getCause());
+                }
+                continue;
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BatchException("Interrupted while downloading split solicitude", e);
+            }
+            if (exception == null && needsSplit(done) && splitter.canSplit(done.getQuery())) {
+                try {
+                    for (BatchSolicitude child : split(done, writer)) {
+                        submit(service, conn, child, listener);
+                        running++;
+                    }
+                }
+                catch (SOAPException | IOException e) {
+                    exception = new BatchException(
+                            "Error while writing split solicitude:"+done.getBatchId(), e);
+                }
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    /**
+     * Returns true if SAT feedback of the specified solicitude shows its
+     * query covers too many CFDIs.
+     *
+     * @param solicitude solicitude to evaluate
+     * @return true if the specified solicitude should be split
+     * @throws NullPointerException if solicitude is null
+     */
+    public boolean needsSplit(BatchSolicitude solicitude) {
+        if (solicitude.isReject()) {
+            return isMaxLimitReject(solicitude.getReject());
+        }
+        return (solicitude.isPaused() && solicitude.getCfdis() > maxCfdis);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Returns true if the specified response is a rejection because of
+     * exceeding the maximum CFDIs allowed.
+     *
+     * @param reject the response to evaluate
+     * @return true if the specified response is a rejection because of
+     *         exceeding the maximum CFDIs allowed
+     */
+    protected boolean isMaxLimitReject(SatResponse reject) {
+        if (reject instanceof VerificaResponse response) {
+            return MAX_LIMIT_STS_CODE.equals(response.getSolicitudeStsCode());
+        }
+        return (reject != null && MAX_LIMIT_STS_CODE.equals(reject.getStatusCode()));
+    }
+
+    /**
+     * Splits the query of the specified solicitude and sets a new child
+     * solicitude for each resulting query, writing them first with the
+     * specified writer if not null.
+     *
+     * @param parent solicitude to split
+     * @param writer writer of the batch file, may be null
+     * @return the children of the specified solicitude
+     * @throws SOAPException if there were SOAP problems while writing
+     * @throws IOException if an I/O error occurs while writing
+     * @throws NullPointerException if parent is null
+     */
+    protected List<BatchSolicitude> split(BatchSolicitude parent, BatchWriter writer)
+            throws SOAPException, IOException {
+        
+        ArrayList<BatchSolicitude> children = new ArrayList<>();
+        for (Query query : splitter.split(parent.getQuery())) {
+            children.add(new BatchSolicitude(
+                    parent.getClient(), query, sequence.getAndIncrement()));
+        }
+        if (writer != null) {
+            synchronized (writer) {
+                writer.writeSplit(parent, children);
+            }
+        }
+        LOG.log(Level.DEBUG, "Solicitude ({0}) split into {1}", parent.getBatchId(), children.size());
+        parent.setChildren(children);
+        return parent.getChildren();
+    }
+
+    /**
+     * Submits the download of the specified solicitude to the specified service.
+     *
+     * @param service service to submit to
+     * @param conn <code>SOAPConnection</code> to use
+     * @param solicitude solicitude to download
+     * @param listener listener to add to the solicitude while downloading, may be null
+     */
+    protected void submit(CompletionService<BatchSolicitude> service, SOAPConnection conn,
+            BatchSolicitude solicitude, DownloadListener listener) {
+        service.submit(()-> {
+            doDownload(conn, solicitude, listener);
+            return solicitude;
+        });
+    }
+
+    /**
+     * Downloads the specified solicitude, pausing it if it is verified with
+     * more CFDIs than allowed by this planner.
+     *
+     * @param conn <code>SOAPConnection</code> to use
+     * @param solicitude solicitude to download
+     * @param listener listener to add to the solicitude while downloading, may be null
+     * @throws SOAPException if there were SOAP related problems
+     * @throws WebServiceException if there were other service related problems
+     */
+    protected void doDownload(SOAPConnection conn, BatchSolicitude solicitude,
+            DownloadListener listener) throws SOAPException {
+
+        DownloadListener limiter = new LimitHandler();
+        solicitude.addDownloadListener(limiter);
+        if (listener != null) {
+            solicitude.addDownloadListener(listener);
+        }
+        try {
+            solicitude.download(conn);
+        }
+        finally {
+            if (listener != null) {
+                solicitude.removeDownloadListener(listener);
+            }
+            solicitude.removeDownloadListener(limiter);
+        }
+    }
+
+    /**
+     * Adds the leaves of the specified solicitude to the specified list.
+     *
+     * @param solicitude root solicitude
+     * @param list list to add to
+     */
+    protected void addLeaves(BatchSolicitude solicitude, List<BatchSolicitude> list) {
+        if (solicitude.isSplit()) {
+            solicitude.getChildren().forEach(child->addLeaves(child, list));
+        }
+        else {
+            list.add(solicitude);
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * <code>DownloadListener</code> that pauses a solicitude when it is
+     * verified with more CFDIs than allowed by this planner, so no package
+     * is downloaded before it is split. Solicitudes whose query can not be
+     * split any further are not paused and download normally.
+     */
+    protected class LimitHandler implements DownloadListener {
+
+        @Override public void stateChanged(DownloadEvent de) {
+            if (de.getResult() == DownloadEvent.Result.VERIFIED
+                    && de.getSolicitude().getCfdis() > maxCfdis
+                    && splitter.canSplit(de.getSolicitude().getQuery())) {
+                de.getSolicitude().pause();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.solicitude.batch;
+
+import com.sicomsa.dmt.Query;
+
+/**
+ * <code>SplitRequest</code> is a <code>BatchRequest</code> that resulted from
+ * splitting the query of another request of the same <code>Batch</code>.
+ *
+ * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
+ * @version 2025.02.03
+ * @since 1.0
+ *
+ */
+public class SplitRequest extends BatchRequest {
+
+    /**
+     * Identifier of the request this request was split from
+     */
+    protected long parentId;
+
+    /**
+     * Constructs a new <code>SplitRequest</code> with the specified parameters.
+     *
+     * @param parentId identifier of the request this request was split from
+     * @param id identifier of this request within a Batch
+     * @param rfc RFC of contributor making this request
+     * @param query query of this request
+     * @throws IllegalArgumentException if rfc or query are null
+     */
+    public SplitRequest(long parentId, long id, String rfc, Query query) {
+        super(id, rfc, query);
+        this.parentId = parentId;
+    }
+
+    /**
+     * Returns the id of the request this request was split from.
+     *
+     * @return the id of the request this request was split from
+     */
+    public long getParentId() {
+        return parentId;
+    }
+
+    /**
+     * Returns a string representation of this request.
+     *
+     * @return a string representation of this request
+     */
+    @Override public String toString() {
+        return new StringBuilder("SplitRequest{")
+                .append("parentId=").append(parentId)
+                .append(",id=").append(id)
+                .append(",rfc=").append(rfc)
+                .append(",query=").append(query)
+                .append("}").toString();
+    }
+
+}
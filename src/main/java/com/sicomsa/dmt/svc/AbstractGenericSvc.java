@@ -9,16 +9,20 @@ package com.sicomsa.dmt.svc;
 import com.sicomsa.dmt.SvcSignatureException;
 import com.sicomsa.dmt.Credentials;
 
+import jakarta.xml.soap.MessageFactory;
 import jakarta.xml.soap.SOAPElement;
 import jakarta.xml.soap.SOAPEnvelope;
 import jakarta.xml.soap.SOAPMessage;
 import jakarta.xml.soap.SOAPException;
 
 import java.security.GeneralSecurityException;
+import java.util.Arrays;
 import javax.xml.crypto.dsig.XMLSignature;
 
 import javax.xml.namespace.QName;
 
+import java.lang.System.Logger.Level;
+
 /**
  * Implementation of {@link AbstractSvc} for generic messages. Those are
  * the ones that need a token and all sign the same way.
@@ -46,12 +50,15 @@ import javax.xml.namespace.QName;
  * 
  *
  * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
- * @version 2024.10.22
+ * @version 2025.02.18
  * @since 1.0
  * 
  *
  */
 public abstract class AbstractGenericSvc<P,Q> extends AbstractSvc<P,Q> {
+    
+    private static final System.Logger LOG = System.getLogger(AbstractGenericSvc.class.getName());
+    
     /**
      * StatusCode QName according to WSDL = "CodEstatus"
      */
@@ -72,6 +79,33 @@ public abstract class AbstractGenericSvc<P,Q> extends AbstractSvc<P,Q> {
         super(context);
     }
     
+    /**
+     * Writer of signed requests, may be null
+     */
+    private volatile SignedRequestWriter _writer;
+    
+    /**
+     * Returns the writer of signed requests of this service, or null if
+     * there is none.
+     * 
+     * @return the writer of signed requests of this service, or null
+     */
+    public SignedRequestWriter getSignedRequestWriter() {
+        return _writer;
+    }
+    
+    /**
+     * Sets the writer this service uses to write its signed requests directly,
+     * instead of building and signing them with SAAJ. It is only used if this
+     * service has a template and returns an element from <code>newSignedElement</code>,
+     * and the credentials can sign bytes, see {@link Credentials#canSignBytes()}.
+     * 
+     * @param writer the writer to use, null to build requests with SAAJ
+     */
+    public void setSignedRequestWriter(SignedRequestWriter writer) {
+        this._writer = writer;
+    }
+    
     /**
      * Adds specific content, depending on the service implemented, to the
      * <code>SOAPMessage</code> specified and returns the <code>SOAPElement</code>
@@ -85,6 +119,74 @@ public abstract class AbstractGenericSvc<P,Q> extends AbstractSvc<P,Q> {
      */
     protected abstract SOAPElement addContent(SOAPMessage message, String rfc, Q request) throws SOAPException;
     
+    /**
+     * Returns the names of the elements, from the body down to the element to
+     * be signed, that all messages of this service have; or null if messages
+     * should be built from scratch.
+     * <p>This implementation returns null.</p>
+     * 
+     * @return the names of the skeleton elements, or null
+     */
+    protected QName[] getSkeleton() {
+        return null;
+    }
+    
+    /**
+     * Returns the element to be signed with the content of the specified
+     * request, for the {@link SignedRequestWriter}; or null if the messages of
+     * this service must be built with <code>addContent</code>. Its name must
+     * be the last name of the skeleton.
+     * <p>This implementation returns null.</p>
+     * 
+     * @param rfc RFC of the contributor that is making the WS request
+     * @param request request to be added to the element
+     * @return the element to be signed, or null
+     */
+    protected SignedRequestWriter.Element newSignedElement(String rfc, Q request) {
+        return null;
+    }
+    
+    /**
+     * Creates and returns the <code>SOAPMessage</code> to send to the WS.
+     * <p>If this service has a {@link SignedRequestWriter} the message is
+     * written and signed directly, see <code>setSignedRequestWriter</code>;
+     * otherwise it is built as in {@link AbstractSvc}.</p>
+     * 
+     * @param credentials credentials to be used to sign message
+     * @param request with the content to be added to the request
+     * @param token the token to use to identify with SAT
+     * @return the message to send
+     * @throws SOAPException if there were SOAP related problems
+     * @throws NullPointerException if credentials are null
+     * @throws SvcSignatureException if there were signature related problems
+     */
+    @Override
+    public SOAPMessage createMessageToSend(Credentials credentials, Q request, String token) throws SOAPException {
+        SignedRequestWriter writer = getSignedRequestWriter();
+        QName[] skeleton = getSkeleton();
+        EnvelopeTemplate template = getTemplate();
+        if (writer == null || skeleton == null || template == null
+                || !credentials.canSignBytes()) {
+            return super.createMessageToSend(credentials, request, token);
+        }
+        SignedRequestWriter.Element element = newSignedElement(credentials.getRfc(), request);
+        if (element == null) {
+            return super.createMessageToSend(credentials, request, token);
+        }
+        byte[] bytes;
+        try {
+            bytes = writer.write(credentials, template.getNamespaces(),
+                    Arrays.copyOf(skeleton, skeleton.length - 1), element);
+        }
+        catch (GeneralSecurityException e) {
+            LOG.log(Level.ERROR, e.getMessage(), e);
+            throw new SvcSignatureException(e.getMessage(), e);
+        }
+        SOAPMessage message = writer.newMessage(getContext().getMessageFactory(), bytes);
+        setHeaders(message.getMimeHeaders(), token);
+        return message;
+    }
+    
     ////////////////////////////////////////////////////////////////////////////
   
     /**
@@ -98,6 +200,29 @@ public abstract class AbstractGenericSvc<P,Q> extends AbstractSvc<P,Q> {
         envelope.addNamespaceDeclaration(DMT_PREFIX, DMT_URI);
         super.addNamespaces(envelope);
     }
+    
+    /**
+     * This implementation returns a template with the namespaces of this
+     * service and the elements returned by <code>getSkeleton()</code>, or null
+     * if there is no skeleton.
+     * 
+     * @return a new template of the messages of this service, or null
+     * @throws SOAPException if there were SOAP related problems
+     */
+    @Override protected EnvelopeTemplate newTemplate() throws SOAPException {
+        QName[] skeleton = getSkeleton();
+        if (skeleton == null) {
+            return null;
+        }
+        MessageFactory factory = getContext().getMessageFactory();
+        SOAPMessage prototype = factory.createMessage();
+        addNamespaces(prototype.getSOAPPart().getEnvelope());
+        SOAPElement element = prototype.getSOAPBody();
+        for (QName name : skeleton) {
+            element = element.addChildElement(name);
+        }
+        return new EnvelopeTemplate(factory, prototype);
+    }
       
     /**
      * Adds content to the specified <code>SOAPMessage</code>, using the specified
@@ -6,9 +6,11 @@ package com.sicomsa.dmt.svc;
 
 import com.sicomsa.dmt.SvcSignatureException;
 import com.sicomsa.dmt.Credentials;
+import com.sicomsa.dmt.SatResponse;
 import com.sicomsa.dmt.util.SOAPUtils;
 import com.sicomsa.dmt.util.SvcParseException;
 
+import jakarta.xml.soap.MessageFactory;
 import jakarta.xml.soap.SOAPConnection;
 import jakarta.xml.soap.SOAPException;
 import jakarta.xml.soap.SOAPFault;
@@ -16,6 +18,7 @@ import jakarta.xml.soap.SOAPMessage;
 import jakarta.xml.soap.MimeHeaders;
 import jakarta.xml.soap.SOAPEnvelope;
 
+import jakarta.xml.ws.WebServiceException;
 import jakarta.xml.ws.soap.SOAPFaultException;
 
 import java.time.Instant;
@@ -46,7 +49,7 @@ import java.security.GeneralSecurityException;
  * 
  * 
  * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
- * @version 2025.01.04
+ * @version 2025.02.17
  * @since 1.0
  * 
  *   
@@ -86,11 +89,52 @@ public abstract class AbstractSvc<P,Q> implements Service<P,Q> {
      */
     public static final String DIGSN_PREFIX = "ds";
     
+    /**
+     * Status code SAT uses for internal errors, usually when overloaded = "5006".
+     */
+    public static final String INTERNAL_ERROR_STS_CODE = "5006";
+    
     
     /**
      * Context to use to create messages
      */
     private SvcMessageFactory context;
+    
+    /**
+     * Limiter of calls in flight to this service's location, may be null
+     */
+    private volatile ConcurrencyLimiter _limiter;
+    
+    /**
+     * Policy to retry failed calls, may be null
+     */
+    private volatile RetryPolicy _retryPolicy;
+    
+    /**
+     * Circuit breaker of this service's location, may be null
+     */
+    private volatile CircuitBreaker _breaker;
+    
+    /**
+     * Transport used instead of the connection, may be null
+     */
+    private volatile SoapTransport _transport;
+    
+    /**
+     * Capture of the exchanges of this service, may be null
+     */
+    private volatile WireCapture _capture;
+    
+    /**
+     * Template of the messages of this service with the message factory it
+     * was created with, null until created
+     */
+    private volatile TemplateHolder _template;
+    
+    /**
+     * True to create messages as copies of the template
+     */
+    private volatile boolean _templateEnabled;
        
     /**
      * Creates an <code>AbstractSvc</code> with the specified context.
@@ -114,6 +158,149 @@ public abstract class AbstractSvc<P,Q> implements Service<P,Q> {
         return context;
     }
     
+    /**
+     * Returns the concurrency limiter of this service, or null if there is none.
+     * 
+     * @return the concurrency limiter of this service, or null
+     */
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return _limiter;
+    }
+    
+    /**
+     * Sets the concurrency limiter that will limit the calls in flight to
+     * this service's location.
+     * 
+     * @param limiter the limiter to use, null to call without limits
+     */
+    public void setConcurrencyLimiter(ConcurrencyLimiter limiter) {
+        this._limiter = limiter;
+    }
+    
+    /**
+     * Returns the retry policy of this service, or null if there is none.
+     * 
+     * @return the retry policy of this service, or null
+     */
+    public RetryPolicy getRetryPolicy() {
+        return _retryPolicy;
+    }
+    
+    /**
+     * Sets the policy to retry failed calls to this service; it is only used
+     * if this service is idempotent.
+     * 
+     * @param policy the policy to use, null to call without retries
+     */
+    public void setRetryPolicy(RetryPolicy policy) {
+        this._retryPolicy = policy;
+    }
+    
+    /**
+     * Returns the circuit breaker of this service, or null if there is none.
+     * 
+     * @return the circuit breaker of this service, or null
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return _breaker;
+    }
+    
+    /**
+     * Sets the circuit breaker that will reject calls to this service's
+     * location while it is failing.
+     * 
+     * @param breaker the circuit breaker to use, null to always call
+     */
+    public void setCircuitBreaker(CircuitBreaker breaker) {
+        this._breaker = breaker;
+    }
+    
+    /**
+     * Returns the transport of this service, or null if it calls the web
+     * service through the <code>SOAPConnection</code>.
+     * 
+     * @return the transport of this service, or null
+     */
+    public SoapTransport getTransport() {
+        return _transport;
+    }
+    
+    /**
+     * Sets the transport used to call the web service instead of the
+     * <code>SOAPConnection</code> received.
+     * 
+     * @param transport the transport to use, null to use the connection
+     */
+    public void setTransport(SoapTransport transport) {
+        this._transport = transport;
+    }
+    
+    /**
+     * Returns the capture of the exchanges of this service, or null if there
+     * is none.
+     * 
+     * @return the capture of the exchanges of this service, or null
+     */
+    public WireCapture getWireCapture() {
+        return _capture;
+    }
+    
+    /**
+     * Sets the capture that will keep the last exchanges of this service,
+     * a lighter alternative to logging every message at TRACE level.
+     * 
+     * @param capture the capture to use, null to not capture exchanges
+     */
+    public void setWireCapture(WireCapture capture) {
+        this._capture = capture;
+    }
+    
+    /**
+     * Returns true if the messages of this service are created as copies of
+     * its template.
+     * 
+     * @return true if messages are created as copies of the template
+     */
+    public boolean isTemplateEnabled() {
+        return _templateEnabled;
+    }
+    
+    /**
+     * Sets whether the messages of this service are created as copies of its
+     * template, see {@link AbstractSvc#getTemplate()}, instead of being built
+     * from scratch. Disabled by default.
+     * 
+     * @param templateEnabled true to create messages as copies of the template
+     */
+    public void setTemplateEnabled(boolean templateEnabled) {
+        this._templateEnabled = templateEnabled;
+    }
+    
+    /**
+     * Returns the template of the messages of this service, creating it with
+     * <code>newTemplate()</code> the first time; or null if this service builds
+     * each message from scratch.
+     * <p>If the message factory of this service's context changed since the
+     * template was created, a new template is created with it.</p>
+     * 
+     * @return the template of the messages of this service, or null
+     * @throws SOAPException if there were SOAP related problems creating the template
+     */
+    public EnvelopeTemplate getTemplate() throws SOAPException {
+        MessageFactory factory = getContext().getMessageFactory();
+        TemplateHolder holder = _template;
+        if (holder == null || holder.factory != factory) {
+            synchronized (this) {
+                holder = _template;
+                if (holder == null || holder.factory != factory) {
+                    holder = new TemplateHolder(factory, newTemplate());
+                    _template = holder;
+                }
+            }
+        }
+        return holder.template;
+    }
+    
     ////////////////////////////////////////////////////////////////////////////
     
     /**
@@ -179,6 +366,14 @@ public abstract class AbstractSvc<P,Q> implements Service<P,Q> {
      * <p>If the <code>SOAPMessage</code> that this service receives is a
      * <code>SOAPFault</code> a {@link jakarta.xml.ws.soap.SOAPFaultException SOAPFaultException}
      * should be thrown unless stated otherwise by subclass.</p>
+     * <p>If this service has a {@link RetryPolicy} and its calls are idempotent,
+     * failed calls are repeated as the policy allows, creating a new message
+     * for each attempt.</p>
+     * <p>If this service has a {@link WireCapture}, each message sent and
+     * received is recorded in it.</p>
+     * <p>If this service has a {@link CircuitBreaker} and the circuit of its
+     * location is open, the call fails fast with a {@link CircuitOpenException}
+     * and is not retried.</p>
      * 
      * @param conn connection to use to connect to WS
      * @param creds credentials to use to sign <code>SOAPMessage</code>
@@ -191,6 +386,7 @@ public abstract class AbstractSvc<P,Q> implements Service<P,Q> {
      * @throws SOAPFaultException if message received was a <code>SOAPFault</code>
      * @throws SvcParseException if there were problems while parsing message received from WS
      * @throws SvcSignatureException if there were signature related problems
+     * @throws CircuitOpenException if the circuit of this service's location is open
      */
     @Override
     public P callTheService(SOAPConnection conn, Credentials creds, Q request, String token) throws SOAPException {
@@ -201,21 +397,181 @@ public abstract class AbstractSvc<P,Q> implements Service<P,Q> {
             LOG.log(Level.DEBUG, "Calling DMT service ({0}) for ({1}), request ({2})",
                     getServiceName(), creds.getRfc(), request);
         }
-       
-        SOAPMessage received = callService(
-            conn, createMessageToSend(creds, request, token)
-        );
-                
-        LOG.log(Level.TRACE, ()->{return logMessage(received);});
-        
-        Instant instant = getContext().instant();
-                
-        checkFault(received);
-        
-        P result = parseReceivedMessage(received, instant, request);
-        LOG.log(Level.DEBUG, "DMT service response ({0})", result);
-        
-        return result;
+        RetryPolicy policy = getRetryPolicy();
+        if (policy == null || !isIdempotent()) {
+            return exchange(conn, creds, request, token);
+        }
+        return policy.execute(getServiceName(), ()->exchange(conn, creds, request, token));
+    }
+    
+    /**
+     * Creates, sends and parses a single message to this service; used by
+     * <code>callTheService</code> for each attempt.
+     * 
+     * @param conn connection to use to connect to WS
+     * @param creds credentials to use to sign <code>SOAPMessage</code>
+     * @param request a request of type Q
+     * @param token a token which could be null or blank in some services.
+     * @return a response of type P
+     * @throws SOAPException if there were SOAP related problems
+     * @throws SOAPFaultException if message received was a <code>SOAPFault</code>
+     * @throws SvcParseException if there were problems while parsing message received from WS
+     * @throws SvcSignatureException if there were signature related problems
+     */
+    protected P exchange(SOAPConnection conn, Credentials creds, Q request, String token) throws SOAPException {
+        CircuitBreaker.Permit circuit = acquireCircuit();
+        ConcurrencyLimiter.Permit permit = null;
+        try {
+            SOAPMessage toSend = createMessageToSend(creds, request, token);
+            permit = acquirePermit();
+            
+            SOAPMessage received;
+            try {
+                received = callService(conn, toSend);
+            }
+            catch (SOAPException | RuntimeException e) {
+                capture(toSend, null, e);
+                throw e;
+            }
+            capture(toSend, received, null);
+
+            LOG.log(Level.TRACE, ()->{return logMessage(received);});
+
+            Instant instant = getContext().instant();
+
+            checkFault(received);
+
+            P result = parseReceivedMessage(received, instant, request);
+            LOG.log(Level.DEBUG, "DMT service response ({0})", result);
+            
+            boolean overloaded = isOverloaded(result);
+            if (permit != null) {
+                if (overloaded) {
+                    permit.dropped();
+                }
+                else {
+                    permit.success(!isLatencySizeDependent());
+                }
+            }
+            if (circuit != null) {
+                if (overloaded) {
+                    circuit.failure();
+                }
+                else {
+                    circuit.success();
+                }
+            }
+            return result;
+        }
+        catch (SOAPFaultException e) {
+            if (permit != null) {
+                permit.dropped();
+            }
+            if (circuit != null) {
+                circuit.success(); //the location answered
+            }
+            throw e;
+        }
+        catch (SOAPException e) { //network problems and timeouts
+            if (permit != null) {
+                permit.dropped();
+            }
+            if (circuit != null) {
+                circuit.failure();
+            }
+            throw e;
+        }
+        finally {
+            if (permit != null) {
+                permit.ignore(); //does nothing if already completed
+            }
+            if (circuit != null) {
+                circuit.ignore();
+            }
+        }
+    }
+    
+    /**
+     * Returns true if calling this service several times with the same request
+     * has the same effect as calling it once, so failed calls can be retried.
+     * This implementation returns false.
+     * 
+     * @return true if calls to this service are idempotent
+     */
+    public boolean isIdempotent() {
+        return false;
+    }
+    
+    /**
+     * Returns true if the latency of calls to this service depends on the
+     * size of the response, so it is not compared by the concurrency limiter.
+     * This implementation returns false.
+     * 
+     * @return true if the latency of calls depends on the size of the response
+     */
+    public boolean isLatencySizeDependent() {
+        return false;
+    }
+    
+    /**
+     * Returns a permit of this service's concurrency limiter to call its
+     * location, or null if there is no limiter.
+     * 
+     * @return a permit to call this service's location, or null
+     * @throws WebServiceException if interrupted while waiting for the permit
+     */
+    protected ConcurrencyLimiter.Permit acquirePermit() {
+        ConcurrencyLimiter limiter = getConcurrencyLimiter();
+        if (limiter == null) {
+            return null;
+        }
+        try {
+            return limiter.acquire(getLocation());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebServiceException("interrupted while waiting to call "+getLocation(), e);
+        }
+    }
+    
+    /**
+     * Returns a permit of this service's circuit breaker to call its
+     * location, or null if there is no circuit breaker.
+     * 
+     * @return a permit to call this service's location, or null
+     * @throws CircuitOpenException if the circuit of this service's location is open
+     */
+    protected CircuitBreaker.Permit acquireCircuit() {
+        CircuitBreaker breaker = getCircuitBreaker();
+        return (breaker == null ? null : breaker.acquire(getLocation()));
+    }
+    
+    /**
+     * Returns true if the specified response means the web service is
+     * overloaded, that is a <code>SatResponse</code> with status code
+     * {@link AbstractSvc#INTERNAL_ERROR_STS_CODE}.
+     * 
+     * @param response the response to check
+     * @return true if the specified response means the web service is overloaded
+     */
+    protected boolean isOverloaded(P response) {
+        return (response instanceof SatResponse sat
+                && INTERNAL_ERROR_STS_CODE.equals(sat.getStatusCode()));
+    }
+
+    /**
+     * Records the specified exchange in this service's {@link WireCapture},
+     * if it has one.
+     * 
+     * @param request message sent
+     * @param response message received, null if none was received
+     * @param error exception thrown calling the web service, null if none
+     */
+    protected void capture(SOAPMessage request, SOAPMessage response, Exception error) {
+        WireCapture capture = getWireCapture();
+        if (capture != null) {
+            capture.record(getServiceName(), request, response, error);
+        }
     }
 
     /**
@@ -240,6 +596,9 @@ public abstract class AbstractSvc<P,Q> implements Service<P,Q> {
      * <p>This method creates a new <code>SOAPMessage</code>, adds the namespaces
      * required; fills ands signs the message with the parameters received; sets
      * the headers and returns the message ready to be sent.</p>
+     * <p>If templates are {@link AbstractSvc#setTemplateEnabled(boolean) enabled}
+     * and this service has an {@link EnvelopeTemplate} the new message is a
+     * copy of it, that already has the namespaces and skeleton required.</p>
      * 
      * @param credentials credentials to be used to sign message
      * @param request with the content to be added to the request
@@ -251,8 +610,15 @@ public abstract class AbstractSvc<P,Q> implements Service<P,Q> {
      * @throws SvcSignatureException if there were signature related problems
      */
     public SOAPMessage createMessageToSend(Credentials credentials, Q request, String token) throws SOAPException {
-        SOAPMessage message = newMessage();
-        addNamespaces(message.getSOAPPart().getEnvelope());
+        EnvelopeTemplate template = (isTemplateEnabled() ? getTemplate() : null);
+        SOAPMessage message;
+        if (template == null) {
+            message = newMessage();
+            addNamespaces(message.getSOAPPart().getEnvelope());
+        }
+        else {
+            message = template.newMessage();
+        }
         fillAndSign(message, credentials, request);
         setHeaders(message.getMimeHeaders(), token);
         message.saveChanges();
@@ -264,14 +630,20 @@ public abstract class AbstractSvc<P,Q> implements Service<P,Q> {
      * request. Returns the <code>SOAPMessage</code> received from the connection.
      * <p>The location to send the message to will be obtained from this service's
      * <code>getLocation()</code> method.</p>
+     * <p>If this service has a {@link SoapTransport} it is used instead of
+     * the connection.</p>
      * 
      * @param connection the connection to use
      * @param request the request to send
      * @return the message received from the connection's call to the WS
      * @throws SOAPException if there was a SOAP error
-     * @throws NullPointerException if connection is null
+     * @throws NullPointerException if connection is null and there is no transport
      */
     public SOAPMessage callService(SOAPConnection connection, SOAPMessage request) throws SOAPException {
+        SoapTransport transport = getTransport();
+        if (transport != null) {
+            return transport.call(request, getLocation());
+        }
         return connection.call(request, getLocation());
     }
 
@@ -308,6 +680,19 @@ public abstract class AbstractSvc<P,Q> implements Service<P,Q> {
         return getContext().getMessageFactory().createMessage();
     }
     
+    /**
+     * Returns a new template of the messages of this service, or null if this
+     * service builds each message from scratch. Called by <code>getTemplate()</code>
+     * once per message factory.
+     * <p>This implementation returns null.</p>
+     * 
+     * @return a new template of the messages of this service, or null
+     * @throws SOAPException if there were SOAP related problems
+     */
+    protected EnvelopeTemplate newTemplate() throws SOAPException {
+        return null;
+    }
+    
     /**
      * Adds the namespaces this service requires to create message to sign and
      * send to web service.
@@ -369,4 +754,17 @@ public abstract class AbstractSvc<P,Q> implements Service<P,Q> {
 
     ///////////////////////////////////////////////////////////////////////////
 
+    /**
+     * Template of this service and the message factory it was created with;
+     * the template is null if this service builds messages from scratch.
+     */
+    private static final class TemplateHolder {
+        private final MessageFactory factory;
+        private final EnvelopeTemplate template;
+
+        private TemplateHolder(MessageFactory factory, EnvelopeTemplate template) {
+            this.factory = factory;
+            this.template = template;
+        }
+    }
 }
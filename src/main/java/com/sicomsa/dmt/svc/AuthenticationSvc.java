@@ -12,6 +12,7 @@ import com.sicomsa.dmt.SvcSignatureException;
 import com.sicomsa.dmt.util.SOAPUtils;
 import com.sicomsa.dmt.util.SvcParseException;
 
+import jakarta.xml.soap.SOAPConnection;
 import jakarta.xml.soap.SOAPElement;
 import jakarta.xml.soap.SOAPException;
 import jakarta.xml.soap.SOAPEnvelope;
@@ -19,7 +20,6 @@ import jakarta.xml.soap.SOAPMessage;
 import java.security.GeneralSecurityException;
 import java.time.Instant;
 
-import java.util.UUID;
 import javax.xml.crypto.dsig.XMLSignature;
 import javax.xml.namespace.QName;
 
@@ -35,10 +35,14 @@ import java.lang.System.Logger.Level;
  * sign it in order to request an authorization token. And parse the response
  * to provide an {@link com.sicomsa.dmt.Authorization} which provides methods to
  * wrap the token and determine its validity.</p>
+ * <p>If this service has a {@link ClockSkewEstimator}, each authentication
+ * is a sample of the skew between the local clock and SAT's clock. The id of
+ * the binary security token comes from an {@link IdGenerator}, by default a
+ * {@link SecureIdGenerator}.</p>
  * 
  *
  * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
- * @version 2025.01.04  
+ * @version 2025.02.19
  * @since 1.0
  * 
  * 
@@ -70,6 +74,16 @@ public class AuthenticationSvc extends AbstractSvc<Authorization,Object> {
      */
     protected String timestampUri = "TS"; 
     
+    /**
+     * Estimator fed with the instants of each authentication, may be null
+     */
+    private volatile ClockSkewEstimator _skewEstimator;
+    
+    /**
+     * Generator of the ids of the binary security tokens
+     */
+    private volatile IdGenerator _idGenerator = new SecureIdGenerator();
+    
     
     private static final System.Logger LOG = System.getLogger(AuthenticationSvc.class.getName());
     
@@ -99,6 +113,71 @@ public class AuthenticationSvc extends AbstractSvc<Authorization,Object> {
     
     ////////////////////////////////////////////////////////////////////////////
     
+    /**
+     * Returns the clock skew estimator fed by this service, or null.
+     * 
+     * @return the clock skew estimator of this service, or null
+     */
+    public ClockSkewEstimator getClockSkewEstimator() {
+        return _skewEstimator;
+    }
+    
+    /**
+     * Sets the estimator fed with the local instants each authentication
+     * is sent and received, and the instant SAT created the token.
+     * 
+     * @param estimator the estimator to feed, null to take no samples
+     */
+    public void setClockSkewEstimator(ClockSkewEstimator estimator) {
+        this._skewEstimator = estimator;
+    }
+    
+    /**
+     * Returns the generator of the ids of the binary security tokens.
+     * 
+     * @return the generator of the ids of the binary security tokens
+     */
+    public IdGenerator getIdGenerator() {
+        return _idGenerator;
+    }
+    
+    /**
+     * Sets the generator of the ids of the binary security tokens.
+     * 
+     * @param generator the generator to use
+     * @throws IllegalArgumentException if generator is null
+     */
+    public void setIdGenerator(IdGenerator generator) {
+        if (generator == null) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        this._idGenerator = generator;
+    }
+    
+    /**
+     * Authenticates as {@link AbstractSvc#exchange(jakarta.xml.soap.SOAPConnection, com.sicomsa.dmt.Credentials, java.lang.Object, java.lang.String) AbstractSvc}
+     * does; if this service has a {@link ClockSkewEstimator}, the exchange is
+     * added to it as a sample.
+     * 
+     * @param conn connection to use to connect to WS
+     * @param creds credentials to use to sign <code>SOAPMessage</code>
+     * @param request additional data, can be null
+     * @param token not used
+     * @return the <code>Authorization</code> received
+     * @throws SOAPException if there were SOAP related problems
+     */
+    @Override
+    protected Authorization exchange(SOAPConnection conn, Credentials creds, Object request, String token) throws SOAPException {
+        ClockSkewEstimator estimator = getClockSkewEstimator();
+        if (estimator == null) {
+            return super.exchange(conn, creds, request, token);
+        }
+        Instant sent = estimator.localInstant();
+        Authorization authorization = super.exchange(conn, creds, request, token);
+        estimator.addSample(sent, estimator.localInstant(), authorization.getCreated());
+        return authorization;
+    }
+    
     /**
      * Returns the name of this service.
      * "AutenticaSvc"
@@ -118,6 +197,15 @@ public class AuthenticationSvc extends AbstractSvc<Authorization,Object> {
     @Override public String getLocation() {
         return "https://cfdidescargamasivasolicitud.clouda.sat.gob.mx/Autenticacion/Autenticacion.svc";
     }
+    /**
+     * Returns true, each call just returns a new token.
+     * 
+     * @return true
+     */
+    @Override public boolean isIdempotent() {
+        return true;
+    }
+    
     /**
      * Returns the SOAP action of this service.
      * "http://DescargaMasivaTerceros.gob.mx/IAutenticacion/Autentica";
@@ -162,12 +250,14 @@ public class AuthenticationSvc extends AbstractSvc<Authorization,Object> {
     }
     
     /**
-     * Returns a random UUID
+     * Returns a new id for the binary security token, a random UUID with
+     * the default generator.
      * 
-     * @return a random UUID
+     * @return a new id for the binary security token
+     * @see AuthenticationSvc#setIdGenerator(com.sicomsa.dmt.svc.IdGenerator)
      */
     protected String createSecurityTokenUUID() {
-        return UUID.randomUUID().toString();
+        return getIdGenerator().newId();
     }
     
     /**
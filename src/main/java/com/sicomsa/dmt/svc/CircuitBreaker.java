@@ -0,0 +1,448 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import java.lang.System.Logger.Level;
+
+/**
+ * <code>CircuitBreaker</code> stops calling a web service location that is
+ * failing, so callers fail fast instead of waiting a full timeout on each call.
+ * <p>Each location has its own circuit, which starts <code>CLOSED</code> and
+ * records the outcome of its last <code>windowSize</code> calls. When at least
+ * <code>minimumCalls</code> were recorded and the rate of failures reaches
+ * <code>failureRateThreshold</code> the circuit opens: every call is rejected
+ * with a {@link CircuitOpenException} during <code>openDuration</code>. After
+ * that the circuit is <code>HALF_OPEN</code> and lets a single probe call
+ * through; if it succeeds the circuit closes, otherwise it opens again.</p>
+ * <p>Callers {@link CircuitBreaker#acquire(java.lang.String) acquire} a
+ * {@link CircuitBreaker.Permit} before calling the service and must complete
+ * it once with the outcome of the call.</p>
+ * <p>This class is thread safe; a single instance is meant to be shared by
+ * all services, see {@link DownloadService#setCircuitBreaker(com.sicomsa.dmt.svc.CircuitBreaker)}.</p>
+ *
+ * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
+ * @version 2025.02.13
+ * @since 1.0
+ *
+ */
+public class CircuitBreaker {
+
+    private static final System.Logger LOG = System.getLogger(CircuitBreaker.class.getName());
+
+    /**
+     * Default rate of failures that opens a circuit = 0.5.
+     */
+    public static final double DEFAULT_FAILURE_RATE_THRESHOLD = 0.5;
+
+    /**
+     * Default number of calls recorded by each circuit = 20.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 20;
+
+    /**
+     * Default minimum calls recorded before a circuit can open = 5.
+     */
+    public static final int DEFAULT_MINIMUM_CALLS = 5;
+
+    /**
+     * Default time a circuit stays open before probing = 30 seconds.
+     */
+    public static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(30);
+
+    /**
+     * States of a circuit.
+     */
+    public enum State {
+        /**
+         * Calls go through and their outcomes are recorded
+         */
+        CLOSED,
+        /**
+         * Calls are rejected
+         */
+        OPEN,
+        /**
+         * A single probe call goes through
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * Rate of failures that opens a circuit
+     */
+    protected final double failureRateThreshold;
+
+    /**
+     * Number of calls recorded by each circuit
+     */
+    protected final int windowSize;
+
+    /**
+     * Minimum calls recorded before a circuit can open
+     */
+    protected final int minimumCalls;
+
+    /**
+     * Time a circuit stays open before probing, in nanoseconds
+     */
+    protected final long openNanos;
+
+    /**
+     * Circuits mapped by location
+     */
+    private final Map<String,Circuit> circuits = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new <code>CircuitBreaker</code> with default parameters.
+     */
+    public CircuitBreaker() {
+        this(DEFAULT_FAILURE_RATE_THRESHOLD, DEFAULT_WINDOW_SIZE, DEFAULT_MINIMUM_CALLS, DEFAULT_OPEN_DURATION);
+    }
+
+    /**
+     * Creates a new <code>CircuitBreaker</code> with the specified parameters.
+     *
+     * @param failureRateThreshold rate of failures that opens a circuit,
+     *        greater than 0 and up to 1
+     * @param windowSize number of calls recorded by each circuit
+     * @param minimumCalls minimum calls recorded before a circuit can open
+     * @param openDuration time a circuit stays open before probing
+     * @throws IllegalArgumentException if failureRateThreshold is out of range,
+     *         if minimumCalls is less than one or greater than windowSize, or
+     *         if openDuration is null or negative
+     */
+    public CircuitBreaker(double failureRateThreshold, int windowSize, int minimumCalls, Duration openDuration) {
+        if (!(failureRateThreshold > 0 && failureRateThreshold <= 1)
+                || minimumCalls < 1 || windowSize < minimumCalls
+                || openDuration == null || openDuration.isNegative()) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        this.failureRateThreshold = failureRateThreshold;
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.openNanos = openDuration.toNanos();
+    }
+
+    /**
+     * Returns a permit to call the specified location.
+     *
+     * @param location location to call
+     * @return a permit that must be completed after the call
+     * @throws IllegalArgumentException if location is null
+     * @throws CircuitOpenException if the circuit of the location is open, or
+     *         if it is half open and its probe call is in flight
+     */
+    public Permit acquire(String location) {
+        return getCircuit(location).acquire();
+    }
+
+    /**
+     * Returns the current state of the circuit of the specified location.
+     *
+     * @param location the location
+     * @return the state of the circuit of the location
+     * @throws IllegalArgumentException if location is null
+     */
+    public State getState(String location) {
+        return getCircuit(location).getState();
+    }
+
+    /**
+     * Returns a sorted map with the current state of every location called.
+     *
+     * @return a map with the current state of every location
+     */
+    public Map<String,State> getStates() {
+        TreeMap<String,State> map = new TreeMap<>();
+        circuits.forEach((location, circuit)->map.put(location, circuit.getState()));
+        return map;
+    }
+
+    /**
+     * Returns the number of calls to the specified location that were
+     * rejected because its circuit was open.
+     *
+     * @param location the location
+     * @return the number of calls rejected
+     * @throws IllegalArgumentException if location is null
+     */
+    public long getRejectedCount(String location) {
+        return getCircuit(location).getRejected();
+    }
+
+    /**
+     * Returns the number of times the circuit of the specified location opened.
+     *
+     * @param location the location
+     * @return the number of times the circuit opened
+     * @throws IllegalArgumentException if location is null
+     */
+    public long getOpenedCount(String location) {
+        return getCircuit(location).getOpened();
+    }
+
+    /**
+     * Closes the circuit of the specified location, forgetting its recorded calls.
+     *
+     * @param location the location
+     * @throws IllegalArgumentException if location is null
+     */
+    public void reset(String location) {
+        getCircuit(location).reset();
+    }
+
+    /**
+     * Returns a string representation of this circuit breaker.
+     *
+     * @return a string representation of this circuit breaker
+     */
+    @Override public String toString() {
+        return new StringBuilder("CircuitBreaker{")
+                .append("states=").append(getStates())
+                .append("}").toString();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Returns the circuit of the specified location, creating it if needed.
+     *
+     * @param location the location
+     * @return the circuit of the location
+     * @throws IllegalArgumentException if location is null
+     */
+    protected Circuit getCircuit(String location) {
+        if (location == null) {
+            throw new IllegalArgumentException("invalid location");
+        }
+        return circuits.computeIfAbsent(location, Circuit::new);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Circuit of a single location.
+     */
+    protected class Circuit {
+
+        private final String location;
+        private final boolean[] window = new boolean[windowSize];
+        private int recorded;
+        private int next;
+        private int failures;
+        private State state = State.CLOSED;
+        private long openedAt;
+        private boolean probing;
+        private long rejected;
+        private long opened;
+
+        /**
+         * Creates a new circuit for the specified location.
+         *
+         * @param location the location
+         */
+        protected Circuit(String location) {
+            this.location = location;
+        }
+
+        /**
+         * Returns a new permit.
+         *
+         * @return a new permit
+         * @throws CircuitOpenException if calls are not allowed now
+         */
+        protected synchronized Permit acquire() {
+            if (getState() == State.OPEN) {
+                rejected++;
+                throw new CircuitOpenException(location);
+            }
+            if (state == State.HALF_OPEN) {
+                if (probing) {
+                    rejected++;
+                    throw new CircuitOpenException(location);
+                }
+                probing = true;
+                return new Permit(this, true);
+            }
+            return new Permit(this, false);
+        }
+
+        /**
+         * Returns the current state, moving from open to half open once the
+         * open duration elapsed.
+         *
+         * @return the current state
+         */
+        protected synchronized State getState() {
+            if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+                state = State.HALF_OPEN;
+                probing = false;
+                LOG.log(Level.DEBUG, "Circuit of {0} half open", location);
+            }
+            return state;
+        }
+
+        /**
+         * Returns the number of calls rejected.
+         *
+         * @return the number of calls rejected
+         */
+        protected synchronized long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * Returns the number of times this circuit opened.
+         *
+         * @return the number of times this circuit opened
+         */
+        protected synchronized long getOpened() {
+            return opened;
+        }
+
+        /**
+         * Closes this circuit and forgets its recorded calls.
+         */
+        protected synchronized void reset() {
+            state = State.CLOSED;
+            probing = false;
+            recorded = 0;
+            next = 0;
+            failures = 0;
+        }
+
+        /**
+         * Records the outcome of a call.
+         *
+         * @param probe true if the call was the probe of a half open circuit
+         * @param failed true if the call failed
+         * @param ignored true if the outcome should not be recorded
+         */
+        protected synchronized void complete(boolean probe, boolean failed, boolean ignored) {
+            if (probe) {
+                probing = false;
+                if (ignored) {
+                    return; //next call probes again
+                }
+                if (failed) {
+                    open();
+                }
+                else {
+                    reset();
+                    LOG.log(Level.DEBUG, "Circuit of {0} closed", location);
+                }
+                return;
+            }
+            if (ignored || state != State.CLOSED) {
+                return;
+            }
+            if (recorded == windowSize) {
+                if (window[next]) {
+                    failures--;
+                }
+            }
+            else {
+                recorded++;
+            }
+            window[next] = failed;
+            if (failed) {
+                failures++;
+            }
+            next = (next + 1) % windowSize;
+            if (recorded >= minimumCalls && failures >= failureRateThreshold * recorded) {
+                open();
+            }
+        }
+
+        private void open() {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            opened++;
+            recorded = 0;
+            next = 0;
+            failures = 0;
+            LOG.log(Level.DEBUG, "Circuit of {0} open", location);
+        }
+    }
+
+    /**
+     * Permit to make a call, must be completed once with
+     * <code>success</code>, <code>failure</code> or <code>ignore</code>.
+     */
+    public class Permit {
+
+        private final Circuit circuit;
+        private final boolean probe;
+        private boolean completed;
+
+        /**
+         * Creates a new permit of the specified circuit.
+         *
+         * @param circuit the circuit
+         * @param probe true if this is the probe of a half open circuit
+         */
+        protected Permit(Circuit circuit, boolean probe) {
+            this.circuit = circuit;
+            this.probe = probe;
+        }
+
+        /**
+         * Completes this permit after a call the location answered.
+         */
+        public void success() {
+            complete(false, false);
+        }
+
+        /**
+         * Completes this permit after a call that timed out, could not
+         * connect, or that the location rejected because of overload.
+         */
+        public void failure() {
+            complete(true, false);
+        }
+
+        /**
+         * Completes this permit without recording the call, when it failed
+         * for reasons not related to the location.
+         */
+        public void ignore() {
+            complete(false, true);
+        }
+
+        /**
+         * Returns true if this permit is the probe of a half open circuit.
+         *
+         * @return true if this permit is a probe
+         */
+        public boolean isProbe() {
+            return probe;
+        }
+
+        /**
+         * Returns true if this permit was completed.
+         *
+         * @return true if this permit was completed
+         */
+        public synchronized boolean isCompleted() {
+            return completed;
+        }
+
+        private void complete(boolean failed, boolean ignored) {
+            synchronized (this) {
+                if (completed) {
+                    return;
+                }
+                completed = true;
+            }
+            circuit.complete(probe, failed, ignored);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import jakarta.xml.ws.WebServiceException;
+
+/**
+ * Thrown when a call is rejected without being sent because the
+ * {@link CircuitBreaker} of its location is open.
+ * Note: this is a RuntimeException
+ * 
+ * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
+ * @version 2025.02.13
+ * @since 1.0
+ * 
+ */
+public class CircuitOpenException extends WebServiceException {
+    
+    private static final long serialVersionUID = 20250213L;
+    
+    /**
+     * Location whose circuit is open
+     */
+    private final String location;
+    
+    /**
+     * Constructs a new CircuitOpenException for the specified location.
+     * 
+     * @param location location whose circuit is open
+     */
+    public CircuitOpenException(String location) {
+        super("circuit open for location:"+location);
+        this.location = location;
+    }
+    
+    /**
+     * Returns the location whose circuit is open.
+     * 
+     * @return the location whose circuit is open
+     */
+    public String getLocation() {
+        return location;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.InstantSource;
+import java.util.concurrent.atomic.AtomicLong;
+
+import java.lang.System.Logger.Level;
+
+/**
+ * <code>ClockSkewEstimator</code> estimates how far the local clock is from
+ * the clock of SAT, and works as an <code>InstantSource</code> of SAT's time:
+ * the local instant corrected by the estimated skew.
+ * <p>Each sample is an exchange with the web service: the local instants the
+ * request was sent and the response received, and the instant SAT wrote in
+ * the response. The offset of a sample is SAT's instant minus the middle of
+ * the exchange, known within half its round trip. As in NTP, the estimate is
+ * the offset of the sample with the shortest round trip among the last
+ * {@link ClockSkewEstimator#WINDOW_SIZE} samples; it is zero until the first
+ * sample.</p>
+ * <p>Set as the instant source of a {@link DefaultMessageFactory}, token
+ * validity is checked and security timestamps are written in SAT's time;
+ * see {@link DownloadService#setClockSkewEstimator(com.sicomsa.dmt.svc.ClockSkewEstimator)}.
+ * Samples are taken from authentications, see {@link AuthenticationSvc#setClockSkewEstimator(com.sicomsa.dmt.svc.ClockSkewEstimator)}.</p>
+ * <p>This class is thread safe, <code>instant</code> does not lock.</p>
+ *
+ * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
+ * @version 2025.02.19
+ * @since 1.0
+ *
+ */
+public class ClockSkewEstimator implements InstantSource {
+
+    private static final System.Logger LOG = System.getLogger(ClockSkewEstimator.class.getName());
+
+    /**
+     * Number of samples kept = 16.
+     */
+    public static final int WINDOW_SIZE = 16;
+
+    /**
+     * Local instant source
+     */
+    protected final InstantSource local;
+
+    private final long[] offsets = new long[WINDOW_SIZE];
+    private final long[] roundTrips = new long[WINDOW_SIZE];
+    private int samples;
+    private int next;
+    private volatile long skewNanos;
+    private volatile long roundTripNanos;
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * Creates a new <code>ClockSkewEstimator</code> of the system UTC clock.
+     */
+    public ClockSkewEstimator() {
+        this(Clock.systemUTC());
+    }
+
+    /**
+     * Creates a new <code>ClockSkewEstimator</code> of the specified local
+     * instant source.
+     *
+     * @param local the local instant source
+     * @throws IllegalArgumentException if local is null
+     */
+    public ClockSkewEstimator(InstantSource local) {
+        if (local == null) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        this.local = local;
+    }
+
+    /**
+     * Returns the current instant in SAT's time: the local instant plus the
+     * estimated skew.
+     *
+     * @return the current instant in SAT's time
+     */
+    @Override public Instant instant() {
+        return local.instant().plusNanos(skewNanos);
+    }
+
+    /**
+     * Returns the current local instant, without correction.
+     *
+     * @return the current local instant
+     */
+    public Instant localInstant() {
+        return local.instant();
+    }
+
+    /**
+     * Adds a sample of an exchange with the web service.
+     *
+     * @param sent local instant the request was sent
+     * @param received local instant the response was received
+     * @param remote instant SAT wrote in the response
+     * @return true if the sample was added; false if an instant is null or
+     *         if received is before sent
+     */
+    public boolean addSample(Instant sent, Instant received, Instant remote) {
+        if (sent == null || received == null || remote == null || received.isBefore(sent)) {
+            return false;
+        }
+        long roundTrip = Duration.between(sent, received).toNanos();
+        long offset = Duration.between(sent.plusNanos(roundTrip / 2), remote).toNanos();
+        synchronized (this) {
+            offsets[next] = offset;
+            roundTrips[next] = roundTrip;
+            next = (next + 1) % WINDOW_SIZE;
+            if (samples < WINDOW_SIZE) {
+                samples++;
+            }
+            int best = 0;
+            for (int idx = 1; idx < samples; idx++) {
+                if (roundTrips[idx] < roundTrips[best]) {
+                    best = idx;
+                }
+            }
+            if (skewNanos != offsets[best]) {
+                LOG.log(Level.DEBUG, "Clock skew with SAT estimated in {0} ms (+/- {1} ms)",
+                        offsets[best] / 1_000_000, roundTrips[best] / 2_000_000);
+            }
+            skewNanos = offsets[best];
+            roundTripNanos = roundTrips[best];
+        }
+        count.incrementAndGet();
+        return true;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    /// Metrics
+
+    /**
+     * Returns the estimated skew: how far SAT's clock is ahead of the local
+     * clock, negative if it is behind.
+     *
+     * @return the estimated skew
+     */
+    public Duration getSkew() {
+        return Duration.ofNanos(skewNanos);
+    }
+
+    /**
+     * Returns the uncertainty of the estimated skew, half the round trip of
+     * the sample it was taken from.
+     *
+     * @return the uncertainty of the estimated skew
+     */
+    public Duration getUncertainty() {
+        return Duration.ofNanos(roundTripNanos / 2);
+    }
+
+    /**
+     * Returns the number of samples added.
+     *
+     * @return the number of samples added
+     */
+    public long getSampleCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns a string representation of this estimator.
+     *
+     * @return a string representation of this estimator
+     */
+    @Override public String toString() {
+        return new StringBuilder("ClockSkewEstimator{")
+                .append("skew=").append(getSkew())
+                .append(",uncertainty=").append(getUncertainty())
+                .append(",samples=").append(getSampleCount())
+                .append("}").toString();
+    }
+}
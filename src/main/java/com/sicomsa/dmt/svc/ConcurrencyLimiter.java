@@ -0,0 +1,426 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import java.lang.System.Logger.Level;
+
+/**
+ * <code>ConcurrencyLimiter</code> limits the calls in flight to each web
+ * service location, adapting the limit to how the service responds (AIMD).
+ * <p>Each location starts with <code>initialLimit</code> calls allowed. The
+ * limit grows by one every time a full window of calls succeeds with a
+ * latency that stays within <code>tolerance</code> times the lowest latency
+ * observed, and it is multiplied by <code>backoffRatio</code> when a call
+ * times out, fails, or the web service answers it is overloaded; a latency
+ * above the tolerance also counts as a sign of congestion.</p>
+ * <p>The lowest latency is taken from the last two windows of
+ * {@link ConcurrencyLimiter#getLatencyWindow()} samples, so it follows the
+ * service if it becomes slower for good. The limit is decreased at most once
+ * per round trip: calls that started before the last decrease do not decrease
+ * it again. Calls whose latency depends on the size of the response, like
+ * package downloads, are completed with <code>success(false)</code> and do
+ * not take part in the latency signal.</p>
+ * <p>Callers {@link ConcurrencyLimiter#acquire(java.lang.String) acquire} a
+ * {@link ConcurrencyLimiter.Permit} before calling the service, waiting while
+ * the location is at its limit, and must complete it once with the outcome of
+ * the call.</p>
+ * <p>This class is thread safe; a single instance is meant to be shared by
+ * all services, see {@link DownloadService#setConcurrencyLimiter(com.sicomsa.dmt.svc.ConcurrencyLimiter)}.</p>
+ *
+ * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
+ * @version 2025.02.11
+ * @since 1.0
+ *
+ */
+public class ConcurrencyLimiter {
+
+    private static final System.Logger LOG = System.getLogger(ConcurrencyLimiter.class.getName());
+
+    /**
+     * Default initial limit of each location = 4.
+     */
+    public static final int DEFAULT_INITIAL_LIMIT = 4;
+
+    /**
+     * Default maximum limit of each location = 32.
+     */
+    public static final int DEFAULT_MAX_LIMIT = 32;
+
+    /**
+     * Default ratio applied to the limit on congestion = 0.5.
+     */
+    public static final double DEFAULT_BACKOFF_RATIO = 0.5;
+
+    /**
+     * Default latency tolerance over the lowest latency observed = 2.0.
+     */
+    public static final double DEFAULT_TOLERANCE = 2.0;
+
+    /**
+     * Default number of latency samples of each window = 100.
+     */
+    public static final int DEFAULT_LATENCY_WINDOW = 100;
+
+    /**
+     * Initial limit of each location
+     */
+    protected final int initialLimit;
+
+    /**
+     * Maximum limit of each location
+     */
+    protected final int maxLimit;
+
+    /**
+     * Ratio applied to the limit on congestion
+     */
+    protected final double backoffRatio;
+
+    /**
+     * Latency tolerance over the lowest latency observed
+     */
+    protected final double tolerance;
+
+    /**
+     * Limits mapped by location
+     */
+    private final Map<String,Limit> limits = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new <code>ConcurrencyLimiter</code> with default parameters.
+     */
+    public ConcurrencyLimiter() {
+        this(DEFAULT_INITIAL_LIMIT, DEFAULT_MAX_LIMIT, DEFAULT_BACKOFF_RATIO, DEFAULT_TOLERANCE);
+    }
+
+    /**
+     * Creates a new <code>ConcurrencyLimiter</code> with the specified parameters.
+     *
+     * @param initialLimit initial limit of each location
+     * @param maxLimit maximum limit of each location
+     * @param backoffRatio ratio applied to the limit on congestion, between 0 and 1
+     * @param tolerance latency tolerance over the lowest latency, at least 1
+     * @throws IllegalArgumentException if initialLimit is less than one or
+     *         greater than maxLimit, or if backoffRatio or tolerance are
+     *         out of range
+     */
+    public ConcurrencyLimiter(int initialLimit, int maxLimit, double backoffRatio, double tolerance) {
+        if (initialLimit < 1 || maxLimit < initialLimit || !(backoffRatio > 0 && backoffRatio < 1)
+                || !(tolerance >= 1)) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        this.initialLimit = initialLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Returns a permit to call the specified location, waiting while the
+     * location has as many calls in flight as its limit.
+     *
+     * @param location location to call
+     * @return a permit that must be completed after the call
+     * @throws IllegalArgumentException if location is null
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Permit acquire(String location) throws InterruptedException {
+        return getLimit0(location).acquire(Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns a permit to call the specified location, waiting up to the
+     * specified timeout.
+     *
+     * @param location location to call
+     * @param timeout maximum time to wait
+     * @param unit unit of timeout
+     * @return a permit that must be completed after the call, or null if
+     *         the timeout elapsed
+     * @throws IllegalArgumentException if location is null
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Permit tryAcquire(String location, long timeout, TimeUnit unit) throws InterruptedException {
+        return getLimit0(location).acquire(unit.toNanos(timeout));
+    }
+
+    /**
+     * Returns the current limit of the specified location.
+     *
+     * @param location the location
+     * @return the current limit of the location
+     * @throws IllegalArgumentException if location is null
+     */
+    public int getLimit(String location) {
+        return getLimit0(location).getLimit();
+    }
+
+    /**
+     * Returns the calls in flight to the specified location.
+     *
+     * @param location the location
+     * @return the calls in flight to the location
+     * @throws IllegalArgumentException if location is null
+     */
+    public int getInFlight(String location) {
+        return getLimit0(location).getInFlight();
+    }
+
+    /**
+     * Returns a sorted map with the current limit of every location called.
+     *
+     * @return a map with the current limit of every location
+     */
+    public Map<String,Integer> getLimits() {
+        TreeMap<String,Integer> map = new TreeMap<>();
+        limits.forEach((location, limit)->map.put(location, limit.getLimit()));
+        return map;
+    }
+
+    /**
+     * Returns a string representation of this limiter.
+     *
+     * @return a string representation of this limiter
+     */
+    @Override public String toString() {
+        return new StringBuilder("ConcurrencyLimiter{")
+                .append("limits=").append(getLimits())
+                .append("}").toString();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Returns the number of latency samples of each window; the lowest latency
+     * is the lowest of the current and the previous window. This
+     * implementation returns {@link ConcurrencyLimiter#DEFAULT_LATENCY_WINDOW}.
+     *
+     * @return the number of latency samples of each window
+     */
+    protected int getLatencyWindow() {
+        return DEFAULT_LATENCY_WINDOW;
+    }
+
+    /**
+     * Returns the limit of the specified location, creating it if needed.
+     *
+     * @param location the location
+     * @return the limit of the location
+     * @throws IllegalArgumentException if location is null
+     */
+    protected Limit getLimit0(String location) {
+        if (location == null) {
+            throw new IllegalArgumentException("invalid location");
+        }
+        return limits.computeIfAbsent(location, Limit::new);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Adaptive limit of a single location.
+     */
+    protected class Limit {
+
+        private final String location;
+        private double limit = initialLimit;
+        private int inFlight;
+        private long minLatency = Long.MAX_VALUE; //lowest of the previous window
+        private long windowMin = Long.MAX_VALUE;  //lowest of the current window
+        private int samples;
+        private boolean decreased;
+        private long lastDecrease;
+
+        /**
+         * Creates a new limit for the specified location.
+         *
+         * @param location the location
+         */
+        protected Limit(String location) {
+            this.location = location;
+        }
+
+        /**
+         * Returns a new permit, waiting up to the specified nanoseconds.
+         *
+         * @param timeoutNanos maximum nanoseconds to wait
+         * @return a new permit or null if the timeout elapsed
+         * @throws InterruptedException if interrupted while waiting
+         */
+        protected synchronized Permit acquire(long timeoutNanos) throws InterruptedException {
+            long start = System.nanoTime();
+            long remaining = timeoutNanos;
+            while (inFlight >= getLimit()) {
+                if (remaining <= 0) {
+                    return null;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                remaining = timeoutNanos - (System.nanoTime() - start);
+            }
+            inFlight++;
+            return new Permit(this);
+        }
+
+        /**
+         * Returns the current limit, rounded down.
+         *
+         * @return the current limit
+         */
+        protected synchronized int getLimit() {
+            return (int)limit;
+        }
+
+        /**
+         * Returns the calls in flight.
+         *
+         * @return the calls in flight
+         */
+        protected synchronized int getInFlight() {
+            return inFlight;
+        }
+
+        /**
+         * Returns the lowest latency of the current and the previous window.
+         *
+         * @return the lowest latency in nanoseconds, or Long.MAX_VALUE if
+         *         there are no samples
+         */
+        protected synchronized long getMinLatency() {
+            return Math.min(minLatency, windowMin);
+        }
+
+        /**
+         * Completes a call with the specified outcome.
+         *
+         * @param start <code>System.nanoTime()</code> when the call started
+         * @param latency nanoseconds the call took
+         * @param dropped true if the call timed out, failed or was rejected
+         *        because of overload
+         * @param ignored true if the call should not change the limit
+         * @param timed false if the latency depends on the size of the
+         *        response and must not be compared
+         */
+        protected synchronized void complete(long start, long latency, boolean dropped,
+                boolean ignored, boolean timed) {
+            int used = inFlight--;
+            if (!ignored) {
+                boolean congested = dropped;
+                if (!dropped && timed) {
+                    sample(latency);
+                    congested = (latency > getMinLatency() * tolerance);
+                }
+                if (congested) {
+                    if (!decreased || start - lastDecrease >= 0) {
+                        double before = limit;
+                        limit = Math.max(1, limit * backoffRatio);
+                        decreased = true;
+                        lastDecrease = System.nanoTime();
+                        LOG.log(Level.DEBUG, "Concurrency limit of {0} decreased from {1} to {2}",
+                                location, (int)before, (int)limit);
+                    }
+                }
+                else if (used * 2 >= limit) {
+                    limit = Math.min(maxLimit, limit + 1 / limit);
+                }
+            }
+            notifyAll();
+        }
+
+        /**
+         * Adds a latency sample to the current window, starting a new window
+         * when it is full.
+         *
+         * @param latency nanoseconds a call took
+         */
+        private void sample(long latency) {
+            windowMin = Math.min(windowMin, latency);
+            if (++samples >= getLatencyWindow()) {
+                minLatency = windowMin;
+                windowMin = Long.MAX_VALUE;
+                samples = 0;
+            }
+        }
+    }
+
+    /**
+     * Permit to make a call, must be completed once with
+     * <code>success</code>, <code>dropped</code> or <code>ignore</code>.
+     */
+    public class Permit {
+
+        private final Limit limit;
+        private final long start = System.nanoTime();
+        private boolean completed;
+
+        /**
+         * Creates a new permit of the specified limit.
+         *
+         * @param limit the limit
+         */
+        protected Permit(Limit limit) {
+            this.limit = limit;
+        }
+
+        /**
+         * Completes this permit after a successful call, its latency may
+         * increase the limit.
+         */
+        public void success() {
+            success(true);
+        }
+
+        /**
+         * Completes this permit after a successful call.
+         *
+         * @param timed true if its latency is compared with the lowest one,
+         *        false if it depends on the size of the response, then only
+         *        the number of calls in flight is considered
+         */
+        public void success(boolean timed) {
+            complete(false, false, timed);
+        }
+
+        /**
+         * Completes this permit after a call that timed out, failed or that
+         * the service rejected because of overload, decreasing the limit.
+         */
+        public void dropped() {
+            complete(true, false, false);
+        }
+
+        /**
+         * Completes this permit without changing the limit, when the call
+         * failed for reasons not related to the service load.
+         */
+        public void ignore() {
+            complete(false, true, false);
+        }
+
+        /**
+         * Returns true if this permit was completed.
+         *
+         * @return true if this permit was completed
+         */
+        public synchronized boolean isCompleted() {
+            return completed;
+        }
+
+        private void complete(boolean dropped, boolean ignored, boolean timed) {
+            synchronized (this) {
+                if (completed) {
+                    return;
+                }
+                completed = true;
+            }
+            limit.complete(start, System.nanoTime() - start, dropped, ignored, timed);
+        }
+    }
+}
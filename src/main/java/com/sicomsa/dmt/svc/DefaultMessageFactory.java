@@ -6,6 +6,8 @@
 package com.sicomsa.dmt.svc;
 
 
+import com.sicomsa.dmt.util.SOAPFactories;
+
 import jakarta.xml.soap.MessageFactory;
 import jakarta.xml.soap.SOAPException;
 import java.time.InstantSource;
@@ -17,9 +19,11 @@ import java.time.Clock;
  * <p>Uses a <code>java.time.Clock.systemUTC()</code> to implement the InstantSource;
  * jakarta's MessageFactory to create messages; and an instance of SvcSignatureFactory
  * that implements several SOAP signature related methods needed to sign messages.</p>
+ * <p>The <code>MessageFactory</code> is the one shared by {@link SOAPFactories},
+ * it is looked up once and read without locking.</p>
  * 
  * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
- * @version 2024.11.10
+ * @version 2025.02.19
  * @since 1.0
  * 
  */
@@ -33,7 +37,7 @@ public class DefaultMessageFactory implements SvcMessageFactory {
     /**
      * MessageFactory to use
      */
-    protected MessageFactory messageFactory;
+    protected volatile MessageFactory messageFactory;
     
     /**
      * Signature factory
@@ -77,11 +81,13 @@ public class DefaultMessageFactory implements SvcMessageFactory {
         return getInstantSource().instant();
     }   
     
-    @Override public synchronized MessageFactory getMessageFactory() throws SOAPException {
-        if (messageFactory == null) {
-            messageFactory = MessageFactory.newInstance();
+    @Override public MessageFactory getMessageFactory() throws SOAPException {
+        MessageFactory factory = messageFactory;
+        if (factory == null) {
+            factory = SOAPFactories.getMessageFactory();
+            messageFactory = factory;
         }
-        return messageFactory;
+        return factory;
     }
     
     @Override public SvcSignatureFactory getSignatureFactory() {
@@ -6,13 +6,16 @@
 package com.sicomsa.dmt.svc;
 
 
+import com.sicomsa.dmt.Credentials;
 import com.sicomsa.dmt.DescargaResponse;
 import com.sicomsa.dmt.util.SOAPUtils;
 import com.sicomsa.dmt.util.SvcParseException;
 
+import jakarta.xml.soap.SOAPConnection;
 import jakarta.xml.soap.SOAPElement;
 import jakarta.xml.soap.SOAPMessage;
 import jakarta.xml.soap.SOAPException;
+import jakarta.xml.ws.WebServiceException;
 import java.time.Instant;
 import javax.xml.namespace.QName;
 
@@ -33,10 +36,14 @@ import javax.xml.namespace.QName;
  * <pre>
  *      byte[] decoded = java.util.Base64.getDecoder().decode(encodedPackage);
  * </pre>
+ * <p>If a {@link MemoryBudget} is set, each call reserves memory for the
+ * package before sending the request, and the reservation is released when
+ * the response is disposed with {@link com.sicomsa.dmt.DescargaResponse#dispose()}.
+ * Responses without a package release it immediately.</p>
  * 
  *  
  * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
- * @version 2025.01.04  
+ * @version 2025.02.18
  * @since 1.0
  * 
  */
@@ -79,6 +86,11 @@ public class DescargaSvc extends AbstractGenericSvc<DescargaResponse,String> {
      */
     public static final QName RFC = new QName("RfcSolicitante");
     
+    /**
+     * Budget of memory for downloaded packages, may be null
+     */
+    private volatile MemoryBudget _budget;
+    
     /**
      * Constructs a DescargaSvc with the specified context.
      * 
@@ -108,6 +120,91 @@ public class DescargaSvc extends AbstractGenericSvc<DescargaResponse,String> {
         return "https://cfdidescargamasiva.clouda.sat.gob.mx/DescargaMasivaService.svc";
     }
     
+    /**
+     * Returns the memory budget of this service, or null if there is none.
+     * 
+     * @return the memory budget of this service, or null
+     */
+    public MemoryBudget getMemoryBudget() {
+        return _budget;
+    }
+    
+    /**
+     * Sets the memory budget this service will reserve before each download.
+     * 
+     * @param budget the memory budget to use, null to download without one
+     */
+    public void setMemoryBudget(MemoryBudget budget) {
+        this._budget = budget;
+    }
+    
+    /**
+     * Downloads the specified package, reserving memory for it first if this
+     * service has a memory budget. In that case this method waits until
+     * there is enough budget available, and the response must be disposed
+     * to release it.
+     * 
+     * @param conn connection to use to connect to WS
+     * @param creds credentials to use to sign <code>SOAPMessage</code>
+     * @param packageId id of the package to download
+     * @param token token to identify with SAT
+     * @return the download response
+     * @throws SOAPException if there were SOAP related problems
+     * @throws IllegalArgumentException if connection or credentials are null
+     * @throws WebServiceException if interrupted while waiting for budget
+     */
+    @Override
+    public DescargaResponse callTheService(SOAPConnection conn, Credentials creds,
+            String packageId, String token) throws SOAPException {
+        
+        MemoryBudget budget = getMemoryBudget();
+        if (budget == null) {
+            return super.callTheService(conn, creds, packageId, token);
+        }
+        MemoryBudget.Reservation reservation;
+        try {
+            reservation = budget.reserve();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebServiceException("interrupted while waiting for memory budget", e);
+        }
+        DescargaResponse response = null;
+        try {
+            response = super.callTheService(conn, creds, packageId, token);
+            String encoded = response.getEncodedPackage();
+            if (encoded == null) {
+                return response;
+            }
+            reservation.resize(MemoryBudget.footprint(encoded.length()));
+            response = new BudgetedResponse(response, reservation);
+            return response;
+        }
+        finally {
+            if (!(response instanceof BudgetedResponse)) {
+                reservation.release();
+            }
+        }
+    }
+    
+    /**
+     * Returns true, a package can be downloaded again.
+     * 
+     * @return true
+     */
+    @Override public boolean isIdempotent() {
+        return true;
+    }
+    
+    /**
+     * Returns true, the time to download a package depends on its size.
+     * 
+     * @return true
+     */
+    @Override public boolean isLatencySizeDependent() {
+        return true;
+    }
+    
     /**
      * Returns the SOAP action of this service.
      * "http://DescargaMasivaTerceros.sat.gob.mx/IDescargaMasivaTercerosService/Descargar"
@@ -140,11 +237,41 @@ public class DescargaSvc extends AbstractGenericSvc<DescargaResponse,String> {
         if (message == null || rfc == null || packageId == null) {
             throw new IllegalArgumentException("invalid parameters");
         }
-        return message.getSOAPBody()
-                .addChildElement(DOWNLOAD_REQUEST)
-                    .addChildElement(REQUEST)
-                        .addAttribute(PACKAGE_ID, packageId)
-                        .addAttribute(RFC, rfc);
+        SOAPElement element = EnvelopeTemplate.find(message.getSOAPBody(), DOWNLOAD_REQUEST, REQUEST);
+        if (element == null) {
+            element = message.getSOAPBody()
+                    .addChildElement(DOWNLOAD_REQUEST)
+                        .addChildElement(REQUEST);
+        }
+        return element
+                .addAttribute(PACKAGE_ID, packageId)
+                .addAttribute(RFC, rfc);
+    }
+    
+    /**
+     * Returns the names of the skeleton elements of download messages.
+     * 
+     * @return DOWNLOAD_REQUEST and REQUEST
+     */
+    @Override protected QName[] getSkeleton() {
+        return new QName[] {DOWNLOAD_REQUEST, REQUEST};
+    }
+    
+    /**
+     * Returns the element to be signed with the specified RFC and packageId.
+     * 
+     * @param rfc the RFC of the contributor requesting the package
+     * @param packageId the id of the package to download
+     * @return the element to be signed
+     * @throws IllegalArgumentException if rfc or packageId are null
+     */
+    @Override protected SignedRequestWriter.Element newSignedElement(String rfc, String packageId) {
+        if (rfc == null || packageId == null) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        return new SignedRequestWriter.Element(REQUEST)
+                .setAttribute(PACKAGE_ID, packageId)
+                .setAttribute(RFC, rfc);
     }
    
 /*  
@@ -227,4 +354,42 @@ public class DescargaSvc extends AbstractGenericSvc<DescargaResponse,String> {
         }
         return null;
     }
+    
+    ////////////////////////////////////////////////////////////////////////////
+    
+    /**
+     * Extends <code>DescargaResponse</code> to release a memory reservation
+     * when it is disposed.
+     */
+    protected static class BudgetedResponse extends DescargaResponse {
+        private static final long serialVersionUID = 20250210L;
+        
+        /**
+         * Reservation of the package of this response
+         */
+        private final transient MemoryBudget.Reservation reservation;
+        
+        /**
+         * Creates a new <code>BudgetedResponse</code> with the contents of
+         * the specified response.
+         * 
+         * @param response response with the package
+         * @param reservation reservation to release when disposed
+         */
+        protected BudgetedResponse(DescargaResponse response, MemoryBudget.Reservation reservation) {
+            super(response.getInstant(), response.getStatusCode(), response.getMessage(),
+                    response.getPackageId(), response.getEncodedPackage());
+            this.reservation = reservation;
+        }
+        
+        /**
+         * Disposes the package of this response and releases its memory reservation.
+         */
+        @Override protected void disposePackage() {
+            super.disposePackage();
+            if (reservation != null) {
+                reservation.release();
+            }
+        }
+    }
 }
@@ -18,6 +18,9 @@ import jakarta.xml.soap.SOAPConnection;
 import jakarta.xml.soap.SOAPException;
 
 import java.time.Instant;
+import java.time.InstantSource;
+import java.util.ArrayList;
+import java.util.List;
 
 
 /**
@@ -28,9 +31,16 @@ import java.time.Instant;
  * <p>You can set to this class a {@link com.sicomsa.dmt.DownloadRepository} that
  * will be used to save the CFDIs downloaded. If you do not set one a default
  * {@link LocalRepository} will be used.</p>
+ * <p>A {@link ConcurrencyLimiter} can be set to adapt the calls in flight to
+ * each location to the load of the web service, a {@link RetryPolicy}
+ * to retry failed calls, a {@link CircuitBreaker} to fail fast while a
+ * location is down, and a {@link HedgingPolicy} to cut the tail latency of
+ * verifications. A {@link SoapTransport} can replace the
+ * <code>SOAPConnection</code> used to call the web service. A
+ * {@link ClockSkewEstimator} corrects the local time to SAT's time.</p>
  *  
  * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
- * @version 2024.11.10
+ * @version 2025.02.19
  * @since 1.0
  *
  *  
@@ -136,6 +146,136 @@ public class DownloadService implements DMTService {
         return descargaSvc;
     }
     
+    /**
+     * Sets the concurrency limiter that will limit the calls in flight to the
+     * location of each service of this <code>DownloadService</code> that
+     * extends {@link AbstractSvc}.
+     * 
+     * @param limiter the limiter to use, null to call without limits
+     */
+    public void setConcurrencyLimiter(ConcurrencyLimiter limiter) {
+        abstractServices().forEach(svc->svc.setConcurrencyLimiter(limiter));
+    }
+    
+    /**
+     * Sets the policy to retry failed calls of each service of this
+     * <code>DownloadService</code> that extends {@link AbstractSvc}; only
+     * idempotent services (authentication, verification and download) use it.
+     * 
+     * @param policy the policy to use, null to call without retries
+     */
+    public void setRetryPolicy(RetryPolicy policy) {
+        abstractServices().forEach(svc->svc.setRetryPolicy(policy));
+    }
+    
+    /**
+     * Sets the circuit breaker of each service of this <code>DownloadService</code>
+     * that extends {@link AbstractSvc}, so calls to a location that is down
+     * fail fast with a {@link CircuitOpenException}.
+     * 
+     * @param breaker the circuit breaker to use, null to always call
+     */
+    public void setCircuitBreaker(CircuitBreaker breaker) {
+        abstractServices().forEach(svc->svc.setCircuitBreaker(breaker));
+    }
+    
+    /**
+     * Sets the transport each service of this <code>DownloadService</code>
+     * that extends {@link AbstractSvc} uses to call the web service instead
+     * of the <code>SOAPConnection</code>, for example an {@link HttpClientTransport}.
+     * 
+     * @param transport the transport to use, null to use the connection
+     */
+    public void setTransport(SoapTransport transport) {
+        abstractServices().forEach(svc->svc.setTransport(transport));
+    }
+    
+    /**
+     * Sets the capture that keeps the last exchanges of each service of this
+     * <code>DownloadService</code> that extends {@link AbstractSvc}; one
+     * capture may be shared by all of them.
+     * 
+     * @param capture the capture to use, null to not capture exchanges
+     */
+    public void setWireCapture(WireCapture capture) {
+        abstractServices().forEach(svc->svc.setWireCapture(capture));
+    }
+    
+    /**
+     * Sets whether each service of this <code>DownloadService</code> that
+     * extends {@link AbstractSvc} creates its messages as copies of its template.
+     * 
+     * @param templateEnabled true to create messages as copies of the templates
+     */
+    public void setTemplateEnabled(boolean templateEnabled) {
+        abstractServices().forEach(svc->svc.setTemplateEnabled(templateEnabled));
+    }
+    
+    /**
+     * Sets the writer each service of this <code>DownloadService</code> that
+     * extends {@link AbstractGenericSvc} uses to write and sign its requests
+     * directly, instead of building them with SAAJ.
+     * 
+     * @param writer the writer to use, null to build requests with SAAJ
+     */
+    public void setSignedRequestWriter(SignedRequestWriter writer) {
+        abstractServices().forEach(svc->{
+            if (svc instanceof AbstractGenericSvc<?,?> generic) {
+                generic.setSignedRequestWriter(writer);
+            }
+        });
+    }
+    
+    /**
+     * Sets the estimator of the clock skew with SAT: the authentication
+     * service feeds it and, if the factory of this <code>DownloadService</code>
+     * is a {@link DefaultMessageFactory}, it becomes its instant source; so
+     * token validity is checked and security timestamps are written in SAT's
+     * time. A null estimator goes back to the local instant source.
+     * 
+     * @param estimator the estimator to use, null to use local time
+     */
+    public void setClockSkewEstimator(ClockSkewEstimator estimator) {
+        if (factory instanceof DefaultMessageFactory defaultFactory) {
+            InstantSource source = defaultFactory.getInstantSource();
+            if (source instanceof ClockSkewEstimator current) {
+                source = current.local;
+            }
+            defaultFactory.setInstantSource(estimator == null ? source : estimator);
+        }
+        if (autenticaSvc instanceof AuthenticationSvc svc) {
+            svc.setClockSkewEstimator(estimator);
+        }
+    }
+    
+    /**
+     * Sets the policy to hedge slow verification calls, if the verification
+     * service of this <code>DownloadService</code> is a {@link VerificaSvc}.
+     * 
+     * @param policy the policy to use, null to call without hedging
+     */
+    public void setHedgingPolicy(HedgingPolicy policy) {
+        if (verificaSvc instanceof VerificaSvc svc) {
+            svc.setHedgingPolicy(policy);
+        }
+    }
+    
+    /**
+     * Returns the services of this <code>DownloadService</code> that extend
+     * {@link AbstractSvc}.
+     * 
+     * @return a list with the services that extend <code>AbstractSvc</code>
+     */
+    protected List<AbstractSvc<?,?>> abstractServices() {
+        List<AbstractSvc<?,?>> list = new ArrayList<>();
+        for (Service<?,?> svc : List.of(autenticaSvc, solicitaSvc, verificaSvc, descargaSvc)) {
+            if (svc instanceof AbstractSvc<?,?> abstractSvc) {
+                list.add(abstractSvc);
+            }
+        }
+        return list;
+    }
+    
     ////////////////////////////////////////////////////////////////////////////
     /// DMTService implementation
     ////////////////////////////////////////////////////////////////////////////
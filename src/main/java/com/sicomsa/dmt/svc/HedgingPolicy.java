@@ -0,0 +1,373 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import jakarta.xml.soap.SOAPException;
+import jakarta.xml.ws.WebServiceException;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import java.lang.System.Logger.Level;
+
+/**
+ * <code>HedgingPolicy</code> cuts the tail latency of read only calls: when a
+ * call does not answer within a percentile of the latencies observed in
+ * recent calls, a second identical call is sent and the first one to answer
+ * successfully wins. The other call is not interrupted, its answer is ignored.
+ * <p>The delay before hedging is the <code>percentile</code> of the latency of
+ * the last successful calls, but never less than <code>minDelay</code>; no
+ * call is hedged until enough latencies were observed. To bound the extra
+ * load on the web service, hedged calls are never more than
+ * <code>maxExtraLoad</code> times the calls executed.</p>
+ * <p>Calls run on the executor of this policy while the caller waits, so it
+ * should be able to run two calls for each caller. If none is specified, a
+ * cached pool of daemon threads is used.</p>
+ * <p>This class is thread safe; see {@link VerificaSvc#setHedgingPolicy(com.sicomsa.dmt.svc.HedgingPolicy)}.</p>
+ *
+ * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
+ * @version 2025.02.14
+ * @since 1.0
+ *
+ */
+public class HedgingPolicy {
+
+    private static final System.Logger LOG = System.getLogger(HedgingPolicy.class.getName());
+
+    /**
+     * Default percentile of latencies used as the hedging delay = 0.95.
+     */
+    public static final double DEFAULT_PERCENTILE = 0.95;
+
+    /**
+     * Default maximum ratio of hedged calls to calls executed = 0.1.
+     */
+    public static final double DEFAULT_MAX_EXTRA_LOAD = 0.1;
+
+    /**
+     * Default minimum hedging delay = 100 milliseconds.
+     */
+    public static final Duration DEFAULT_MIN_DELAY = Duration.ofMillis(100);
+
+    /**
+     * Number of latencies kept to compute the percentile = 100.
+     */
+    public static final int WINDOW_SIZE = 100;
+
+    /**
+     * Latencies that must be observed before hedging = 10.
+     */
+    public static final int MIN_SAMPLES = 10;
+
+    /**
+     * Percentile of latencies used as the hedging delay
+     */
+    protected final double percentile;
+
+    /**
+     * Maximum ratio of hedged calls to calls executed
+     */
+    protected final double maxExtraLoad;
+
+    /**
+     * Minimum hedging delay, in nanoseconds
+     */
+    protected final long minDelayNanos;
+
+    /**
+     * Executor that runs the calls
+     */
+    protected final Executor executor;
+
+    private final long[] latencies = new long[WINDOW_SIZE];
+    private int samples;
+    private int next;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong wins = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+
+    /**
+     * Creates a new <code>HedgingPolicy</code> with default parameters.
+     */
+    public HedgingPolicy() {
+        this(DEFAULT_PERCENTILE, DEFAULT_MAX_EXTRA_LOAD, DEFAULT_MIN_DELAY, null);
+    }
+
+    /**
+     * Creates a new <code>HedgingPolicy</code> with the specified parameters.
+     *
+     * @param percentile percentile of latencies used as the hedging delay,
+     *        greater than 0 and up to 1
+     * @param maxExtraLoad maximum ratio of hedged calls to calls executed,
+     *        between 0 and 1
+     * @param minDelay minimum hedging delay
+     * @param executor executor to run the calls, null to use a cached pool
+     *        of daemon threads
+     * @throws IllegalArgumentException if percentile or maxExtraLoad are out
+     *         of range, or if minDelay is null or negative
+     */
+    public HedgingPolicy(double percentile, double maxExtraLoad, Duration minDelay, Executor executor) {
+        if (!(percentile > 0 && percentile <= 1) || !(maxExtraLoad >= 0 && maxExtraLoad <= 1)
+                || minDelay == null || minDelay.isNegative()) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        this.percentile = percentile;
+        this.maxExtraLoad = maxExtraLoad;
+        this.minDelayNanos = minDelay.toNanos();
+        this.executor = (executor == null ? newDefaultExecutor() : executor);
+    }
+
+    /**
+     * Executes the specified call, hedging it if it does not answer within
+     * the hedging delay and the extra load allows it.
+     *
+     * @param <T> type of the result of the call
+     * @param name name of the call, used for logging
+     * @param call the call to execute
+     * @return the result of the first call that succeeded
+     * @throws SOAPException the exception of the original call, if every
+     *         call sent failed
+     * @throws WebServiceException the exception of the original call, or if
+     *         interrupted while waiting
+     */
+    public <T> T execute(String name, RetryPolicy.Call<T> call) throws SOAPException {
+        calls.incrementAndGet();
+        CompletableFuture<T> primary = submit(call);
+        long delay = getHedgeDelayNanos();
+        if (delay < 0) {
+            return await(primary);
+        }
+        try {
+            return await(primary, delay);
+        }
+        catch (TimeoutException e) {
+            //hedge below
+        }
+        if (!tryHedge()) {
+            suppressed.incrementAndGet();
+            return await(primary);
+        }
+        LOG.log(Level.DEBUG, "Hedging {0} after {1} ms", name, delay / 1_000_000);
+        CompletableFuture<T> hedge = submit(call);
+        CompletableFuture<T> first = new CompletableFuture<>();
+        AtomicBoolean answered = new AtomicBoolean();
+        AtomicInteger failed = new AtomicInteger();
+        primary.whenComplete((result, ex)->{
+            if (ex == null) {
+                if (answered.compareAndSet(false, true)) {
+                    first.complete(result);
+                }
+            }
+            else if (failed.incrementAndGet() == 2) {
+                first.completeExceptionally(ex);
+            }
+        });
+        hedge.whenComplete((result, ex)->{
+            if (ex == null) {
+                if (answered.compareAndSet(false, true)) {
+                    wins.incrementAndGet();
+                    first.complete(result);
+                }
+            }
+            else if (failed.incrementAndGet() == 2) {
+                first.completeExceptionally(primary.handle((r, e)->e).join());
+            }
+        });
+        return await(first);
+    }
+
+    /**
+     * Returns the current hedging delay in nanoseconds, or -1 if there are
+     * not enough latencies observed to hedge.
+     *
+     * @return the hedging delay in nanoseconds, or -1
+     */
+    public synchronized long getHedgeDelayNanos() {
+        if (samples < MIN_SAMPLES) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(latencies, samples);
+        Arrays.sort(sorted);
+        int index = (int)Math.ceil(percentile * samples) - 1;
+        return Math.max(minDelayNanos, sorted[Math.max(0, index)]);
+    }
+
+    /**
+     * Records the latency of a successful call.
+     *
+     * @param nanos latency of the call in nanoseconds
+     */
+    protected synchronized void record(long nanos) {
+        latencies[next] = nanos;
+        next = (next + 1) % WINDOW_SIZE;
+        if (samples < WINDOW_SIZE) {
+            samples++;
+        }
+    }
+
+    /**
+     * Returns true and counts a hedged call if the extra load allows it.
+     *
+     * @return true if a hedged call can be sent
+     */
+    protected boolean tryHedge() {
+        long current;
+        do {
+            current = hedges.get();
+            if (current + 1 > maxExtraLoad * calls.get()) {
+                return false;
+            }
+        }
+        while (!hedges.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    /// Metrics
+
+    /**
+     * Returns the number of calls executed.
+     *
+     * @return the number of calls executed
+     */
+    public long getCallCount() {
+        return calls.get();
+    }
+
+    /**
+     * Returns the number of hedged calls sent.
+     *
+     * @return the number of hedged calls sent
+     */
+    public long getHedgeCount() {
+        return hedges.get();
+    }
+
+    /**
+     * Returns the number of hedged calls that answered first.
+     *
+     * @return the number of hedged calls that won
+     */
+    public long getHedgeWinCount() {
+        return wins.get();
+    }
+
+    /**
+     * Returns the number of calls that were not hedged because of the
+     * maximum extra load.
+     *
+     * @return the number of hedges suppressed
+     */
+    public long getSuppressedCount() {
+        return suppressed.get();
+    }
+
+    /**
+     * Returns the ratio of hedged calls to calls executed.
+     *
+     * @return the ratio of hedged calls to calls executed
+     */
+    public double getHedgeRate() {
+        long count = calls.get();
+        return (count == 0 ? 0 : (double)hedges.get() / count);
+    }
+
+    /**
+     * Returns a string representation of this policy and its counters.
+     *
+     * @return a string representation of this policy
+     */
+    @Override public String toString() {
+        return new StringBuilder("HedgingPolicy{")
+                .append("percentile=").append(percentile)
+                .append(",maxExtraLoad=").append(maxExtraLoad)
+                .append(",delayNanos=").append(getHedgeDelayNanos())
+                .append(",calls=").append(getCallCount())
+                .append(",hedges=").append(getHedgeCount())
+                .append(",wins=").append(getHedgeWinCount())
+                .append(",suppressed=").append(getSuppressedCount())
+                .append("}").toString();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Runs the specified call on the executor, recording its latency if it
+     * succeeds.
+     *
+     * @param <T> type of the result of the call
+     * @param call the call to run
+     * @return a future with the result of the call
+     */
+    protected <T> CompletableFuture<T> submit(RetryPolicy.Call<T> call) {
+        return CompletableFuture.supplyAsync(()->{
+            long start = System.nanoTime();
+            try {
+                T result = call.call();
+                record(System.nanoTime() - start);
+                return result;
+            }
+            catch (SOAPException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    private <T> T await(CompletableFuture<T> future) throws SOAPException {
+        try {
+            return await(future, Long.MAX_VALUE);
+        }
+        catch (TimeoutException e) {
+            throw new WebServiceException(e);
+        }
+    }
+
+    private <T> T await(CompletableFuture<T> future, long nanos) throws SOAPException, TimeoutException {
+        try {
+            return future.get(nanos, TimeUnit.NANOSECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebServiceException("interrupted while waiting for call", e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof SOAPException soap) {
+                throw soap;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new WebServiceException(cause);
+        }
+    }
+
+    private static ExecutorService newDefaultExecutor() {
+        return Executors.newCachedThreadPool(runnable->{
+            Thread thread = new Thread(runnable, "hedging-policy");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import com.sicomsa.dmt.util.SOAPFactories;
+
+import jakarta.xml.soap.MessageFactory;
+import jakarta.xml.soap.MimeHeader;
+import jakarta.xml.soap.MimeHeaders;
+import jakarta.xml.soap.SOAPException;
+import jakarta.xml.soap.SOAPMessage;
+import jakarta.xml.ws.WebServiceException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import java.lang.System.Logger.Level;
+
+/**
+ * <code>SoapTransport</code> built on <code>java.net.http.HttpClient</code>,
+ * which prefers HTTP/2, reuses its connections and sends requests
+ * asynchronously.
+ * <p>The signed message is serialized to bytes and sent with its mime
+ * headers (SOAPAction, Authorization and Content-Type); the body of the
+ * response is streamed into the message factory as it arrives. Responses
+ * that are not XML, like an HTML error page, throw a <code>SOAPException</code>;
+ * SOAP faults are returned like any other message.</p>
+ * <p>A single transport, and its client, is meant to be shared by all
+ * services, see {@link DownloadService#setTransport(com.sicomsa.dmt.svc.SoapTransport)}.
+ * This class is thread safe.</p>
+ * 
+ * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
+ * @version 2025.02.19
+ * @since 1.0
+ * 
+ */
+public class HttpClientTransport implements SoapTransport {
+    
+    private static final System.Logger LOG = System.getLogger(HttpClientTransport.class.getName());
+    
+    /**
+     * Default time to wait for a connection = 30 seconds.
+     */
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(30);
+    
+    /**
+     * Default time to wait for a response = 2 minutes.
+     */
+    public static final Duration DEFAULT_READ_TIMEOUT = Duration.ofMinutes(2);
+    
+    /**
+     * Headers set by the client that cannot be copied to requests
+     */
+    protected static final Set<String> RESTRICTED_HEADERS =
+            Set.of("connection", "content-length", "expect", "host", "upgrade");
+    
+    /**
+     * Client used to send requests
+     */
+    protected final HttpClient client;
+    
+    /**
+     * Time to wait for each response
+     */
+    protected final Duration readTimeout;
+    
+    /**
+     * Factory used to create the messages received
+     */
+    private volatile MessageFactory factory;
+    
+    /**
+     * Creates a new <code>HttpClientTransport</code> with default timeouts.
+     */
+    public HttpClientTransport() {
+        this(DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+    }
+    
+    /**
+     * Creates a new <code>HttpClientTransport</code> with its own client and
+     * the specified timeouts.
+     * 
+     * @param connectTimeout time to wait for a connection
+     * @param readTimeout time to wait for each response
+     * @throws IllegalArgumentException if any timeout is null, zero or negative
+     */
+    public HttpClientTransport(Duration connectTimeout, Duration readTimeout) {
+        this(newClient(connectTimeout), readTimeout);
+    }
+    
+    /**
+     * Creates a new <code>HttpClientTransport</code> that uses the specified
+     * client and read timeout.
+     * 
+     * @param client the client to use
+     * @param readTimeout time to wait for each response
+     * @throws IllegalArgumentException if client is null, or if readTimeout
+     *         is null, zero or negative
+     */
+    public HttpClientTransport(HttpClient client, Duration readTimeout) {
+        if (client == null || !isPositive(readTimeout)) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        this.client = client;
+        this.readTimeout = readTimeout;
+    }
+    
+    /**
+     * Returns a new client that prefers HTTP/2 and uses the specified
+     * connect timeout.
+     * 
+     * @param connectTimeout time to wait for a connection
+     * @return a new client
+     * @throws IllegalArgumentException if connectTimeout is null, zero or negative
+     */
+    public static HttpClient newClient(Duration connectTimeout) {
+        if (!isPositive(connectTimeout)) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+    }
+    
+    /**
+     * Returns the client of this transport.
+     * 
+     * @return the client of this transport
+     */
+    public HttpClient getClient() {
+        return client;
+    }
+    
+    /**
+     * Returns the time this transport waits for each response.
+     * 
+     * @return the read timeout
+     */
+    public Duration getReadTimeout() {
+        return readTimeout;
+    }
+    
+    /**
+     * Returns the factory used to create the messages received, by default
+     * the SOAP 1.1 <code>MessageFactory</code> shared by {@link SOAPFactories}.
+     * 
+     * @return the factory used to create the messages received
+     * @throws SOAPException if the factory could not be created
+     */
+    public MessageFactory getMessageFactory() throws SOAPException {
+        MessageFactory messageFactory = factory;
+        if (messageFactory == null) {
+            synchronized (this) {
+                if (factory == null) {
+                    factory = SOAPFactories.getMessageFactory();
+                }
+                messageFactory = factory;
+            }
+        }
+        return messageFactory;
+    }
+    
+    /**
+     * Sets the factory used to create the messages received.
+     * 
+     * @param factory the factory to use
+     * @throws IllegalArgumentException if factory is null
+     */
+    public synchronized void setMessageFactory(MessageFactory factory) {
+        if (factory == null) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        this.factory = factory;
+    }
+    
+    ////////////////////////////////////////////////////////////////////////////
+    
+    /**
+     * Sends the specified request and blocks until the response is received.
+     * 
+     * @param request the message to send
+     * @param location the location of the web service
+     * @return the message received
+     * @throws SOAPException if there were SOAP or connection related problems,
+     *         or if the response was not XML
+     * @throws IllegalArgumentException if request or location are null
+     * @throws WebServiceException if interrupted while waiting
+     */
+    @Override public SOAPMessage call(SOAPMessage request, String location) throws SOAPException {
+        CompletableFuture<SOAPMessage> future = callAsync(request, location);
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new WebServiceException("interrupted while calling "+location, e);
+        }
+        catch (ExecutionException e) {
+            throw toSOAPException(e.getCause(), location);
+        }
+    }
+    
+    /**
+     * Sends the specified request without blocking.
+     * 
+     * @param request the message to send
+     * @param location the location of the web service
+     * @return a future with the message received; it completes exceptionally
+     *         with a <code>SOAPException</code> or <code>IOException</code>
+     *         if there were problems
+     * @throws SOAPException if the request could not be serialized
+     * @throws IllegalArgumentException if request or location are null
+     */
+    public CompletableFuture<SOAPMessage> callAsync(SOAPMessage request, String location) throws SOAPException {
+        if (request == null || location == null) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        HttpRequest httpRequest = newRequest(request, location);
+        MessageFactory messageFactory = getMessageFactory();
+        return client.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofInputStream())
+                .thenApply(response->{
+                    try {
+                        return readResponse(response, messageFactory);
+                    }
+                    catch (SOAPException | IOException e) {
+                        throw new CompletionException(e);
+                    }
+                });
+    }
+    
+    /**
+     * Returns a string representation of this transport.
+     * 
+     * @return a string representation of this transport
+     */
+    @Override public String toString() {
+        return new StringBuilder("HttpClientTransport{")
+                .append("version=").append(client.version())
+                .append(",connectTimeout=").append(client.connectTimeout().orElse(null))
+                .append(",readTimeout=").append(readTimeout)
+                .append("}").toString();
+    }
+    
+    ////////////////////////////////////////////////////////////////////////////
+    
+    /**
+     * Returns a POST request with the bytes and mime headers of the specified
+     * message.
+     * 
+     * @param message the message to send
+     * @param location the location of the web service
+     * @return a new request
+     * @throws SOAPException if the message could not be serialized
+     */
+    protected HttpRequest newRequest(SOAPMessage message, String location) throws SOAPException {
+        if (message.saveRequired()) {
+            message.saveChanges();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        try {
+            message.writeTo(out);
+        }
+        catch (IOException e) {
+            throw new SOAPException("unable to serialize message", e);
+        }
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(location))
+                .timeout(readTimeout)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(out.toByteArray()));
+        Iterator<MimeHeader> iterator = message.getMimeHeaders().getAllHeaders();
+        while (iterator.hasNext()) {
+            MimeHeader header = iterator.next();
+            if (header.getValue() != null
+                    && !RESTRICTED_HEADERS.contains(header.getName().toLowerCase(Locale.ROOT))) {
+                builder.header(header.getName(), header.getValue());
+            }
+        }
+        return builder.build();
+    }
+    
+    /**
+     * Parses the body of the specified response as it is received.
+     * 
+     * @param response the response received
+     * @param messageFactory the factory to create the message
+     * @return the message received
+     * @throws SOAPException if the response was not XML or could not be parsed
+     * @throws IOException if there were problems reading the response
+     */
+    protected SOAPMessage readResponse(HttpResponse<InputStream> response, MessageFactory messageFactory)
+            throws SOAPException, IOException {
+        
+        String contentType = response.headers().firstValue("Content-Type").orElse("");
+        try (InputStream in = response.body()) {
+            if (!contentType.toLowerCase(Locale.ROOT).contains("xml")) {
+                throw new SOAPException("invalid response, HTTP status ("
+                        +response.statusCode()+") content type ("+contentType+")");
+            }
+            LOG.log(Level.TRACE, "HTTP response {0} {1}", response.statusCode(), response.version());
+            MimeHeaders headers = new MimeHeaders();
+            headers.addHeader("Content-Type", contentType);
+            SOAPMessage message = messageFactory.createMessage(headers, in);
+            message.getSOAPPart().getEnvelope(); //parse before closing the stream
+            return message;
+        }
+    }
+    
+    /**
+     * Returns the specified cause as a <code>SOAPException</code>.
+     * 
+     * @param cause the cause of a failed call
+     * @param location the location called
+     * @return a <code>SOAPException</code>
+     */
+    protected SOAPException toSOAPException(Throwable cause, String location) {
+        if (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof SOAPException e) {
+            return e;
+        }
+        if (cause instanceof RuntimeException e) {
+            throw e;
+        }
+        if (cause instanceof Error e) {
+            throw e;
+        }
+        return new SOAPException("error calling "+location+": "+cause, cause);
+    }
+    
+    private static boolean isPositive(Duration duration) {
+        return (duration != null && !duration.isNegative() && !duration.isZero());
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+/**
+ * Generates the unique identifiers of the elements of a request, like the
+ * id of the binary security token of an authentication.
+ * <p>A service uses its generator from every thread that calls it, see
+ * {@link AuthenticationSvc#setIdGenerator(com.sicomsa.dmt.svc.IdGenerator)}.
+ * Implementations must be thread safe.</p>
+ * 
+ * @see SecureIdGenerator
+ * 
+ * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
+ * @version 2025.02.19
+ * @since 1.0
+ * 
+ */
+public interface IdGenerator {
+    
+    /**
+     * Returns a new identifier, different from the ones returned before.
+     * 
+     * @return a new identifier
+     */
+    public String newId();
+    
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import java.util.concurrent.TimeUnit;
+
+import java.lang.System.Logger.Level;
+
+/**
+ * <code>MemoryBudget</code> limits the memory held by packages that are being
+ * downloaded or waiting to be saved, so several solicitudes downloading at
+ * the same time wait for each other instead of exhausting the heap.
+ * <p>Before calling the web service a {@link MemoryBudget.Reservation} is
+ * taken for the estimated size of the package; when the response arrives the
+ * reservation is resized to the real footprint of the package, and it is
+ * released when the package is disposed.</p>
+ * <p>The estimate is a moving average of the footprints observed, starting
+ * with <code>initialEstimate</code>. The footprint of a package is the memory
+ * used by the encoded string received plus the array it decodes to, see
+ * {@link MemoryBudget#footprint(int)}.</p>
+ * <p>If there is not enough budget available, reservations wait until other
+ * reservations are released; a single reservation bigger than the capacity is
+ * reduced to the capacity, so it only waits until the budget is empty.</p>
+ * <p>This class is thread safe.</p>
+ *
+ * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
+ * @version 2025.02.10
+ * @since 1.0
+ *
+ */
+public class MemoryBudget {
+
+    private static final System.Logger LOG = System.getLogger(MemoryBudget.class.getName());
+
+    /**
+     * Default initial estimate of a package footprint = 8 MiB.
+     */
+    public static final long DEFAULT_INITIAL_ESTIMATE = 8L * 1024 * 1024;
+
+    /**
+     * Weight of each new observation in the moving average = 0.25.
+     */
+    protected static final double SMOOTHING = 0.25;
+
+    /**
+     * Maximum bytes that can be reserved
+     */
+    protected final long capacity;
+
+    private long used;
+    private long estimate;
+    private long maxObserved;
+    private long reservations;
+    private long waits;
+    private long waitNanos;
+    private long timeouts;
+
+    /**
+     * Creates a new <code>MemoryBudget</code> with the specified capacity and
+     * the {@link MemoryBudget#DEFAULT_INITIAL_ESTIMATE}.
+     *
+     * @param capacity maximum bytes that can be reserved
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    public MemoryBudget(long capacity) {
+        this(capacity, DEFAULT_INITIAL_ESTIMATE);
+    }
+
+    /**
+     * Creates a new <code>MemoryBudget</code> with the specified parameters.
+     *
+     * @param capacity maximum bytes that can be reserved
+     * @param initialEstimate estimated footprint of a package before any is observed
+     * @throws IllegalArgumentException if capacity or initialEstimate are not positive
+     */
+    public MemoryBudget(long capacity, long initialEstimate) {
+        if (capacity < 1 || initialEstimate < 1) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        this.capacity = capacity;
+        this.estimate = initialEstimate;
+    }
+
+    /**
+     * Returns a new <code>MemoryBudget</code> whose capacity is the specified
+     * fraction of the maximum heap of this JVM.
+     *
+     * @param fraction fraction of the maximum heap, greater than 0 and up to 1
+     * @return a new <code>MemoryBudget</code>
+     * @throws IllegalArgumentException if fraction is out of range
+     */
+    public static MemoryBudget ofMaxHeap(double fraction) {
+        if (!(fraction > 0 && fraction <= 1)) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        return new MemoryBudget((long)(Runtime.getRuntime().maxMemory() * fraction));
+    }
+
+    /**
+     * Returns the bytes used by a package received as an encoded string of
+     * the specified length: the string (one byte per Base64 character) plus
+     * the decoded array (three bytes per four characters).
+     *
+     * @param encodedLength length of the encoded package
+     * @return the estimated footprint in bytes
+     */
+    public static long footprint(int encodedLength) {
+        return encodedLength + (encodedLength / 4L) * 3L;
+    }
+
+    /**
+     * Reserves the estimated footprint of a package, waiting until there is
+     * enough budget available.
+     *
+     * @return a new reservation
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Reservation reserve() throws InterruptedException {
+        return doReserve(Long.MAX_VALUE);
+    }
+
+    /**
+     * Reserves the estimated footprint of a package, waiting up to the
+     * specified timeout for enough budget to be available.
+     *
+     * @param timeout maximum time to wait
+     * @param unit unit of timeout
+     * @return a new reservation, or null if the timeout elapsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Reservation tryReserve(long timeout, TimeUnit unit) throws InterruptedException {
+        return doReserve(unit.toNanos(timeout));
+    }
+
+    /**
+     * Returns the bytes currently reserved.
+     *
+     * @return the bytes currently reserved
+     */
+    public synchronized long getUsed() {
+        return used;
+    }
+
+    /**
+     * Returns the bytes that can still be reserved, zero if the budget is exceeded.
+     *
+     * @return the bytes that can still be reserved
+     */
+    public synchronized long getAvailable() {
+        return Math.max(0, capacity - used);
+    }
+
+    /**
+     * Returns the maximum bytes that can be reserved.
+     *
+     * @return the capacity of this budget
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the current estimate of a package footprint.
+     *
+     * @return the current estimate of a package footprint
+     */
+    public synchronized long getEstimate() {
+        return estimate;
+    }
+
+    /**
+     * Returns the biggest package footprint observed.
+     *
+     * @return the biggest package footprint observed
+     */
+    public synchronized long getMaxObserved() {
+        return maxObserved;
+    }
+
+    /**
+     * Returns the number of reservations taken.
+     *
+     * @return the number of reservations taken
+     */
+    public synchronized long getReservationCount() {
+        return reservations;
+    }
+
+    /**
+     * Returns the number of reservations that had to wait for budget.
+     *
+     * @return the number of reservations that waited
+     */
+    public synchronized long getWaitCount() {
+        return waits;
+    }
+
+    /**
+     * Returns the total time reservations waited for budget, in nanoseconds.
+     *
+     * @return the total wait time in nanoseconds
+     */
+    public synchronized long getWaitNanos() {
+        return waitNanos;
+    }
+
+    /**
+     * Returns the number of reservations that timed out.
+     *
+     * @return the number of timeouts
+     */
+    public synchronized long getTimeoutCount() {
+        return timeouts;
+    }
+
+    /**
+     * Returns a string representation of this budget.
+     *
+     * @return a string representation of this budget
+     */
+    @Override public synchronized String toString() {
+        return new StringBuilder("MemoryBudget{")
+                .append("capacity=").append(capacity)
+                .append(",used=").append(used)
+                .append(",estimate=").append(estimate)
+                .append(",maxObserved=").append(maxObserved)
+                .append(",reservations=").append(reservations)
+                .append(",waits=").append(waits)
+                .append(",timeouts=").append(timeouts)
+                .append("}").toString();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Reserves the estimated footprint of a package, waiting up to the
+     * specified nanoseconds.
+     *
+     * @param timeoutNanos maximum nanoseconds to wait
+     * @return a new reservation, or null if the timeout elapsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    protected synchronized Reservation doReserve(long timeoutNanos) throws InterruptedException {
+        long bytes = Math.min(estimate, capacity);
+        if (!fits(bytes)) {
+            waits++;
+            long start = System.nanoTime();
+            long remaining = timeoutNanos;
+            try {
+                while (!fits(bytes)) {
+                    if (remaining <= 0) {
+                        timeouts++;
+                        LOG.log(Level.DEBUG, "Memory budget timeout {0}", this);
+                        return null;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    remaining = timeoutNanos - (System.nanoTime() - start);
+                }
+            }
+            finally {
+                waitNanos += System.nanoTime() - start;
+            }
+        }
+        used += bytes;
+        reservations++;
+        return new Reservation(bytes);
+    }
+
+    /**
+     * Returns true if the specified bytes can be reserved now.
+     *
+     * @param bytes bytes to reserve
+     * @return true if the specified bytes can be reserved now
+     */
+    private boolean fits(long bytes) {
+        return (used == 0 || used + bytes <= capacity);
+    }
+
+    /**
+     * Updates the estimate with the specified observed footprint.
+     *
+     * @param bytes observed footprint
+     */
+    private void observe(long bytes) {
+        estimate = Math.max(1, Math.round(estimate * (1 - SMOOTHING) + bytes * SMOOTHING));
+        maxObserved = Math.max(maxObserved, bytes);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Bytes reserved from a <code>MemoryBudget</code>, must be released once.
+     */
+    public class Reservation {
+
+        private long bytes;
+        private boolean released;
+
+        /**
+         * Creates a new reservation of the specified bytes.
+         *
+         * @param bytes bytes reserved
+         */
+        protected Reservation(long bytes) {
+            this.bytes = bytes;
+        }
+
+        /**
+         * Returns the bytes reserved, zero if released.
+         *
+         * @return the bytes reserved
+         */
+        public long getBytes() {
+            synchronized (MemoryBudget.this) {
+                return (released ? 0 : bytes);
+            }
+        }
+
+        /**
+         * Changes this reservation to the observed footprint of a package,
+         * updating the estimate of the budget. The budget may be exceeded,
+         * in which case new reservations wait.
+         *
+         * @param observed observed footprint of the package
+         */
+        public void resize(long observed) {
+            synchronized (MemoryBudget.this) {
+                observe(observed);
+                if (released) {
+                    return;
+                }
+                used += observed - bytes;
+                bytes = observed;
+                MemoryBudget.this.notifyAll();
+            }
+        }
+
+        /**
+         * Returns the bytes of this reservation to the budget; does nothing
+         * if already released.
+         */
+        public void release() {
+            synchronized (MemoryBudget.this) {
+                if (!released) {
+                    released = true;
+                    used -= bytes;
+                    MemoryBudget.this.notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Returns true if this reservation was released.
+         *
+         * @return true if this reservation was released
+         */
+        public boolean isReleased() {
+            synchronized (MemoryBudget.this) {
+                return released;
+            }
+        }
+    }
+}
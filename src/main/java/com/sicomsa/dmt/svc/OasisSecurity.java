@@ -18,6 +18,8 @@ import jakarta.xml.soap.SOAPHeaderElement;
 import jakarta.xml.soap.SOAPException;
 
 import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
@@ -28,9 +30,14 @@ import java.security.cert.CertificateEncodingException;
 /**
  * Utility methods for signing envelopes according to the security requested
  * by the WS of CFDI downloads.
+ * <p>The base64 encoding of each certificate is cached, so credentials that
+ * authenticate again reuse their binary security token; up to
+ * {@link OasisSecurity#MAX_CACHED_TOKENS} certificates are kept, the least
+ * recently used are evicted first. Formatting and encoding do not lock; only
+ * the access to the cache does.</p>
  * 
  * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
- * @version 2024.10.28
+ * @version 2025.02.19
  * @since 1.0
  * 
  * 
@@ -59,6 +66,11 @@ public class OasisSecurity {
     public static final String TOKEN_PROFILE_URI = 
             "http://docs.oasis-open.org/wss/2004/01/oasis-200401-wss-x509-token-profile-1.0#X509v3";
     
+    /**
+     * Maximum certificates whose encoding is cached = 256
+     */
+    public static final int MAX_CACHED_TOKENS = 256;
+    
     /**
      * WSSE prefix
      */
@@ -115,11 +127,21 @@ public class OasisSecurity {
     protected String timestampIdUri = "TS";
     
     
-    private Base64.Encoder _encoder;
+    private static final Base64.Encoder ENCODER = Base64.getEncoder();
+    
+    /**
+     * Encoded certificates in access order, guarded by itself
+     */
+    private final LinkedHashMap<X509Certificate,String> tokens = new LinkedHashMap<>(16, 0.75f, true) {
+        private static final long serialVersionUID = 20250219L;
+        @Override protected boolean removeEldestEntry(Map.Entry<X509Certificate,String> eldest) {
+            return (size() > MAX_CACHED_TOKENS);
+        }
+    };
     
-    private long _secondsToAdd = 60 * 5; //5 minutes
+    private volatile long _secondsToAdd = 60 * 5; //5 minutes
     
-    private DateTimeFormatter _formatter;
+    private volatile DateTimeFormatter _formatter;
     
     /**
      * Creates a new default implementation of OasisSecurity
@@ -187,7 +209,7 @@ public class OasisSecurity {
         return wsu;
     }
     ////////////////////////////////////////////////////////////////////////////
-    // synchronized mutable properties. Hence private
+    // volatile mutable properties. Hence private
     ////////////////////////////////////////////////////////////////////////////
     
     /**
@@ -199,7 +221,7 @@ public class OasisSecurity {
      * 
      * @see OasisSecurity#addTimestamp(jakarta.xml.soap.SOAPElement, java.time.Instant, java.lang.String) 
      */
-    public synchronized long getTimestampDuration() {
+    public long getTimestampDuration() {
         return _secondsToAdd;
     }
     
@@ -213,7 +235,7 @@ public class OasisSecurity {
      * 
      * @see OasisSecurity#addTimestamp(jakarta.xml.soap.SOAPElement, java.time.Instant, java.lang.String) 
      */
-    public synchronized void setTimestampDuration(long seconds) {
+    public void setTimestampDuration(long seconds) {
         if (seconds < 1) {
             throw new IllegalArgumentException("invalid duration");
         }
@@ -225,7 +247,7 @@ public class OasisSecurity {
      * 
      * @return the formatter that will be used to format timestamp instants
      */
-    public synchronized DateTimeFormatter getFormatter() {
+    public DateTimeFormatter getFormatter() {
         return _formatter;
     }
     
@@ -234,7 +256,7 @@ public class OasisSecurity {
      * @param formatter the formatter to use
      * @throws IllegalArgumentException if formatter is null
      */
-    public synchronized void setFormatter(DateTimeFormatter formatter) {
+    public void setFormatter(DateTimeFormatter formatter) {
         if (formatter == null) {
             throw new IllegalArgumentException("invalid formatter");
         }
@@ -256,11 +278,19 @@ public class OasisSecurity {
      * 
      * @return a base64 encoder
      */
-    protected synchronized Base64.Encoder getEncoder() {
-        if (_encoder == null) {
-            _encoder = Base64.getEncoder();
+    protected Base64.Encoder getEncoder() {
+        return ENCODER;
+    }
+    
+    /**
+     * Returns the number of certificates whose encoding is cached.
+     * 
+     * @return the number of certificates whose encoding is cached
+     */
+    public int getCachedTokenCount() {
+        synchronized (tokens) {
+            return tokens.size();
         }
-        return _encoder;
     }
 
     ////////////////////////////////////////////////////////////////////////////
@@ -387,14 +417,26 @@ public class OasisSecurity {
     }
     
     /**
-     * Returns the certificate base64 encoded
+     * Returns the certificate base64 encoded, from the cache if it was
+     * encoded before.
      * 
      * @param certificate the certificate to encode
      * @return the certificate base64 encoded
      * @throws CertificateEncodingException  if there were certificate encoding problems
+     * @throws NullPointerException if certificate is null
      */
     public String encode(X509Certificate certificate) throws CertificateEncodingException {
-        return getEncoder().encodeToString(certificate.getEncoded());
+        String token;
+        synchronized (tokens) {
+            token = tokens.get(certificate);
+        }
+        if (token == null) {
+            token = getEncoder().encodeToString(certificate.getEncoded());
+            synchronized (tokens) {
+                tokens.put(certificate, token);
+            }
+        }
+        return token;
     }
     
     ////////////////////////////////////////////////////////////////////////////
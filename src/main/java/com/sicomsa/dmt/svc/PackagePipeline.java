@@ -0,0 +1,1109 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import com.sicomsa.dmt.DMTClient;
+import com.sicomsa.dmt.DescargaResponse;
+import com.sicomsa.dmt.DownloadRepository;
+import com.sicomsa.dmt.RepositoryException;
+
+import jakarta.xml.soap.SOAPConnection;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+
+import java.lang.System.Logger.Level;
+
+/**
+ * <code>PackagePipeline</code> processes downloaded packages through a chain
+ * of stages, each one with its own threads and a bounded queue of pending
+ * items:
+ * <ol>
+ * <li><b>fetch</b>: downloads a package with {@link com.sicomsa.dmt.DMTClient#download(jakarta.xml.soap.SOAPConnection, java.lang.String)},
+ * and saves it as {@link PackagePipeline#save(java.lang.String, java.lang.String, java.lang.String, java.lang.Object)} does.</li>
+ * <li><b>decode</b>: decodes the Base64 package received from the web service.</li>
+ * <li><b>unzip</b>: reads each entry of the decoded zip file; a package with
+ * an entry bigger than the maximum entry size fails.</li>
+ * <li><b>parse</b>: parses the entries whose name ends with ".xml" (CFDIs)
+ * into DOM documents; other entries (metadata) are passed as they are.</li>
+ * <li><b>sink</b>: hands each {@link PackagePipeline.PackageEntry} to the
+ * {@link PackagePipeline.Sink} of this pipeline.</li>
+ * </ol>
+ * <p>Packages enter the pipeline either with the <code>fetch</code> method or
+ * because this pipeline is the <code>DownloadRepository</code> of a service,
+ * in which case the solicitudes do the fetching and each saved package goes
+ * straight to the decode stage. If there is a delegate repository packages are
+ * also saved there before they are decoded.</p>
+ * <p>When the queue of a stage is full the previous stage waits, so memory
+ * stays bounded and parsing overlaps with network waits of the downloads.
+ * Items that fail in a stage are logged and counted, and the pipeline goes on
+ * with the rest.</p>
+ * <p>Instances are created with a {@link PackagePipeline.Builder}, and must
+ * be closed to let the stages finish. Calls to <code>fetch</code> and
+ * <code>save</code> in progress when the pipeline is closed complete, and
+ * their packages are processed; later calls fail.</p>
+ *
+ * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
+ * @version 2025.02.09
+ * @since 1.0
+ *
+ */
+public class PackagePipeline implements DownloadRepository, AutoCloseable {
+
+    private static final System.Logger LOG = System.getLogger(PackagePipeline.class.getName());
+
+    /**
+     * Default capacity of the queue of each stage = 16.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+    /**
+     * Default maximum size in bytes of an entry of a package = 64 MB.
+     */
+    public static final int DEFAULT_MAX_ENTRY_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Repository where packages are also saved, may be null
+     */
+    protected DownloadRepository delegate;
+
+    /**
+     * Receives the entries that reach the end of this pipeline
+     */
+    protected Sink sink;
+
+    /**
+     * Maximum size in bytes of an entry of a package
+     */
+    protected final int maxEntrySize;
+
+    /**
+     * Stage that downloads packages
+     */
+    protected final Stage<Fetch> fetchStage;
+
+    /**
+     * Stage that decodes packages
+     */
+    protected final Stage<Encoded> decodeStage;
+
+    /**
+     * Stage that reads zip entries
+     */
+    protected final Stage<Decoded> unzipStage;
+
+    /**
+     * Stage that parses XML entries
+     */
+    protected final Stage<PackageEntry> parseStage;
+
+    /**
+     * Stage that hands entries to the sink
+     */
+    protected final Stage<PackageEntry> sinkStage;
+
+    /**
+     * True after this pipeline is closed
+     */
+    private volatile boolean closed;
+
+    /**
+     * Calls to fetch and save in progress
+     */
+    private final AtomicInteger calls = new AtomicInteger();
+
+    /**
+     * True once the inputs of fetch and save to the stages are closed
+     */
+    private final AtomicBoolean inputsClosed = new AtomicBoolean();
+
+    private final ThreadLocal<DocumentBuilder> builders = ThreadLocal.withInitial(
+            PackagePipeline::newDocumentBuilder);
+
+    /**
+     * Creates and starts a new <code>PackagePipeline</code> with the
+     * parameters of the specified builder.
+     *
+     * @param builder builder with the parameters of this pipeline
+     */
+    protected PackagePipeline(Builder builder) {
+        this.delegate = builder.delegate;
+        this.sink = builder.sink;
+        this.maxEntrySize = builder.maxEntrySize;
+        int capacity = builder.queueCapacity;
+        sinkStage = new Stage<>("sink", builder.sinkThreads, capacity, null,
+                entry->sink.accept(entry));
+        parseStage = new Stage<>("parse", builder.parseThreads, capacity, sinkStage,
+                this::parse);
+        unzipStage = new Stage<>("unzip", builder.unzipThreads, capacity, parseStage,
+                this::unzip);
+        decodeStage = new Stage<>("decode", builder.decodeThreads, capacity, 2, unzipStage,
+                this::decode); //fed by the fetch stage and by save
+        fetchStage = new Stage<>("fetch", builder.fetchThreads, capacity, decodeStage,
+                this::fetch);
+        getStages().forEach(Stage::start);
+    }
+
+    /**
+     * Returns a new <code>Builder</code> of pipelines.
+     *
+     * @return a new <code>Builder</code>
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Queues the download of the specified package, waiting if the fetch
+     * queue is full.
+     *
+     * @param conn connection to use
+     * @param client client that will download the package
+     * @param packageId id of the package to download
+     * @throws IllegalArgumentException if any parameter is null
+     * @throws IllegalStateException if this pipeline is closed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void fetch(SOAPConnection conn, DMTClient client, String packageId)
+            throws InterruptedException {
+
+        if (conn == null || client == null || packageId == null) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        begin();
+        try {
+            fetchStage.put(new Fetch(conn, client, packageId));
+        }
+        finally {
+            end();
+        }
+    }
+
+    /**
+     * Saves the package in the delegate repository, if any, and queues it
+     * for decoding, waiting if the decode queue is full.
+     *
+     * @param rfc RFC of the contributor that requested the download
+     * @param packageId Id of the package downloaded
+     * @param encodedPackage the package encoded as received from SAT WS.
+     * @param params alternative parameters
+     * @throws IllegalArgumentException if encodedPackage is null
+     * @throws IllegalStateException if this pipeline is closed
+     * @throws RepositoryException if there is a repository problem or if
+     *         interrupted while waiting
+     */
+    @Override public void save(String rfc, String packageId, String encodedPackage, Object params) {
+        begin();
+        try {
+            enqueue(rfc, packageId, encodedPackage, params);
+        }
+        finally {
+            end();
+        }
+    }
+
+    /**
+     * Returns the stages of this pipeline, in processing order.
+     *
+     * @return the stages of this pipeline
+     */
+    public List<Stage<?>> getStages() {
+        return List.of(fetchStage, decodeStage, unzipStage, parseStage, sinkStage);
+    }
+
+    /**
+     * Returns true if this pipeline is closed.
+     *
+     * @return true if this pipeline is closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Returns true if this pipeline is closed and all stages have finished.
+     *
+     * @return true if all stages have finished
+     */
+    public boolean isTerminated() {
+        return sinkStage.isFinished();
+    }
+
+    /**
+     * Stops accepting packages, lets the stages process the pending ones and
+     * waits until the specified timeout for them to finish. Packages of calls
+     * to <code>fetch</code> or <code>save</code> in progress are processed too.
+     *
+     * @param timeout maximum time to wait
+     * @param unit unit of timeout
+     * @return true if all stages finished, false if the timeout elapsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean closeAndWait(long timeout, TimeUnit unit) throws InterruptedException {
+        closed = true;
+        if (calls.get() == 0) {
+            closeInputs();
+        }
+        return sinkStage.awaitFinished(timeout, unit);
+    }
+
+    /**
+     * Stops accepting packages and waits for all pending ones to be processed.
+     */
+    @Override public void close() {
+        try {
+            closeAndWait(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns a string representation of this pipeline and its stages.
+     *
+     * @return a string representation of this pipeline
+     */
+    @Override public String toString() {
+        return new StringBuilder("PackagePipeline{")
+                .append("closed=").append(closed)
+                .append(",stages=").append(getStages())
+                .append("}").toString();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    /// stage handlers
+
+    /**
+     * Downloads the package of the specified item and saves it.
+     *
+     * @param item package to download
+     * @throws Exception if the package could not be downloaded or saved
+     */
+    protected void fetch(Fetch item) throws Exception {
+        DescargaResponse response = item.client.download(item.conn, item.packageId);
+        try {
+            if (!response.isAccept()) {
+                throw new RepositoryException("package not downloaded:"+response);
+            }
+            enqueue(item.client.getRfc(), item.packageId, response.getEncodedPackage(), null);
+        }
+        finally {
+            response.dispose();
+        }
+    }
+
+    /**
+     * Decodes the package of the specified item.
+     *
+     * @param item package to decode
+     * @throws InterruptedException if interrupted while waiting for the next stage
+     */
+    protected void decode(Encoded item) throws InterruptedException {
+        byte[] data = Base64.getDecoder().decode(item.encodedPackage);
+        unzipStage.put(new Decoded(item.rfc, item.packageId, data));
+    }
+
+    /**
+     * Reads the entries of the zip file of the specified item.
+     *
+     * @param item decoded package
+     * @throws Exception if the zip file could not be read
+     */
+    protected void unzip(Decoded item) throws Exception {
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(item.data))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (!entry.isDirectory()) {
+                    parseStage.put(new PackageEntry(item.rfc, item.packageId,
+                            entry.getName(), readEntry(zip, entry)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the current entry of the specified zip stream, up to the maximum
+     * entry size of this pipeline.
+     *
+     * @param zip stream positioned at the entry
+     * @param entry the entry
+     * @return the contents of the entry
+     * @throws ZipException if the entry is bigger than the maximum entry size
+     * @throws IOException if the entry could not be read
+     */
+    protected byte[] readEntry(ZipInputStream zip, ZipEntry entry) throws IOException {
+        if (entry.getSize() > maxEntrySize) {
+            throw new ZipException("entry "+entry.getName()+" exceeds "+maxEntrySize+" bytes");
+        }
+        byte[] data = zip.readNBytes(maxEntrySize);
+        if (data.length == maxEntrySize && zip.read() != -1) {
+            throw new ZipException("entry "+entry.getName()+" exceeds "+maxEntrySize+" bytes");
+        }
+        return data;
+    }
+
+    /**
+     * Parses the specified entry if it is an XML file.
+     *
+     * @param entry entry to parse
+     * @throws Exception if the XML could not be parsed
+     */
+    protected void parse(PackageEntry entry) throws Exception {
+        if (entry.isXml()) {
+            DocumentBuilder builder = builders.get();
+            try {
+                entry.document = builder.parse(entry.openStream());
+            }
+            finally {
+                builder.reset();
+            }
+        }
+        sinkStage.put(entry);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Saves the package in the delegate repository, if any, and queues it
+     * for decoding.
+     *
+     * @param rfc RFC of the contributor that requested the download
+     * @param packageId Id of the package downloaded
+     * @param encodedPackage the package encoded as received from SAT WS.
+     * @param params alternative parameters
+     * @throws RepositoryException if there is a repository problem or if
+     *         interrupted while waiting
+     */
+    protected void enqueue(String rfc, String packageId, String encodedPackage, Object params) {
+        if (encodedPackage == null) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        if (delegate != null) {
+            delegate.save(rfc, packageId, encodedPackage, params);
+        }
+        try {
+            decodeStage.put(new Encoded(rfc, packageId, encodedPackage));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RepositoryException("interrupted while queueing package:"+packageId, e);
+        }
+    }
+
+    /**
+     * Throws an <code>IllegalStateException</code> if this pipeline is closed.
+     */
+    protected void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("pipeline closed");
+        }
+    }
+
+    /**
+     * Counts a call to fetch or save in progress, so the stages it feeds are
+     * not closed before it queues its package.
+     *
+     * @throws IllegalStateException if this pipeline is closed
+     */
+    private void begin() {
+        calls.incrementAndGet();
+        if (closed) {
+            end();
+            throw new IllegalStateException("pipeline closed");
+        }
+    }
+
+    /**
+     * Ends a call to fetch or save, the last one to end after this pipeline
+     * is closed closes the inputs.
+     */
+    private void end() {
+        if (calls.decrementAndGet() == 0 && closed) {
+            closeInputs();
+        }
+    }
+
+    /**
+     * Closes the fetch stage and the input of save to the decode stage, once.
+     * The decode stage is closed when the fetch stage finishes too.
+     */
+    private void closeInputs() {
+        if (inputsClosed.compareAndSet(false, true)) {
+            fetchStage.close();
+            decodeStage.close();
+        }
+    }
+
+    /**
+     * Returns a new namespace aware <code>DocumentBuilder</code> that does not
+     * accept DTDs.
+     *
+     * @return a new <code>DocumentBuilder</code>
+     */
+    protected static DocumentBuilder newDocumentBuilder() {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            return factory.newDocumentBuilder();
+        }
+        catch (ParserConfigurationException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Receives the entries processed by a <code>PackagePipeline</code>.
+     */
+    @FunctionalInterface
+    public interface Sink {
+
+        /**
+         * Invoked with each entry that reaches the end of the pipeline.
+         *
+         * @param entry the processed entry
+         * @throws Exception if the entry could not be processed, it will be
+         *         logged and counted as a failure of the sink stage
+         */
+        public void accept(PackageEntry entry) throws Exception;
+    }
+
+    /**
+     * Work done by a stage with each item.
+     *
+     * @param <T> type of the items
+     */
+    @FunctionalInterface
+    protected interface Handler<T> {
+
+        /**
+         * Processes the specified item.
+         *
+         * @param item item to process
+         * @throws Exception if the item could not be processed
+         */
+        public void process(T item) throws Exception;
+    }
+
+    /**
+     * A stage of a <code>PackagePipeline</code>: a bounded queue of items and
+     * the threads that process them.
+     * <p>A stage is closed once each of its inputs closes it; then it rejects
+     * new items, its threads finish after its queue is empty, and the last one
+     * to finish closes the next stage.</p>
+     *
+     * @param <T> type of the items processed
+     */
+    public static class Stage<T> {
+
+        private static final long POLL_MILLIS = 50;
+
+        private final String name;
+        private final int parallelism;
+        private final BlockingQueue<T> queue;
+        private final Stage<?> next;
+        private final Handler<T> handler;
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger inputs;
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private final LongAdder processed = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder busyNanos = new LongAdder();
+        private volatile boolean closed;
+        private volatile long startNanos;
+        private volatile long endNanos;
+
+        /**
+         * Creates a new stage with the specified parameters.
+         *
+         * @param name name of the stage
+         * @param parallelism number of threads
+         * @param capacity capacity of the queue
+         * @param next stage closed after this one finishes, may be null
+         * @param handler work done with each item
+         * @throws IllegalArgumentException if parallelism or capacity are not
+         *         positive, or if name or handler are null
+         */
+        protected Stage(String name, int parallelism, int capacity, Stage<?> next, Handler<T> handler) {
+            this(name, parallelism, capacity, 1, next, handler);
+        }
+
+        /**
+         * Creates a new stage fed by the specified number of inputs, each one
+         * must close it.
+         *
+         * @param name name of the stage
+         * @param parallelism number of threads
+         * @param capacity capacity of the queue
+         * @param inputs number of inputs that feed this stage
+         * @param next stage closed after this one finishes, may be null
+         * @param handler work done with each item
+         * @throws IllegalArgumentException if parallelism, capacity or inputs
+         *         are not positive, or if name or handler are null
+         */
+        protected Stage(String name, int parallelism, int capacity, int inputs, Stage<?> next, Handler<T> handler) {
+            if (name == null || handler == null || parallelism < 1 || capacity < 1 || inputs < 1) {
+                throw new IllegalArgumentException("invalid parameters");
+            }
+            this.inputs = new AtomicInteger(inputs);
+            this.name = name;
+            this.parallelism = parallelism;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.next = next;
+            this.handler = handler;
+        }
+
+        /**
+         * Starts the threads of this stage.
+         */
+        protected void start() {
+            startNanos = System.nanoTime();
+            running.set(parallelism);
+            for (int idx = 1; idx <= parallelism; idx++) {
+                Thread thread = new Thread(this::work, "PackagePipeline-"+name+"-"+idx);
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+
+        /**
+         * Queues the specified item, waiting if the queue is full.
+         *
+         * @param item item to queue
+         * @throws IllegalStateException if this stage is closed
+         * @throws InterruptedException if interrupted while waiting
+         */
+        protected void put(T item) throws InterruptedException {
+            if (closed) {
+                throw new IllegalStateException("stage "+name+" closed");
+            }
+            queue.put(item);
+        }
+
+        /**
+         * Closes one input of this stage; once all are closed, lets the
+         * threads of this stage finish after the queue is empty.
+         */
+        protected void close() {
+            if (inputs.decrementAndGet() <= 0) {
+                closed = true;
+            }
+        }
+
+        /**
+         * Processes queued items until this stage is closed and its queue is
+         * empty.
+         */
+        protected void work() {
+            try {
+                while (true) {
+                    T item = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (item == null) {
+                        if (closed && queue.isEmpty()) {
+                            break;
+                        }
+                        continue;
+                    }
+                    long start = System.nanoTime();
+                    try {
+                        handler.process(item);
+                        processed.increment();
+                    }
+                    catch (InterruptedException e) {
+                        throw e;
+                    }
+                    catch (Exception e) {
+                        failures.increment();
+                        LOG.log(Level.ERROR, "Stage "+name+" failed to process "+item, e);
+                    }
+                    finally {
+                        busyNanos.add(System.nanoTime() - start);
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finally {
+                if (running.decrementAndGet() == 0) {
+                    endNanos = System.nanoTime();
+                    finished.countDown();
+                    if (next != null) {
+                        next.close();
+                    }
+                    LOG.log(Level.DEBUG, "{0}", this);
+                }
+            }
+        }
+
+        /**
+         * Waits until all threads of this stage have finished.
+         *
+         * @param timeout maximum time to wait
+         * @param unit unit of timeout
+         * @return true if finished, false if the timeout elapsed
+         * @throws InterruptedException if interrupted while waiting
+         */
+        protected boolean awaitFinished(long timeout, TimeUnit unit) throws InterruptedException {
+            return finished.await(timeout, unit);
+        }
+
+        /**
+         * Returns true if all threads of this stage have finished.
+         *
+         * @return true if all threads of this stage have finished
+         */
+        public boolean isFinished() {
+            return finished.getCount() == 0;
+        }
+
+        /**
+         * Returns the name of this stage.
+         *
+         * @return the name of this stage
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the number of threads of this stage.
+         *
+         * @return the number of threads of this stage
+         */
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        /**
+         * Returns the number of items waiting in the queue of this stage.
+         *
+         * @return the number of items waiting
+         */
+        public int getQueueSize() {
+            return queue.size();
+        }
+
+        /**
+         * Returns the number of items processed successfully.
+         *
+         * @return the number of items processed successfully
+         */
+        public long getProcessedCount() {
+            return processed.sum();
+        }
+
+        /**
+         * Returns the number of items that failed.
+         *
+         * @return the number of items that failed
+         */
+        public long getFailureCount() {
+            return failures.sum();
+        }
+
+        /**
+         * Returns the time threads of this stage spent processing items, in
+         * nanoseconds, including the time waiting for the next stage.
+         *
+         * @return the time spent processing items in nanoseconds
+         */
+        public long getBusyNanos() {
+            return busyNanos.sum();
+        }
+
+        /**
+         * Returns the items processed per second, successfully or not, since
+         * this stage started until it finished or until now.
+         *
+         * @return the items processed per second
+         */
+        public double getThroughput() {
+            long end = (isFinished() ? endNanos : System.nanoTime());
+            long elapsed = end - startNanos;
+            long count = processed.sum() + failures.sum();
+            return (elapsed <= 0 ? 0 : count * 1e9 / elapsed);
+        }
+
+        /**
+         * Returns a string representation of this stage and its metrics.
+         *
+         * @return a string representation of this stage
+         */
+        @Override public String toString() {
+            return new StringBuilder("Stage{")
+                    .append("name=").append(name)
+                    .append(",parallelism=").append(parallelism)
+                    .append(",queued=").append(getQueueSize())
+                    .append(",processed=").append(getProcessedCount())
+                    .append(",failures=").append(getFailureCount())
+                    .append(",busyMillis=").append(getBusyNanos() / 1_000_000)
+                    .append(",throughput=").append(String.format("%.2f", getThroughput()))
+                    .append("}").toString();
+        }
+    }
+
+    /**
+     * An entry of a downloaded package; if it is an XML file (CFDI) the
+     * parse stage sets its document.
+     */
+    public static class PackageEntry {
+
+        private final String rfc;
+        private final String packageId;
+        private final String name;
+        private final byte[] data;
+        private volatile Document document;
+
+        /**
+         * Creates a new <code>PackageEntry</code> with the specified parameters.
+         *
+         * @param rfc RFC of the contributor that requested the download
+         * @param packageId Id of the package
+         * @param name name of the entry in the zip file
+         * @param data contents of the entry, not copied
+         */
+        protected PackageEntry(String rfc, String packageId, String name, byte[] data) {
+            this.rfc = rfc;
+            this.packageId = packageId;
+            this.name = name;
+            this.data = data;
+        }
+
+        /**
+         * Returns the RFC of the contributor that requested the download.
+         *
+         * @return the RFC of the contributor that requested the download
+         */
+        public String getRfc() {
+            return rfc;
+        }
+
+        /**
+         * Returns the Id of the package of this entry.
+         *
+         * @return the Id of the package of this entry
+         */
+        public String getPackageId() {
+            return packageId;
+        }
+
+        /**
+         * Returns the name of this entry in the zip file.
+         *
+         * @return the name of this entry
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns true if the name of this entry ends with ".xml".
+         *
+         * @return true if this entry is an XML file
+         */
+        public boolean isXml() {
+            return name.regionMatches(true, name.length() - 4, ".xml", 0, 4);
+        }
+
+        /**
+         * Returns the size in bytes of this entry.
+         *
+         * @return the size in bytes of this entry
+         */
+        public int size() {
+            return data.length;
+        }
+
+        /**
+         * Returns a new stream to read the contents of this entry.
+         *
+         * @return a new stream to read the contents of this entry
+         */
+        public InputStream openStream() {
+            return new ByteArrayInputStream(data);
+        }
+
+        /**
+         * Returns the parsed document of this entry, or null if it is not an
+         * XML file or has not been parsed.
+         *
+         * @return the parsed document of this entry, or null
+         */
+        public Document getDocument() {
+            return document;
+        }
+
+        @Override public String toString() {
+            return new StringBuilder("PackageEntry{")
+                    .append("rfc=").append(rfc)
+                    .append(",packageId=").append(packageId)
+                    .append(",name=").append(name)
+                    .append(",size=").append(data.length)
+                    .append("}").toString();
+        }
+    }
+
+    /**
+     * A package to download.
+     */
+    protected static class Fetch {
+        final SOAPConnection conn;
+        final DMTClient client;
+        final String packageId;
+
+        Fetch(SOAPConnection conn, DMTClient client, String packageId) {
+            this.conn = conn;
+            this.client = client;
+            this.packageId = packageId;
+        }
+
+        @Override public String toString() {
+            return "Fetch{packageId="+packageId+"}";
+        }
+    }
+
+    /**
+     * A package as received from the web service.
+     */
+    protected static class Encoded {
+        final String rfc;
+        final String packageId;
+        final String encodedPackage;
+
+        Encoded(String rfc, String packageId, String encodedPackage) {
+            this.rfc = rfc;
+            this.packageId = packageId;
+            this.encodedPackage = encodedPackage;
+        }
+
+        @Override public String toString() {
+            return "Encoded{packageId="+packageId+"}";
+        }
+    }
+
+    /**
+     * A decoded package.
+     */
+    protected static class Decoded {
+        final String rfc;
+        final String packageId;
+        final byte[] data;
+
+        Decoded(String rfc, String packageId, byte[] data) {
+            this.rfc = rfc;
+            this.packageId = packageId;
+            this.data = data;
+        }
+
+        @Override public String toString() {
+            return "Decoded{packageId="+packageId+"}";
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Builder of <code>PackagePipeline</code>s.
+     * <p>By default every stage has one thread, except the parse stage that
+     * has one per available processor.</p>
+     */
+    public static class Builder {
+
+        /**
+         * Repository where packages are also saved
+         */
+        protected DownloadRepository delegate;
+
+        /**
+         * Receives processed entries
+         */
+        protected Sink sink;
+
+        /**
+         * Capacity of the queue of each stage
+         */
+        protected int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+        /**
+         * Maximum size in bytes of an entry of a package
+         */
+        protected int maxEntrySize = DEFAULT_MAX_ENTRY_SIZE;
+
+        /**
+         * Threads of the fetch stage
+         */
+        protected int fetchThreads = 1;
+
+        /**
+         * Threads of the decode stage
+         */
+        protected int decodeThreads = 1;
+
+        /**
+         * Threads of the unzip stage
+         */
+        protected int unzipThreads = 1;
+
+        /**
+         * Threads of the parse stage
+         */
+        protected int parseThreads = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * Threads of the sink stage
+         */
+        protected int sinkThreads = 1;
+
+        /**
+         * Creates a new <code>Builder</code> with default parameters.
+         */
+        public Builder() {
+        }
+
+        /**
+         * Sets the repository where packages are also saved before decoding.
+         *
+         * @param delegate the repository, may be null
+         * @return this builder
+         */
+        public Builder setDelegate(DownloadRepository delegate) {
+            this.delegate = delegate;
+            return this;
+        }
+
+        /**
+         * Sets the sink that receives processed entries.
+         *
+         * @param sink the sink
+         * @return this builder
+         */
+        public Builder setSink(Sink sink) {
+            this.sink = sink;
+            return this;
+        }
+
+        /**
+         * Sets the capacity of the queue of each stage.
+         *
+         * @param queueCapacity the capacity
+         * @return this builder
+         */
+        public Builder setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * Sets the maximum size in bytes of an entry of a package; packages
+         * with bigger entries fail in the unzip stage.
+         *
+         * @param maxEntrySize the maximum size in bytes
+         * @return this builder
+         */
+        public Builder setMaxEntrySize(int maxEntrySize) {
+            this.maxEntrySize = maxEntrySize;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads of the fetch stage.
+         *
+         * @param threads number of threads
+         * @return this builder
+         */
+        public Builder setFetchParallelism(int threads) {
+            this.fetchThreads = threads;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads of the decode stage.
+         *
+         * @param threads number of threads
+         * @return this builder
+         */
+        public Builder setDecodeParallelism(int threads) {
+            this.decodeThreads = threads;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads of the unzip stage.
+         *
+         * @param threads number of threads
+         * @return this builder
+         */
+        public Builder setUnzipParallelism(int threads) {
+            this.unzipThreads = threads;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads of the parse stage.
+         *
+         * @param threads number of threads
+         * @return this builder
+         */
+        public Builder setParseParallelism(int threads) {
+            this.parseThreads = threads;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads of the sink stage; with more than one
+         * the sink must be thread safe.
+         *
+         * @param threads number of threads
+         * @return this builder
+         */
+        public Builder setSinkParallelism(int threads) {
+            this.sinkThreads = threads;
+            return this;
+        }
+
+        /**
+         * Creates and starts a new <code>PackagePipeline</code> with the
+         * parameters of this builder.
+         *
+         * @return a new started <code>PackagePipeline</code>
+         * @throws IllegalArgumentException if sink is null, or if the queue
+         *         capacity, the maximum entry size or any number of threads
+         *         is not positive
+         */
+        public PackagePipeline build() {
+            if (sink == null || queueCapacity < 1 || maxEntrySize < 1 || fetchThreads < 1 || decodeThreads < 1
+                    || unzipThreads < 1 || parseThreads < 1 || sinkThreads < 1) {
+                throw new IllegalArgumentException("invalid parameters");
+            }
+            return new PackagePipeline(this);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import com.sicomsa.dmt.DownloadRepository;
+import com.sicomsa.dmt.RepositoryException;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * <code>DownloadRepository</code> that publishes the decoded contents of each
+ * package it saves to {@link java.util.concurrent.Flow.Subscriber}s, and
+ * optionally saves them in another repository before.
+ * <p>Each subscriber has a buffer of <code>maxBufferCapacity</code> packages;
+ * when a subscriber's buffer is full <code>save</code> waits until the
+ * subscriber requests more packages, which keeps the memory used by
+ * downloaded packages bounded.</p>
+ * <p>Packages saved after this repository is closed are only saved in the
+ * delegate repository, if any.</p>
+ *
+ * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
+ * @version 2025.02.08
+ * @since 1.0
+ *
+ */
+public class PublishingRepository implements DownloadRepository,
+        Flow.Publisher<PublishingRepository.PackageItem>, AutoCloseable {
+
+    /**
+     * Repository where packages are also saved, may be null
+     */
+    protected DownloadRepository delegate;
+
+    /**
+     * Publisher that delivers packages to subscribers
+     */
+    protected SubmissionPublisher<PackageItem> publisher;
+
+    /**
+     * Creates a new <code>PublishingRepository</code> that only publishes
+     * packages, using the common pool and default buffer size.
+     */
+    public PublishingRepository() {
+        this(null);
+    }
+
+    /**
+     * Creates a new <code>PublishingRepository</code> that saves packages in
+     * the specified repository before publishing them, using the common pool
+     * and default buffer size.
+     *
+     * @param delegate repository where packages are also saved, may be null
+     */
+    public PublishingRepository(DownloadRepository delegate) {
+        this.delegate = delegate;
+        this.publisher = new SubmissionPublisher<>();
+    }
+
+    /**
+     * Creates a new <code>PublishingRepository</code> with the specified
+     * parameters.
+     *
+     * @param delegate repository where packages are also saved, may be null
+     * @param executor executor that delivers packages to subscribers
+     * @param maxBufferCapacity maximum packages buffered per subscriber
+     * @throws NullPointerException if executor is null
+     * @throws IllegalArgumentException if maxBufferCapacity is not positive
+     */
+    public PublishingRepository(DownloadRepository delegate, Executor executor, int maxBufferCapacity) {
+        this.delegate = delegate;
+        this.publisher = new SubmissionPublisher<>(executor, maxBufferCapacity);
+    }
+
+    @Override public void subscribe(Flow.Subscriber<? super PackageItem> subscriber) {
+        publisher.subscribe(subscriber);
+    }
+
+    /**
+     * Saves the package in the delegate repository, if any, and publishes
+     * its decoded contents to subscribers.
+     *
+     * @param rfc RFC of the contributor that requested the download
+     * @param packageId Id of the package downloaded
+     * @param encodedPackage the package encoded as received from SAT WS.
+     * @param params alternative parameters
+     * @throws RepositoryException if there is a repository problem or the
+     *         package is not valid Base64
+     */
+    @Override public void save(String rfc, String packageId, String encodedPackage, Object params) {
+        if (delegate != null) {
+            delegate.save(rfc, packageId, encodedPackage, params);
+        }
+        if (publisher.isClosed() || publisher.getNumberOfSubscribers() == 0) {
+            return;
+        }
+        byte[] data;
+        try {
+            data = Base64.getDecoder().decode(encodedPackage);
+        }
+        catch (IllegalArgumentException | NullPointerException e) {
+            throw new RepositoryException("invalid package:"+packageId, e);
+        }
+        try {
+            publisher.submit(new PackageItem(rfc, packageId, data));
+        }
+        catch (IllegalStateException e) {
+            //closed after the check, packages saved after closing are not published
+        }
+    }
+
+    /**
+     * Returns the repository where packages are also saved, or null.
+     *
+     * @return the repository where packages are also saved, or null
+     */
+    public DownloadRepository getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Returns the number of current subscribers.
+     *
+     * @return the number of current subscribers
+     */
+    public int getNumberOfSubscribers() {
+        return publisher.getNumberOfSubscribers();
+    }
+
+    /**
+     * Closes this repository's publisher, current subscribers are notified
+     * with <code>onComplete</code> after consuming buffered packages.
+     */
+    @Override public void close() {
+        publisher.close();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * A downloaded package with its decoded contents.
+     */
+    public static class PackageItem {
+
+        private final String rfc;
+        private final String packageId;
+        private final byte[] data;
+
+        /**
+         * Creates a new <code>PackageItem</code> with the specified parameters.
+         *
+         * @param rfc RFC of the contributor that requested the download
+         * @param packageId Id of the package
+         * @param data decoded contents of the package, not copied
+         */
+        protected PackageItem(String rfc, String packageId, byte[] data) {
+            this.rfc = rfc;
+            this.packageId = packageId;
+            this.data = data;
+        }
+
+        /**
+         * Returns the RFC of the contributor that requested the download.
+         *
+         * @return the RFC of the contributor that requested the download
+         */
+        public String getRfc() {
+            return rfc;
+        }
+
+        /**
+         * Returns the Id of this package.
+         *
+         * @return the Id of this package
+         */
+        public String getPackageId() {
+            return packageId;
+        }
+
+        /**
+         * Returns the size in bytes of the decoded contents.
+         *
+         * @return the size in bytes of the decoded contents
+         */
+        public int size() {
+            return data.length;
+        }
+
+        /**
+         * Returns a read only buffer with the decoded contents (zip file).
+         *
+         * @return a read only buffer with the decoded contents
+         */
+        public ByteBuffer getData() {
+            return ByteBuffer.wrap(data).asReadOnlyBuffer();
+        }
+
+        /**
+         * Returns a new stream to read the decoded contents (zip file).
+         *
+         * @return a new stream to read the decoded contents
+         */
+        public InputStream openStream() {
+            return new ByteArrayInputStream(data);
+        }
+
+        @Override public String toString() {
+            return new StringBuilder("PackageItem{")
+                    .append("rfc=").append(rfc)
+                    .append(",packageId=").append(packageId)
+                    .append(",size=").append(data.length)
+                    .append("}").toString();
+        }
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import jakarta.xml.soap.SOAPException;
+import jakarta.xml.soap.SOAPFault;
+import jakarta.xml.soap.SOAPMessage;
+import jakarta.xml.ws.soap.SOAPFaultException;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.InstantSource;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import javax.xml.namespace.QName;
+
+import java.lang.System.Logger.Level;
+
+/**
+ * <code>RecordingTransport</code> is a {@link SoapTransport} that calls the
+ * web service through another transport and saves each exchange to an
+ * archive, so it can be served again by a {@link ReplayTransport}.
+ * <p>To record a session against SAT, set a recorder as the transport of the
+ * services, see {@link DownloadService#setTransport(com.sicomsa.dmt.svc.SoapTransport)};
+ * the recorder may wrap an {@link HttpClientTransport} or a
+ * <code>SOAPConnection</code>:</p>
+ * <pre>
+ *   RecordingTransport recorder = new RecordingTransport(
+ *           (request, location)-&gt;connection.call(request, location),
+ *           Files.newOutputStream(path), false);
+ *   service.setTransport(recorder);
+ * </pre>
+ * <p>The archive is a GZIP stream of records, written as they complete by a
+ * <code>DataOutputStream</code>, preceded by {@link RecordingTransport#MAGIC}
+ * and {@link RecordingTransport#VERSION}. Each record has a type byte, the
+ * epoch millisecond it was received, the location, the SOAP action and the
+ * request (length -1 if requests are not recorded); then the content type and
+ * bytes of the response, or the kind and class of the exception thrown, its
+ * message as length prefixed UTF-8 bytes and the fault code of a
+ * <code>SOAPFaultException</code>. A zero type byte ends the archive. Each
+ * record is encoded in memory first and copied to the archive in one step,
+ * so a record that can not be encoded never corrupts the archive. Requests
+ * hold signatures and certificates and are not needed to replay, so they
+ * are only recorded if requested.</p>
+ * <p>The archive is complete once the recorder is {@link RecordingTransport#close() closed}.
+ * This class is thread safe.</p>
+ *
+ * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
+ * @version 2025.02.19
+ * @since 1.0
+ *
+ */
+public class RecordingTransport implements SoapTransport, AutoCloseable {
+
+    private static final System.Logger LOG = System.getLogger(RecordingTransport.class.getName());
+
+    /**
+     * First bytes of an archive = "DMTR"
+     */
+    public static final int MAGIC = 0x444D5452;
+
+    /**
+     * Version of the archive format = 2
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Type of record of a response received
+     */
+    protected static final int RESPONSE = 1;
+
+    /**
+     * Type of record of an exception thrown
+     */
+    protected static final int FAILURE = 2;
+
+    /**
+     * Type that ends the archive
+     */
+    protected static final int END = 0;
+
+    /**
+     * Kind of exception thrown, a <code>SOAPException</code>
+     */
+    protected static final int SOAP_EXCEPTION = 1;
+
+    /**
+     * Kind of exception thrown, a <code>SOAPFaultException</code>
+     */
+    protected static final int FAULT_EXCEPTION = 2;
+
+    /**
+     * Kind of exception thrown, any other <code>RuntimeException</code>,
+     * replayed as a <code>WebServiceException</code>
+     */
+    protected static final int WEB_SERVICE_EXCEPTION = 3;
+
+    /**
+     * Transport that calls the web service
+     */
+    protected final SoapTransport delegate;
+
+    /**
+     * True to save the requests too
+     */
+    protected final boolean recordRequests;
+
+    private final InstantSource clock;
+    private final DataOutputStream out;
+    private boolean closed;
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    /**
+     * Creates a new <code>RecordingTransport</code> that calls the web
+     * service through the specified transport and writes the archive to the
+     * specified stream.
+     *
+     * @param delegate transport that calls the web service
+     * @param out stream to write the archive to, closed with this recorder
+     * @param recordRequests true to save the requests too
+     * @throws IllegalArgumentException if delegate or out are null
+     * @throws IOException if unable to write the header of the archive
+     */
+    public RecordingTransport(SoapTransport delegate, OutputStream out, boolean recordRequests) throws IOException {
+        this(delegate, out, recordRequests, InstantSource.system());
+    }
+
+    /**
+     * Creates a new <code>RecordingTransport</code> with the specified
+     * parameters.
+     *
+     * @param delegate transport that calls the web service
+     * @param out stream to write the archive to, closed with this recorder
+     * @param recordRequests true to save the requests too
+     * @param clock instant source of the instant of each record
+     * @throws IllegalArgumentException if any parameter is null
+     * @throws IOException if unable to write the header of the archive
+     */
+    public RecordingTransport(SoapTransport delegate, OutputStream out, boolean recordRequests,
+            InstantSource clock) throws IOException {
+        if (delegate == null || out == null || clock == null) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        this.delegate = delegate;
+        this.recordRequests = recordRequests;
+        this.clock = clock;
+        this.out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(out, 64 * 1024), 64 * 1024));
+        this.out.writeInt(MAGIC);
+        this.out.writeByte(VERSION);
+    }
+
+    /**
+     * Calls the web service through the delegate and records the exchange;
+     * exceptions thrown by the delegate are recorded and thrown again.
+     * <p>If the messages can not be serialized or the archive can not be
+     * written, the exchange is not recorded but the response is still
+     * returned, or the exception of the delegate thrown.</p>
+     *
+     * @param request the message to send
+     * @param location the location of the web service
+     * @return the message received
+     * @throws SOAPException if the delegate throws it
+     */
+    @Override public SOAPMessage call(SOAPMessage request, String location) throws SOAPException {
+        byte[] sent = null;
+        boolean record = true;
+        if (recordRequests) {
+            try {
+                sent = toBytes(request);
+            }
+            catch (SOAPException | RuntimeException e) {
+                LOG.log(Level.ERROR, "Unable to record exchange with {0}: {1}", location, e.getMessage());
+                record = false;
+            }
+        }
+        SOAPMessage response;
+        try {
+            response = delegate.call(request, location);
+        }
+        catch (SOAPException | RuntimeException e) {
+            if (record) {
+                write(FAILURE, location, request, sent, null, e);
+            }
+            throw e;
+        }
+        if (record) {
+            write(RESPONSE, location, request, sent, response, null);
+        }
+        return response;
+    }
+
+    /**
+     * Ends and closes the archive. Calls after closing are not recorded.
+     *
+     * @throws IOException if unable to close the archive
+     */
+    @Override public void close() throws IOException {
+        synchronized (out) {
+            if (!closed) {
+                closed = true;
+                out.writeByte(END);
+                out.close();
+            }
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    /// Metrics
+
+    /**
+     * Returns the number of exchanges recorded.
+     *
+     * @return the number of exchanges recorded
+     */
+    public long getRecordedCount() {
+        return recorded.get();
+    }
+
+    /**
+     * Returns the number of uncompressed bytes of the messages recorded.
+     *
+     * @return the number of uncompressed bytes of the messages recorded
+     */
+    public long getRecordedBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * Returns a string representation of this recorder.
+     *
+     * @return a string representation of this recorder
+     */
+    @Override public String toString() {
+        return new StringBuilder("RecordingTransport{")
+                .append("recordRequests=").append(recordRequests)
+                .append(",recorded=").append(getRecordedCount())
+                .append(",bytes=").append(getRecordedBytes())
+                .append("}").toString();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Encodes a record and copies it to the archive; errors are logged and
+     * the record skipped.
+     */
+    private void write(int type, String location, SOAPMessage request, byte[] sent,
+            SOAPMessage response, Exception failure) {
+        byte[] received = null;
+        try {
+            String contentType = null;
+            if (type == RESPONSE) {
+                contentType = contentType(response);
+                received = toBytes(response);
+            }
+            ByteArrayOutputStream record = new ByteArrayOutputStream(1024
+                    + (sent == null ? 0 : sent.length) + (received == null ? 0 : received.length));
+            DataOutputStream data = new DataOutputStream(record);
+            data.writeByte(type);
+            data.writeLong(clock.millis());
+            data.writeUTF(location);
+            data.writeUTF(soapAction(request));
+            writeBytes(data, sent);
+            if (type == RESPONSE) {
+                data.writeUTF(contentType);
+                writeBytes(data, received);
+            }
+            else {
+                writeFailure(data, failure);
+            }
+            synchronized (out) {
+                if (closed) {
+                    return;
+                }
+                record.writeTo(out);
+            }
+        }
+        catch (IOException | SOAPException | RuntimeException e) {
+            LOG.log(Level.ERROR, "Unable to record exchange with {0}: {1}", location, e.getMessage());
+            return;
+        }
+        recorded.incrementAndGet();
+        bytes.addAndGet((sent == null ? 0 : sent.length) + (received == null ? 0 : received.length));
+    }
+
+    private static void writeFailure(DataOutputStream data, Exception failure) throws IOException {
+        SOAPFault fault = null;
+        if (failure instanceof SOAPFaultException e) {
+            data.writeByte(FAULT_EXCEPTION);
+            fault = e.getFault();
+        }
+        else if (failure instanceof SOAPException) {
+            data.writeByte(SOAP_EXCEPTION);
+        }
+        else {
+            data.writeByte(WEB_SERVICE_EXCEPTION);
+        }
+        data.writeUTF(failure.getClass().getName());
+        String message = failure.getMessage();
+        writeBytes(data, (message == null ? null : message.getBytes(StandardCharsets.UTF_8)));
+        QName code = (fault == null ? null : fault.getFaultCodeAsQName());
+        data.writeUTF(code == null ? "" : code.toString());
+    }
+
+    private static void writeBytes(DataOutputStream data, byte[] array) throws IOException {
+        if (array == null) {
+            data.writeInt(-1);
+        }
+        else {
+            data.writeInt(array.length);
+            data.write(array);
+        }
+    }
+
+    /**
+     * Returns the bytes of the specified message.
+     *
+     * @param message the message
+     * @return the bytes of the message
+     * @throws SOAPException if unable to write the message
+     */
+    protected byte[] toBytes(SOAPMessage message) throws SOAPException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(8 * 1024);
+        try {
+            message.writeTo(buffer);
+        }
+        catch (IOException e) {
+            throw new SOAPException(e.getMessage(), e);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static String soapAction(SOAPMessage request) {
+        String[] action = (request == null ? null : request.getMimeHeaders().getHeader("SOAPAction"));
+        return (action == null || action.length == 0 || action[0] == null ? "" : action[0]);
+    }
+
+    private static String contentType(SOAPMessage response) {
+        String[] type = response.getMimeHeaders().getHeader("Content-Type");
+        return (type == null || type.length == 0 || type[0] == null ? "text/xml; charset=utf-8" : type[0]);
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import com.sicomsa.dmt.util.SOAPFactories;
+
+import jakarta.xml.soap.MimeHeaders;
+import jakarta.xml.soap.SOAPException;
+import jakarta.xml.soap.SOAPFactory;
+import jakarta.xml.soap.SOAPMessage;
+import jakarta.xml.ws.WebServiceException;
+import jakarta.xml.ws.soap.SOAPFaultException;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.namespace.QName;
+
+/**
+ * <code>ReplayTransport</code> is a {@link SoapTransport} that serves the
+ * responses saved in an archive by a {@link RecordingTransport}, without
+ * calling the web service.
+ * <p>The archive is loaded in memory when the transport is created. Each
+ * location serves its responses in the order they were recorded, whatever
+ * the request; a recorded exception is thrown again with the same message,
+ * as a <code>SOAPFaultException</code>, a <code>SOAPException</code> or, for
+ * other runtime exceptions, a <code>WebServiceException</code>.
+ * Once the responses of a location are exhausted it starts over if
+ * <code>loop</code> is true, otherwise calls fail with a <code>SOAPException</code>.</p>
+ * <p>Set as the transport of a {@link DownloadService}, a recorded session
+ * can be replayed at full speed to measure parsing, the state machine of
+ * the solicitudes and the repositories against real data. Tokens are
+ * validated against the instant source of the service, so to replay an old
+ * session that instant source should be set back to the recording, see
+ * {@link DefaultMessageFactory#setInstantSource(java.time.InstantSource)}.</p>
+ * <p>This class is thread safe.</p>
+ *
+ * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
+ * @version 2025.02.19
+ * @since 1.0
+ *
+ */
+public class ReplayTransport implements SoapTransport {
+
+    /**
+     * Fault code of recorded faults without one
+     */
+    private static final QName SERVER_FAULT = new QName("http://schemas.xmlsoap.org/soap/envelope/", "Server");
+
+    /**
+     * True to start over once the responses of a location are exhausted
+     */
+    protected final boolean loop;
+
+    /**
+     * Exchanges recorded mapped by location
+     */
+    private final Map<String,List<Exchange>> exchanges;
+
+    private final Map<String,AtomicInteger> positions = new HashMap<>();
+    private final Instant first;
+    private final int count;
+    private final AtomicLong served = new AtomicLong();
+
+    /**
+     * Creates a new <code>ReplayTransport</code> with the exchanges of the
+     * archive read from the specified stream, which is not closed.
+     *
+     * @param in stream to read the archive from
+     * @param loop true to start over once the responses of a location are exhausted
+     * @throws IllegalArgumentException if in is null
+     * @throws IOException if unable to read the archive, or if it is not
+     *         an archive of a supported version
+     */
+    public ReplayTransport(InputStream in, boolean loop) throws IOException {
+        if (in == null) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        this.loop = loop;
+        DataInputStream data = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in, 64 * 1024), 64 * 1024));
+        if (data.readInt() != RecordingTransport.MAGIC) {
+            throw new IOException("not a recorded archive");
+        }
+        int version = data.readUnsignedByte();
+        if (version != RecordingTransport.VERSION) {
+            throw new IOException("unsupported archive version "+version);
+        }
+        Map<String,List<Exchange>> map = new HashMap<>();
+        Instant start = null;
+        int total = 0;
+        int type;
+        while ((type = data.readUnsignedByte()) != RecordingTransport.END) {
+            Exchange exchange = read(type, data);
+            map.computeIfAbsent(exchange.location, location->new ArrayList<>()).add(exchange);
+            if (start == null) {
+                start = exchange.instant;
+            }
+            total++;
+        }
+        map.keySet().forEach(location->positions.put(location, new AtomicInteger()));
+        this.exchanges = map;
+        this.first = start;
+        this.count = total;
+    }
+
+    /**
+     * Returns the next response recorded for the specified location.
+     *
+     * @param request the message to send, ignored
+     * @param location the location of the web service
+     * @return the next response recorded for the location
+     * @throws SOAPException if the exchange recorded failed with a
+     *         <code>SOAPException</code>, if there are no more responses for
+     *         the location, or if the response recorded can not be parsed
+     * @throws SOAPFaultException if the exchange recorded failed with it
+     * @throws WebServiceException if the exchange recorded failed with
+     *         another runtime exception
+     */
+    @Override public SOAPMessage call(SOAPMessage request, String location) throws SOAPException {
+        List<Exchange> list = exchanges.get(location);
+        if (list == null) {
+            throw new SOAPException("no exchanges recorded for "+location);
+        }
+        int index = positions.get(location).getAndIncrement();
+        if (index < 0 || index >= list.size()) {
+            if (!loop) {
+                throw new SOAPException("no more exchanges recorded for "+location);
+            }
+            index = Math.floorMod(index, list.size());
+        }
+        served.incrementAndGet();
+        Exchange exchange = list.get(index);
+        if (exchange.kind != 0) {
+            fail(exchange);
+        }
+        MimeHeaders headers = new MimeHeaders();
+        headers.addHeader("Content-Type", exchange.contentType);
+        try {
+            return SOAPFactories.getMessageFactory().createMessage(headers, new ByteArrayInputStream(exchange.response));
+        }
+        catch (IOException e) {
+            throw new SOAPException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Starts serving the responses of every location from the first one.
+     */
+    public void rewind() {
+        positions.values().forEach(position->position.set(0));
+    }
+
+    /**
+     * Returns the locations with exchanges recorded.
+     *
+     * @return an unmodifiable set with the locations with exchanges recorded
+     */
+    public Set<String> getLocations() {
+        return Collections.unmodifiableSet(exchanges.keySet());
+    }
+
+    /**
+     * Returns the number of exchanges recorded for the specified location.
+     *
+     * @param location the location
+     * @return the number of exchanges recorded for the location
+     */
+    public int getExchangeCount(String location) {
+        List<Exchange> list = exchanges.get(location);
+        return (list == null ? 0 : list.size());
+    }
+
+    /**
+     * Returns the instant the first exchange was recorded, or null if the
+     * archive is empty.
+     *
+     * @return the instant the first exchange was recorded, or null
+     */
+    public Instant getFirstInstant() {
+        return first;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    /// Metrics
+
+    /**
+     * Returns the number of exchanges recorded.
+     *
+     * @return the number of exchanges recorded
+     */
+    public int getExchangeCount() {
+        return count;
+    }
+
+    /**
+     * Returns the number of calls served.
+     *
+     * @return the number of calls served
+     */
+    public long getServedCount() {
+        return served.get();
+    }
+
+    /**
+     * Returns a string representation of this transport.
+     *
+     * @return a string representation of this transport
+     */
+    @Override public String toString() {
+        return new StringBuilder("ReplayTransport{")
+                .append("loop=").append(loop)
+                .append(",locations=").append(exchanges.size())
+                .append(",exchanges=").append(getExchangeCount())
+                .append(",served=").append(getServedCount())
+                .append("}").toString();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Throws again the exception recorded for the specified exchange.
+     */
+    private static void fail(Exchange exchange) throws SOAPException {
+        if (exchange.kind == RecordingTransport.FAULT_EXCEPTION) {
+            QName code = (exchange.faultCode.isEmpty() ? SERVER_FAULT : QName.valueOf(exchange.faultCode));
+            throw new SOAPFaultException(SOAPFactory.newInstance().createFault(String.valueOf(exchange.failure), code));
+        }
+        if (exchange.kind == RecordingTransport.WEB_SERVICE_EXCEPTION) {
+            throw new WebServiceException(exchange.failure);
+        }
+        throw new SOAPException(exchange.failure);
+    }
+
+    private static Exchange read(int type, DataInputStream data) throws IOException {
+        if (type != RecordingTransport.RESPONSE && type != RecordingTransport.FAILURE) {
+            throw new IOException("invalid record type "+type);
+        }
+        Exchange exchange = new Exchange();
+        exchange.instant = Instant.ofEpochMilli(data.readLong());
+        exchange.location = data.readUTF();
+        data.readUTF(); //soap action
+        readBytes(data); //request, not needed to replay
+        if (type == RecordingTransport.RESPONSE) {
+            exchange.contentType = data.readUTF();
+            exchange.response = readBytes(data);
+            if (exchange.response == null) {
+                throw new EOFException("missing response");
+            }
+        }
+        else {
+            exchange.kind = data.readUnsignedByte();
+            if (exchange.kind < RecordingTransport.SOAP_EXCEPTION
+                    || exchange.kind > RecordingTransport.WEB_SERVICE_EXCEPTION) {
+                throw new IOException("invalid exception kind "+exchange.kind);
+            }
+            data.readUTF(); //exception class
+            byte[] message = readBytes(data);
+            exchange.failure = (message == null ? null : new String(message, StandardCharsets.UTF_8));
+            exchange.faultCode = data.readUTF();
+        }
+        return exchange;
+    }
+
+    private static byte[] readBytes(DataInputStream data) throws IOException {
+        int length = data.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        data.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * An exchange recorded.
+     */
+    private static final class Exchange {
+        private Instant instant;
+        private String location;
+        private String contentType;
+        private byte[] response;
+        private int kind;
+        private String failure;
+        private String faultCode;
+    }
+}
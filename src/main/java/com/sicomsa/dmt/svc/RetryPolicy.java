@@ -0,0 +1,398 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import jakarta.xml.soap.SOAPException;
+import jakarta.xml.soap.SOAPFault;
+import jakarta.xml.ws.WebServiceException;
+import jakarta.xml.ws.soap.SOAPFaultException;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.namespace.QName;
+
+import java.lang.System.Logger.Level;
+
+/**
+ * <code>RetryPolicy</code> repeats calls to the web service that fail for
+ * reasons that may go away by themselves, waiting an exponential backoff
+ * with full jitter between attempts.
+ * <p>Failures are classified as:</p>
+ * <ul>
+ * <li>{@link RetryPolicy.Failure#TRANSIENT_NETWORK}: a <code>SOAPException</code>
+ * that is not a fault, usually a connection problem or a timeout. Retried.</li>
+ * <li>{@link RetryPolicy.Failure#FAULT}: a <code>SOAPFaultException</code>
+ * returned by the web service with a server or unknown fault code. Retried.</li>
+ * <li>{@link RetryPolicy.Failure#AUTH_EXPIRED}: a fault caused by an invalid or
+ * expired token. Not retried, the client must authenticate again.</li>
+ * <li>{@link RetryPolicy.Failure#PERMANENT}: a fault blamed on the request,
+ * with a <code>Client</code> (SOAP 1.1) or <code>Sender</code> (SOAP 1.2)
+ * fault code, like a malformed request or a bad signature; or any other
+ * exception, like signature or parsing problems. Not retried.</li>
+ * </ul>
+ * <p>Each call has a budget of <code>maxAttempts</code> attempts and
+ * <code>maxElapsed</code> time; a retry is not attempted if its backoff would
+ * exceed the time budget.</p>
+ * <p>Only services whose calls are idempotent are retried, see
+ * {@link AbstractSvc#isIdempotent()}. This class keeps counters of each
+ * outcome and is thread safe.</p>
+ *
+ * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
+ * @version 2025.02.12
+ * @since 1.0
+ *
+ */
+public class RetryPolicy {
+
+    private static final System.Logger LOG = System.getLogger(RetryPolicy.class.getName());
+
+    /**
+     * Default maximum attempts of a call = 4.
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 4;
+
+    /**
+     * Default backoff before the first retry = 1 second.
+     */
+    public static final Duration DEFAULT_BASE_DELAY = Duration.ofSeconds(1);
+
+    /**
+     * Default maximum backoff between attempts = 30 seconds.
+     */
+    public static final Duration DEFAULT_MAX_DELAY = Duration.ofSeconds(30);
+
+    /**
+     * Default maximum time of a call, including retries = 2 minutes.
+     */
+    public static final Duration DEFAULT_MAX_ELAPSED = Duration.ofMinutes(2);
+
+    /**
+     * Classes of failures.
+     */
+    public enum Failure {
+        /**
+         * Connection problems or timeouts
+         */
+        TRANSIENT_NETWORK,
+        /**
+         * Faults returned by the web service
+         */
+        FAULT,
+        /**
+         * Invalid or expired token
+         */
+        AUTH_EXPIRED,
+        /**
+         * Failures that will not go away by retrying
+         */
+        PERMANENT
+    }
+
+    /**
+     * Maximum attempts of a call
+     */
+    protected final int maxAttempts;
+
+    /**
+     * Backoff before the first retry, in nanoseconds
+     */
+    protected final long baseDelayNanos;
+
+    /**
+     * Maximum backoff between attempts, in nanoseconds
+     */
+    protected final long maxDelayNanos;
+
+    /**
+     * Maximum time of a call, in nanoseconds
+     */
+    protected final long maxElapsedNanos;
+
+    private final Map<Failure,AtomicLong> failures = new EnumMap<>(Failure.class);
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong successes = new AtomicLong();
+    private final AtomicLong recovered = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong exhausted = new AtomicLong();
+
+    /**
+     * Creates a new <code>RetryPolicy</code> with default parameters.
+     */
+    public RetryPolicy() {
+        this(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY, DEFAULT_MAX_ELAPSED);
+    }
+
+    /**
+     * Creates a new <code>RetryPolicy</code> with the specified parameters.
+     *
+     * @param maxAttempts maximum attempts of a call, one means no retries
+     * @param baseDelay backoff before the first retry, doubled on each retry
+     * @param maxDelay maximum backoff between attempts
+     * @param maxElapsed maximum time of a call, including retries
+     * @throws IllegalArgumentException if maxAttempts is less than one, if
+     *         any duration is null or negative, or if maxDelay is less
+     *         than baseDelay
+     */
+    public RetryPolicy(int maxAttempts, Duration baseDelay, Duration maxDelay, Duration maxElapsed) {
+        if (maxAttempts < 1 || baseDelay == null || maxDelay == null || maxElapsed == null
+                || baseDelay.isNegative() || maxElapsed.isNegative()
+                || maxDelay.compareTo(baseDelay) < 0) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelayNanos = baseDelay.toNanos();
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.maxElapsedNanos = maxElapsed.toNanos();
+        for (Failure failure : Failure.values()) {
+            failures.put(failure, new AtomicLong());
+        }
+    }
+
+    /**
+     * Executes the specified call, retrying it while it fails with a
+     * retryable failure and the budgets allow it.
+     *
+     * @param <T> type of the result of the call
+     * @param name name of the call, used for logging
+     * @param call the call to execute
+     * @return the result of the call
+     * @throws SOAPException the last exception thrown by the call
+     * @throws WebServiceException the last exception thrown by the call, or
+     *         if interrupted while waiting to retry
+     */
+    public <T> T execute(String name, Call<T> call) throws SOAPException {
+        calls.incrementAndGet();
+        long start = System.nanoTime();
+        int attempt = 1;
+        while (true) {
+            try {
+                T result = call.call();
+                successes.incrementAndGet();
+                if (attempt > 1) {
+                    recovered.incrementAndGet();
+                }
+                return result;
+            }
+            catch (SOAPException | RuntimeException e) {
+                Failure failure = classify(e);
+                failures.get(failure).incrementAndGet();
+                if (!isRetryable(failure)) {
+                    throw e;
+                }
+                long delay = backoff(attempt);
+                if (attempt >= maxAttempts
+                        || System.nanoTime() - start + delay > maxElapsedNanos) {
+                    exhausted.incrementAndGet();
+                    LOG.log(Level.DEBUG, "Retries of {0} exhausted after {1} attempts", name, attempt);
+                    throw e;
+                }
+                LOG.log(Level.DEBUG, "Retrying {0} in {1} ms after {2}: {3}",
+                        name, delay / 1_000_000, failure, e.getMessage());
+                sleep(delay);
+                retries.incrementAndGet();
+                attempt++;
+            }
+        }
+    }
+
+    /**
+     * Returns the class of the specified failure.
+     *
+     * @param e the exception thrown by a call
+     * @return the class of the failure
+     */
+    public Failure classify(Exception e) {
+        if (e instanceof SOAPFaultException fault) {
+            if (isAuthExpired(fault)) {
+                return Failure.AUTH_EXPIRED;
+            }
+            return (isClientFault(fault) ? Failure.PERMANENT : Failure.FAULT);
+        }
+        if (e instanceof SOAPException) {
+            return Failure.TRANSIENT_NETWORK;
+        }
+        return Failure.PERMANENT;
+    }
+
+    /**
+     * Returns true if calls that failed with the specified failure should be
+     * retried. This implementation retries transient network failures and
+     * server faults.
+     *
+     * @param failure the class of the failure
+     * @return true if the call should be retried
+     */
+    protected boolean isRetryable(Failure failure) {
+        return (failure == Failure.TRANSIENT_NETWORK || failure == Failure.FAULT);
+    }
+
+    /**
+     * Returns true if the specified fault was caused by an invalid or expired
+     * token; that is if its fault string mentions a token or an authorization.
+     *
+     * @param e the fault exception
+     * @return true if the fault was caused by an invalid or expired token
+     */
+    protected boolean isAuthExpired(SOAPFaultException e) {
+        SOAPFault fault = e.getFault();
+        String text = (fault == null ? e.getMessage() : fault.getFaultString());
+        if (text == null) {
+            return false;
+        }
+        text = text.toLowerCase(Locale.ROOT);
+        return (text.contains("token") || text.contains("autoriz") || text.contains("authoriz"));
+    }
+
+    /**
+     * Returns true if the specified fault is blamed on the request, that is
+     * if its fault code is <code>Client</code> (SOAP 1.1), or one of its
+     * subcodes like <code>Client.Authentication</code>, or <code>Sender</code>
+     * (SOAP 1.2). Faults without a code are not.
+     *
+     * @param e the fault exception
+     * @return true if the fault is blamed on the request
+     */
+    protected boolean isClientFault(SOAPFaultException e) {
+        SOAPFault fault = e.getFault();
+        QName code = (fault == null ? null : fault.getFaultCodeAsQName());
+        if (code == null) {
+            return false;
+        }
+        String name = code.getLocalPart();
+        return (name.equals("Client") || name.startsWith("Client.") || name.equals("Sender"));
+    }
+
+    /**
+     * Returns a random backoff before the retry after the specified attempt,
+     * between zero and the exponential delay for that attempt.
+     *
+     * @param attempt number of the attempt that failed, starting with one
+     * @return the backoff in nanoseconds
+     */
+    protected long backoff(int attempt) {
+        long delay = baseDelayNanos << Math.min(attempt - 1, 30);
+        if (delay < 0 || delay > maxDelayNanos) {
+            delay = maxDelayNanos;
+        }
+        return (delay == 0 ? 0 : ThreadLocalRandom.current().nextLong(delay + 1));
+    }
+
+    /**
+     * Waits the specified nanoseconds.
+     *
+     * @param nanos nanoseconds to wait
+     * @throws WebServiceException if interrupted
+     */
+    protected void sleep(long nanos) {
+        try {
+            Thread.sleep(nanos / 1_000_000, (int)(nanos % 1_000_000));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebServiceException("interrupted while waiting to retry", e);
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    /// Metrics
+
+    /**
+     * Returns the number of calls executed.
+     *
+     * @return the number of calls executed
+     */
+    public long getCallCount() {
+        return calls.get();
+    }
+
+    /**
+     * Returns the number of calls that succeeded.
+     *
+     * @return the number of calls that succeeded
+     */
+    public long getSuccessCount() {
+        return successes.get();
+    }
+
+    /**
+     * Returns the number of calls that succeeded after retrying.
+     *
+     * @return the number of calls that succeeded after retrying
+     */
+    public long getRecoveredCount() {
+        return recovered.get();
+    }
+
+    /**
+     * Returns the number of retries.
+     *
+     * @return the number of retries
+     */
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+    /**
+     * Returns the number of calls that failed after using all their budget.
+     *
+     * @return the number of calls that exhausted their budget
+     */
+    public long getExhaustedCount() {
+        return exhausted.get();
+    }
+
+    /**
+     * Returns the number of attempts that failed with the specified failure.
+     *
+     * @param failure the class of failure
+     * @return the number of attempts that failed with the specified failure
+     */
+    public long getFailureCount(Failure failure) {
+        return failures.get(failure).get();
+    }
+
+    /**
+     * Returns a string representation of this policy and its counters.
+     *
+     * @return a string representation of this policy
+     */
+    @Override public String toString() {
+        StringBuilder sb = new StringBuilder("RetryPolicy{")
+                .append("maxAttempts=").append(maxAttempts)
+                .append(",calls=").append(getCallCount())
+                .append(",successes=").append(getSuccessCount())
+                .append(",recovered=").append(getRecoveredCount())
+                .append(",retries=").append(getRetryCount())
+                .append(",exhausted=").append(getExhaustedCount());
+        failures.forEach((failure, count)->
+                sb.append(",").append(failure).append("=").append(count.get()));
+        return sb.append("}").toString();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * A call to the web service that may be retried.
+     *
+     * @param <T> type of the result
+     */
+    @FunctionalInterface
+    public interface Call<T> {
+
+        /**
+         * Makes the call.
+         *
+         * @return the result of the call
+         * @throws SOAPException if there were SOAP related problems
+         */
+        public T call() throws SOAPException;
+    }
+}
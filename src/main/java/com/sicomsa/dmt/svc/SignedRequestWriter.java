@@ -0,0 +1,441 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import com.sicomsa.dmt.Credentials;
+
+import jakarta.xml.soap.MessageFactory;
+import jakarta.xml.soap.MimeHeaders;
+import jakarta.xml.soap.SOAPConstants;
+import jakarta.xml.soap.SOAPException;
+import jakarta.xml.soap.SOAPMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.namespace.QName;
+
+/**
+ * <code>SignedRequestWriter</code> writes the bytes of signed generic requests
+ * directly, without building the message with SAAJ nor signing it through
+ * a DOM <code>XMLSignature</code>.
+ * <p>Generic requests have a fixed shape: an envelope with an empty header
+ * and a body with a few nested elements, the last one with a handful of
+ * attributes and an enveloped signature. This class writes the inclusive
+ * canonical form of the envelope without the signature and computes its
+ * SHA-1 digest, writes the exclusive canonical form of the <code>SignedInfo</code>
+ * and signs it with {@link Credentials#sign(java.lang.String, byte[])}, and
+ * finally writes the envelope bytes exactly as SAAJ would serialize the
+ * message signed by {@link AbstractGenericSvc#addSignedContent(jakarta.xml.soap.SOAPMessage, com.sicomsa.dmt.Credentials, java.lang.Object) addSignedContent}.</p>
+ * <p>Signature values and certificates are written in lines of 76 characters
+ * unless the system property "com.sun.org.apache.xml.internal.security.ignoreLineBreaks"
+ * is true, as the JDK signature implementation does.</p>
+ * <p>This class is thread safe.</p>
+ *
+ * @see AbstractGenericSvc#setSignedRequestWriter(com.sicomsa.dmt.svc.SignedRequestWriter)
+ *
+ * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
+ * @version 2025.02.18
+ * @since 1.0
+ *
+ */
+public class SignedRequestWriter {
+
+    /**
+     * Signature algorithm = "SHA1withRSA"
+     */
+    public static final String SIGNATURE_ALGORITHM = "SHA1withRSA";
+
+    /**
+     * Digest algorithm = "SHA-1"
+     */
+    public static final String DIGEST_ALGORITHM = "SHA-1";
+
+    /**
+     * Property of the JDK signature implementation to write base64 values
+     * in a single line
+     */
+    public static final String IGNORE_LINE_BREAKS = "com.sun.org.apache.xml.internal.security.ignoreLineBreaks";
+
+    /**
+     * Start of the signature element, up to the digest value
+     */
+    protected static final String SIGNATURE_START =
+            "<Signature xmlns=\"" + AbstractSvc.DIGSN_URI + "\"><SignedInfo>"
+            + "<CanonicalizationMethod Algorithm=\"" + SvcSignatureFactory.XML_EXEC_C14 + "\"/>"
+            + "<SignatureMethod Algorithm=\"http://www.w3.org/2000/09/xmldsig#rsa-sha1\"/>"
+            + "<Reference URI=\"\"><Transforms>"
+            + "<Transform Algorithm=\"http://www.w3.org/2000/09/xmldsig#enveloped-signature\"/>"
+            + "</Transforms><DigestMethod Algorithm=\"http://www.w3.org/2000/09/xmldsig#sha1\"/>"
+            + "<DigestValue>";
+
+    /**
+     * Exclusive canonical form of the signed info, up to the digest value
+     */
+    protected static final String SIGNED_INFO_START =
+            "<SignedInfo xmlns=\"" + AbstractSvc.DIGSN_URI + "\">"
+            + "<CanonicalizationMethod Algorithm=\"" + SvcSignatureFactory.XML_EXEC_C14 + "\"></CanonicalizationMethod>"
+            + "<SignatureMethod Algorithm=\"http://www.w3.org/2000/09/xmldsig#rsa-sha1\"></SignatureMethod>"
+            + "<Reference URI=\"\"><Transforms>"
+            + "<Transform Algorithm=\"http://www.w3.org/2000/09/xmldsig#enveloped-signature\"></Transform>"
+            + "</Transforms><DigestMethod Algorithm=\"http://www.w3.org/2000/09/xmldsig#sha1\"></DigestMethod>"
+            + "<DigestValue>";
+
+    /**
+     * Exclusive canonical form of the signed info, after the digest value
+     */
+    protected static final String SIGNED_INFO_END = "</DigestValue></Reference></SignedInfo>";
+
+    /**
+     * True to write base64 values in lines of 76 characters
+     */
+    protected final boolean lineBreaks;
+
+    private final AtomicLong written = new AtomicLong();
+
+    /**
+     * Creates a new <code>SignedRequestWriter</code> that writes line breaks
+     * as the JDK signature implementation.
+     */
+    public SignedRequestWriter() {
+        this(!Boolean.getBoolean(IGNORE_LINE_BREAKS));
+    }
+
+    /**
+     * Creates a new <code>SignedRequestWriter</code>.
+     *
+     * @param lineBreaks true to write base64 values in lines of 76 characters
+     */
+    public SignedRequestWriter(boolean lineBreaks) {
+        this.lineBreaks = lineBreaks;
+    }
+
+    /**
+     * Returns the bytes of an envelope with the specified namespaces, whose
+     * body has the specified parent elements and the specified element signed
+     * with the specified credentials.
+     *
+     * @param credentials credentials to sign with
+     * @param namespaces namespaces declared in the envelope mapped by prefix,
+     *        in order, including the prefix of the envelope
+     * @param parents names of the elements from the body down to the signed element
+     * @param signed the element to sign
+     * @return the bytes of the signed envelope, encoded in UTF-8
+     * @throws GeneralSecurityException if there were problems computing the digest
+     * @throws IllegalArgumentException if any parameter is null, or if the
+     *         namespaces do not declare the envelope namespace
+     * @throws com.sicomsa.dmt.SvcSignatureException if there were signature related problems
+     */
+    public byte[] write(Credentials credentials, Map<String,String> namespaces, QName[] parents, Element signed)
+            throws GeneralSecurityException {
+        if (credentials == null || namespaces == null || parents == null || signed == null) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        String env = null;
+        for (Map.Entry<String,String> entry : namespaces.entrySet()) {
+            if (SOAPConstants.URI_NS_SOAP_1_1_ENVELOPE.equals(entry.getValue())) {
+                env = entry.getKey();
+            }
+        }
+        if (env == null) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+
+        StringBuilder canonical = new StringBuilder(512);
+        writeEnvelopeStart(canonical, env, new TreeMap<>(namespaces));
+        canonical.append('<').append(env).append(":Header></").append(env).append(":Header>");
+        writeBodyStart(canonical, env, parents);
+        signed.write(canonical, true, false);
+        writeBodyEnd(canonical, env, parents);
+
+        MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        String digestValue = Base64.getEncoder().encodeToString(
+                digest.digest(canonical.toString().getBytes(StandardCharsets.UTF_8)));
+        String signedInfo = SIGNED_INFO_START + digestValue + SIGNED_INFO_END;
+        byte[] signatureValue = credentials.sign(SIGNATURE_ALGORITHM, signedInfo.getBytes(StandardCharsets.UTF_8));
+        X509Certificate certificate = credentials.getCertificate();
+
+        StringBuilder wire = new StringBuilder(4096);
+        writeEnvelopeStart(wire, env, namespaces);
+        wire.append('<').append(env).append(":Header/>");
+        writeBodyStart(wire, env, parents);
+        signed.write(wire, false, true);
+        wire.append(SIGNATURE_START).append(digestValue).append("</DigestValue></Reference></SignedInfo>")
+                .append("<SignatureValue>");
+        appendBase64(wire, signatureValue);
+        wire.append("</SignatureValue><KeyInfo><X509Data><X509IssuerSerial><X509IssuerName>");
+        appendText(wire, certificate.getIssuerX500Principal().getName(), false);
+        wire.append("</X509IssuerName><X509SerialNumber>").append(certificate.getSerialNumber())
+                .append("</X509SerialNumber></X509IssuerSerial><X509Certificate>");
+        appendBase64(wire, certificate.getEncoded());
+        wire.append("</X509Certificate></X509Data></KeyInfo></Signature>");
+        signed.writeEnd(wire);
+        writeBodyEnd(wire, env, parents);
+        written.incrementAndGet();
+        return wire.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns a new <code>SOAPMessage</code> with the specified envelope bytes.
+     * The message is not parsed unless its content is accessed, so sending it
+     * writes the same bytes.
+     *
+     * @param factory the factory to create the message with
+     * @param bytes the envelope bytes, encoded in UTF-8
+     * @return a new <code>SOAPMessage</code>
+     * @throws SOAPException if there were SOAP related problems
+     */
+    public SOAPMessage newMessage(MessageFactory factory, byte[] bytes) throws SOAPException {
+        MimeHeaders headers = new MimeHeaders();
+        headers.addHeader("Content-Type", "text/xml; charset=utf-8");
+        try {
+            return factory.createMessage(headers, new ByteArrayInputStream(bytes));
+        }
+        catch (IOException e) {
+            throw new SOAPException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the number of requests written.
+     *
+     * @return the number of requests written
+     */
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    /**
+     * Returns a string representation of this writer.
+     *
+     * @return a string representation of this writer
+     */
+    @Override public String toString() {
+        return new StringBuilder("SignedRequestWriter{")
+                .append("lineBreaks=").append(lineBreaks)
+                .append(",written=").append(getWrittenCount())
+                .append("}").toString();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    private void writeEnvelopeStart(StringBuilder sb, String env, Map<String,String> namespaces) {
+        sb.append('<').append(env).append(":Envelope");
+        namespaces.forEach((prefix, uri)->{
+            sb.append(" xmlns:").append(prefix).append("=\"");
+            appendAttribute(sb, uri, false);
+            sb.append('"');
+        });
+        sb.append('>');
+    }
+
+    private void writeBodyStart(StringBuilder sb, String env, QName[] parents) {
+        sb.append('<').append(env).append(":Body>");
+        for (QName name : parents) {
+            sb.append('<').append(qualified(name)).append('>');
+        }
+    }
+
+    private void writeBodyEnd(StringBuilder sb, String env, QName[] parents) {
+        for (int idx = parents.length - 1; idx >= 0; idx--) {
+            sb.append("</").append(qualified(parents[idx])).append('>');
+        }
+        sb.append("</").append(env).append(":Body></").append(env).append(":Envelope>");
+    }
+
+    /**
+     * Appends the specified bytes encoded in base64, in lines of 76
+     * characters if this writer writes line breaks; carriage returns are
+     * written as character references like SAAJ does.
+     */
+    private void appendBase64(StringBuilder sb, byte[] bytes) {
+        if (!lineBreaks) {
+            sb.append(Base64.getEncoder().encodeToString(bytes));
+            return;
+        }
+        String encoded = Base64.getMimeEncoder().encodeToString(bytes);
+        sb.append(encoded.replace("\r\n", "&#13;\n"));
+    }
+
+    private static String qualified(QName name) {
+        String prefix = name.getPrefix();
+        return (prefix.isEmpty() ? name.getLocalPart() : prefix + ":" + name.getLocalPart());
+    }
+
+    /**
+     * Appends the specified text escaped in canonical form or as SAAJ
+     * serializes it.
+     */
+    private static void appendText(StringBuilder sb, String text, boolean canonical) {
+        for (int idx = 0; idx < text.length(); idx++) {
+            char c = text.charAt(idx);
+            switch (c) {
+                case '&' -> sb.append("&amp;");
+                case '<' -> sb.append("&lt;");
+                case '>' -> sb.append("&gt;");
+                case '\r' -> sb.append(canonical ? "&#xD;" : "&#13;");
+                default -> sb.append(c);
+            }
+        }
+    }
+
+    /**
+     * Appends the specified attribute value escaped in canonical form or as
+     * SAAJ serializes it.
+     */
+    private static void appendAttribute(StringBuilder sb, String value, boolean canonical) {
+        for (int idx = 0; idx < value.length(); idx++) {
+            char c = value.charAt(idx);
+            switch (c) {
+                case '&' -> sb.append("&amp;");
+                case '<' -> sb.append("&lt;");
+                case '"' -> sb.append("&quot;");
+                case '>' -> sb.append(canonical ? ">" : "&gt;");
+                case '\t' -> sb.append(canonical ? "&#x9;" : "&#9;");
+                case '\n' -> sb.append(canonical ? "&#xA;" : "&#10;");
+                case '\r' -> sb.append(canonical ? "&#xD;" : "&#13;");
+                default -> sb.append(c);
+            }
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Element of a request, with unqualified attributes kept sorted by name
+     * and either child elements or text.
+     */
+    public static class Element {
+
+        private final QName name;
+        private final TreeMap<String,String> attributes = new TreeMap<>();
+        private final List<Element> children = new ArrayList<>();
+        private String text;
+
+        /**
+         * Creates a new element with the specified name.
+         *
+         * @param name the name of the element, its prefix must be declared
+         *        in the envelope
+         * @throws IllegalArgumentException if name is null
+         */
+        public Element(QName name) {
+            if (name == null) {
+                throw new IllegalArgumentException("invalid parameters");
+            }
+            this.name = name;
+        }
+
+        /**
+         * Sets the specified unqualified attribute.
+         *
+         * @param name the name of the attribute
+         * @param value the value of the attribute
+         * @return this element
+         * @throws IllegalArgumentException if name or value are null, or if
+         *         name has a namespace
+         */
+        public Element setAttribute(QName name, String value) {
+            if (name == null || value == null || !name.getNamespaceURI().isEmpty()) {
+                throw new IllegalArgumentException("invalid parameters");
+            }
+            attributes.put(name.getLocalPart(), value);
+            return this;
+        }
+
+        /**
+         * Sets the specified unqualified attribute.
+         *
+         * @param name the name of the attribute
+         * @param value the value of the attribute
+         * @return this element
+         * @throws IllegalArgumentException if name or value are null
+         */
+        public Element setAttribute(String name, String value) {
+            if (name == null || value == null) {
+                throw new IllegalArgumentException("invalid parameters");
+            }
+            attributes.put(name, value);
+            return this;
+        }
+
+        /**
+         * Adds a new child element with the specified name and returns it.
+         *
+         * @param name the name of the child
+         * @return the new child
+         * @throws IllegalArgumentException if name is null
+         */
+        public Element addChild(QName name) {
+            Element child = new Element(name);
+            children.add(child);
+            return child;
+        }
+
+        /**
+         * Sets the text of this element.
+         *
+         * @param text the text
+         * @return this element
+         */
+        public Element setText(String text) {
+            this.text = text;
+            return this;
+        }
+
+        /**
+         * Appends this element in canonical form or as SAAJ serializes it;
+         * leaving it open if requested.
+         */
+        protected void write(StringBuilder sb, boolean canonical, boolean open) {
+            sb.append('<').append(qualified(name));
+            attributes.forEach((key, value)->{
+                sb.append(' ').append(key).append("=\"");
+                appendAttribute(sb, value, canonical);
+                sb.append('"');
+            });
+            boolean empty = children.isEmpty() && (text == null || text.isEmpty());
+            if (open) {
+                sb.append('>');
+                writeContent(sb, canonical);
+                return;
+            }
+            if (empty && !canonical) {
+                sb.append("/>");
+                return;
+            }
+            sb.append('>');
+            writeContent(sb, canonical);
+            writeEnd(sb);
+        }
+
+        /**
+         * Appends the end tag of this element.
+         */
+        protected void writeEnd(StringBuilder sb) {
+            sb.append("</").append(qualified(name)).append('>');
+        }
+
+        private void writeContent(StringBuilder sb, boolean canonical) {
+            if (text != null) {
+                appendText(sb, text, canonical);
+            }
+            for (Element child : children) {
+                child.write(sb, canonical, false);
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import jakarta.xml.soap.SOAPException;
+import jakarta.xml.soap.SOAPMessage;
+
+/**
+ * Sends a <code>SOAPMessage</code> to a web service location and returns the
+ * message received.
+ * <p>When a service has a transport, it is used instead of the
+ * <code>SOAPConnection</code> to call the web service, see
+ * {@link AbstractSvc#setTransport(com.sicomsa.dmt.svc.SoapTransport)}.
+ * Implementations must be thread safe.</p>
+ * 
+ * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
+ * @version 2025.02.15
+ * @since 1.0
+ * 
+ */
+public interface SoapTransport {
+    
+    /**
+     * Sends the specified request to the specified location and blocks until
+     * the response is received.
+     * 
+     * @param request the message to send
+     * @param location the location of the web service
+     * @return the message received
+     * @throws SOAPException if there were SOAP or connection related problems
+     */
+    public SOAPMessage call(SOAPMessage request, String location) throws SOAPException;
+    
+}
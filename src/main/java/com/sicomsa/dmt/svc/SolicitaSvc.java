@@ -39,7 +39,7 @@ import java.util.Set;
  * 
  * 
  * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
- * @version 2025.01.04
+ * @version 2025.02.18
  * @since 1.0
  * 
  * 
@@ -136,7 +136,49 @@ public class SolicitaSvc extends AbstractGenericSvc<SolicitaResponse,Query> {
         if (message == null || query == null) {
             throw new IllegalArgumentException("invalid parameters");
         }
-        return addContent(message.getSOAPBody(), query);
+        SOAPElement element = EnvelopeTemplate.find(message.getSOAPBody(), SOLICITA, SOLICITUD);
+        if (element == null) {
+            return addContent(message.getSOAPBody(), query);
+        }
+        addReceptores(element, query.getRfcReceptores());
+        setAttributes(element, query);
+        return element;
+    }
+    
+    /**
+     * Returns the names of the skeleton elements of request messages.
+     * 
+     * @return SOLICITA and SOLICITUD
+     */
+    @Override protected QName[] getSkeleton() {
+        return new QName[] {SOLICITA, SOLICITUD};
+    }
+    
+    /**
+     * Returns the element to be signed with the attributes and receptors of
+     * the specified query.
+     * 
+     * @param rfc the RFC of contributor making request
+     * @param query the query with contributor´s request
+     * @return the element to be signed
+     * @throws IllegalArgumentException if query is null
+     */
+    @Override protected SignedRequestWriter.Element newSignedElement(String rfc, Query query) {
+        if (query == null) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        SignedRequestWriter.Element element = new SignedRequestWriter.Element(SOLICITUD);
+        Set<String> receptores = query.getRfcReceptores();
+        if (receptores != null && !receptores.isEmpty()) {
+            SignedRequestWriter.Element receptoresElement = element.addChild(RFC_RECEPTORES);
+            for (String rfcReceptor : receptores) {
+                receptoresElement.addChild(RFC_RECEPTOR).setText(rfcReceptor);
+            }
+        }
+        query.getAttributes().forEachRemaining(name->{
+            element.setAttribute(name, query.getAttributeValue(name));
+        });
+        return element;
     }
     
     /**
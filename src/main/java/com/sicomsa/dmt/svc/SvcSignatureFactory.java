@@ -27,14 +27,19 @@ import javax.xml.crypto.dsig.XMLSignature;
 import javax.xml.crypto.dsig.spec.C14NMethodParameterSpec;
 import javax.xml.crypto.dsig.spec.TransformParameterSpec;
 
+import com.sicomsa.dmt.util.SOAPFactories;
+
 import org.w3c.dom.Node;
 
 /**
  * Provides digital signature related methods needed for the WS this package was
  * made for.
+ * <p>The API of <code>XMLSignatureFactory</code> does not guarantee its instance
+ * methods are thread safe, so unless a specific one is provided, each thread
+ * uses its own instance, see {@link SOAPFactories#getXMLSignatureFactory()}.</p>
  * 
  * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
- * @version 2024.10.31
+ * @version 2025.02.19
  * @since 1.0
  * 
  * 
@@ -46,15 +51,16 @@ public class SvcSignatureFactory  {
     public static final String XML_EXEC_C14 = "http://www.w3.org/2001/10/xml-exc-c14n#";
 
     /**
-     * Reference to XMLSignatureFactory
+     * Reference to XMLSignatureFactory, null to use one per thread
      */
     protected XMLSignatureFactory signatureFactory;
     
     /**
-     * Creates a new SvcSignatureFactory with default configuration
+     * Creates a new SvcSignatureFactory with default configuration, that
+     * uses a DOM XMLSignatureFactory per thread.
      */
     public SvcSignatureFactory() {
-        this(XMLSignatureFactory.getInstance("DOM"));
+        this.signatureFactory = null;
     }
     
     /**
@@ -81,12 +87,13 @@ public class SvcSignatureFactory  {
     ////////////////////////////////////////////////////////////////////////////
     
     /**
-     * Returns the XMLSignatureFactory used by this factory.
+     * Returns the XMLSignatureFactory used by this factory, which is the
+     * one of the current thread if none was specified.
      * 
      * @return the XMLSignatureFactory used by this factory
      */
     public XMLSignatureFactory getXMLSignatureFactory() {
-        return signatureFactory;
+        return (signatureFactory == null ? SOAPFactories.getXMLSignatureFactory() : signatureFactory);
     }
     
     ////////////////////////////////////////////////////////////////////////////
@@ -105,7 +112,7 @@ public class SvcSignatureFactory  {
     public XMLSignature newAuthSignature(String uri, Node tokenReference)
             throws GeneralSecurityException {
         
-        return signatureFactory
+        return getXMLSignatureFactory()
                 .newXMLSignature(
                         newAuthSignedInfo(newAuthReferenceList(uri)),
                         newKeyInfo(tokenReference)
@@ -124,7 +131,7 @@ public class SvcSignatureFactory  {
      * @throws NullPointerException if cert is null.
      */
     public XMLSignature newGenericSignature(String uri, X509Certificate cert) throws GeneralSecurityException {
-        return signatureFactory.newXMLSignature(
+        return getXMLSignatureFactory().newXMLSignature(
                 newGenericSignedInfo(newGenericReferenceList(uri)), newKeyInfo(cert));
     }
     
@@ -138,12 +145,13 @@ public class SvcSignatureFactory  {
      * @throws GeneralSecurityException if there were security related problems
      */
     public List<Reference> newAuthReferenceList(String uri) throws GeneralSecurityException {
+        XMLSignatureFactory factory = getXMLSignatureFactory();
         return Collections.singletonList(
-                signatureFactory.newReference(
+                factory.newReference(
                         uri,
-                        signatureFactory.newDigestMethod(DigestMethod.SHA1, null),
+                        factory.newDigestMethod(DigestMethod.SHA1, null),
                         Collections.singletonList(
-                                signatureFactory.newTransform(
+                                factory.newTransform(
                                         XML_EXEC_C14, (TransformParameterSpec)null
                                 )
                         ),
@@ -161,12 +169,13 @@ public class SvcSignatureFactory  {
      * @throws GeneralSecurityException if there were security related problems
      */
     public List<Reference> newGenericReferenceList(String uri) throws GeneralSecurityException {
+        XMLSignatureFactory factory = getXMLSignatureFactory();
         return Collections.singletonList(
-                signatureFactory.newReference(
+                factory.newReference(
                         uri,
-                        signatureFactory.newDigestMethod(DigestMethod.SHA1, null),
+                        factory.newDigestMethod(DigestMethod.SHA1, null),
                         Collections.singletonList(
-                                signatureFactory.newTransform(
+                                factory.newTransform(
                                         Transform.ENVELOPED,
                                         (TransformParameterSpec)null
                                 )
@@ -214,12 +223,13 @@ public class SvcSignatureFactory  {
         if (refList == null || refList.isEmpty()) {
             throw new IllegalArgumentException("list of references must contain at least one entry");
         }
-        return signatureFactory.newSignedInfo(
-                signatureFactory.newCanonicalizationMethod(
+        XMLSignatureFactory factory = getXMLSignatureFactory();
+        return factory.newSignedInfo(
+                factory.newCanonicalizationMethod(
                         CanonicalizationMethod.EXCLUSIVE,
                         (C14NMethodParameterSpec)null
                 ),
-                signatureFactory.newSignatureMethod(
+                factory.newSignatureMethod(
                         SignatureMethod.RSA_SHA1, null
                 ),
                 refList
@@ -236,7 +246,7 @@ public class SvcSignatureFactory  {
      * @throws NullPointerException if node is null.
      */
     public KeyInfo newKeyInfo(Node node) {
-        return signatureFactory
+        return getXMLSignatureFactory()
                 .getKeyInfoFactory()
                 .newKeyInfo(Collections.singletonList(new DOMStructure(node)));
     }
@@ -249,7 +259,7 @@ public class SvcSignatureFactory  {
      * @throws NullPointerException if certificate is null.
      */
     public KeyInfo newKeyInfo(X509Certificate certificate) {
-        KeyInfoFactory keyInfoFactory = signatureFactory.getKeyInfoFactory();
+        KeyInfoFactory keyInfoFactory = getXMLSignatureFactory().getKeyInfoFactory();
         final X509IssuerSerial issuer =
                 keyInfoFactory.newX509IssuerSerial(
                         certificate.getIssuerX500Principal().getName(),
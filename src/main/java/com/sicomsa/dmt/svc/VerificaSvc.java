@@ -5,9 +5,11 @@
 
 package com.sicomsa.dmt.svc;
 
+import com.sicomsa.dmt.Credentials;
 import com.sicomsa.dmt.VerificaResponse;
 import com.sicomsa.dmt.util.SvcParseException;
 
+import jakarta.xml.soap.SOAPConnection;
 import jakarta.xml.soap.SOAPElement;
 import jakarta.xml.soap.SOAPMessage;
 import jakarta.xml.soap.SOAPException;
@@ -32,13 +34,15 @@ import com.sicomsa.dmt.util.SOAPUtils;
  * <p>When the verification of the download request is accepted and finished,
  * then you can use <code>VerificaResponse</code> to obtain the package ids that
  * are now needed to download.</p>
+ * <p>Verifying is read only, so a {@link HedgingPolicy} can be set to send a
+ * second identical request when the first one is slow to answer.</p>
  * 
  * {@see DescargaSvc}, service to download from the web service after verification.
  * 
  * 
  * 
  * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
- * @version 2025.01.04  
+ * @version 2025.02.18
  * @since 1.0
  * 
  */
@@ -99,6 +103,11 @@ public class VerificaSvc extends AbstractGenericSvc<VerificaResponse,String> {
     
     private static final System.Logger LOG = System.getLogger(VerificaSvc.class.getName());
     
+    /**
+     * Policy to hedge slow calls, may be null
+     */
+    private volatile HedgingPolicy _hedging;
+    
     /**
      * Creates a new VerificaSvc with the specified context.
      * 
@@ -128,6 +137,58 @@ public class VerificaSvc extends AbstractGenericSvc<VerificaResponse,String> {
         return "https://cfdidescargamasivasolicitud.clouda.sat.gob.mx/VerificaSolicitudDescargaService.svc";
     }
     
+    /**
+     * Returns true, verifying a request does not change it.
+     * 
+     * @return true
+     */
+    @Override public boolean isIdempotent() {
+        return true;
+    }
+    
+    /**
+     * Returns the hedging policy of this service, or null if there is none.
+     * 
+     * @return the hedging policy of this service, or null
+     */
+    public HedgingPolicy getHedgingPolicy() {
+        return _hedging;
+    }
+    
+    /**
+     * Sets the policy to hedge calls to this service that are slow to answer.
+     * 
+     * @param policy the policy to use, null to call without hedging
+     */
+    public void setHedgingPolicy(HedgingPolicy policy) {
+        this._hedging = policy;
+    }
+    
+    /**
+     * Calls the service as {@link AbstractSvc#callTheService(jakarta.xml.soap.SOAPConnection, com.sicomsa.dmt.Credentials, java.lang.Object, java.lang.String) AbstractSvc}
+     * does; if this service has a {@link HedgingPolicy}, the call is executed
+     * through it and a second identical call may be sent if the first is slow.
+     * 
+     * @param conn connection to use to connect to WS
+     * @param creds credentials to use to sign <code>SOAPMessage</code>
+     * @param requestId the id of the request to verify
+     * @param token a wrapped token with authorization
+     * @return a <code>VerificaResponse</code>
+     * @throws SOAPException if there were SOAP related problems
+     * @throws IllegalArgumentException if connection or credentials are null
+     */
+    @Override
+    public VerificaResponse callTheService(SOAPConnection conn, Credentials creds, String requestId, String token) throws SOAPException {
+        HedgingPolicy policy = getHedgingPolicy();
+        if (policy == null) {
+            return super.callTheService(conn, creds, requestId, token);
+        }
+        if (conn == null || creds == null) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        return policy.execute(getServiceName(), ()->super.callTheService(conn, creds, requestId, token));
+    }
+    
     /**
      * Returns the SOAP action of this service.
      * "http://DescargaMasivaTerceros.sat.gob.mx/IVerificaSolicitudDescargaService/VerificaSolicitudDescarga"
@@ -144,7 +205,8 @@ public class VerificaSvc extends AbstractGenericSvc<VerificaResponse,String> {
 <Signature xmlns="http://www.w3.org/2000/09/xmldsig#">
     */
     /**
-     * Adds the specified RFC and requestId to the message received.
+     * Adds the specified RFC and requestId to the message received, using
+     * the skeleton of the message if it has one.
      * 
      * @param message the message to add content to
      * @param rfc the RFC of the contributor requesting verification
@@ -158,12 +220,42 @@ public class VerificaSvc extends AbstractGenericSvc<VerificaResponse,String> {
         if (message == null || rfc == null || requestId == null) {
             throw new IllegalArgumentException("invalid parameters");
         }
-        return message.getSOAPBody()
-                .addChildElement(VERIFICA_NAME)
-                .addChildElement(SOLICITUD_NAME)
+        SOAPElement element = EnvelopeTemplate.find(message.getSOAPBody(), VERIFICA_NAME, SOLICITUD_NAME);
+        if (element == null) {
+            element = message.getSOAPBody()
+                    .addChildElement(VERIFICA_NAME)
+                    .addChildElement(SOLICITUD_NAME);
+        }
+        return element
                 .addAttribute(ID_NAME, requestId)
                 .addAttribute(RFC_NAME, rfc);
     }
+    
+    /**
+     * Returns the names of the skeleton elements of verification messages.
+     * 
+     * @return VERIFICA_NAME and SOLICITUD_NAME
+     */
+    @Override protected QName[] getSkeleton() {
+        return new QName[] {VERIFICA_NAME, SOLICITUD_NAME};
+    }
+    
+    /**
+     * Returns the element to be signed with the specified RFC and requestId.
+     * 
+     * @param rfc the RFC of the contributor requesting verification
+     * @param requestId the id of the request to be verified
+     * @return the element to be signed
+     * @throws IllegalArgumentException if rfc or requestId are null
+     */
+    @Override protected SignedRequestWriter.Element newSignedElement(String rfc, String requestId) {
+        if (rfc == null || requestId == null) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        return new SignedRequestWriter.Element(SOLICITUD_NAME)
+                .setAttribute(ID_NAME, requestId)
+                .setAttribute(RFC_NAME, rfc);
+    }
   
     ////////////////////////////////////////////////////////////////////////////
     /*
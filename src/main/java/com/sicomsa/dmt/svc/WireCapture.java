@@ -0,0 +1,673 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import jakarta.xml.soap.SOAPException;
+import jakarta.xml.soap.SOAPMessage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import java.lang.System.Logger.Level;
+
+/**
+ * <code>WireCapture</code> keeps the last exchanges of the services with the
+ * web service, so production failures can be debugged without logging every
+ * message.
+ * <p>Memory is bounded: the capture holds at most <code>capacity</code>
+ * exchanges, overwriting the oldest one, and keeps the first
+ * <code>maxPayload</code> bytes of each request and response in a direct
+ * (off-heap) buffer allocated once. Larger messages are truncated. Messages
+ * are streamed into a staging array reused by each thread, never converted
+ * to a single <code>String</code>; if digests are not computed, streaming
+ * stops once <code>maxPayload</code> bytes are kept, otherwise the whole
+ * message is streamed to keep its full length and SHA-256 digest.</p>
+ * <p>Exchanges can be read with {@link WireCapture#getExchanges()} or
+ * {@link WireCapture#dump() dumped} on demand; if <code>dumpOnFault</code> is
+ * set, the capture is logged as a warning when an exchange fails or its
+ * response is a <code>SOAPFault</code>, at most once per <code>dumpInterval</code>.</p>
+ * <p>Services record their exchanges once they have a capture, see
+ * {@link AbstractSvc#setWireCapture(com.sicomsa.dmt.svc.WireCapture)}.
+ * This class is thread safe.</p>
+ *
+ * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
+ * @version 2025.02.19
+ * @since 1.0
+ *
+ */
+public class WireCapture {
+
+    private static final System.Logger LOG = System.getLogger(WireCapture.class.getName());
+
+    /**
+     * Default number of exchanges kept = 32.
+     */
+    public static final int DEFAULT_CAPACITY = 32;
+
+    /**
+     * Default maximum bytes kept of each message = 16 KB.
+     */
+    public static final int DEFAULT_MAX_PAYLOAD = 16 * 1024;
+
+    /**
+     * Algorithm of the digests = "SHA-256"
+     */
+    public static final String DIGEST_ALGORITHM = "SHA-256";
+
+    /**
+     * Default minimum time between dumps on faults = 1 minute.
+     */
+    public static final Duration DEFAULT_DUMP_INTERVAL = Duration.ofMinutes(1);
+
+    /**
+     * Number of exchanges kept
+     */
+    protected final int capacity;
+
+    /**
+     * Maximum bytes kept of each message
+     */
+    protected final int maxPayload;
+
+    /**
+     * True to compute the digest of each message
+     */
+    protected final boolean digest;
+
+    /**
+     * Off-heap buffer of the messages, two slots of <code>maxPayload</code>
+     * bytes per exchange
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Staging payloads of the request and the response, reused by each thread
+     */
+    private final ThreadLocal<Payload[]> staging;
+
+    private final Entry[] entries;
+    private long next;
+    private volatile boolean dumpOnFault;
+    private Duration _dumpInterval = DEFAULT_DUMP_INTERVAL;
+    private long dumpedAt;
+    private boolean dumped;
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong truncated = new AtomicLong();
+    private final AtomicLong faults = new AtomicLong();
+
+    /**
+     * Creates a new <code>WireCapture</code> with the default capacity and
+     * maximum payload, that does not compute digests.
+     */
+    public WireCapture() {
+        this(DEFAULT_CAPACITY, DEFAULT_MAX_PAYLOAD, false);
+    }
+
+    /**
+     * Creates a new <code>WireCapture</code> with the specified parameters.
+     *
+     * @param capacity number of exchanges kept
+     * @param maxPayload maximum bytes kept of each message
+     * @param digest true to compute the SHA-256 digest of each message
+     * @throws IllegalArgumentException if capacity or maxPayload are not
+     *         positive, or if the buffer would exceed 2 GB
+     */
+    public WireCapture(int capacity, int maxPayload, boolean digest) {
+        if (capacity <= 0 || maxPayload <= 0 || 2L * capacity * maxPayload > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        this.capacity = capacity;
+        this.maxPayload = maxPayload;
+        this.digest = digest;
+        this.buffer = ByteBuffer.allocateDirect(2 * capacity * maxPayload);
+        this.entries = new Entry[capacity];
+        this.staging = ThreadLocal.withInitial(()->new Payload[] {
+                new Payload(maxPayload, digest), new Payload(maxPayload, digest)});
+    }
+
+    /**
+     * Returns true if the capture is logged each time an exchange fails.
+     *
+     * @return true if the capture is logged each time an exchange fails
+     */
+    public boolean isDumpOnFault() {
+        return dumpOnFault;
+    }
+
+    /**
+     * Sets whether the capture is logged as a warning each time an exchange
+     * fails or its response is a <code>SOAPFault</code>.
+     *
+     * @param dumpOnFault true to log the capture on faults
+     */
+    public void setDumpOnFault(boolean dumpOnFault) {
+        this.dumpOnFault = dumpOnFault;
+    }
+
+    /**
+     * Returns the minimum time between dumps on faults.
+     *
+     * @return the minimum time between dumps on faults
+     */
+    public synchronized Duration getDumpInterval() {
+        return _dumpInterval;
+    }
+
+    /**
+     * Sets the minimum time between dumps on faults; faults in between are
+     * still recorded and counted, and are part of the next dump.
+     *
+     * @param dumpInterval minimum time between dumps on faults
+     * @throws IllegalArgumentException if dumpInterval is null or negative
+     */
+    public synchronized void setDumpInterval(Duration dumpInterval) {
+        if (dumpInterval == null || dumpInterval.isNegative()) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        this._dumpInterval = dumpInterval;
+    }
+
+    /**
+     * Records an exchange, overwriting the oldest one if the capture is full.
+     *
+     * @param service name of the service
+     * @param request message sent, may be null
+     * @param response message received, null if none was received
+     * @param error exception thrown by the exchange, null if none
+     */
+    public void record(String service, SOAPMessage request, SOAPMessage response, Exception error) {
+        Payload[] payloads = staging.get();
+        Payload sent = capture(request, payloads[0]);
+        Payload received = capture(response, payloads[1]);
+        String failure = (error == null ? faultOf(response) : error.toString());
+        boolean dump;
+        synchronized (this) {
+            int slot = (int)(next % capacity);
+            put(2 * slot, sent);
+            put(2 * slot + 1, received);
+            entries[slot] = new Entry(next++, service, Instant.now(), sent, received, failure);
+            dump = (failure != null && dumpOnFault && isDumpDue());
+        }
+        recorded.incrementAndGet();
+        if (sent.length > sent.stored || received.length > received.stored) {
+            truncated.incrementAndGet();
+        }
+        if (failure != null) {
+            faults.incrementAndGet();
+            if (dump) {
+                LOG.log(Level.WARNING, ()->"Exchange of "+service+" failed ("+failure+")\n"+dump());
+            }
+        }
+    }
+
+    /**
+     * Returns the exchanges kept, oldest first.
+     *
+     * @return a list with the exchanges kept
+     */
+    public synchronized List<Exchange> getExchanges() {
+        List<Exchange> list = new ArrayList<>();
+        long first = Math.max(0, next - capacity);
+        for (long seq = first; seq < next; seq++) {
+            int slot = (int)(seq % capacity);
+            Entry entry = entries[slot];
+            list.add(new Exchange(entry, get(2 * slot, entry.requestStored), get(2 * slot + 1, entry.responseStored)));
+        }
+        return list;
+    }
+
+    /**
+     * Returns the exchanges kept as text, oldest first.
+     *
+     * @return the exchanges kept as text
+     */
+    public String dump() {
+        StringBuilder builder = new StringBuilder();
+        for (Exchange exchange : getExchanges()) {
+            builder.append(exchange).append('\n')
+                    .append("request: ").append(exchange.getRequest()).append('\n')
+                    .append("response: ").append(exchange.getResponse()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Discards the exchanges kept.
+     */
+    public synchronized void clear() {
+        Arrays.fill(entries, null);
+        next = 0;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    /// Metrics
+
+    /**
+     * Returns the number of exchanges recorded.
+     *
+     * @return the number of exchanges recorded
+     */
+    public long getRecordedCount() {
+        return recorded.get();
+    }
+
+    /**
+     * Returns the number of exchanges recorded with a truncated message.
+     *
+     * @return the number of exchanges recorded with a truncated message
+     */
+    public long getTruncatedCount() {
+        return truncated.get();
+    }
+
+    /**
+     * Returns the number of exchanges recorded that failed.
+     *
+     * @return the number of exchanges recorded that failed
+     */
+    public long getFaultCount() {
+        return faults.get();
+    }
+
+    /**
+     * Returns the size in bytes of the off-heap buffer.
+     *
+     * @return the size in bytes of the off-heap buffer
+     */
+    public int getBufferSize() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Returns a string representation of this capture.
+     *
+     * @return a string representation of this capture
+     */
+    @Override public String toString() {
+        return new StringBuilder("WireCapture{")
+                .append("capacity=").append(capacity)
+                .append(",maxPayload=").append(maxPayload)
+                .append(",recorded=").append(getRecordedCount())
+                .append(",truncated=").append(getTruncatedCount())
+                .append(",faults=").append(getFaultCount())
+                .append("}").toString();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Streams the specified message into the specified payload, keeping its
+     * first <code>maxPayload</code> bytes and computing its length and digest;
+     * without digest, streaming stops once the payload is full.
+     *
+     * @param message the message, may be null
+     * @param payload the payload to stream the message into, reset first
+     * @return the payload of the message
+     */
+    protected Payload capture(SOAPMessage message, Payload payload) {
+        payload.reset();
+        if (message != null) {
+            try {
+                message.writeTo(payload);
+            }
+            catch (SOAPException | IOException e) {
+                if (!payload.isFull()) {
+                    LOG.log(Level.DEBUG, "Unable to capture message: {0}", e.getMessage());
+                }
+            }
+        }
+        return payload;
+    }
+
+    /**
+     * Returns the fault string of the specified response, or null if it is
+     * not a <code>SOAPFault</code>.
+     *
+     * @param response the response, may be null
+     * @return the fault string of the response, or null
+     */
+    protected String faultOf(SOAPMessage response) {
+        if (response == null) {
+            return null;
+        }
+        try {
+            return (response.getSOAPBody().hasFault()
+                    ? "SOAPFault: "+response.getSOAPBody().getFault().getFaultString() : null);
+        }
+        catch (SOAPException e) {
+            return e.toString();
+        }
+    }
+
+    /**
+     * Returns true if the capture should be dumped now, and if so restarts
+     * the dump interval; must be called holding the lock of this capture.
+     */
+    private boolean isDumpDue() {
+        long now = System.nanoTime();
+        if (dumped && now - dumpedAt < _dumpInterval.toNanos()) {
+            return false;
+        }
+        dumped = true;
+        dumpedAt = now;
+        return true;
+    }
+
+    private void put(int slot, Payload payload) {
+        buffer.put(slot * maxPayload, payload.head, 0, payload.stored);
+    }
+
+    private String get(int slot, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(slot * maxPayload, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Output stream that keeps the first bytes written, counts them and
+     * computes their digest. Without digest, writes fail with a private
+     * signal once the head is full, to stop streaming the message.
+     */
+    protected static class Payload extends OutputStream {
+
+        private static final IOException FULL = new Full();
+
+        private final byte[] head;
+        private final MessageDigest md;
+        private int stored;
+        private long length;
+        private String digest;
+        private boolean full;
+
+        /**
+         * Creates a new payload.
+         *
+         * @param max maximum bytes kept
+         * @param digest true to compute the digest
+         */
+        protected Payload(int max, boolean digest) {
+            this.head = new byte[max];
+            this.md = (digest ? newDigest() : null);
+        }
+
+        @Override public void write(int b) throws IOException {
+            if (stored < head.length) {
+                head[stored++] = (byte)b;
+            }
+            if (md != null) {
+                md.update((byte)b);
+            }
+            length++;
+            checkFull();
+        }
+
+        @Override public void write(byte[] b, int off, int len) throws IOException {
+            int copy = Math.min(len, head.length - stored);
+            System.arraycopy(b, off, head, stored, copy);
+            stored += copy;
+            if (md != null) {
+                md.update(b, off, len);
+            }
+            length += len;
+            checkFull();
+        }
+
+        /**
+         * Returns true if streaming was stopped because the head is full;
+         * the length is then the bytes written until then.
+         *
+         * @return true if streaming was stopped
+         */
+        protected boolean isFull() {
+            return full;
+        }
+
+        /**
+         * Discards the bytes written, so this payload can be reused.
+         */
+        protected void reset() {
+            stored = 0;
+            length = 0;
+            digest = null;
+            full = false;
+            if (md != null) {
+                md.reset();
+            }
+        }
+
+        /**
+         * Stops streaming once bytes beyond the head were written, unless
+         * the digest is computed.
+         */
+        private void checkFull() throws IOException {
+            if (md == null && length > head.length) {
+                full = true;
+                throw FULL;
+            }
+        }
+
+        /**
+         * Returns the hexadecimal digest of the bytes written, or null if
+         * it is not computed or nothing was written.
+         *
+         * @return the hexadecimal digest, or null
+         */
+        protected String getDigest() {
+            if (digest == null && md != null && length > 0) {
+                digest = HexFormat.of().formatHex(md.digest());
+            }
+            return digest;
+        }
+
+        private static MessageDigest newDigest() {
+            try {
+                return MessageDigest.getInstance(DIGEST_ALGORITHM);
+            }
+            catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Signal thrown by a full payload, without stack trace.
+     */
+    private static final class Full extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private Full() {
+            super("payload full");
+        }
+
+        @Override public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    /**
+     * Metadata of an exchange kept on heap; its messages are in the buffer.
+     */
+    private static final class Entry {
+
+        private final long sequence;
+        private final String service;
+        private final Instant instant;
+        private final long requestLength;
+        private final int requestStored;
+        private final String requestDigest;
+        private final long responseLength;
+        private final int responseStored;
+        private final String responseDigest;
+        private final String error;
+
+        private Entry(long sequence, String service, Instant instant, Payload request, Payload response, String error) {
+            this.sequence = sequence;
+            this.service = service;
+            this.instant = instant;
+            this.requestLength = request.length;
+            this.requestStored = request.stored;
+            this.requestDigest = request.getDigest();
+            this.responseLength = response.length;
+            this.responseStored = response.stored;
+            this.responseDigest = response.getDigest();
+            this.error = error;
+        }
+    }
+
+    /**
+     * An exchange kept by a <code>WireCapture</code>.
+     */
+    public static final class Exchange {
+
+        private final Entry entry;
+        private final String request;
+        private final String response;
+
+        private Exchange(Entry entry, String request, String response) {
+            this.entry = entry;
+            this.request = request;
+            this.response = response;
+        }
+
+        /**
+         * Returns the sequence number of this exchange, starting at zero.
+         *
+         * @return the sequence number of this exchange
+         */
+        public long getSequence() {
+            return entry.sequence;
+        }
+
+        /**
+         * Returns the name of the service of this exchange.
+         *
+         * @return the name of the service of this exchange
+         */
+        public String getService() {
+            return entry.service;
+        }
+
+        /**
+         * Returns the instant this exchange was recorded.
+         *
+         * @return the instant this exchange was recorded
+         */
+        public Instant getInstant() {
+            return entry.instant;
+        }
+
+        /**
+         * Returns the request kept, possibly truncated; empty if there was none.
+         *
+         * @return the request kept
+         */
+        public String getRequest() {
+            return request;
+        }
+
+        /**
+         * Returns the full length in bytes of the request; if it was
+         * truncated without digest, only the bytes streamed until then.
+         *
+         * @return the length in bytes of the request
+         */
+        public long getRequestLength() {
+            return entry.requestLength;
+        }
+
+        /**
+         * Returns the SHA-256 digest of the full request, or null if it was
+         * not computed.
+         *
+         * @return the digest of the request, or null
+         */
+        public String getRequestDigest() {
+            return entry.requestDigest;
+        }
+
+        /**
+         * Returns the response kept, possibly truncated; empty if there was none.
+         *
+         * @return the response kept
+         */
+        public String getResponse() {
+            return response;
+        }
+
+        /**
+         * Returns the full length in bytes of the response, zero if there was
+         * none; if it was truncated without digest, only the bytes streamed
+         * until then.
+         *
+         * @return the length in bytes of the response
+         */
+        public long getResponseLength() {
+            return entry.responseLength;
+        }
+
+        /**
+         * Returns the SHA-256 digest of the full response, or null if it was
+         * not computed.
+         *
+         * @return the digest of the response, or null
+         */
+        public String getResponseDigest() {
+            return entry.responseDigest;
+        }
+
+        /**
+         * Returns true if the request or the response were truncated.
+         *
+         * @return true if a message was truncated
+         */
+        public boolean isTruncated() {
+            return (entry.requestLength > entry.requestStored
+                    || entry.responseLength > entry.responseStored);
+        }
+
+        /**
+         * Returns the error of this exchange, or null if it did not fail.
+         *
+         * @return the error of this exchange, or null
+         */
+        public String getError() {
+            return entry.error;
+        }
+
+        /**
+         * Returns a string representation of this exchange, without its messages.
+         *
+         * @return a string representation of this exchange
+         */
+        @Override public String toString() {
+            return new StringBuilder("Exchange{")
+                    .append("sequence=").append(getSequence())
+                    .append(",service=").append(getService())
+                    .append(",instant=").append(getInstant())
+                    .append(",requestLength=").append(getRequestLength())
+                    .append(",requestDigest=").append(getRequestDigest())
+                    .append(",responseLength=").append(getResponseLength())
+                    .append(",responseDigest=").append(getResponseDigest())
+                    .append(",truncated=").append(isTruncated())
+                    .append(",error=").append(getError())
+                    .append("}").toString();
+        }
+    }
+}
@@ -22,6 +22,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.security.PrivateKey;
+import java.security.Provider;
 import java.security.Security;
 
 import java.security.KeyStore;
@@ -36,14 +37,57 @@ import com.sicomsa.dmt.RepositoryException;
 
 /**
  * Helper methods for loading certificates and private keys from files.
+ * <p>The BouncyCastle provider is registered once, when this class is loaded.</p>
  * 
  * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
- * @version 2024.08.17
+ * @version 2025.02.06
  * @since 1.0
  * 
  */
 public final class CertUtils {
     
+    /**
+     * BouncyCastle provider, registered once when this class is loaded
+     */
+    private static final Provider BC_PROVIDER = registerProvider();
+    
+    /**
+     * Converter of private keys, it is stateless and shared among threads
+     */
+    private static final JcaPEMKeyConverter KEY_CONVERTER = new JcaPEMKeyConverter();
+    
+    /**
+     * Builder of decryptors, it only keeps the provider lookup helper and
+     * is shared among threads
+     */
+    private static final JceOpenSSLPKCS8DecryptorProviderBuilder DECRYPTOR_BUILDER =
+            new JceOpenSSLPKCS8DecryptorProviderBuilder();
+    
+    /**
+     * Registers the BouncyCastle provider if it is not already registered,
+     * and returns the registered instance.
+     * 
+     * @return the registered BouncyCastle provider
+     */
+    private static synchronized Provider registerProvider() {
+        Provider provider = Security.getProvider(BouncyCastleProvider.PROVIDER_NAME);
+        if (provider == null) {
+            provider = new BouncyCastleProvider();
+            Security.addProvider(provider);
+        }
+        return provider;
+    }
+    
+    /**
+     * Returns the BouncyCastle provider used by this class to decrypt
+     * private keys.
+     * 
+     * @return the BouncyCastle provider used by this class
+     */
+    public static Provider getProvider() {
+        return BC_PROVIDER;
+    }
+    
     /**
      * Creates RealCredentials from the contents of a certificate file
      * and a private key file with a given password.
@@ -204,8 +248,6 @@ public final class CertUtils {
         if (data == null || pwd == null) {
             throw new NullPointerException("invalid parameters");
         }
-        Security.addProvider(new BouncyCastleProvider());
-        
         EncryptedPrivateKeyInfo encryptedKeyInfo = 
                 EncryptedPrivateKeyInfo.getInstance(
                         ASN1Sequence.getInstance(data));
@@ -214,13 +256,13 @@ public final class CertUtils {
                 new PKCS8EncryptedPrivateKeyInfo(encryptedKeyInfo);
 
         InputDecryptorProvider decryptorProvider =
-                new JceOpenSSLPKCS8DecryptorProviderBuilder().build(pwd);
+                DECRYPTOR_BUILDER.build(pwd);
         
         PrivateKeyInfo privateKeyInfo =
                 pkcs8EncryptedPrivateKeyInfo.decryptPrivateKeyInfo(
                         decryptorProvider);
         
-        return new JcaPEMKeyConverter().getPrivateKey(privateKeyInfo);
+        return KEY_CONVERTER.getPrivateKey(privateKeyInfo);
     }
     
 }
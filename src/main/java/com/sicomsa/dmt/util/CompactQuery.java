@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.util;
+
+import com.sicomsa.dmt.Query;
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Collections;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Immutable {@link Query} implementation with fixed fields, whose attribute
+ * values are formatted once when the instance is created.
+ * <p>Attribute names and values are kept in two arrays sorted by name, which
+ * is the same order a {@link QueryMap} iterates them, so both implementations
+ * produce the same requests.</p>
+ * <p>Dates are truncated to seconds, and two instances are equal if they have
+ * the same receptors and the same formatted attributes, so instances can be
+ * used as keys of maps and caches.</p>
+ * <p>Instances are created with {@link CompactQuery#of(com.sicomsa.dmt.Query)}
+ * or with {@link QueryMap.Builder#buildCompact()}.</p>
+ *
+ * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
+ * @version 2025.02.04
+ * @since 1.0
+ *
+ */
+public final class CompactQuery implements Query {
+
+    private static final long serialVersionUID = 20250204L;
+
+    private final LocalDateTime fechaInicial;
+    private final LocalDateTime fechaFinal;
+    private final String rfcEmisor;
+    private final String rfcSolicitante;
+    private final String tipoSolicitud;
+    private final String tipoComprobante;
+    private final String estadoComprobante;
+    private final String rfcTerceros;
+    private final String complemento;
+    private final String folio;
+
+    /**
+     * Unmodifiable sorted set of RFC's of receptors
+     */
+    private final Set<String> receptorsSet;
+
+    /**
+     * Sorted names of the attributes that have a value
+     */
+    private final String[] names;
+
+    /**
+     * Formatted values of attributes, in the same order of names
+     */
+    private final String[] values;
+
+    /**
+     * Hash code computed on creation
+     */
+    private final int hash;
+
+    /**
+     * Creates a new <code>CompactQuery</code> with the contents of the
+     * specified query.
+     *
+     * @param query the query to copy
+     * @throws IllegalArgumentException if query is null
+     */
+    private CompactQuery(Query query) {
+        if (query == null) {
+            throw new IllegalArgumentException("invalid query");
+        }
+        fechaInicial = truncate(query.getFechaInicial());
+        fechaFinal = truncate(query.getFechaFinal());
+        rfcEmisor = query.getRfcEmisor();
+        rfcSolicitante = query.getRfcSolicitante();
+        tipoSolicitud = query.getTipoSolicitud();
+        tipoComprobante = query.getTipoComprobante();
+        estadoComprobante = query.getEstadoComprobante();
+        rfcTerceros = query.getRfcTerceros();
+        complemento = query.getComplemento();
+        folio = query.getFolio();
+
+        Set<String> set = query.getRfcReceptores();
+        receptorsSet = (set == null || set.isEmpty() ? Collections.emptySortedSet()
+                : Collections.unmodifiableSortedSet(new TreeSet<>(set)));
+
+        ArrayList<String> nameList = new ArrayList<>(10);
+        ArrayList<String> valueList = new ArrayList<>(10);
+        ///names must be added in alphabetical order
+        add(nameList, valueList, QueryMap.COMPLEMENTO, complemento);
+        add(nameList, valueList, QueryMap.ESTADO_COMPROBANTE, estadoComprobante);
+        add(nameList, valueList, QueryMap.FECHA_FINAL, format(fechaFinal));
+        add(nameList, valueList, QueryMap.FECHA_INICIAL, format(fechaInicial));
+        add(nameList, valueList, QueryMap.FOLIO, folio);
+        add(nameList, valueList, QueryMap.RFC_TERCEROS, rfcTerceros);
+        add(nameList, valueList, QueryMap.RFC_EMISOR, rfcEmisor);
+        add(nameList, valueList, QueryMap.RFC_SOLICITANTE, rfcSolicitante);
+        add(nameList, valueList, QueryMap.TIPO_COMPROBANTE, tipoComprobante);
+        add(nameList, valueList, QueryMap.TIPO_SOLICITUD, tipoSolicitud);
+        names = nameList.toArray(new String[0]);
+        values = valueList.toArray(new String[0]);
+
+        hash = 31 * (31 * receptorsSet.hashCode() + Arrays.hashCode(names))
+                + Arrays.hashCode(values);
+    }
+
+    /**
+     * Returns a <code>CompactQuery</code> with the contents of the specified
+     * query; returns the same instance if it already is a <code>CompactQuery</code>.
+     *
+     * @param query the query to copy
+     * @return a <code>CompactQuery</code> with the contents of the specified query
+     * @throws IllegalArgumentException if query is null
+     */
+    public static CompactQuery of(Query query) {
+        if (query instanceof CompactQuery compact) {
+            return compact;
+        }
+        return new CompactQuery(query);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    ///////  Query implementation
+
+    @Override public Set<String> getRfcReceptores() {
+        return receptorsSet;
+    }
+
+    @Override public LocalDateTime getFechaInicial() {
+        return fechaInicial;
+    }
+    @Override public LocalDateTime getFechaFinal() {
+        return fechaFinal;
+    }
+    @Override public String getRfcEmisor() {
+        return rfcEmisor;
+    }
+    @Override public String getRfcSolicitante() {
+        return rfcSolicitante;
+    }
+    @Override public String getTipoSolicitud() {
+        return tipoSolicitud;
+    }
+    @Override public String getTipoComprobante() {
+        return tipoComprobante;
+    }
+    @Override public String getEstadoComprobante() {
+        return estadoComprobante;
+    }
+    @Override public String getRfcTerceros() {
+        return rfcTerceros;
+    }
+    @Override public String getComplemento() {
+        return complemento;
+    }
+    @Override public String getFolio() {
+        return folio;
+    }
+    ////////////////////////////////////////////////////////////////////////////
+
+    @Override public Iterator<String> getAttributes() {
+        return List.of(names).iterator();
+    }
+
+    @Override public String getAttributeValue(String name) {
+        for (int idx = 0; idx < names.length; idx++) {
+            if (names[idx].equals(name)) {
+                return values[idx];
+            }
+        }
+        return null;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Returns true if the specified object is a <code>CompactQuery</code>
+     * with the same receptors and formatted attributes as this query.
+     *
+     * @param obj the object to compare
+     * @return true if the specified object is equal to this query
+     */
+    @Override public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        return (obj instanceof CompactQuery other)
+                && hash == other.hash
+                && receptorsSet.equals(other.receptorsSet)
+                && Arrays.equals(names, other.names)
+                && Arrays.equals(values, other.values);
+    }
+
+    @Override public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Returns a string representation of this query
+     *
+     * @return a string representation of this query
+     */
+    @Override public String toString() {
+        StringBuilder sb = new StringBuilder("CompactQuery{Receptores:")
+                .append(receptorsSet.toString())
+                .append(", Attributes:{");
+        for (int idx = 0; idx < names.length; idx++) {
+            if (idx > 0) {
+                sb.append(", ");
+            }
+            sb.append(names[idx]).append("=").append(values[idx]);
+        }
+        return sb.append("}}").toString();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    private static void add(List<String> nameList, List<String> valueList,
+            String name, String value) {
+        if (value != null) {
+            nameList.add(name);
+            valueList.add(value);
+        }
+    }
+
+    private static LocalDateTime truncate(LocalDateTime date) {
+        return (date == null ? null : date.truncatedTo(ChronoUnit.SECONDS));
+    }
+
+    private static String format(LocalDateTime date) {
+        return (date == null ? null
+                : DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(date));
+    }
+
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.util;
+
+import com.sicomsa.dmt.CachingCredentialsStore;
+import com.sicomsa.dmt.Credentials;
+import com.sicomsa.dmt.CredentialsStore;
+import com.sicomsa.dmt.RealCredentials;
+import com.sicomsa.dmt.RepositoryException;
+
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.pkcs.PKCSException;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.InstantSource;
+import java.security.PrivateKey;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * <code>CredentialsStore</code> that loads <code>Credentials</code> from
+ * certificate and private key files registered for each RFC.
+ * <p>Files are read and the private key decrypted every time credentials are
+ * requested; to keep them in memory and load several RFCs in parallel, wrap
+ * this store with a {@link com.sicomsa.dmt.CachingCredentialsStore}, as
+ * {@link FileCredentialsStore#loadAll(java.util.concurrent.Executor)} does.</p>
+ * <p>Passwords are kept in memory until unregistered; while a private key is
+ * decrypted a copy of its password is used, which is cleared afterwards.</p>
+ * <p>This class is thread safe.</p>
+ *
+ * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
+ * @version 2025.02.06
+ * @since 1.0
+ *
+ */
+public class FileCredentialsStore implements CredentialsStore {
+
+    /**
+     * Registered entries mapped by upper cased RFC
+     */
+    protected Map<String,Entry> entries;
+
+    /**
+     * Creates a new <code>FileCredentialsStore</code> without entries.
+     */
+    public FileCredentialsStore() {
+        entries = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Registers the files and password of the credentials of the specified RFC.
+     * <p>The password is copied, so the caller may clear it. If the RFC was
+     * already registered, the password of the previous entry is cleared.</p>
+     *
+     * @param rfc RFC of the contributor
+     * @param certFile file that contains the certificate
+     * @param keyFile file that contains the encrypted private key
+     * @param pwd password of the private key
+     * @return this store
+     * @throws IllegalArgumentException if any parameter is null
+     */
+    public FileCredentialsStore register(String rfc, File certFile, File keyFile, char[] pwd) {
+        if (rfc == null || certFile == null || keyFile == null || pwd == null) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        clear(entries.put(rfc.toUpperCase(), new Entry(certFile, keyFile, pwd.clone())));
+        return this;
+    }
+
+    /**
+     * Removes the entry of the specified RFC, clearing its password.
+     * <p>Credentials being read concurrently for the RFC either complete with
+     * a copy of the password taken before it was cleared, or return null.</p>
+     *
+     * @param rfc RFC of the contributor
+     * @throws NullPointerException if rfc is null
+     */
+    public void unregister(String rfc) {
+        clear(entries.remove(rfc.toUpperCase()));
+    }
+
+    /**
+     * Returns a set with the upper cased RFCs registered in this store.
+     *
+     * @return a set with the RFCs registered in this store
+     */
+    public Set<String> getRfcs() {
+        return new TreeSet<>(entries.keySet());
+    }
+
+    /**
+     * Reads the files registered for the specified RFC and returns its
+     * credentials, or null if the RFC is not registered.
+     *
+     * @param rfc RFC of the contributor, will be upper casted before the search
+     * @return credentials of the contributor or null if not registered
+     * @throws NullPointerException if rfc is null
+     * @throws RepositoryException if there were problems reading the files
+     *         or decrypting the private key
+     */
+    @Override public Credentials getCredentials(String rfc) {
+        String key = rfc.toUpperCase();
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        char[] pwd;
+        synchronized (entry) {
+            if (entries.get(key) != entry) {
+                return null; //unregistered or replaced, password may be cleared
+            }
+            pwd = entry.pwd.clone();
+        }
+        try {
+            X509Certificate cert = CertUtils.loadCertificate(entry.certFile);
+            PrivateKey pk = CertUtils.loadPrivateKey(entry.keyFile, pwd);
+            return new RealCredentials(key, cert, pk);
+        }
+        catch (IOException | CertificateException | PKCSException | OperatorCreationException e) {
+            throw new RepositoryException(e.getMessage(), e);
+        }
+        finally {
+            Arrays.fill(pwd, '\0');
+        }
+    }
+
+    /**
+     * Returns a new <code>CachingCredentialsStore</code> backed by this store,
+     * after loading in parallel the credentials of every registered RFC
+     * using the specified executor.
+     *
+     * @param executor executor that will load the credentials
+     * @return a <code>CachingCredentialsStore</code> with all registered
+     *         credentials loaded
+     * @throws IllegalArgumentException if executor is null
+     */
+    public CachingCredentialsStore loadAll(Executor executor) {
+        Set<String> rfcs = getRfcs();
+        CachingCredentialsStore cache = new CachingCredentialsStore(this,
+                Math.max(CachingCredentialsStore.DEFAULT_MAX_SIZE, rfcs.size()),
+                InstantSource.system());
+        cache.warmUp(rfcs, executor);
+        return cache;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Clears the password of the specified entry, once it was removed from
+     * the map. Readers copy the password holding the lock of the entry, after
+     * checking it is still mapped.
+     *
+     * @param entry the entry removed, may be null
+     */
+    private static void clear(Entry entry) {
+        if (entry != null) {
+            synchronized (entry) {
+                Arrays.fill(entry.pwd, '\0');
+            }
+        }
+    }
+
+    /**
+     * Files and password of registered credentials.
+     */
+    protected static class Entry {
+
+        /**
+         * Certificate file
+         */
+        protected final File certFile;
+
+        /**
+         * Private key file
+         */
+        protected final File keyFile;
+
+        /**
+         * Password of the private key
+         */
+        protected final char[] pwd;
+
+        /**
+         * Creates a new entry with the specified parameters.
+         *
+         * @param certFile certificate file
+         * @param keyFile private key file
+         * @param pwd password of the private key
+         */
+        protected Entry(File certFile, File keyFile, char[] pwd) {
+            this.certFile = certFile;
+            this.keyFile = keyFile;
+            this.pwd = pwd;
+        }
+    }
+}
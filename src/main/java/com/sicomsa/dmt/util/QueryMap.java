@@ -329,7 +329,18 @@ public class QueryMap implements Query {
         public QueryMap build() {
             return new QueryMap(this);
         }
-        
+
+        /**
+         * Returns a new immutable {@link CompactQuery} with the parameters set
+         * in this builder.
+         *
+         * @return a new <code>CompactQuery</code> with the parameters set in
+         *         this builder.
+         */
+        public CompactQuery buildCompact() {
+            return CompactQuery.of(build());
+        }
+
         /**
          * Resets all properties and attributes in this builder.
          * 
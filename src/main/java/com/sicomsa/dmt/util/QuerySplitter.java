@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.util;
+
+import com.sicomsa.dmt.Query;
+
+import java.util.List;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * <code>QuerySplitter</code> uses a {@link QueryMap.Builder} to bisect the
+ * <code>FechaInicial</code>/<code>FechaFinal</code> period of a <code>Query</code>
+ * into two consecutive queries that keep every other attribute of the original.
+ * <p>It is used when SAT refuses a query because it covers too many CFDIs, so
+ * the period can be requested in smaller parts.</p>
+ * <p>Dates are handled with a precision of seconds, the same precision used
+ * by <code>QueryMap</code> when formatting them.</p>
+ *
+ * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
+ * @version 2025.02.03
+ * @since 1.0
+ *
+ */
+public class QuerySplitter {
+
+    /**
+     * Default minimum period a split query may cover = one hour.
+     */
+    public static final Duration DEFAULT_MIN_PERIOD = Duration.ofHours(1);
+
+    /**
+     * Minimum period a split query may cover
+     */
+    protected Duration minPeriod;
+
+    /**
+     * Creates a new <code>QuerySplitter</code> with a minimum period of
+     * {@link QuerySplitter#DEFAULT_MIN_PERIOD}.
+     */
+    public QuerySplitter() {
+        this(DEFAULT_MIN_PERIOD);
+    }
+
+    /**
+     * Creates a new <code>QuerySplitter</code> that will not split queries
+     * into periods shorter than the specified duration.
+     *
+     * @param minPeriod minimum period a split query may cover
+     * @throws IllegalArgumentException if minPeriod is null or shorter than
+     *         one second
+     */
+    public QuerySplitter(Duration minPeriod) {
+        if (minPeriod == null || minPeriod.getSeconds() < 1) {
+            throw new IllegalArgumentException("invalid min period");
+        }
+        this.minPeriod = minPeriod;
+    }
+
+    /**
+     * Returns the minimum period a split query may cover.
+     *
+     * @return the minimum period a split query may cover
+     */
+    public Duration getMinPeriod() {
+        return minPeriod;
+    }
+
+    /**
+     * Returns true if the specified query has both dates set and its period
+     * can be divided in two periods not shorter than the minimum period of
+     * this splitter.
+     *
+     * @param query query to evaluate
+     * @return true if the specified query can be split
+     * @throws NullPointerException if query is null
+     */
+    public boolean canSplit(Query query) {
+        LocalDateTime start = query.getFechaInicial();
+        LocalDateTime end = query.getFechaFinal();
+        if (start == null || end == null) {
+            return false;
+        }
+        long seconds = ChronoUnit.SECONDS.between(
+                truncate(start), truncate(end));
+        return (seconds / 2 >= minPeriod.getSeconds());
+    }
+
+    /**
+     * Splits the period of the specified query in two halves and returns a
+     * list with a query for each half.
+     * <p>The first query ends at the middle second of the original period,
+     * and the second query begins one second later, so the original period
+     * is fully covered without overlapping.</p>
+     *
+     * @param query query to split
+     * @return a list with the two queries that cover the original period
+     * @throws IllegalArgumentException if query is null or can not be split
+     */
+    public List<Query> split(Query query) {
+        if (query == null || !canSplit(query)) {
+            throw new IllegalArgumentException("query can not be split");
+        }
+        LocalDateTime start = truncate(query.getFechaInicial());
+        LocalDateTime end = truncate(query.getFechaFinal());
+        LocalDateTime middle = start.plusSeconds(
+                ChronoUnit.SECONDS.between(start, end) / 2);
+
+        QueryMap.Builder builder = QueryMap.builder().resetQuery(query);
+        QueryMap first = builder.setFechaInicial(start).setFechaFinal(middle).build();
+        QueryMap second = builder.setFechaInicial(middle.plusSeconds(1))
+                .setFechaFinal(end).build();
+        return List.of(first, second);
+    }
+
+    /**
+     * Returns the specified date truncated to seconds.
+     *
+     * @param date date to truncate
+     * @return the specified date truncated to seconds
+     */
+    protected LocalDateTime truncate(LocalDateTime date) {
+        return date.truncatedTo(ChronoUnit.SECONDS);
+    }
+
+    /**
+     * Returns a string representation of this splitter.
+     *
+     * @return a string representation of this splitter
+     */
+    @Override public String toString() {
+        return new StringBuilder("QuerySplitter{")
+                .append("minPeriod=").append(minPeriod)
+                .append("}").toString();
+    }
+}
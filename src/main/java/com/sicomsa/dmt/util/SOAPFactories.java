@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.util;
+
+
+import jakarta.xml.soap.MessageFactory;
+import jakarta.xml.soap.SOAPException;
+
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+
+/**
+ * Helper class that provides shared instances of the factories needed to
+ * create and sign messages, so they are looked up once instead of on every
+ * call and without locking once created.
+ * <p>The <code>MessageFactory</code> is created lazily and shared by all
+ * threads; SAAJ message factories keep no state between calls to
+ * <code>createMessage</code>. If two threads ask for it at the same time both
+ * may create one, which is harmless; the one kept is safely published.</p>
+ * <p>The API of <code>XMLSignatureFactory</code> does not guarantee its
+ * instance methods are thread safe, so each thread gets its own instance,
+ * created the first time that thread asks for it.</p>
+ *
+ * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
+ * @version 2025.02.19
+ * @since 1.0
+ *
+ */
+public final class SOAPFactories {
+
+    /**
+     * Mechanism type of the signature factories = "DOM"
+     */
+    public static final String MECHANISM_TYPE = "DOM";
+
+    private static volatile MessageFactory messageFactory;
+
+    private static final ThreadLocal<XMLSignatureFactory> SIGNATURE_FACTORY =
+            ThreadLocal.withInitial(()->XMLSignatureFactory.getInstance(MECHANISM_TYPE));
+
+    private SOAPFactories() {
+    }
+
+    /**
+     * Returns the shared SOAP 1.1 <code>MessageFactory</code>, creating it
+     * the first time it is needed.
+     *
+     * @return the shared <code>MessageFactory</code>
+     * @throws SOAPException if the factory could not be created
+     */
+    public static MessageFactory getMessageFactory() throws SOAPException {
+        MessageFactory factory = messageFactory;
+        if (factory == null) {
+            factory = MessageFactory.newInstance();
+            messageFactory = factory;
+        }
+        return factory;
+    }
+
+    /**
+     * Returns the DOM <code>XMLSignatureFactory</code> of the current thread,
+     * creating it the first time the thread needs it.
+     *
+     * @return the <code>XMLSignatureFactory</code> of the current thread
+     * @throws javax.xml.crypto.NoSuchMechanismException if no provider supports
+     *         the DOM mechanism
+     */
+    public static XMLSignatureFactory getXMLSignatureFactory() {
+        return SIGNATURE_FACTORY.get();
+    }
+}
@@ -10,7 +10,6 @@ import jakarta.xml.soap.Node;
 import jakarta.xml.soap.SOAPElement;
 import javax.xml.namespace.QName;
 
-import jakarta.xml.soap.MessageFactory;
 import jakarta.xml.soap.MimeHeaders;
 import jakarta.xml.soap.SOAPException;
 import jakarta.xml.soap.SOAPMessage;
@@ -34,7 +33,7 @@ import java.util.logging.Logger;
  * 
  * 
  * @author <a href="https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198">Beto Lopez</a>
- * @version 2025.01.13
+ * @version 2025.02.19
  * @since 1.0
  * 
  */
@@ -189,7 +188,7 @@ public final class SOAPUtils {
      */
     public static SOAPMessage fromString(String string) throws SOAPException, IOException {
         try (ByteArrayInputStream in = new ByteArrayInputStream(string.getBytes(StandardCharsets.UTF_8))) {
-            return MessageFactory.newInstance().createMessage(new MimeHeaders(), in);
+            return SOAPFactories.getMessageFactory().createMessage(new MimeHeaders(), in);
         }
     }
     
@@ -256,7 +255,7 @@ public final class SOAPUtils {
         }
         try (FileInputStream fis = new FileInputStream(file)) {
             try (BufferedInputStream bis = new BufferedInputStream(fis)) {
-                return MessageFactory.newInstance()
+                return SOAPFactories.getMessageFactory()
                         .createMessage(new MimeHeaders(), bis);
             }
         }
@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.InstantSource;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+ 
+/**
+ *
+ * @author https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198
+ *
+ * @since 2025.02.05
+ *
+ *
+ */
+public class CachingCredentialsStoreTest {
+    
+    static Instant now;
+    static KeyPair keyPair;
+    static X509Certificate validCert;
+    static X509Certificate expiredCert;
+
+    public CachingCredentialsStoreTest() {
+    }
+
+    @BeforeAll
+    public static void setUpClass() throws Exception {
+        now = Instant.now();
+        keyPair = newKeyPair();
+        validCert = newCertificate(keyPair, now.plus(365, ChronoUnit.DAYS));
+        expiredCert = newCertificate(keyPair, now.minus(1, ChronoUnit.DAYS));
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+    }
+
+    @BeforeEach
+    public void setUp() {
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+    
+    public static KeyPair newKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+    
+    public static X509Certificate newCertificate(KeyPair keyPair, Instant notAfter) throws Exception {
+        X500Principal subject = new X500Principal("CN=TEST");
+        Instant notBefore = notAfter.minus(730, ChronoUnit.DAYS);
+        JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+                subject, BigInteger.valueOf(notAfter.toEpochMilli()),
+                Date.from(notBefore), Date.from(notAfter), subject, keyPair.getPublic());
+        return new JcaX509CertificateConverter().getCertificate(
+                builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(keyPair.getPrivate())));
+    }
+    
+    public static class CountingStore implements CredentialsStore {
+        protected Map<String,AtomicInteger> counters = new ConcurrentHashMap<>();
+        protected X509Certificate cert;
+        
+        public CountingStore(X509Certificate cert) {
+            this.cert = cert;
+        }
+        public int getCount(String rfc) {
+            AtomicInteger counter = counters.get(rfc);
+            return (counter == null ? 0 : counter.get());
+        }
+        @Override public Credentials getCredentials(String rfc) {
+            counters.computeIfAbsent(rfc, key->new AtomicInteger()).incrementAndGet();
+            if (rfc.startsWith("NONE")) {
+                return null;
+            }
+            if (rfc.startsWith("ERROR")) {
+                throw new RepositoryException("error for:"+rfc);
+            }
+            return new RealCredentials(rfc, cert, keyPair.getPrivate());
+        }
+    }
+
+    /**
+     * Test of constructor, of class CachingCredentialsStore.
+     */
+    @Test
+    public void testConstructor() {
+        System.out.println("CachingCredentialsStore");
+        CountingStore store = new CountingStore(validCert);
+        assertThrows(IllegalArgumentException.class, ()->new CachingCredentialsStore(null));
+        assertThrows(IllegalArgumentException.class, ()->new CachingCredentialsStore(store, 0, InstantSource.system()));
+        assertThrows(IllegalArgumentException.class, ()->new CachingCredentialsStore(store, 1, null));
+        assertEquals(CachingCredentialsStore.DEFAULT_MAX_SIZE, new CachingCredentialsStore(store).getMaxSize());
+    }
+
+    /**
+     * Test of getCredentials method, of class CachingCredentialsStore.
+     */
+    @Test
+    public void testGetCredentials() {
+        System.out.println("getCredentials");
+        CountingStore store = new CountingStore(validCert);
+        CachingCredentialsStore instance = new CachingCredentialsStore(store);
+        Credentials result = instance.getCredentials("rfc1");
+        assertEquals("RFC1", result.getRfc());
+        assertSame(result, instance.getCredentials("RFC1"));
+        assertEquals(1, store.getCount("RFC1"));
+        assertEquals(1, instance.getHitCount());
+        assertEquals(1, instance.getMissCount());
+        assertEquals(1, instance.getLoadCount());
+        assertTrue(instance.getMaxLoadNanos() > 0);
+        
+        assertNull(instance.getCredentials("NONE1"));
+        assertNull(instance.getCredentials("NONE1"));
+        assertEquals(2, store.getCount("NONE1"));
+        assertThrows(RepositoryException.class, ()->instance.getCredentials("ERROR1"));
+        assertThrows(IllegalArgumentException.class, ()->instance.getCredentials(null));
+        assertEquals(1, instance.size());
+    }
+
+    /**
+     * Test of size limit, of class CachingCredentialsStore.
+     */
+    @Test
+    public void testEviction() {
+        System.out.println("eviction");
+        CountingStore store = new CountingStore(validCert);
+        CachingCredentialsStore instance = new CachingCredentialsStore(store, 2, InstantSource.system());
+        instance.getCredentials("A");
+        instance.getCredentials("B");
+        instance.getCredentials("A"); //B is now the eldest
+        instance.getCredentials("C");
+        assertEquals(2, instance.size());
+        assertEquals(1, instance.getEvictionCount());
+        instance.getCredentials("A");
+        assertEquals(1, store.getCount("A"));
+        instance.getCredentials("B");
+        assertEquals(2, store.getCount("B"));
+        
+        instance.invalidate("a");
+        instance.getCredentials("A");
+        assertEquals(2, store.getCount("A"));
+        instance.invalidateAll();
+        assertEquals(0, instance.size());
+    }
+
+    /**
+     * Test of certificate expiration, of class CachingCredentialsStore.
+     */
+    @Test
+    public void testExpiration() {
+        System.out.println("expiration");
+        CountingStore store = new CountingStore(validCert);
+        InstantSource future = InstantSource.fixed(now.plus(400, ChronoUnit.DAYS));
+        CachingCredentialsStore instance = new CachingCredentialsStore(store, 10, future);
+        assertNotNull(instance.getCredentials("A"));
+        assertNotNull(instance.getCredentials("A"));
+        assertEquals(2, store.getCount("A"));
+        assertEquals(0, instance.size());
+        
+        CachingCredentialsStore instance2 = new CachingCredentialsStore(new CountingStore(expiredCert));
+        assertNotNull(instance2.getCredentials("A"));
+        assertEquals(0, instance2.size());
+        
+        MutableClock clock = new MutableClock(now);
+        CachingCredentialsStore instance3 = new CachingCredentialsStore(store, 10, clock);
+        instance3.getCredentials("B");
+        assertEquals(1, instance3.size());
+        clock.setInstant(now.plus(400, ChronoUnit.DAYS));
+        instance3.getCredentials("B");
+        assertEquals(1, instance3.getExpiredCount());
+    }
+    
+    protected static class MutableClock implements InstantSource {
+        private volatile Instant instant;
+        public MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+        public void setInstant(Instant instant) {
+            this.instant = instant;
+        }
+        @Override public Instant instant() {
+            return instant;
+        }
+    }
+
+    /**
+     * Test of warmUp method, of class CachingCredentialsStore.
+     */
+    @Test
+    public void testWarmUp() {
+        System.out.println("warmUp");
+        CountingStore store = new CountingStore(validCert);
+        CachingCredentialsStore instance = new CachingCredentialsStore(store);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            int result = instance.warmUp(List.of("A", "B", "C", "D", "NONE", "ERROR"), executor);
+            assertEquals(4, result);
+            assertEquals(4, instance.size());
+            assertEquals(0, instance.warmUp(List.of("a", "b"), executor));
+            assertEquals(1, store.getCount("A"));
+            assertEquals(1, instance.warmUp(List.of("e", "E", "e"), executor));
+            assertEquals(1, store.getCount("E"));
+            assertThrows(IllegalArgumentException.class, ()->instance.warmUp(null, executor));
+            assertThrows(IllegalArgumentException.class, ()->instance.warmUp(List.of(), null));
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+    
+    /**
+     * Test of getCredentials method, of class CachingCredentialsStore, with
+     * concurrent misses of the same RFC.
+     */
+    @Test
+    public void testGetCredentialsConcurrent() throws Exception {
+        System.out.println("getCredentialsConcurrent");
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountingStore store = new CountingStore(validCert) {
+            @Override public Credentials getCredentials(String rfc) {
+                entered.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.getCredentials(rfc);
+            }
+        };
+        CachingCredentialsStore instance = new CachingCredentialsStore(store);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Credentials>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                String rfc = (i % 2 == 0 ? "a" : "A");
+                futures.add(executor.submit(()->instance.getCredentials(rfc)));
+            }
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+            Thread.sleep(100); //let the other threads wait for the load
+            release.countDown();
+            Credentials first = futures.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<Credentials> future : futures) {
+                assertSame(first, future.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, store.getCount("A"));
+            assertEquals(1, instance.getLoadCount());
+            
+            //failures are thrown to every waiter, and not kept
+            assertThrows(RepositoryException.class, ()->instance.getCredentials("ERROR"));
+            assertThrows(RepositoryException.class, ()->instance.getCredentials("ERROR"));
+            assertEquals(2, store.getCount("ERROR"));
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+    
+}
@@ -164,4 +164,24 @@ public class DescargaResponseTest {
         assertNull(instance.getEncodedPackage());
     }
 
+    /**
+     * Test of retain method, of class DescargaResponse.
+     */
+    @Test
+    public void testRetain() {
+        System.out.println("retain");
+        DescargaResponse instance = new DescargaResponse(instant, sts, message, pid, thepackage);
+        assertTrue(instance.retain());
+        assertTrue(instance.retain());
+        instance.dispose();
+        instance.dispose();
+        assertFalse(instance.isDisposed());
+        assertEquals(thepackage, instance.getEncodedPackage());
+        instance.dispose();
+        assertTrue(instance.isDisposed());
+        assertNull(instance.getEncodedPackage());
+        assertFalse(instance.retain());
+        assertFalse(disposedResponse.retain());
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,362 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt;
+
+import com.sicomsa.dmt.util.QueryMapTest;
+
+import jakarta.xml.soap.SOAPConnection;
+import jakarta.xml.soap.SOAPConnectionFactory;
+import jakarta.xml.soap.SOAPException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.InstantSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198
+ *
+ * @since 2025.02.19
+ *
+ *
+ */
+public class TokenPrefetcherTest {
+
+    static SOAPConnection conn;
+
+    public TokenPrefetcherTest() {
+    }
+
+    @BeforeAll
+    public static void setUpClass() throws SOAPException {
+        conn = SOAPConnectionFactory.newInstance().createConnection();
+    }
+
+    @AfterAll
+    public static void tearDownClass() throws SOAPException {
+        conn.close();
+    }
+
+    @BeforeEach
+    public void setUp() {
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * Service whose tokens last <code>life</code> and that counts
+     * authentications; fails while <code>fail</code> is true, and its
+     * instant is <code>offset</code> away from the system clock; each
+     * authentication takes <code>pause</code> milliseconds.
+     */
+    public static class ShortTokenService extends ClientTest.ServiceMock {
+        protected final Duration life;
+        protected final AtomicInteger authentications = new AtomicInteger();
+        protected volatile boolean fail;
+        protected volatile Duration offset = Duration.ZERO;
+        protected volatile long pause;
+
+        public ShortTokenService(Duration life) {
+            this.life = life;
+        }
+        @Override public Instant instant() {
+            return super.instant().plus(offset);
+        }
+        @Override public Authorization autentica(SOAPConnection conn, Credentials creds) throws SOAPException {
+            if (pause > 0) {
+                try {
+                    Thread.sleep(pause);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (fail) {
+                throw new SOAPException("test thrown autentica exception");
+            }
+            Instant now = instant();
+            return new Authorization(now, now, now.plus(life), "token-"+authentications.incrementAndGet());
+        }
+    }
+
+    /**
+     * Test of register method, of class TokenPrefetcher.
+     */
+    @Test
+    public void testRegister() throws Exception {
+        System.out.println("register");
+        ShortTokenService service = new ShortTokenService(Duration.ofMillis(1200));
+        Client client = new Client(new ClientTest.UselessCredentials(), service);
+        try (TokenPrefetcher instance = new TokenPrefetcher(conn, Duration.ofMillis(400),
+                Duration.ofMillis(100), InstantSource.system())) {
+            assertThrows(IllegalArgumentException.class, ()->instance.register(null));
+            assertTrue(instance.register(client));
+            assertFalse(instance.register(client));
+            assertTrue(instance.isRegistered(client));
+            assertFalse(instance.isRegistered(new Client(new ClientTest.UselessCredentials(), service)));
+            assertEquals(1, instance.getActiveCount());
+
+            waitFor(()->instance.getRefreshCount() == 1, 2_000);
+            assertEquals("token-1", client.getAuthorization().getToken());
+            assertEquals(1, service.authentications.get());
+
+            //renewed 400ms before its expiration, requests never authenticate
+            Query query = new QueryMapTest().getFullQuery();
+            long end = System.currentTimeMillis() + 2_000;
+            while (System.currentTimeMillis() < end) {
+                assertNotNull(client.requestDownload(conn, query));
+                assertTrue(client.getAuthorization().getExpires().isAfter(Instant.now()));
+                Thread.sleep(50);
+            }
+            assertTrue(instance.getRefreshCount() >= 3, instance.toString());
+            assertEquals(instance.getRefreshCount(), service.authentications.get());
+            assertEquals(0, instance.getFailureCount());
+            System.out.println(instance);
+
+            assertTrue(instance.unregister(client));
+            assertFalse(instance.unregister(client));
+            assertEquals(0, instance.getActiveCount());
+            int count = service.authentications.get();
+            Thread.sleep(1_000);
+            assertEquals(count, service.authentications.get());
+        }
+    }
+
+    /**
+     * Test of register method, of class TokenPrefetcher, when renewals fail.
+     */
+    @Test
+    public void testRegisterFailure() throws Exception {
+        System.out.println("registerFailure");
+        ShortTokenService service = new ShortTokenService(Duration.ofMinutes(5));
+        service.fail = true;
+        Client client = new Client(new ClientTest.UselessCredentials(), service);
+        try (TokenPrefetcher instance = new TokenPrefetcher(conn, Duration.ofSeconds(30),
+                Duration.ofMillis(50), InstantSource.system())) {
+            instance.register(client);
+            waitFor(()->instance.getFailureCount() >= 2, 2_000);
+            assertNull(client.getAuthorization());
+            service.fail = false;
+            waitFor(()->instance.getRefreshCount() == 1, 2_000);
+            assertNotNull(client.getAuthorization());
+            Thread.sleep(200);
+            assertEquals(1, service.authentications.get());
+        }
+    }
+
+    /**
+     * Test of register method, of class TokenPrefetcher, with several clients;
+     * their first renewals are spaced and a hanging authentication does not
+     * delay the others.
+     */
+    @Test
+    public void testRegisterMany() throws Exception {
+        System.out.println("registerMany");
+        ShortTokenService slow = new ShortTokenService(Duration.ofMinutes(5));
+        slow.pause = 2_000;
+        ShortTokenService fast = new ShortTokenService(Duration.ofMinutes(5));
+        try (TokenPrefetcher instance = new TokenPrefetcher(conn, Duration.ofSeconds(30),
+                Duration.ofSeconds(1), null, 4, Duration.ofMillis(200))) {
+            instance.register(newClient("SLOW", slow));
+            List<Client> clients = new ArrayList<>();
+            for (int idx = 0; idx < 3; idx++) {
+                clients.add(newClient("FAST"+idx, fast));
+                instance.register(clients.get(idx));
+            }
+            Thread.sleep(300);
+            assertTrue(fast.authentications.get() < 3, String.valueOf(fast.authentications.get()));
+            waitFor(()->fast.authentications.get() == 3, 1_500);
+            clients.forEach(client->assertNotNull(client.getAuthorization()));
+            assertEquals(0, slow.authentications.get());
+        }
+        assertThrows(IllegalArgumentException.class,
+                ()->new TokenPrefetcher(conn, Duration.ofSeconds(1), Duration.ofSeconds(1), null, 0, Duration.ZERO));
+        assertThrows(IllegalArgumentException.class,
+                ()->new TokenPrefetcher(conn, Duration.ofSeconds(1), Duration.ofSeconds(1), null, 1, null));
+    }
+
+    protected static Client newClient(String rfc, ShortTokenService service) {
+        return new Client(new ClientTest.UselessCredentials() {
+            @Override public String getRfc() {
+                return rfc;
+            }
+        }, service);
+    }
+
+    /**
+     * Test of getDelay method, of class TokenPrefetcher, scheduling with the
+     * instant source of the service of the client by default.
+     */
+    @Test
+    public void testGetDelay() throws Exception {
+        System.out.println("getDelay");
+        ShortTokenService service = new ShortTokenService(Duration.ofMinutes(5));
+        service.offset = Duration.ofMinutes(-10);
+        Client client = new Client(new ClientTest.UselessCredentials(), service);
+        try (TokenPrefetcher instance = new TokenPrefetcher(conn)) {
+            assertEquals(0, instance.getDelay(client, null));
+            Authorization authorization = client.refreshToken(conn, Duration.ZERO);
+            long delay = instance.getDelay(client, authorization);
+            assertTrue(delay > Duration.ofMinutes(4).toNanos(), String.valueOf(delay));
+            assertTrue(delay <= Duration.ofSeconds(270).toNanos(), String.valueOf(delay));
+        }
+        //with the system clock the token looks expired
+        try (TokenPrefetcher instance = new TokenPrefetcher(conn, Duration.ofSeconds(30),
+                Duration.ofSeconds(10), InstantSource.system())) {
+            assertEquals(0, instance.getDelay(client, client.getAuthorization()));
+        }
+    }
+
+    /**
+     * Test of refresh method, of class TokenPrefetcher, when the token is
+     * still valid for the client but due for the prefetcher; renewals wait
+     * at least retryDelay instead of looping.
+     */
+    @Test
+    public void testRefreshFloor() throws Exception {
+        System.out.println("refreshFloor");
+        ShortTokenService service = new ShortTokenService(Duration.ofMinutes(5));
+        service.offset = Duration.ofMinutes(-10);
+        Client client = new Client(new ClientTest.UselessCredentials(), service);
+        AtomicInteger calls = new AtomicInteger();
+        try (TokenPrefetcher instance = new TokenPrefetcher(conn, Duration.ofSeconds(30),
+                Duration.ofMillis(100), InstantSource.system()) {
+                    @Override protected void refresh(Renewal renewal) {
+                        calls.incrementAndGet();
+                        super.refresh(renewal);
+                    }
+                }) {
+            instance.register(client);
+            Thread.sleep(500);
+            assertEquals(1, service.authentications.get());
+            assertEquals(1, instance.getRefreshCount());
+            assertTrue(calls.get() >= 2 && calls.get() <= 7, String.valueOf(calls.get()));
+        }
+    }
+
+    /**
+     * Test of getLeadTime method, of class TokenPrefetcher.
+     */
+    @Test
+    public void testGetLeadTime() {
+        System.out.println("getLeadTime");
+        try (TokenPrefetcher instance = new TokenPrefetcher(conn)) {
+            Instant created = Instant.parse("2025-02-19T10:00:00Z");
+            Instant expires = created.plusSeconds(300);
+            assertEquals(TokenPrefetcher.DEFAULT_MIN_LEAD, instance.getLeadTime(null));
+            assertEquals(Duration.ofSeconds(30),
+                    instance.getLeadTime(new Authorization(created, created, expires, "t")));
+            //local clock behind or ahead of SAT
+            assertEquals(Duration.ofSeconds(42),
+                    instance.getLeadTime(new Authorization(created.minusSeconds(12), created, expires, "t")));
+            assertEquals(Duration.ofSeconds(37),
+                    instance.getLeadTime(new Authorization(created.plusSeconds(7), created, expires, "t")));
+            //never more than half the life of the token
+            assertEquals(Duration.ofSeconds(150),
+                    instance.getLeadTime(new Authorization(created.plusSeconds(600), created, expires, "t")));
+        }
+        assertThrows(IllegalArgumentException.class, ()->new TokenPrefetcher(null));
+        assertThrows(IllegalArgumentException.class,
+                ()->new TokenPrefetcher(conn, Duration.ofSeconds(1), Duration.ZERO, InstantSource.system()));
+    }
+
+    /**
+     * Test of refreshToken method, of class Client.
+     */
+    @Test
+    public void testRefreshToken() throws Exception {
+        System.out.println("refreshToken");
+        ShortTokenService service = new ShortTokenService(Duration.ofMinutes(5));
+        Client client = new Client(new ClientTest.UselessCredentials(), service);
+        assertNull(client.getAuthorization());
+        Authorization first = client.refreshToken(conn, Duration.ZERO);
+        assertSame(first, client.getAuthorization());
+        assertSame(first, client.refreshToken(conn, Duration.ofMinutes(4)));
+        Authorization second = client.refreshToken(conn, Duration.ofMinutes(5));
+        assertNotSame(first, second);
+        assertEquals(2, service.authentications.get());
+        assertThrows(IllegalArgumentException.class, ()->client.refreshToken(conn, null));
+        assertThrows(IllegalArgumentException.class, ()->client.refreshToken(conn, Duration.ofSeconds(-1)));
+    }
+
+    /**
+     * Test of refreshToken method, of class Client, while requests run; a
+     * valid token is used without waiting for the renewal, and concurrent
+     * callers authenticate only once.
+     */
+    @Test
+    public void testRefreshTokenConcurrent() throws Exception {
+        System.out.println("refreshTokenConcurrent");
+        ShortTokenService service = new ShortTokenService(Duration.ofMinutes(5));
+        Client client = new Client(new ClientTest.UselessCredentials(), service);
+        Authorization first = client.refreshToken(conn, Duration.ZERO);
+        service.pause = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<Authorization> renewal = executor.submit(()->client.refreshToken(conn, Duration.ofMinutes(5)));
+            waitFor(()->service.authentications.get() == 1 && client.getAuthorization() == first, 100);
+            Thread.sleep(50);
+            long begin = System.nanoTime();
+            assertEquals(Authorization.wrapp(first.getToken()), client.getValidToken(conn));
+            assertTrue(System.nanoTime() - begin < 200_000_000L);
+
+            //due for the first token, not for the one being received
+            Thread.sleep(300);
+            Duration lead = Duration.ofMinutes(5).minusMillis(300);
+            List<Future<Authorization>> others = new ArrayList<>();
+            for (int idx = 0; idx < 3; idx++) {
+                others.add(executor.submit(()->client.refreshToken(conn, lead)));
+            }
+            Authorization second = renewal.get(5, TimeUnit.SECONDS);
+            assertNotSame(first, second);
+            for (Future<Authorization> other : others) {
+                assertSame(second, other.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(2, service.authentications.get());
+
+            //callers waiting for a failed authentication fail too
+            service.fail = true;
+            List<Future<Authorization>> failed = new ArrayList<>();
+            for (int idx = 0; idx < 3; idx++) {
+                failed.add(executor.submit(()->client.refreshToken(conn, Duration.ofMinutes(5))));
+            }
+            for (Future<Authorization> future : failed) {
+                ExecutionException e = assertThrows(ExecutionException.class, ()->future.get(5, TimeUnit.SECONDS));
+                assertTrue(e.getCause() instanceof SOAPException);
+            }
+            assertSame(second, client.getAuthorization());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    protected void waitFor(BooleanSupplier condition, long millis) throws InterruptedException {
+        long end = System.currentTimeMillis() + millis;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < end, "timed out");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -710,7 +710,7 @@ public class DefaultSolicitudeTest {
     }
     
     protected boolean hasListener(DefaultSolicitude instance, DownloadListener listener) {
-        Object[] array = instance.listenerList.getListenerList();
+        Object[] array = instance.eventBus.getListeners();
         for (Object obj : array) {
             if (obj == listener) {
                 return true;
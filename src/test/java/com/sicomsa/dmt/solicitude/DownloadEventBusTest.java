@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.solicitude;
+
+import com.sicomsa.dmt.DescargaResponse;
+import com.sicomsa.dmt.SolicitaResponse;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+ 
+/**
+ *
+ * @author https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198
+ *
+ * @since 2025.02.07
+ *
+ *
+ */
+public class DownloadEventBusTest {
+    
+    static Solicitude source;
+    static SolicitaResponse response;
+
+    public DownloadEventBusTest() {
+    }
+
+    @BeforeAll
+    public static void setUpClass() {
+        source = new DefaultSolicitudeTest.DefaultSolicitudePre();
+        response = new SolicitaResponse(Instant.now(), "5000", "Solicitud Aceptada", "rid");
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+    }
+
+    @BeforeEach
+    public void setUp() {
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+    
+    protected DownloadEvent newEvent() {
+        return new DownloadEvent(source, DownloadEvent.Result.ACCEPTED, response);
+    }
+
+    /**
+     * Test of addListener and removeListener methods, of class DownloadEventBus.
+     */
+    @Test
+    public void testAddRemoveListener() {
+        System.out.println("addListener");
+        DownloadEventBus instance = new DownloadEventBus();
+        DownloadListener l1 = evt->{};
+        DownloadListener l2 = evt->{};
+        assertFalse(instance.hasListeners());
+        instance.addListener(l1);
+        instance.addListener(null);
+        instance.addListener(l2);
+        instance.addListener(l1);
+        assertArrayEquals(new DownloadListener[]{l1, l2, l1}, instance.getListeners());
+        instance.removeListener(l1);
+        assertArrayEquals(new DownloadListener[]{l1, l2}, instance.getListeners());
+        instance.removeListener(null);
+        instance.removeListener(l1);
+        instance.removeListener(l2);
+        assertFalse(instance.hasListeners());
+    }
+
+    /**
+     * Test of post method, of class DownloadEventBus, delivering synchronously.
+     */
+    @Test
+    public void testPostSync() {
+        System.out.println("post");
+        DownloadEventBus instance = new DownloadEventBus();
+        List<String> calls = new CopyOnWriteArrayList<>();
+        instance.addListener(evt->calls.add("first"));
+        instance.addListener(evt->calls.add("second"));
+        instance.post(newEvent());
+        assertEquals(List.of("second", "first"), calls); //same order as EventListenerList
+        
+        instance.addListener(evt->{ throw new IllegalStateException("sync"); });
+        assertThrows(IllegalStateException.class, ()->instance.post(newEvent()));
+        assertThrows(IllegalArgumentException.class, ()->instance.post(null));
+    }
+
+    /**
+     * Test of post method, of class DownloadEventBus, while listeners are
+     * removed during delivery.
+     */
+    @Test
+    public void testRemoveWhileFiring() {
+        System.out.println("removeWhileFiring");
+        DownloadEventBus instance = new DownloadEventBus();
+        int[] count = new int[1];
+        DownloadListener counter = evt->count[0]++;
+        instance.addListener(counter);
+        instance.addListener(new DownloadListener() {
+            @Override public void stateChanged(DownloadEvent evt) {
+                instance.removeListener(this);
+                instance.removeListener(counter);
+            }
+        });
+        instance.post(newEvent());
+        assertEquals(1, count[0]);
+        assertFalse(instance.hasListeners());
+    }
+
+    /**
+     * Test of post method, of class DownloadEventBus, delivering asynchronously.
+     */
+    @Test
+    public void testPostAsync() throws Exception {
+        System.out.println("post async");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            DownloadEventBus instance = new DownloadEventBus();
+            instance.setExecutor(executor);
+            assertSame(executor, instance.getExecutor());
+            
+            CountDownLatch gate = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(5);
+            List<Integer> batches = new CopyOnWriteArrayList<>();
+            List<DownloadEvent> events = new CopyOnWriteArrayList<>();
+            instance.addListener(new DownloadEventBus.BatchListener() {
+                @Override public void stateChanged(List<DownloadEvent> list) {
+                    batches.add(list.size());
+                    DownloadEventBus.BatchListener.super.stateChanged(list);
+                }
+                @Override public void stateChanged(DownloadEvent evt) {
+                    events.add(evt);
+                    done.countDown();
+                }
+            });
+            instance.addListener(evt->{ throw new IllegalStateException("logged"); });
+            executor.execute(()->{
+                try {
+                    gate.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            DownloadEvent[] posted = new DownloadEvent[5];
+            for (int i = 0; i < posted.length; i++) {
+                posted[i] = newEvent();
+                instance.post(posted[i]);
+            }
+            gate.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(List.of(posted), events);
+            assertEquals(List.of(5), batches);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Test of post and checkFailure methods, of class DownloadEventBus, with a
+     * listener that fails while events are delivered asynchronously.
+     */
+    @Test
+    public void testPostAsyncFailure() throws Exception {
+        System.out.println("post async failure");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            DownloadEventBus instance = new DownloadEventBus();
+            instance.setExecutor(executor);
+            IllegalStateException persistFailure = new IllegalStateException("unable to persist");
+            List<DownloadEvent> events = new CopyOnWriteArrayList<>();
+            CountDownLatch delivered = new CountDownLatch(1);
+            instance.addListener(evt->{
+                events.add(evt);
+                delivered.countDown();
+            });
+            instance.addListener(evt->{
+                if (events.isEmpty()) {
+                    throw persistFailure;
+                }
+            });
+            DownloadEvent first = newEvent();
+            instance.post(first);
+            assertTrue(delivered.await(5, TimeUnit.SECONDS));
+            
+            DownloadEvent second = newEvent();
+            assertSame(persistFailure, assertThrows(IllegalStateException.class, ()->instance.post(second)));
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+            assertEquals(List.of(first, second), events); //still delivered
+            instance.checkFailure(); //already thrown
+            instance.post(newEvent()); //delivered in this thread once rejected
+            assertEquals(3, events.size());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Test of post method, of class DownloadEventBus, delivering asynchronously
+     * a downloaded package that is disposed right after it is posted.
+     */
+    @Test
+    public void testPostAsyncRetained() throws Exception {
+        System.out.println("post async retained");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            DownloadEventBus instance = new DownloadEventBus();
+            instance.setExecutor(executor);
+            CountDownLatch gate = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(1);
+            List<String> packages = new CopyOnWriteArrayList<>();
+            instance.addListener(evt->{
+                packages.add(((DescargaResponse)evt.getResponse()).getEncodedPackage());
+                done.countDown();
+            });
+            executor.execute(()->{
+                try {
+                    gate.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            DescargaResponse descarga = new DescargaResponse(Instant.now(), "5000", "Solicitud Aceptada", "pid", "UEsDBA==");
+            instance.post(new DownloadEvent(source, DownloadEvent.Result.DOWNLOADED, descarga));
+            descarga.dispose(); //as the solicitude does after posting
+            assertFalse(descarga.isDisposed());
+            gate.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(List.of("UEsDBA=="), packages);
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+            assertTrue(descarga.isDisposed());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Test of post method, of class DownloadEventBus, when the executor
+     * rejects the delivery task; events are delivered in the posting thread
+     * and later posts are not blocked.
+     */
+    @Test
+    public void testPostRejected() {
+        System.out.println("post rejected");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        DownloadEventBus instance = new DownloadEventBus();
+        instance.setExecutor(executor);
+        List<Thread> threads = new CopyOnWriteArrayList<>();
+        instance.addListener(evt->threads.add(Thread.currentThread()));
+        instance.post(newEvent());
+        instance.post(newEvent());
+        assertEquals(List.of(Thread.currentThread(), Thread.currentThread()), threads);
+        assertTrue(instance.toString().contains("queued=0"), instance.toString());
+    }
+    
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.solicitude;
+
+import com.sicomsa.dmt.DescargaResponse;
+import com.sicomsa.dmt.SolicitaResponse;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+ 
+/**
+ *
+ * @author https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198
+ *
+ * @since 2025.02.08
+ *
+ *
+ */
+public class DownloadPublisherTest {
+    
+    static Solicitude source;
+    static SolicitaResponse response;
+
+    public DownloadPublisherTest() {
+    }
+
+    @BeforeAll
+    public static void setUpClass() {
+        source = new DefaultSolicitudeTest.DefaultSolicitudePre();
+        response = new SolicitaResponse(Instant.now(), "5000", "Solicitud Aceptada", "rid");
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+    }
+
+    @BeforeEach
+    public void setUp() {
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+    
+    protected DownloadEvent newEvent() {
+        return new DownloadEvent(source, DownloadEvent.Result.ACCEPTED, response);
+    }
+
+    /**
+     * Test of stateChanged method, of class DownloadPublisher.
+     */
+    @Test
+    public void testStateChanged() throws Exception {
+        System.out.println("stateChanged");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            DownloadPublisher instance = new DownloadPublisher(executor, 4);
+            RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+            instance.subscribe(subscriber);
+            assertEquals(1, instance.getNumberOfSubscribers());
+            DownloadEvent e1 = newEvent();
+            DownloadEvent e2 = newEvent();
+            instance.stateChanged(e1);
+            instance.stateChanged(e2);
+            instance.close();
+            assertTrue(instance.isClosed());
+            instance.stateChanged(newEvent()); //ignored
+            assertTrue(subscriber.completed.await(5, TimeUnit.SECONDS));
+            assertEquals(List.of(e1, e2), subscriber.events);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Test of subscriber demand, of class DownloadPublisher, events are kept
+     * until the subscriber requests them.
+     */
+    @Test
+    public void testBackpressure() throws Exception {
+        System.out.println("backpressure");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            DownloadPublisher instance = new DownloadPublisher(executor, 4);
+            RecordingSubscriber subscriber = new RecordingSubscriber(1);
+            instance.subscribe(subscriber);
+            for (int idx = 0; idx < 3; idx++) {
+                instance.stateChanged(newEvent());
+            }
+            long end = System.currentTimeMillis() + 5000;
+            while (subscriber.events.isEmpty() && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, subscriber.events.size());
+            assertTrue(instance.estimateMaximumLag() >= 1);
+            subscriber.subscription.request(Long.MAX_VALUE);
+            instance.close();
+            assertTrue(subscriber.completed.await(5, TimeUnit.SECONDS));
+            assertEquals(3, subscriber.events.size());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Test of addDownloadListener method of DefaultSolicitude with a
+     * DownloadPublisher.
+     */
+    @Test
+    public void testSolicitude() throws Exception {
+        System.out.println("solicitude");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            DownloadPublisher instance = new DownloadPublisher(executor, 4);
+            RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+            instance.subscribe(subscriber);
+            DefaultSolicitude solicitude = new DefaultSolicitudeTest.DefaultSolicitudePre();
+            solicitude.addDownloadListener(instance);
+            solicitude.fireDownloadEvent(DownloadEvent.Result.ACCEPTED, response);
+            solicitude.removeDownloadListener(instance);
+            instance.close();
+            assertTrue(subscriber.completed.await(5, TimeUnit.SECONDS));
+            assertEquals(1, subscriber.events.size());
+            assertSame(solicitude, subscriber.events.get(0).getSolicitude());
+            assertSame(response, subscriber.events.get(0).getResponse());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Test of stateChanged method, of class DownloadPublisher, with a
+     * downloaded package; subscribers receive it after it is disposed.
+     */
+    @Test
+    public void testStateChangedDownloaded() throws Exception {
+        System.out.println("stateChangedDownloaded");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            DownloadPublisher instance = new DownloadPublisher(executor, 4);
+            RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+            instance.subscribe(subscriber);
+            DescargaResponse descarga = new DescargaResponse(Instant.now(), "5000", "Solicitud Aceptada", "pid", "UEsDBA==");
+            DownloadEvent event = new DownloadEvent(source, DownloadEvent.Result.DOWNLOADED, descarga);
+            instance.stateChanged(event);
+            descarga.dispose();
+            instance.close();
+            assertTrue(subscriber.completed.await(5, TimeUnit.SECONDS));
+            DownloadEvent result = subscriber.events.get(0);
+            assertSame(source, result.getSolicitude());
+            assertEquals(DownloadEvent.Result.DOWNLOADED, result.getResult());
+            DescargaResponse copy = (DescargaResponse)result.getResponse();
+            assertNotSame(descarga, copy);
+            assertEquals("pid", copy.getPackageId());
+            assertEquals("UEsDBA==", copy.getEncodedPackage());
+            assertTrue(descarga.isDisposed());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Test of closeExceptionally method, of class DownloadPublisher.
+     */
+    @Test
+    public void testCloseExceptionally() throws Exception {
+        System.out.println("closeExceptionally");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            DownloadPublisher instance = new DownloadPublisher(executor, 4);
+            RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+            instance.subscribe(subscriber);
+            instance.closeExceptionally(new IllegalStateException("done"));
+            assertTrue(subscriber.completed.await(5, TimeUnit.SECONDS));
+            assertTrue(subscriber.error instanceof IllegalStateException);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    public static class RecordingSubscriber implements Flow.Subscriber<DownloadEvent> {
+        final long initial;
+        final List<DownloadEvent> events = new CopyOnWriteArrayList<>();
+        final CountDownLatch completed = new CountDownLatch(1);
+        Flow.Subscription subscription;
+        Throwable error;
+
+        public RecordingSubscriber(long initial) {
+            this.initial = initial;
+        }
+        @Override public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(initial);
+        }
+        @Override public void onNext(DownloadEvent item) {
+            events.add(item);
+        }
+        @Override public void onError(Throwable throwable) {
+            error = throwable;
+            completed.countDown();
+        }
+        @Override public void onComplete() {
+            completed.countDown();
+        }
+    }
+}
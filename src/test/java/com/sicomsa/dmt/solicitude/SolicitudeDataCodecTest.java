@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.solicitude;
+
+import com.sicomsa.dmt.PackageIds;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198
+ *
+ * @since 2025.02.19
+ *
+ *
+ */
+public class SolicitudeDataCodecTest {
+
+    static final String REQUEST_ID = "4e3f2a1b-9c8d-4e7f-a6b5-c4d3e2f1a0b9";
+    static final Instant INSTANT = Instant.parse("2025-02-19T10:15:30.123456789Z");
+
+    public SolicitudeDataCodecTest() {
+    }
+
+    @BeforeAll
+    public static void setUpClass() {
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+    }
+
+    @BeforeEach
+    public void setUp() {
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * Test of encode and decode methods, of class SolicitudeDataCodec, for
+     * each state; decoded snapshots restore the same <code>Solicitude</code>.
+     */
+    @Test
+    public void testEncode() {
+        System.out.println("encode");
+        boolean[] flags = new boolean[19];
+        flags[0] = flags[7] = flags[8] = flags[18] = true;
+        List<SolicitudeData> list = List.of(
+                new SolicitudeData(REQUEST_ID, INSTANT),
+                new SolicitudeData(REQUEST_ID, Instant.parse("1969-07-20T20:17:40Z")),
+                new SolicitudeData.Delayed(REQUEST_ID, Delay.IN_PROGRESS, INSTANT),
+                new SolicitudeData.Delayed("ñandú", Delay.OTHER, INSTANT),
+                new SolicitudeData.Verified(REQUEST_ID, INSTANT, 888_888_877,
+                        new DownloadRegistryImpl(newPackageIds(REQUEST_ID, 19), flags)),
+                new SolicitudeData.Verified(REQUEST_ID, INSTANT, 0,
+                        new DownloadRegistryImpl(new PackageIds(List.of("b", "ab", "abc", "", "x")))));
+        for (SolicitudeData data : list) {
+            byte[] bytes = SolicitudeDataCodec.encode(data);
+            assertEquals(SolicitudeDataCodec.encodedSize(data), bytes.length);
+            assertEquals(SolicitudeDataCodec.VERSION, bytes[0]);
+            SolicitudeData result = SolicitudeDataCodec.decode(bytes);
+            assertEquals(data.getClass(), result.getClass());
+            assertEquals(data.toString(), result.toString());
+            assertEquals(data.getLastAccepted(), result.getLastAccepted());
+
+            DefaultSolicitude solicitude = new DefaultSolicitudeTest.DefaultSolicitudeSub();
+            solicitude.restore(result);
+            assertEquals(data.getStateValue(), solicitude.getValue());
+            assertEquals(data.toString(), solicitude.generateSolicitudeData().toString());
+        }
+
+        //several snapshots in one buffer
+        ByteBuffer buffer = ByteBuffer.allocate(4_096);
+        list.forEach(data->SolicitudeDataCodec.encode(data, buffer));
+        buffer.flip();
+        for (SolicitudeData data : list) {
+            assertEquals(data.toString(), SolicitudeDataCodec.decode(buffer).toString());
+        }
+        assertFalse(buffer.hasRemaining());
+        System.out.println(list.get(4).getPackageIds().size() + " package ids verified in "
+                + SolicitudeDataCodec.encode(list.get(4)).length + " bytes");
+    }
+
+    /**
+     * Test of encode and decode methods, of class SolicitudeDataCodec, with
+     * invalid parameters.
+     */
+    @Test
+    public void testDecodeInvalid() {
+        System.out.println("decodeInvalid");
+        byte[] bytes = SolicitudeDataCodec.encode(new SolicitudeData.Delayed(REQUEST_ID, Delay.ACCEPTED, INSTANT));
+        assertThrows(BufferUnderflowException.class,
+                ()->SolicitudeDataCodec.decode(Arrays.copyOf(bytes, bytes.length - 1)));
+        byte[] version = bytes.clone();
+        version[0] = (byte)(SolicitudeDataCodec.VERSION + 1);
+        assertThrows(IllegalArgumentException.class, ()->SolicitudeDataCodec.decode(version));
+        byte[] state = bytes.clone();
+        state[1] = 9;
+        assertThrows(IllegalArgumentException.class, ()->SolicitudeDataCodec.decode(state));
+        byte[] delay = bytes.clone();
+        delay[delay.length - 1] = 9;
+        assertThrows(IllegalArgumentException.class, ()->SolicitudeDataCodec.decode(delay));
+        byte[] length = bytes.clone();
+        length[2] = 127;
+        assertThrows(IllegalArgumentException.class, ()->SolicitudeDataCodec.decode(length));
+
+        assertThrows(BufferOverflowException.class,
+                ()->SolicitudeDataCodec.encode(new SolicitudeData(REQUEST_ID, INSTANT), ByteBuffer.allocate(10)));
+        assertThrows(IllegalArgumentException.class, ()->SolicitudeDataCodec.encode(null));
+        assertThrows(IllegalArgumentException.class, ()->SolicitudeDataCodec.decode((byte[])null));
+        SolicitudeData unknown = new SolicitudeData(REQUEST_ID, INSTANT) {
+            @Override public StateValue getStateValue() {
+                return StateValue.NEW;
+            }
+        };
+        assertThrows(IllegalArgumentException.class, ()->SolicitudeDataCodec.encode(unknown));
+    }
+
+    /**
+     * Test of encodeRegistry and decodeRegistry methods, of class SolicitudeDataCodec.
+     */
+    @Test
+    public void testEncodeRegistry() {
+        System.out.println("encodeRegistry");
+        PackageIds ids = newPackageIds(REQUEST_ID, 100);
+        boolean[] flags = new boolean[100];
+        for (int idx = 0; idx < flags.length; idx += 3) {
+            flags[idx] = true;
+        }
+        DownloadRegistryImpl registry = new DownloadRegistryImpl(ids, flags);
+        ByteBuffer buffer = ByteBuffer.allocate(1_024);
+        SolicitudeDataCodec.encodeRegistry(registry, buffer);
+        int size = buffer.position();
+        //request id written once, then 3 bytes per id and a bit per flag
+        assertTrue(size < 1 + 2 + REQUEST_ID.length() + 100 * 5 + 13, String.valueOf(size));
+        buffer.flip();
+        DownloadRegistryImpl result = SolicitudeDataCodec.decodeRegistry(buffer);
+        assertEquals(registry.toString(), result.toString());
+        assertEquals(size, buffer.position());
+        assertThrows(IllegalArgumentException.class,
+                ()->SolicitudeDataCodec.encodeRegistry(DefaultSolicitude.UNVERIFIED_REGISTRY, buffer));
+    }
+
+    /**
+     * Snapshots per second and bytes per snapshot, with SolicitudeDataCodec
+     * and with ObjectOutputStream.
+     */
+    @Test
+    @Disabled("benchmark, enable to run manually")
+    public void testBenchmark() throws Exception {
+        System.out.println("benchmark");
+        List<SolicitudeData> list = new ArrayList<>();
+        for (int idx = 0; idx < 1_000; idx++) {
+            String requestId = REQUEST_ID.substring(0, 30) + String.format("%06d", idx);
+            boolean[] flags = new boolean[1 + idx % 40];
+            flags[0] = true;
+            list.add(switch (idx % 3) {
+                case 0 -> new SolicitudeData(requestId, INSTANT.plusSeconds(idx));
+                case 1 -> new SolicitudeData.Delayed(requestId, Delay.IN_PROGRESS, INSTANT.plusSeconds(idx));
+                default -> new SolicitudeData.Verified(requestId, INSTANT.plusSeconds(idx), idx * 1_000,
+                        new DownloadRegistryImpl(newPackageIds(requestId, flags.length), flags));
+            });
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        for (int round = 0; round < 5; round++) {
+            long codecBytes = 0;
+            long begin = System.nanoTime();
+            for (int rep = 0; rep < 50; rep++) {
+                buffer.clear();
+                list.forEach(data->SolicitudeDataCodec.encode(data, buffer));
+                codecBytes = buffer.position();
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    SolicitudeDataCodec.decode(buffer);
+                }
+            }
+            double codec = 50_000 * 1e9 / (System.nanoTime() - begin);
+
+            long javaBytes = 0;
+            begin = System.nanoTime();
+            for (int rep = 0; rep < 50; rep++) {
+                javaBytes = 0;
+                for (SolicitudeData data : list) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+                        oos.writeObject(data);
+                    }
+                    byte[] bytes = out.toByteArray();
+                    javaBytes += bytes.length;
+                    try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                        ois.readObject();
+                    }
+                }
+            }
+            double java = 50_000 * 1e9 / (System.nanoTime() - begin);
+            System.out.printf("codec %.0f snapshots/s %d bytes/snapshot, ObjectOutputStream %.0f snapshots/s %d bytes/snapshot%n",
+                    codec, codecBytes / list.size(), java, javaBytes / list.size());
+        }
+    }
+
+    protected static PackageIds newPackageIds(String requestId, int count) {
+        List<String> list = new ArrayList<>();
+        for (int idx = 0; idx < count; idx++) {
+            list.add(requestId.toUpperCase() + "_" + (idx + 1 < 10 ? "0" : "") + (idx + 1));
+        }
+        return new PackageIds(list);
+    }
+}
@@ -0,0 +1,426 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.solicitude.batch;
+
+import com.sicomsa.dmt.Authorization;
+import com.sicomsa.dmt.CachingCredentialsStoreTest;
+import com.sicomsa.dmt.Credentials;
+import com.sicomsa.dmt.CredentialsStore;
+import com.sicomsa.dmt.DMTService;
+import com.sicomsa.dmt.DescargaResponse;
+import com.sicomsa.dmt.DownloadRepository;
+import com.sicomsa.dmt.Query;
+import com.sicomsa.dmt.RealCredentials;
+import com.sicomsa.dmt.SolicitaResponse;
+import com.sicomsa.dmt.VerificaResponse;
+import com.sicomsa.dmt.solicitude.Solicitude;
+import com.sicomsa.dmt.svc.RetryPolicy;
+import com.sicomsa.dmt.svc.SatSimulator;
+import com.sicomsa.dmt.util.QueryMap;
+
+import jakarta.xml.soap.SOAPConnection;
+import jakarta.xml.soap.SOAPConnectionFactory;
+import jakarta.xml.soap.SOAPException;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load driver that builds synthetic batches through {@link BatchFactory.Builder}
+ * for a number of RFCs times a number of queries, and downloads them against a
+ * {@link SatSimulator} with a number of concurrent workers, each one with its
+ * own batch file.
+ * <p>Reports solicitudes and packages per minute, p50 and p99 latency of each
+ * web service call, heap high-water mark and GC time. Run <code>main</code>
+ * with the test classpath, for example:<br>
+ * <code>mvn exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.sicomsa.dmt.solicitude.batch.BatchLoadDriver -Dexec.args="100 5 8 65536 50"</code><br>
+ * (rfcs, queries per rfc, workers, package size, median latency in ms).</p>
+ *
+ * @author https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198
+ *
+ * @since 2025.02.17
+ *
+ */
+public class BatchLoadDriver {
+    
+    /**
+     * Calls to the web service that are timed.
+     */
+    public enum Phase {
+        AUTENTICA, SOLICITA, VERIFICA, DESCARGA
+    }
+    
+    protected final SatSimulator simulator;
+    protected int rfcs = 10;
+    protected int queriesPerRfc = 2;
+    protected int workers = 1;
+    protected int maxRounds = 50;
+    protected Duration roundPause = Duration.ZERO;
+    protected File directory;
+    
+    public BatchLoadDriver(SatSimulator simulator) {
+        this.simulator = simulator;
+    }
+    
+    public static void main(String[] args) throws Exception {
+        int[] values = {100, 5, 8, 64 * 1024, 50};
+        for (int idx = 0; idx < args.length && idx < values.length; idx++) {
+            values[idx] = Integer.parseInt(args[idx]);
+        }
+        try (SatSimulator simulator = SatSimulator.builder()
+                .setPackageSize(values[3])
+                .setLatency(Duration.ofMillis(values[4]))
+                .setThreads(Math.max(16, values[2] * 2))
+                .build()) {
+            Report report = new BatchLoadDriver(simulator)
+                    .setRfcs(values[0])
+                    .setQueriesPerRfc(values[1])
+                    .setWorkers(values[2])
+                    .run();
+            System.out.println(report);
+            System.out.println(simulator);
+        }
+    }
+    
+    public BatchLoadDriver setRfcs(int rfcs) {
+        this.rfcs = rfcs;
+        return this;
+    }
+    public BatchLoadDriver setQueriesPerRfc(int queriesPerRfc) {
+        this.queriesPerRfc = queriesPerRfc;
+        return this;
+    }
+    public BatchLoadDriver setWorkers(int workers) {
+        this.workers = workers;
+        return this;
+    }
+    public BatchLoadDriver setMaxRounds(int maxRounds) {
+        this.maxRounds = maxRounds;
+        return this;
+    }
+    public BatchLoadDriver setRoundPause(Duration roundPause) {
+        this.roundPause = roundPause;
+        return this;
+    }
+    /**
+     * Sets the directory of the batch files, a temporary one by default.
+     */
+    public BatchLoadDriver setDirectory(File directory) {
+        this.directory = directory;
+        return this;
+    }
+    
+    /**
+     * Builds the batches, downloads them and returns the report.
+     */
+    public Report run() throws Exception {
+        if (rfcs < 1 || queriesPerRfc < 1 || workers < 1 || maxRounds < 1) {
+            throw new IllegalArgumentException("invalid parameters");
+        }
+        File dir = (directory == null ? Files.createTempDirectory("batch-load").toFile() : directory);
+        Report report = new Report();
+        TimedService service = new TimedService(simulator.newDownloadService(), report);
+        service.setRepository((rfc, packageId, encodedPackage, params)->{
+            report.packages.incrementAndGet();
+            report.packageChars.addAndGet(encodedPackage.length());
+        });
+        CredentialsStore store = newStore();
+        
+        List<Batch> batches = new ArrayList<>(workers);
+        long processId = 1;
+        for (int worker = 0; worker < workers; worker++) {
+            BatchFactory.Builder builder = new BatchFactory(service, store).builder();
+            boolean empty = true;
+            for (int rfc = worker; rfc < rfcs; rfc += workers) {
+                for (int query = 0; query < queriesPerRfc; query++) {
+                    builder.addRequest(processId++, rfc(rfc), newQuery(query));
+                    empty = false;
+                }
+            }
+            if (!empty) {
+                File file = new File(dir, "load-"+worker+".batch");
+                file.deleteOnExit();
+                batches.add(builder.build(file));
+            }
+        }
+        
+        System.gc();
+        List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans();
+        pools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        long gcStart = gcMillis();
+        long start = System.nanoTime();
+        
+        ExecutorService executor = Executors.newFixedThreadPool(batches.size());
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Batch batch : batches) {
+                futures.add(executor.submit(()->{
+                    download(batch, report);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        
+        report.elapsedNanos = System.nanoTime() - start;
+        report.gcMillis = gcMillis() - gcStart;
+        report.heapPeak = pools.stream()
+                .filter(pool->pool.getType() == MemoryType.HEAP)
+                .mapToLong(pool->pool.getPeakUsage().getUsed()).sum();
+        report.workers = batches.size();
+        for (Batch batch : batches) {
+            Iterator<Solicitude> iterator = batch.solicitudes();
+            while (iterator.hasNext()) {
+                Solicitude solicitude = iterator.next();
+                report.solicitudes++;
+                if (solicitude.isReject()) {
+                    report.rejected++;
+                }
+                else if (!solicitude.isPending()) {
+                    report.done++;
+                }
+            }
+        }
+        return report;
+    }
+    
+    protected void download(Batch batch, Report report) throws Exception {
+        SOAPConnection conn = SOAPConnectionFactory.newInstance().createConnection();
+        try {
+            for (int round = 0; round < maxRounds && batch.isPending(); round++) {
+                if (round > 0 && !roundPause.isZero()) {
+                    Thread.sleep(roundPause.toMillis());
+                }
+                try {
+                    batch.download(conn);
+                }
+                catch (BatchException e) {
+                    report.errors.incrementAndGet();
+                }
+            }
+        }
+        finally {
+            conn.close();
+        }
+    }
+    
+    protected static String rfc(int idx) {
+        return String.format("LOAD%06dAA%d", idx, idx % 10);
+    }
+    
+    protected static Query newQuery(int idx) {
+        LocalDateTime end = LocalDateTime.now().truncatedTo(ChronoUnit.DAYS).minusDays(idx);
+        return new QueryMap.Builder()
+                .setFechaInicial(end.minusDays(1))
+                .setFechaFinal(end)
+                .setTipoSolicitud("CFDI").build();
+    }
+    
+    /**
+     * Returns a store with credentials for any RFC, all sharing one key pair.
+     */
+    protected static CredentialsStore newStore() throws Exception {
+        KeyPair keyPair = CachingCredentialsStoreTest.newKeyPair();
+        X509Certificate cert = CachingCredentialsStoreTest.newCertificate(keyPair, Instant.now().plus(365, ChronoUnit.DAYS));
+        Map<String,Credentials> map = new ConcurrentHashMap<>();
+        return rfc->map.computeIfAbsent(rfc, key->new RealCredentials(key, cert, keyPair.getPrivate()));
+    }
+    
+    protected static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+    
+    ////////////////////////////////////////////////////////////////////////////
+    
+    /**
+     * Results of a run.
+     */
+    public static class Report {
+        protected final Map<Phase,Recorder> phases = new EnumMap<>(Phase.class);
+        protected final AtomicLong packages = new AtomicLong();
+        protected final AtomicLong packageChars = new AtomicLong();
+        protected final AtomicLong errors = new AtomicLong();
+        protected int workers;
+        protected int solicitudes;
+        protected int done;
+        protected int rejected;
+        protected long elapsedNanos;
+        protected long heapPeak;
+        protected long gcMillis;
+        
+        public Report() {
+            for (Phase phase : Phase.values()) {
+                phases.put(phase, new Recorder());
+            }
+        }
+        public Recorder getRecorder(Phase phase) {
+            return phases.get(phase);
+        }
+        public int getSolicitudes() {
+            return solicitudes;
+        }
+        public int getDone() {
+            return done;
+        }
+        public int getRejected() {
+            return rejected;
+        }
+        public long getPackages() {
+            return packages.get();
+        }
+        public long getErrors() {
+            return errors.get();
+        }
+        public long getHeapPeak() {
+            return heapPeak;
+        }
+        public long getGcMillis() {
+            return gcMillis;
+        }
+        public double getSolicitudesPerMinute() {
+            return perMinute(done);
+        }
+        public double getPackagesPerMinute() {
+            return perMinute(packages.get());
+        }
+        protected double perMinute(long count) {
+            return (elapsedNanos == 0 ? 0 : count * 60e9 / elapsedNanos);
+        }
+        @Override public String toString() {
+            StringBuilder sb = new StringBuilder("BatchLoadDriver.Report{")
+                    .append("workers=").append(workers)
+                    .append(",solicitudes=").append(solicitudes)
+                    .append(",done=").append(done)
+                    .append(",rejected=").append(rejected)
+                    .append(",errors=").append(errors.get())
+                    .append(",packages=").append(packages.get())
+                    .append(",elapsedMs=").append(elapsedNanos / 1_000_000)
+                    .append(String.format(",solicitudes/min=%.1f", getSolicitudesPerMinute()))
+                    .append(String.format(",packages/min=%.1f", getPackagesPerMinute()))
+                    .append(",heapPeakMB=").append(heapPeak / (1024 * 1024))
+                    .append(",gcMs=").append(gcMillis);
+            phases.forEach((phase, recorder)->sb.append(",").append(phase).append("=").append(recorder));
+            return sb.append("}").toString();
+        }
+    }
+    
+    /**
+     * Latencies of the calls of a phase.
+     */
+    public static class Recorder {
+        private long[] values = new long[1024];
+        private int size;
+        private long failures;
+        
+        public synchronized void record(long nanos) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = nanos;
+        }
+        public synchronized void failure() {
+            failures++;
+        }
+        public synchronized int getCount() {
+            return size;
+        }
+        public synchronized long getFailures() {
+            return failures;
+        }
+        /**
+         * Returns the specified percentile in nanoseconds, zero if there are no calls.
+         */
+        public synchronized long percentile(double p) {
+            if (size == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return sorted[Math.max(0, (int)Math.ceil(p * size) - 1)];
+        }
+        @Override public String toString() {
+            return String.format("[n=%d,fail=%d,p50=%.1fms,p99=%.1fms]", getCount(), getFailures(),
+                    percentile(0.5) / 1e6, percentile(0.99) / 1e6);
+        }
+    }
+    
+    /**
+     * Service that times the calls of another service.
+     */
+    protected static class TimedService implements DMTService {
+        protected final DMTService service;
+        protected final Report report;
+        protected DownloadRepository repository;
+        
+        public TimedService(DMTService service, Report report) {
+            this.service = service;
+            this.report = report;
+        }
+        @Override public Authorization autentica(SOAPConnection conn, Credentials creds) throws SOAPException {
+            return time(Phase.AUTENTICA, ()->service.autentica(conn, creds));
+        }
+        @Override public SolicitaResponse solicita(SOAPConnection conn, Credentials creds, Query query, String token) throws SOAPException {
+            return time(Phase.SOLICITA, ()->service.solicita(conn, creds, query, token));
+        }
+        @Override public VerificaResponse verifica(SOAPConnection conn, Credentials creds, String requestId, String token) throws SOAPException {
+            return time(Phase.VERIFICA, ()->service.verifica(conn, creds, requestId, token));
+        }
+        @Override public DescargaResponse descarga(SOAPConnection conn, Credentials creds, String packageId, String token) throws SOAPException {
+            return time(Phase.DESCARGA, ()->service.descarga(conn, creds, packageId, token));
+        }
+        @Override public Instant instant() {
+            return service.instant();
+        }
+        @Override public synchronized DownloadRepository getRepository() {
+            return repository;
+        }
+        @Override public synchronized void setRepository(DownloadRepository repository) {
+            this.repository = repository;
+        }
+        protected <T> T time(Phase phase, RetryPolicy.Call<T> call) throws SOAPException {
+            long start = System.nanoTime();
+            try {
+                T result = call.call();
+                report.getRecorder(phase).record(System.nanoTime() - start);
+                return result;
+            }
+            catch (SOAPException | RuntimeException e) {
+                report.getRecorder(phase).failure();
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.solicitude.batch;
+
+import com.sicomsa.dmt.svc.SatSimulator;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198
+ *
+ * @since 2025.02.17
+ *
+ *
+ */
+public class BatchLoadDriverTest {
+
+    public BatchLoadDriverTest() {
+    }
+
+    @BeforeAll
+    public static void setUpClass() {
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+    }
+
+    @BeforeEach
+    public void setUp() {
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * Test of run method, of class BatchLoadDriver.
+     */
+    @Test
+    public void testRun() throws Exception {
+        System.out.println("run");
+        try (SatSimulator simulator = SatSimulator.builder()
+                .setLatency(Duration.ofMillis(1))
+                .setPendingVerifications(1)
+                .setPackagesPerRequest(2)
+                .setPackageSize(1024)
+                .build()) {
+            BatchLoadDriver.Report report = new BatchLoadDriver(simulator)
+                    .setRfcs(3)
+                    .setQueriesPerRfc(2)
+                    .setWorkers(2)
+                    .run();
+            System.out.println(report);
+            assertEquals(6, report.getSolicitudes());
+            assertEquals(6, report.getDone());
+            assertEquals(0, report.getRejected());
+            assertEquals(12, report.getPackages());
+            assertEquals(6, report.getRecorder(BatchLoadDriver.Phase.SOLICITA).getCount());
+            assertEquals(12, report.getRecorder(BatchLoadDriver.Phase.VERIFICA).getCount());
+            assertEquals(12, report.getRecorder(BatchLoadDriver.Phase.DESCARGA).getCount());
+            assertTrue(report.getRecorder(BatchLoadDriver.Phase.DESCARGA).percentile(0.99) > 0);
+            assertTrue(report.getSolicitudesPerMinute() > 0);
+            assertTrue(report.getHeapPeak() > 0);
+        }
+        assertThrows(IllegalArgumentException.class, ()->new BatchLoadDriver(null).setWorkers(0).run());
+    }
+
+    /**
+     * Test of percentile method, of class BatchLoadDriver.Recorder.
+     */
+    @Test
+    public void testPercentile() {
+        System.out.println("percentile");
+        BatchLoadDriver.Recorder instance = new BatchLoadDriver.Recorder();
+        assertEquals(0, instance.percentile(0.5));
+        for (int idx = 100; idx > 0; idx--) {
+            instance.record(idx);
+        }
+        assertEquals(50, instance.percentile(0.5));
+        assertEquals(99, instance.percentile(0.99));
+        assertEquals(100, instance.percentile(1));
+    }
+
+    /**
+     * Scaling runs, with more workers and bigger packages.
+     */
+    @Test
+    @Disabled("benchmark, enable to run manually")
+    public void testScaling() throws Exception {
+        System.out.println("scaling");
+        for (int packageSize : new int[] {16 * 1024, 1024 * 1024}) {
+            for (int workers : new int[] {1, 2, 4, 8}) {
+                try (SatSimulator simulator = SatSimulator.builder()
+                        .setLatency(Duration.ofMillis(20))
+                        .setPackageSize(packageSize)
+                        .setThreads(32)
+                        .build()) {
+                    BatchLoadDriver.Report report = new BatchLoadDriver(simulator)
+                            .setRfcs(16)
+                            .setQueriesPerRfc(4)
+                            .setWorkers(workers)
+                            .run();
+                    System.out.println("packageSize="+packageSize+" "+report);
+                }
+            }
+        }
+    }
+}
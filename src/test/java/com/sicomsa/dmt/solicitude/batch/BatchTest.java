@@ -14,8 +14,11 @@ import com.sicomsa.dmt.DMTService;
 import com.sicomsa.dmt.Query;
 
 import com.sicomsa.dmt.RepositoryException;
+import com.sicomsa.dmt.SolicitaResponse;
 import com.sicomsa.dmt.util.QueryMap;
 import com.sicomsa.dmt.solicitude.Solicitude;
+import com.sicomsa.dmt.solicitude.DownloadEvent;
+import com.sicomsa.dmt.solicitude.DownloadListener;
 import jakarta.xml.soap.SOAPConnection;
 import java.io.File;
 import java.time.LocalDateTime;
@@ -141,6 +144,75 @@ public class BatchTest {
     }
 
 
+    /**
+     * Test of getPendingRfcs method, of class Batch.
+     */
+    @Test
+    public void testGetPendingRfcs() {
+        System.out.println("getPendingRfcs");
+        assertEquals(java.util.Set.of("MY RFC 86", "MY RFC 91"), batch.getPendingRfcs());
+    }
+
+    /**
+     * Test of addDownloadListener and removeDownloadListener methods, of class Batch.
+     */
+    @Test
+    public void testAddDownloadListener() throws Exception {
+        System.out.println("addDownloadListener");
+        List<String> calls = new java.util.ArrayList<>();
+        DownloadListener extra = evt->calls.add("extra");
+        DownloadListener handler = evt->calls.add("handler");
+        LinkedHashMap<Long,BatchSolicitude> map2 = new LinkedHashMap<>();
+        BatchSolicitude bs = new BatchSolicitude(
+                new Client(new UselessCredentials("MY RFC 86"), service),
+                batchMap.get(1000L).getQuery(), 1000) {
+            @Override public void download(SOAPConnection conn) {
+                fireDownloadEvent(DownloadEvent.Result.ACCEPTED,
+                        new SolicitaResponse(java.time.Instant.now(), "5000", "Solicitud Aceptada", "rid"));
+            }
+        };
+        map2.put(1000L, bs);
+        Batch instance = new Batch(new File(""), map2);
+        assertThrows(IllegalArgumentException.class, ()->instance.addDownloadListener(null));
+        instance.addDownloadListener(extra);
+        instance.downloadAllPending(null, handler);
+        assertEquals(List.of("handler", "extra"), calls);
+        assertFalse(bs.getEventBus().hasListeners());
+        
+        instance.removeDownloadListener(extra);
+        calls.clear();
+        instance.downloadAllPending(null, handler);
+        assertEquals(List.of("handler"), calls);
+    }
+
+    /**
+     * Test of downloadAllPending method, of class Batch, when a circuit is open.
+     */
+    @Test
+    public void testDownloadAllPendingCircuitOpen() throws Exception {
+        System.out.println("downloadAllPendingCircuitOpen");
+        List<Long> downloaded = new java.util.ArrayList<>();
+        LinkedHashMap<Long,BatchSolicitude> map2 = new LinkedHashMap<>();
+        map2.put(1000L, new BatchSolicitude(
+                new Client(new UselessCredentials("MY RFC 86"), service),
+                batchMap.get(1000L).getQuery(), 1000) {
+            @Override public void download(SOAPConnection conn) {
+                throw new com.sicomsa.dmt.svc.CircuitOpenException("https://down.location");
+            }
+        });
+        map2.put(2000L, new BatchSolicitude(
+                new Client(new UselessCredentials("MY RFC 91"), service),
+                batchMap.get(2000L).getQuery(), 2000) {
+            @Override public void download(SOAPConnection conn) {
+                downloaded.add(getBatchId());
+            }
+        });
+        Batch instance = new Batch(new File(""), map2);
+        instance.downloadAllPending(null, evt->{});
+        assertEquals(List.of(2000L), downloaded);
+        assertTrue(instance.getSolicitude(1000L).isPending());
+    }
+
     /**
      * Test of verifyCredentials method, of class Batch.
      */
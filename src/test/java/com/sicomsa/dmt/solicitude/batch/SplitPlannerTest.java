@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.solicitude.batch;
+
+import com.sicomsa.dmt.Client;
+import com.sicomsa.dmt.ClientTest;
+import com.sicomsa.dmt.Credentials;
+import com.sicomsa.dmt.DMTClient;
+import com.sicomsa.dmt.DescargaResponse;
+import com.sicomsa.dmt.Query;
+import com.sicomsa.dmt.VerificaResponse;
+import com.sicomsa.dmt.util.QueryMap;
+import com.sicomsa.dmt.util.QuerySplitter;
+
+import jakarta.xml.soap.SOAPConnection;
+import jakarta.xml.soap.SOAPConnectionFactory;
+import jakarta.xml.soap.SOAPException;
+
+import com.sicomsa.dmt.solicitude.DownloadListener;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+ 
+/**
+ *
+ * @author https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198
+ *
+ * @since 2025.02.03
+ *
+ *
+ */
+public class SplitPlannerTest {
+    
+    @TempDir
+    static Path tempDir;
+    
+    static SOAPConnection closedConn;
+    static ExecutorService executor;
+    static Query dayQuery;
+
+    public SplitPlannerTest() {
+    }
+
+    @BeforeAll
+    public static void setUpClass() throws SOAPException {
+        closedConn = SOAPConnectionFactory.newInstance().createConnection();
+        closedConn.close();
+        executor = Executors.newFixedThreadPool(4);
+        dayQuery = QueryMap.builder()
+                .setFechaInicial(QueryMap.dayStart(2025, 1, 1))
+                .setFechaFinal(QueryMap.dayEnd(2025, 1, 1))
+                .setTipoSolicitud("CFDI").build();
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+        executor.shutdown();
+    }
+
+    @BeforeEach
+    public void setUp() {
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+    
+    protected static class PackageServiceMock extends ClientTest.ServiceMock {
+        @Override public DescargaResponse descarga(SOAPConnection conn,
+                Credentials creds, String packageId, String token) throws SOAPException {
+            return new DescargaResponse(instant().plusSeconds(3600), "5000", "Accepted", packageId, "cGFja2FnZQ==");
+        }
+    }
+    
+    protected static BatchSolicitude newSolicitude(ClientTest.ServiceMock service) {
+        service.setRepository((rfc, packageId, encodedPackage, params)-> {});
+        Client client = new Client(new BatchTest.UselessCredentials("MY RFC"), service);
+        return new BatchSolicitude(client, dayQuery, 1);
+    }
+
+    /**
+     * Test of constructor, of class SplitPlanner.
+     */
+    @Test
+    public void testConstructor() {
+        System.out.println("SplitPlanner");
+        QuerySplitter splitter = new QuerySplitter();
+        assertThrows(IllegalArgumentException.class, ()->new SplitPlanner(null, 1));
+        assertThrows(IllegalArgumentException.class, ()->new SplitPlanner(null, executor, 1, 1));
+        assertThrows(IllegalArgumentException.class, ()->new SplitPlanner(splitter, executor, 0, 1));
+        assertEquals(SplitPlanner.DEFAULT_MAX_CFDIS, new SplitPlanner(executor, 1).getMaxCfdis());
+    }
+
+    /**
+     * Test of download method, of class SplitPlanner, with a solicitude
+     * that does not need to be split.
+     */
+    @Test
+    public void testDownloadNoSplit() throws Exception {
+        System.out.println("download");
+        ClientTest.ServiceMock service = new PackageServiceMock();
+        BatchSolicitude solicitude = newSolicitude(service);
+        SplitPlanner instance = new SplitPlanner(executor, 100);
+        instance.download(closedConn, solicitude, null);
+        assertTrue(solicitude.getChildren().isEmpty());
+        assertEquals(List.of(solicitude), instance.getLeaves(solicitude));
+        assertTrue(solicitude.isDownloadDone());
+        assertFalse(instance.isPending(solicitude));
+        assertThrows(IllegalArgumentException.class, ()->instance.download(null, solicitude, null));
+        assertThrows(IllegalArgumentException.class, ()->instance.download(closedConn, null, null));
+    }
+
+    /**
+     * Test of download method, of class SplitPlanner, with a solicitude
+     * verified with too many CFDIs.
+     */
+    @Test
+    public void testDownloadSplit() throws Exception {
+        System.out.println("download");
+        ClientTest.ServiceMock service = new PackageServiceMock(); //88 cfdis
+        BatchSolicitude solicitude = newSolicitude(service);
+        SplitPlanner instance = new SplitPlanner(new QuerySplitter(Duration.ofHours(1)), executor, 50, 100);
+        instance.download(closedConn, solicitude, null);
+        
+        List<BatchSolicitude> children = solicitude.getChildren();
+        assertEquals(2, children.size());
+        assertEquals(dayQuery.getFechaInicial(), children.get(0).getQuery().getFechaInicial());
+        assertEquals(dayQuery.getFechaFinal(), children.get(1).getQuery().getFechaFinal());
+        assertTrue(solicitude.isPaused());
+        
+        //24h -> 12h -> 6h -> 3h -> 1.5h, can not split 1.5h in halves of one hour,
+        //so the leaves download although they still exceed the limit
+        List<BatchSolicitude> leaves = instance.getLeaves(solicitude);
+        assertEquals(16, leaves.size());
+        for (BatchSolicitude leaf : leaves) {
+            assertTrue(leaf.getBatchId() >= 100);
+            assertFalse(leaf.isPaused());
+            assertTrue(leaf.getCfdis() > 50);
+            assertTrue(leaf.isDownloadDone());
+            assertFalse(instance.needsSplit(leaf));
+            assertFalse(instance.isMaxLimitReject(leaf.getReject()));
+        }
+        assertFalse(instance.isPending(solicitude));
+    }
+
+    /**
+     * Test of download method, of class SplitPlanner, writing the children
+     * to the batch file so they are restored when the batch is reloaded.
+     */
+    @Test
+    public void testDownloadSplitReload() throws Exception {
+        System.out.println("download");
+        ClientTest.ServiceMock service = new PackageServiceMock(); //88 cfdis
+        service.setRepository((rfc, packageId, encodedPackage, params)-> {});
+        BatchFactory factory = new BatchFactory(service, BatchFactoryTest.STORE);
+        File file = tempDir.resolve("split.xml").toFile();
+        BatchSolicitude solicitude = (BatchSolicitude)factory.builder()
+                .addRequest(1, "MY RFC", dayQuery).build(file).getSolicitude(1);
+        Batch batch = new Batch(file, Map.of(1L, solicitude)) {
+            @Override protected void checkCertificate(DMTClient client) {
+            }
+        };
+        
+        //interrupted before downloading the children: they are written but not downloaded
+        SplitPlanner instance = new SplitPlanner(new QuerySplitter(Duration.ofHours(6)), executor, 50, 100) {
+            @Override protected void doDownload(SOAPConnection conn, BatchSolicitude solicitude,
+                    DownloadListener listener) throws SOAPException {
+                if (solicitude.getBatchId() == 1) {
+                    super.doDownload(conn, solicitude, listener);
+                }
+            }
+        };
+        batch.download(closedConn, instance);
+        assertTrue(solicitude.isSplit());
+        assertEquals(2, solicitude.getChildren().size());
+        
+        Batch loaded = factory.load(file);
+        BatchSolicitude parent = (BatchSolicitude)loaded.getSolicitude(1);
+        assertTrue(parent.isSplit());
+        assertTrue(parent.getValue().isVerified());
+        assertTrue(parent.isPending());
+        List<BatchSolicitude> children = parent.getChildren();
+        assertEquals(2, children.size());
+        assertEquals(100L, children.get(0).getBatchId());
+        assertEquals(101L, children.get(1).getBatchId());
+        assertEquals(dayQuery.getFechaInicial(), children.get(0).getQuery().getFechaInicial());
+        assertEquals(dayQuery.getFechaFinal(), children.get(1).getQuery().getFechaFinal());
+        assertEquals("MY RFC", children.get(0).getClient().getRfc());
+        
+        //the split parent is not downloaded again, its children are
+        Set<Long> heard = ConcurrentHashMap.newKeySet();
+        loaded.downloadAllPending(closedConn, de->heard.add(((BatchSolicitude)de.getSolicitude()).getBatchId()));
+        assertEquals(Set.of(100L, 101L), heard);
+        assertFalse(parent.isDownloadDone());
+        assertTrue(children.get(0).isDownloadDone());
+        assertFalse(loaded.isPending());
+    }
+
+    /**
+     * Test of isMaxLimitReject method, of class SplitPlanner.
+     */
+    @Test
+    public void testIsMaxLimitReject() {
+        System.out.println("isMaxLimitReject");
+        SplitPlanner instance = new SplitPlanner(executor, 1);
+        Instant now = Instant.now();
+        assertTrue(instance.isMaxLimitReject(new VerificaResponse(now, "5000", "",
+                VerificaResponse.RECHAZADA, SplitPlanner.MAX_LIMIT_STS_CODE, "rid")));
+        assertFalse(instance.isMaxLimitReject(new VerificaResponse(now, "5000", "",
+                VerificaResponse.RECHAZADA, "5004", "rid")));
+        assertFalse(instance.isMaxLimitReject(null));
+    }
+    
+}
@@ -128,6 +128,100 @@ public class AbstractSvcTest {
     
     
 
+    /**
+     * Test of callTheService method, of class AbstractSvc, with a concurrency limiter.
+     */
+    @Test
+    public void testCallTheServiceLimited() throws Exception {
+        System.out.println("callTheServiceLimited");
+        AbstractSvcImpl svc = new AbstractSvcImpl(factory);
+        assertNull(svc.getConcurrencyLimiter());
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 8, 0.5, 1e12);
+        svc.setConcurrencyLimiter(limiter);
+        assertSame(limiter, svc.getConcurrencyLimiter());
+        svc.callTheService(closedConn, credentials, query, "a token");
+        assertEquals(0, limiter.getInFlight(svc.getLocation()));
+        assertEquals(4, limiter.getLimit(svc.getLocation()));
+        svc.setParseFault(true);
+        assertThrows(SOAPFaultException.class, ()-> {
+            svc.callTheService(closedConn, credentials, query, "a token");
+        });
+        assertEquals(0, limiter.getInFlight(svc.getLocation()));
+        assertEquals(2, limiter.getLimit(svc.getLocation()));
+    }
+    
+    /**
+     * Test of callTheService method, of class AbstractSvc, with a retry policy.
+     */
+    @Test
+    public void testCallTheServiceRetry() throws Exception {
+        System.out.println("callTheServiceRetry");
+        int[] calls = new int[1];
+        AbstractSvcImpl svc = new AbstractSvcImpl(factory) {
+            @Override public SOAPMessage callService(SOAPConnection connection, SOAPMessage request) throws SOAPException {
+                if (calls[0]++ == 0) {
+                    throw new SOAPException("connection reset");
+                }
+                return super.callService(connection, request);
+            }
+        };
+        RetryPolicy policy = new RetryPolicy(3, java.time.Duration.ZERO, java.time.Duration.ZERO, java.time.Duration.ofSeconds(5));
+        svc.setRetryPolicy(policy);
+        assertSame(policy, svc.getRetryPolicy());
+        assertFalse(svc.isIdempotent());
+        assertThrows(SOAPException.class, ()->svc.callTheService(closedConn, credentials, query, "a token"));
+        assertEquals(0, policy.getCallCount()); //not idempotent
+        
+        calls[0] = 0;
+        AbstractSvcImpl idempotent = new AbstractSvcImpl(factory) {
+            @Override public boolean isIdempotent() {
+                return true;
+            }
+            @Override public SOAPMessage callService(SOAPConnection connection, SOAPMessage request) throws SOAPException {
+                if (calls[0]++ == 0) {
+                    throw new SOAPException("connection reset");
+                }
+                return super.callService(connection, request);
+            }
+        };
+        idempotent.setRetryPolicy(policy);
+        assertNotNull(idempotent.callTheService(closedConn, credentials, query, "a token"));
+        assertEquals(2, calls[0]);
+        assertEquals(1, policy.getRecoveredCount());
+    }
+    
+    /**
+     * Test of callTheService method, of class AbstractSvc, with a circuit breaker.
+     */
+    @Test
+    public void testCallTheServiceCircuit() throws Exception {
+        System.out.println("callTheServiceCircuit");
+        int[] calls = new int[1];
+        AbstractSvcImpl svc = new AbstractSvcImpl(factory) {
+            @Override public SOAPMessage callService(SOAPConnection connection, SOAPMessage request) throws SOAPException {
+                calls[0]++;
+                throw new SOAPException("connection timed out");
+            }
+        };
+        CircuitBreaker breaker = new CircuitBreaker(0.5, 2, 2, java.time.Duration.ofMinutes(1));
+        svc.setCircuitBreaker(breaker);
+        assertSame(breaker, svc.getCircuitBreaker());
+        assertThrows(SOAPException.class, ()->svc.callTheService(closedConn, credentials, query, "a token"));
+        assertThrows(SOAPException.class, ()->svc.callTheService(closedConn, credentials, query, "a token"));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(svc.getLocation()));
+        assertThrows(CircuitOpenException.class, ()->svc.callTheService(closedConn, credentials, query, "a token"));
+        assertEquals(2, calls[0]); //failed fast
+        
+        breaker.reset(svc.getLocation());
+        AbstractSvcImpl faulty = new AbstractSvcImpl(factory);
+        faulty.setParseFault(true);
+        faulty.setCircuitBreaker(breaker);
+        for (int idx = 0; idx < 3; idx++) {
+            assertThrows(SOAPFaultException.class, ()->faulty.callTheService(closedConn, credentials, query, "a token"));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(faulty.getLocation())); //location answered
+    }
+    
     /**
      * Test of createMessageToSend method, of class AbstractSvc.
      */
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import java.time.Duration;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198
+ *
+ * @since 2025.02.13
+ *
+ *
+ */
+public class CircuitBreakerTest {
+
+    static final String LOCATION = "https://a.location";
+
+    public CircuitBreakerTest() {
+    }
+
+    @BeforeAll
+    public static void setUpClass() {
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+    }
+
+    @BeforeEach
+    public void setUp() {
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * Test of constructor, of class CircuitBreaker.
+     */
+    @Test
+    public void testConstructor() {
+        System.out.println("constructor");
+        assertThrows(IllegalArgumentException.class, ()->new CircuitBreaker(0, 10, 5, Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, ()->new CircuitBreaker(1.5, 10, 5, Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, ()->new CircuitBreaker(0.5, 4, 5, Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, ()->new CircuitBreaker(0.5, 10, 0, Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, ()->new CircuitBreaker(0.5, 10, 5, null));
+        CircuitBreaker instance = new CircuitBreaker();
+        assertEquals(CircuitBreaker.State.CLOSED, instance.getState(LOCATION));
+        assertThrows(IllegalArgumentException.class, ()->instance.acquire(null));
+    }
+
+    /**
+     * Test of acquire method, of class CircuitBreaker.
+     */
+    @Test
+    public void testAcquire() throws Exception {
+        System.out.println("acquire");
+        CircuitBreaker instance = new CircuitBreaker(0.5, 4, 4, Duration.ofMillis(50));
+        instance.acquire(LOCATION).success();
+        instance.acquire(LOCATION).failure();
+        instance.acquire(LOCATION).ignore(); //not recorded
+        instance.acquire(LOCATION).success();
+        assertEquals(CircuitBreaker.State.CLOSED, instance.getState(LOCATION));
+        CircuitBreaker.Permit permit = instance.acquire(LOCATION);
+        permit.failure();
+        permit.success(); //already completed
+        assertTrue(permit.isCompleted());
+        assertEquals(CircuitBreaker.State.OPEN, instance.getState(LOCATION)); //2 of 4 failed
+        assertEquals(1, instance.getOpenedCount(LOCATION));
+        
+        CircuitOpenException e = assertThrows(CircuitOpenException.class, ()->instance.acquire(LOCATION));
+        assertEquals(LOCATION, e.getLocation());
+        assertEquals(1, instance.getRejectedCount(LOCATION));
+        assertEquals(CircuitBreaker.State.CLOSED, instance.getState("another")); //own circuit
+        instance.acquire("another").success();
+        
+        Thread.sleep(60);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, instance.getState(LOCATION));
+        CircuitBreaker.Permit probe = instance.acquire(LOCATION);
+        assertTrue(probe.isProbe());
+        assertThrows(CircuitOpenException.class, ()->instance.acquire(LOCATION)); //probe in flight
+        probe.failure();
+        assertEquals(CircuitBreaker.State.OPEN, instance.getState(LOCATION));
+        assertEquals(2, instance.getOpenedCount(LOCATION));
+        
+        Thread.sleep(60);
+        probe = instance.acquire(LOCATION);
+        probe.ignore(); //next call probes again
+        probe = instance.acquire(LOCATION);
+        assertTrue(probe.isProbe());
+        probe.success();
+        assertEquals(CircuitBreaker.State.CLOSED, instance.getState(LOCATION));
+        assertFalse(instance.acquire(LOCATION).isProbe());
+        
+        assertEquals(Map.of(LOCATION, CircuitBreaker.State.CLOSED, "another", CircuitBreaker.State.CLOSED),
+                instance.getStates());
+        System.out.println(instance);
+    }
+
+    /**
+     * Test of sliding window, of class CircuitBreaker.
+     */
+    @Test
+    public void testWindow() {
+        System.out.println("window");
+        CircuitBreaker instance = new CircuitBreaker(0.5, 4, 2, Duration.ofMinutes(1));
+        instance.acquire(LOCATION).success();
+        instance.acquire(LOCATION).success();
+        instance.acquire(LOCATION).success();
+        instance.acquire(LOCATION).failure(); //1 of 4
+        instance.acquire(LOCATION).failure(); //2 of 4, opens
+        assertEquals(CircuitBreaker.State.OPEN, instance.getState(LOCATION));
+        
+        instance.reset(LOCATION);
+        assertEquals(CircuitBreaker.State.CLOSED, instance.getState(LOCATION));
+        instance.acquire(LOCATION).failure(); //1 of 1, below minimum calls
+        assertEquals(CircuitBreaker.State.CLOSED, instance.getState(LOCATION));
+        instance.acquire(LOCATION).success();
+        assertEquals(CircuitBreaker.State.OPEN, instance.getState(LOCATION)); //1 of 2
+    }
+}
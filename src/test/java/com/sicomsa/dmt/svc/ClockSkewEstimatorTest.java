@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import com.sicomsa.dmt.CachingCredentialsStoreTest;
+import com.sicomsa.dmt.Credentials;
+import com.sicomsa.dmt.RealCredentials;
+
+import jakarta.xml.soap.SOAPConnection;
+import jakarta.xml.soap.SOAPConnectionFactory;
+import jakarta.xml.soap.SOAPMessage;
+
+import java.security.KeyPair;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.InstantSource;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198
+ *
+ * @since 2025.02.19
+ *
+ *
+ */
+public class ClockSkewEstimatorTest {
+
+    static SOAPConnection conn;
+    static Credentials credentials;
+
+    public ClockSkewEstimatorTest() {
+    }
+
+    @BeforeAll
+    public static void setUpClass() throws Exception {
+        conn = SOAPConnectionFactory.newInstance().createConnection();
+        KeyPair keyPair = CachingCredentialsStoreTest.newKeyPair();
+        credentials = new RealCredentials("AAA010101AAA",
+                CachingCredentialsStoreTest.newCertificate(keyPair, Instant.now().plus(1, ChronoUnit.DAYS)),
+                keyPair.getPrivate());
+    }
+
+    @AfterAll
+    public static void tearDownClass() throws Exception {
+        conn.close();
+    }
+
+    @BeforeEach
+    public void setUp() {
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * Test of addSample method, of class ClockSkewEstimator.
+     */
+    @Test
+    public void testAddSample() {
+        System.out.println("addSample");
+        Instant t0 = Instant.parse("2025-02-19T10:00:00Z");
+        ClockSkewEstimator instance = new ClockSkewEstimator(Clock.fixed(t0, ZoneOffset.UTC));
+        assertEquals(Duration.ZERO, instance.getSkew());
+        assertEquals(t0, instance.instant());
+        assertEquals(t0, instance.localInstant());
+
+        assertTrue(instance.addSample(t0, t0.plusMillis(200), t0.plusMillis(100).plusSeconds(5)));
+        assertEquals(Duration.ofSeconds(5), instance.getSkew());
+        assertEquals(Duration.ofMillis(100), instance.getUncertainty());
+        assertEquals(t0.plusSeconds(5), instance.instant());
+        assertEquals(t0, instance.localInstant());
+
+        //slower exchanges do not change the estimate, faster ones do
+        assertTrue(instance.addSample(t0, t0.plusMillis(900), t0.plusSeconds(9)));
+        assertEquals(Duration.ofSeconds(5), instance.getSkew());
+        assertTrue(instance.addSample(t0, t0.plusMillis(50), t0.plusMillis(25).minusSeconds(3)));
+        assertEquals(Duration.ofSeconds(-3), instance.getSkew());
+        assertEquals(Duration.ofMillis(25), instance.getUncertainty());
+        assertEquals(3, instance.getSampleCount());
+
+        //the best sample leaves the window
+        for (int idx = 0; idx < ClockSkewEstimator.WINDOW_SIZE; idx++) {
+            instance.addSample(t0, t0.plusMillis(300), t0.plusMillis(150).plusSeconds(2));
+        }
+        assertEquals(Duration.ofSeconds(2), instance.getSkew());
+
+        assertFalse(instance.addSample(null, t0, t0));
+        assertFalse(instance.addSample(t0, t0.minusMillis(1), t0));
+        assertEquals(3 + ClockSkewEstimator.WINDOW_SIZE, instance.getSampleCount());
+        System.out.println(instance);
+        assertThrows(IllegalArgumentException.class, ()->new ClockSkewEstimator(null));
+    }
+
+    /**
+     * Test of setClockSkewEstimator method, of class DownloadService, with a
+     * local clock seven minutes behind SAT.
+     */
+    @Test
+    public void testSetClockSkewEstimator() throws Exception {
+        System.out.println("setClockSkewEstimator");
+        InstantSource drifted = Clock.offset(Clock.systemUTC(), Duration.ofMinutes(-7));
+        try (SatSimulator simulator = SatSimulator.builder().setLatency(Duration.ofMillis(1)).build()) {
+            DownloadService service = simulator.newDownloadService();
+            DefaultMessageFactory factory = (DefaultMessageFactory)service.factory;
+            factory.setInstantSource(drifted);
+            assertTrue(Duration.between(service.instant(), Instant.now()).toSeconds() >= 419);
+
+            ClockSkewEstimator estimator = new ClockSkewEstimator(drifted);
+            service.setClockSkewEstimator(estimator);
+            AuthenticationSvc svc = (AuthenticationSvc)service.getAutenticaSvc();
+            assertSame(estimator, svc.getClockSkewEstimator());
+            assertSame(estimator, factory.getInstantSource());
+
+            service.autentica(conn, credentials);
+            assertEquals(1, estimator.getSampleCount());
+            assertEquals(7, estimator.getSkew().toMinutes());
+            assertTrue(Duration.between(service.instant(), Instant.now()).abs().toMillis() < 1_000, estimator.toString());
+
+            //outgoing timestamps are written in SAT's time
+            SOAPMessage message = svc.createMessageToSend(credentials, null, "");
+            Instant created = svc.security.getTimestamp(message.getSOAPHeader())[0];
+            assertTrue(Duration.between(created, Instant.now()).abs().toMillis() < 1_000, created.toString());
+
+            service.setClockSkewEstimator(null);
+            assertNull(svc.getClockSkewEstimator());
+            assertSame(drifted, factory.getInstantSource());
+            service.autentica(conn, credentials);
+            assertEquals(1, estimator.getSampleCount());
+        }
+    }
+}
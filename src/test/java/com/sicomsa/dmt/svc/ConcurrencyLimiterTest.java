@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198
+ *
+ * @since 2025.02.11
+ *
+ *
+ */
+public class ConcurrencyLimiterTest {
+
+    static final String LOCATION = "https://a.location";
+
+    public ConcurrencyLimiterTest() {
+    }
+
+    @BeforeAll
+    public static void setUpClass() {
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+    }
+
+    @BeforeEach
+    public void setUp() {
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * Test of constructor, of class ConcurrencyLimiter.
+     */
+    @Test
+    public void testConstructor() {
+        System.out.println("constructor");
+        assertThrows(IllegalArgumentException.class, ()->new ConcurrencyLimiter(0, 4, 0.5, 2));
+        assertThrows(IllegalArgumentException.class, ()->new ConcurrencyLimiter(4, 2, 0.5, 2));
+        assertThrows(IllegalArgumentException.class, ()->new ConcurrencyLimiter(1, 2, 1, 2));
+        assertThrows(IllegalArgumentException.class, ()->new ConcurrencyLimiter(1, 2, 0.5, 0.5));
+        ConcurrencyLimiter instance = new ConcurrencyLimiter();
+        assertEquals(ConcurrencyLimiter.DEFAULT_INITIAL_LIMIT, instance.getLimit(LOCATION));
+        assertThrows(IllegalArgumentException.class, ()->instance.getLimit(null));
+    }
+
+    /**
+     * Test of acquire method, of class ConcurrencyLimiter.
+     */
+    @Test
+    public void testAcquire() throws Exception {
+        System.out.println("acquire");
+        ConcurrencyLimiter instance = new ConcurrencyLimiter(2, 8, 0.5, 1e12);
+        ConcurrencyLimiter.Permit p1 = instance.acquire(LOCATION);
+        ConcurrencyLimiter.Permit p2 = instance.acquire(LOCATION);
+        assertEquals(2, instance.getInFlight(LOCATION));
+        assertNull(instance.tryAcquire(LOCATION, 10, TimeUnit.MILLISECONDS));
+        assertNotNull(instance.tryAcquire("another", 0, TimeUnit.MILLISECONDS)); //own limit
+        
+        CompletableFuture<ConcurrencyLimiter.Permit> waiting = CompletableFuture.supplyAsync(()->{
+            try {
+                return instance.acquire(LOCATION);
+            }
+            catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(50);
+        assertFalse(waiting.isDone());
+        p1.ignore();
+        assertTrue(p1.isCompleted());
+        ConcurrencyLimiter.Permit p3 = waiting.get(5, TimeUnit.SECONDS);
+        p1.success(); //already completed
+        assertEquals(2, instance.getInFlight(LOCATION));
+        p2.ignore();
+        p3.ignore();
+        assertEquals(0, instance.getInFlight(LOCATION));
+        assertEquals(2, instance.getLimit(LOCATION));
+    }
+
+    /**
+     * Test of additive increase and multiplicative decrease, of class ConcurrencyLimiter.
+     */
+    @Test
+    public void testAimd() throws Exception {
+        System.out.println("aimd");
+        ConcurrencyLimiter instance = new ConcurrencyLimiter(2, 4, 0.5, 1e12);
+        for (int idx = 0; idx < 20; idx++) { //full windows of successes
+            ConcurrencyLimiter.Permit p1 = instance.acquire(LOCATION);
+            ConcurrencyLimiter.Permit p2 = instance.tryAcquire(LOCATION, 0, TimeUnit.SECONDS);
+            p1.success();
+            if (p2 != null) {
+                p2.success();
+            }
+        }
+        assertEquals(4, instance.getLimit(LOCATION)); //capped
+        instance.acquire(LOCATION).dropped();
+        assertEquals(2, instance.getLimit(LOCATION));
+        instance.acquire(LOCATION).dropped();
+        instance.acquire(LOCATION).dropped();
+        assertEquals(1, instance.getLimit(LOCATION)); //minimum
+        
+        for (int idx = 0; idx < 5; idx++) { //a single call does not use half the limit
+            instance.acquire("idle").success();
+        }
+        assertEquals(2, instance.getLimit("idle"));
+        
+        Map<String,Integer> limits = instance.getLimits();
+        assertEquals(Map.of(LOCATION, 1, "idle", 2), limits);
+        System.out.println(instance);
+    }
+
+    /**
+     * Test of latency tolerance, of class ConcurrencyLimiter.
+     */
+    @Test
+    public void testLatency() throws Exception {
+        System.out.println("latency");
+        ConcurrencyLimiter instance = new ConcurrencyLimiter(4, 8, 0.5, 2);
+        instance.acquire(LOCATION).success(); //fast call sets the lowest latency
+        ConcurrencyLimiter.Permit slow = instance.acquire(LOCATION);
+        Thread.sleep(20);
+        slow.success();
+        assertEquals(2, instance.getLimit(LOCATION));
+    }
+
+    /**
+     * Test of decreases per round trip, of class ConcurrencyLimiter; calls
+     * that started before the last decrease do not decrease the limit again.
+     */
+    @Test
+    public void testSingleDecrease() throws Exception {
+        System.out.println("singleDecrease");
+        ConcurrencyLimiter instance = new ConcurrencyLimiter(8, 8, 0.5, 2);
+        List<ConcurrencyLimiter.Permit> permits = new ArrayList<>();
+        for (int idx = 0; idx < 4; idx++) {
+            permits.add(instance.acquire(LOCATION));
+        }
+        permits.forEach(ConcurrencyLimiter.Permit::dropped);
+        assertEquals(4, instance.getLimit(LOCATION));
+        instance.acquire(LOCATION).dropped(); //started after the decrease
+        assertEquals(2, instance.getLimit(LOCATION));
+    }
+
+    /**
+     * Test of success method with a size dependent latency, of class
+     * ConcurrencyLimiter.Permit.
+     */
+    @Test
+    public void testSizeDependentLatency() throws Exception {
+        System.out.println("sizeDependentLatency");
+        ConcurrencyLimiter instance = new ConcurrencyLimiter(4, 8, 0.5, 2);
+        instance.acquire(LOCATION).success();
+        ConcurrencyLimiter.Permit download = instance.acquire(LOCATION);
+        Thread.sleep(20);
+        download.success(false);
+        assertEquals(4, instance.getLimit(LOCATION));
+        assertTrue(new DescargaSvc(DefaultMessageFactory.newInstance()).isLatencySizeDependent());
+        assertFalse(new VerificaSvc(DefaultMessageFactory.newInstance()).isLatencySizeDependent());
+    }
+
+    /**
+     * Test of latency windows, of class ConcurrencyLimiter; the lowest latency
+     * follows a service that became slower.
+     */
+    @Test
+    public void testLatencyWindow() throws Exception {
+        System.out.println("latencyWindow");
+        ConcurrencyLimiter instance = new ConcurrencyLimiter(4, 8, 0.5, 4) {
+            @Override protected int getLatencyWindow() {
+                return 2;
+            }
+        };
+        instance.acquire(LOCATION).success(); //fast call
+        for (int idx = 0; idx < 2; idx++) { //slower than the fast one
+            ConcurrencyLimiter.Permit slow = instance.acquire(LOCATION);
+            Thread.sleep(20);
+            slow.success();
+        }
+        assertEquals(1, instance.getLimit(LOCATION));
+        for (int idx = 0; idx < 4; idx++) { //fast call out of the windows
+            ConcurrencyLimiter.Permit slow = instance.acquire(LOCATION);
+            Thread.sleep(20);
+            slow.success();
+        }
+        assertTrue(instance.getLimit(LOCATION) > 1, instance.toString());
+        assertTrue(instance.getLimit0(LOCATION).getMinLatency() >= 20_000_000L);
+    }
+}
@@ -6,10 +6,14 @@
 package com.sicomsa.dmt.svc;
 
 
+import com.sicomsa.dmt.Credentials;
 import com.sicomsa.dmt.DescargaResponse;
+import com.sicomsa.dmt.solicitude.batch.BatchTest;
 import com.sicomsa.dmt.util.SOAPUtils;
 
 
+import jakarta.xml.soap.SOAPConnection;
+import jakarta.xml.soap.SOAPConnectionFactory;
 import jakarta.xml.soap.SOAPElement;
 import jakarta.xml.soap.SOAPMessage;
 import jakarta.xml.soap.SOAPException;
@@ -156,6 +160,41 @@ public class DescargaSvcTest {
         testInvalidParameters(()->{invalidParseParameters2();});
     }
     
+    /**
+     * Test of callTheService method, of class DescargaSvc, with a memory budget.
+     */
+    @Test
+    public void testCallTheServiceWithBudget() throws Exception {
+        System.out.println("callTheServiceWithBudget");
+        BudgetedSvc instance = new BudgetedSvc();
+        assertNull(instance.getMemoryBudget());
+        MemoryBudget budget = new MemoryBudget(1000, 100);
+        instance.setMemoryBudget(budget);
+        assertSame(budget, instance.getMemoryBudget());
+        SOAPConnection conn = SOAPConnectionFactory.newInstance().createConnection();
+        Credentials creds = new BatchTest.UselessCredentials(genericRfc);
+        
+        instance.next = new DescargaResponse(now, "5000", "Solicitud Aceptada", "pid-1", "QUJDRA==");
+        DescargaResponse response = instance.callTheService(conn, creds, "pid-1", "token");
+        assertEquals("QUJDRA==", response.getEncodedPackage());
+        assertEquals(MemoryBudget.footprint(8), budget.getUsed());
+        response.dispose();
+        assertTrue(response.isDisposed());
+        assertEquals(0, budget.getUsed());
+        response.dispose();
+        assertEquals(0, budget.getUsed());
+        
+        instance.next = new DescargaResponse(now, "5004", "No se encontró la información", "pid-2", null);
+        response = instance.callTheService(conn, creds, "pid-2", "token");
+        assertFalse(response.isAccept());
+        assertEquals(0, budget.getUsed());
+        assertEquals(2, budget.getReservationCount());
+        
+        instance.next = null; //parse fails
+        assertThrows(NullPointerException.class, ()->instance.callTheService(conn, creds, "pid-3", "token"));
+        assertEquals(0, budget.getUsed());
+    }
+    
     protected void invalidParseParameters1() throws SOAPException {
         svc.parseReceivedMessage(svcFactory.getMessageFactory().createMessage(), null, null);
     }
@@ -243,4 +282,28 @@ public class DescargaSvcTest {
         }
     }
     
-}
\ No newline at end of file
+    ////////////////////////////////////////////////////////////////////////////
+    
+    /**
+     * DescargaSvc that does not sign and receives the message of a given response.
+     */
+    protected class BudgetedSvc extends DescargaSvc {
+        DescargaResponse next;
+        
+        public BudgetedSvc() {
+            super(svcFactory);
+        }
+        @Override public SOAPMessage callService(SOAPConnection connection, SOAPMessage request) throws SOAPException {
+            try {
+                return SOAPUtils.fromString(getMessage(next));
+            }
+            catch (IOException e) {
+                throw new SOAPException(e);
+            }
+        }
+        @Override protected void addSignedContent(SOAPMessage message, Credentials creds, String request)
+                throws SOAPException {
+            addContent(message, creds.getRfc(), request);
+        }
+    }
+}
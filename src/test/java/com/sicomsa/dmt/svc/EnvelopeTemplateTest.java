@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import com.sicomsa.dmt.CachingCredentialsStoreTest;
+import com.sicomsa.dmt.Credentials;
+import com.sicomsa.dmt.Query;
+import com.sicomsa.dmt.RealCredentials;
+import com.sicomsa.dmt.util.QueryMapTest;
+import com.sicomsa.dmt.util.SOAPUtils;
+
+import jakarta.xml.soap.MessageFactory;
+import jakarta.xml.soap.SOAPElement;
+import jakarta.xml.soap.SOAPException;
+import jakarta.xml.soap.SOAPMessage;
+
+import java.security.KeyPair;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.xml.namespace.QName;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198
+ *
+ * @since 2025.02.17
+ *
+ *
+ */
+public class EnvelopeTemplateTest {
+
+    static DefaultMessageFactory factory;
+    static Credentials credentials;
+
+    public EnvelopeTemplateTest() {
+    }
+
+    @BeforeAll
+    public static void setUpClass() throws Exception {
+        factory = DefaultMessageFactory.newInstance();
+        KeyPair keyPair = CachingCredentialsStoreTest.newKeyPair();
+        credentials = new RealCredentials("AAA010101AAA",
+                CachingCredentialsStoreTest.newCertificate(keyPair, Instant.now().plus(1, ChronoUnit.DAYS)),
+                keyPair.getPrivate());
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+    }
+
+    @BeforeEach
+    public void setUp() {
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * Test of newMessage method, of class EnvelopeTemplate.
+     */
+    @Test
+    public void testNewMessage() throws Exception {
+        System.out.println("newMessage");
+        assertThrows(IllegalArgumentException.class, ()->new EnvelopeTemplate(null, null));
+        MessageFactory messageFactory = factory.getMessageFactory();
+        SOAPMessage prototype = messageFactory.createMessage();
+        prototype.getSOAPPart().getEnvelope().addNamespaceDeclaration("dmt", AbstractSvc.DMT_URI);
+        prototype.getSOAPBody().addChildElement(VerificaSvc.VERIFICA_NAME)
+                .addChildElement(VerificaSvc.SOLICITUD_NAME);
+        EnvelopeTemplate instance = new EnvelopeTemplate(messageFactory, prototype);
+
+        SOAPMessage first = instance.newMessage();
+        SOAPMessage second = instance.newMessage();
+        assertEquals(2, instance.getCreatedCount());
+        assertEquals(SOAPUtils.toString(prototype), SOAPUtils.toString(first));
+        SOAPElement element = EnvelopeTemplate.find(first.getSOAPBody(),
+                VerificaSvc.VERIFICA_NAME, VerificaSvc.SOLICITUD_NAME);
+        assertNotNull(element);
+        element.addAttribute(VerificaSvc.ID_NAME, "id");
+        assertEquals(SOAPUtils.toString(prototype), SOAPUtils.toString(second));
+        assertNull(EnvelopeTemplate.find(prototype.getSOAPBody(), VerificaSvc.VERIFICA_NAME, VerificaSvc.ID_NAME));
+        assertSame(messageFactory, instance.getMessageFactory());
+
+        //each thread copies from its own prototype content
+        String expected = SOAPUtils.toString(prototype);
+        List<String> results = new CopyOnWriteArrayList<>();
+        Thread[] threads = new Thread[4];
+        for (int idx = 0; idx < threads.length; idx++) {
+            threads[idx] = new Thread(()->{
+                try {
+                    for (int count = 0; count < 50; count++) {
+                        results.add(SOAPUtils.toString(instance.newMessage()));
+                    }
+                }
+                catch (Exception e) {
+                    results.add(e.toString());
+                }
+            });
+            threads[idx].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(200, results.size());
+        results.forEach(result->assertEquals(expected, result));
+        assertEquals(202, instance.getCreatedCount());
+        System.out.println(instance);
+    }
+
+    /**
+     * Test of getTemplate method, of class AbstractSvc, when the message
+     * factory of the context changes.
+     */
+    @Test
+    public void testGetTemplate() throws Exception {
+        System.out.println("getTemplate");
+        DefaultMessageFactory context = new DefaultMessageFactory();
+        VerificaSvc instance = new VerificaSvc(context);
+        EnvelopeTemplate first = instance.getTemplate();
+        assertSame(context.getMessageFactory(), first.getMessageFactory());
+        assertSame(first, instance.getTemplate());
+        context.messageFactory = MessageFactory.newInstance();
+        EnvelopeTemplate second = instance.getTemplate();
+        assertNotSame(first, second);
+        assertSame(context.messageFactory, second.getMessageFactory());
+        assertSame(second, instance.getTemplate());
+    }
+
+    /**
+     * Test of find method, of class EnvelopeTemplate.
+     */
+    @Test
+    public void testFind() throws Exception {
+        System.out.println("find");
+        SOAPMessage message = factory.getMessageFactory().createMessage();
+        SOAPElement child = message.getSOAPBody().addChildElement(new QName("a"));
+        SOAPElement grandchild = child.addChildElement(new QName("b"));
+        assertSame(grandchild, EnvelopeTemplate.find(message.getSOAPBody(), new QName("a"), new QName("b")));
+        assertSame(message.getSOAPBody(), EnvelopeTemplate.find(message.getSOAPBody()));
+        assertNull(EnvelopeTemplate.find(message.getSOAPBody(), new QName("b")));
+        assertThrows(IllegalArgumentException.class, ()->EnvelopeTemplate.find(null));
+    }
+
+    /**
+     * Test of createMessageToSend method with templates, messages must be the
+     * same ones built from scratch.
+     */
+    @Test
+    public void testCreateMessageToSend() throws Exception {
+        System.out.println("createMessageToSend");
+        Query query = new QueryMapTest().getFullQuery();
+        golden(new SolicitaSvc(factory), new SolicitaSvc(factory) {
+            @Override protected EnvelopeTemplate newTemplate() {
+                return null;
+            }
+        }, query);
+        golden(new VerificaSvc(factory), new VerificaSvc(factory) {
+            @Override protected EnvelopeTemplate newTemplate() {
+                return null;
+            }
+        }, "4e3e8a9b-6a4e-4a2b-a5d2-6f5d0f5c4d3e");
+        golden(new DescargaSvc(factory), new DescargaSvc(factory) {
+            @Override protected EnvelopeTemplate newTemplate() {
+                return null;
+            }
+        }, "4E3E8A9B-6A4E-4A2B-A5D2-6F5D0F5C4D3E_01");
+        assertNull(new AuthenticationSvc(factory).getTemplate());
+    }
+
+    protected <Q> void golden(AbstractGenericSvc<?,Q> templated, AbstractGenericSvc<?,Q> scratch, Q request) throws Exception {
+        SOAPMessage expected = scratch.createMessageToSend(credentials, request, "token");
+        //disabled by default
+        assertFalse(templated.isTemplateEnabled());
+        assertEquals(SOAPUtils.toString(expected),
+                SOAPUtils.toString(templated.createMessageToSend(credentials, request, "token")));
+        assertEquals(0, templated.getTemplate().getCreatedCount());
+        templated.setTemplateEnabled(true);
+        scratch.setTemplateEnabled(true);
+        for (int idx = 0; idx < 2; idx++) {
+            SOAPMessage result = templated.createMessageToSend(credentials, request, "token");
+            assertEquals(SOAPUtils.toString(expected), SOAPUtils.toString(result));
+            assertArrayEquals(expected.getMimeHeaders().getHeader("SOAPAction"),
+                    result.getMimeHeaders().getHeader("SOAPAction"));
+        }
+        assertNotNull(templated.getTemplate());
+        assertEquals(2, templated.getTemplate().getCreatedCount());
+        assertNull(scratch.getTemplate());
+    }
+
+    /**
+     * Messages built per second with and without templates.
+     */
+    @Test
+    @Disabled("benchmark, enable to run manually")
+    public void testBenchmark() throws Exception {
+        System.out.println("benchmark");
+        VerificaSvc templated = new VerificaSvc(factory) {
+            @Override protected void addSignedContent(SOAPMessage message, Credentials creds, String request) throws SOAPException {
+                addContent(message, creds.getRfc(), request);
+            }
+        };
+        VerificaSvc scratch = new VerificaSvc(factory) {
+            @Override protected EnvelopeTemplate newTemplate() {
+                return null;
+            }
+            @Override protected void addSignedContent(SOAPMessage message, Credentials creds, String request) throws SOAPException {
+                addContent(message, creds.getRfc(), request);
+            }
+        };
+        templated.setTemplateEnabled(true);
+        int count = 50_000;
+        for (int round = 0; round < 5; round++) {
+            System.out.printf("unsigned: scratch %.0f msg/s, template %.0f msg/s%n",
+                    perSecond(scratch, count), perSecond(templated, count));
+        }
+        System.out.printf("signed: scratch %.0f msg/s, template %.0f msg/s%n",
+                perSecond(new VerificaSvc(factory) {
+            @Override protected EnvelopeTemplate newTemplate() {
+                return null;
+            }
+        }, 500), perSecond(templated(new VerificaSvc(factory)), 500));
+    }
+
+    protected VerificaSvc templated(VerificaSvc svc) {
+        svc.setTemplateEnabled(true);
+        return svc;
+    }
+
+    protected double perSecond(VerificaSvc svc, int count) throws Exception {
+        long start = System.nanoTime();
+        for (int idx = 0; idx < count; idx++) {
+            svc.createMessageToSend(credentials, "request-"+idx, "token");
+        }
+        return count * 1e9 / (System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import jakarta.xml.soap.SOAPException;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198
+ *
+ * @since 2025.02.14
+ *
+ *
+ */
+public class HedgingPolicyTest {
+
+    public HedgingPolicyTest() {
+    }
+
+    @BeforeAll
+    public static void setUpClass() {
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+    }
+
+    @BeforeEach
+    public void setUp() {
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * Returns a policy with enough fast latencies recorded to hedge after 20 ms.
+     */
+    public static HedgingPolicy newWarmPolicy(double maxExtraLoad) {
+        HedgingPolicy policy = new HedgingPolicy(0.95, maxExtraLoad, Duration.ofMillis(20), null);
+        for (int idx = 0; idx < HedgingPolicy.MIN_SAMPLES; idx++) {
+            policy.record(1_000_000);
+        }
+        return policy;
+    }
+
+    /**
+     * Test of constructor, of class HedgingPolicy.
+     */
+    @Test
+    public void testConstructor() {
+        System.out.println("constructor");
+        assertThrows(IllegalArgumentException.class, ()->new HedgingPolicy(0, 0.1, Duration.ZERO, null));
+        assertThrows(IllegalArgumentException.class, ()->new HedgingPolicy(0.9, 1.5, Duration.ZERO, null));
+        assertThrows(IllegalArgumentException.class, ()->new HedgingPolicy(0.9, 0.1, null, null));
+        HedgingPolicy instance = new HedgingPolicy();
+        assertEquals(-1, instance.getHedgeDelayNanos());
+        assertEquals(0, instance.getHedgeRate());
+    }
+
+    /**
+     * Test of getHedgeDelayNanos method, of class HedgingPolicy.
+     */
+    @Test
+    public void testGetHedgeDelayNanos() {
+        System.out.println("getHedgeDelayNanos");
+        HedgingPolicy instance = new HedgingPolicy(0.9, 0.1, Duration.ZERO, null);
+        for (int idx = 1; idx < HedgingPolicy.MIN_SAMPLES; idx++) {
+            instance.record(idx);
+        }
+        assertEquals(-1, instance.getHedgeDelayNanos());
+        instance.record(10);
+        assertEquals(9, instance.getHedgeDelayNanos()); //90th of 1..10
+        for (int idx = 0; idx < HedgingPolicy.WINDOW_SIZE; idx++) {
+            instance.record(1000);
+        }
+        assertEquals(1000, instance.getHedgeDelayNanos()); //old latencies dropped
+        assertEquals(Duration.ofMillis(20).toNanos(), newWarmPolicy(1).getHedgeDelayNanos());
+    }
+
+    /**
+     * Test of execute method, of class HedgingPolicy.
+     */
+    @Test
+    public void testExecute() throws Exception {
+        System.out.println("execute");
+        HedgingPolicy instance = newWarmPolicy(1);
+        assertEquals("fast", instance.execute("test", ()->"fast"));
+        assertEquals(0, instance.getHedgeCount());
+        
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger count = new AtomicInteger();
+        long start = System.nanoTime();
+        String result = instance.execute("test", ()->{
+            if (count.incrementAndGet() == 1) {
+                await(release);
+                return "primary";
+            }
+            return "hedge";
+        });
+        assertEquals("hedge", result);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        release.countDown();
+        assertEquals(1, instance.getHedgeCount());
+        assertEquals(1, instance.getHedgeWinCount());
+        assertEquals(0.5, instance.getHedgeRate());
+        System.out.println(instance);
+    }
+
+    /**
+     * Test of execute method, of class HedgingPolicy, when calls fail.
+     */
+    @Test
+    public void testExecuteFailures() throws Exception {
+        System.out.println("executeFailures");
+        HedgingPolicy instance = newWarmPolicy(1);
+        AtomicInteger count = new AtomicInteger();
+        Exception e = assertThrows(SOAPException.class, ()->instance.execute("test", ()->{
+            if (count.incrementAndGet() == 1) {
+                sleep(100);
+                throw new SOAPException("primary");
+            }
+            throw new SOAPException("hedge");
+        }));
+        assertEquals("primary", e.getMessage());
+        assertEquals(2, count.get());
+        
+        count.set(0);
+        assertEquals("primary", instance.execute("test", ()->{
+            if (count.incrementAndGet() == 1) {
+                sleep(100);
+                return "primary";
+            }
+            throw new SOAPException("hedge");
+        }));
+        assertEquals(0, instance.getHedgeWinCount());
+        assertThrows(IllegalStateException.class, ()->instance.execute("test", ()->{
+            throw new IllegalStateException();
+        }));
+    }
+
+    /**
+     * Test of execute method, of class HedgingPolicy, with the extra load cap.
+     */
+    @Test
+    public void testExtraLoad() throws Exception {
+        System.out.println("extraLoad");
+        HedgingPolicy instance = newWarmPolicy(0);
+        AtomicInteger count = new AtomicInteger();
+        assertEquals("slow", instance.execute("test", ()->{
+            count.incrementAndGet();
+            sleep(100);
+            return "slow";
+        }));
+        assertEquals(1, count.get());
+        assertEquals(0, instance.getHedgeCount());
+        assertEquals(1, instance.getSuppressedCount());
+        
+        HedgingPolicy half = newWarmPolicy(0.5);
+        half.execute("test", ()->{
+            sleep(100);
+            return "slow";
+        }); //1 hedge would be 100% of 1 call
+        assertEquals(1, half.getSuppressedCount());
+        count.set(0);
+        assertEquals("hedge", half.execute("test", ()->{
+            if (count.incrementAndGet() == 1) {
+                sleep(1000);
+                return "slow";
+            }
+            return "hedge";
+        }));
+        assertEquals(1, half.getHedgeCount());
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    protected static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    protected static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
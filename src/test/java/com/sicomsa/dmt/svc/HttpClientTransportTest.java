@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import com.sicomsa.dmt.Credentials;
+import com.sicomsa.dmt.VerificaResponse;
+import com.sicomsa.dmt.solicitude.batch.BatchTest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import jakarta.xml.soap.MessageFactory;
+import jakarta.xml.soap.SOAPException;
+import jakarta.xml.soap.SOAPMessage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198
+ *
+ * @since 2025.02.15
+ *
+ *
+ */
+public class HttpClientTransportTest {
+
+    static HttpServer server;
+    static String base;
+    static Map<String,String> received = new ConcurrentHashMap<>();
+    static HttpClientTransport transport;
+
+    static final String VERIFICA = """
+            <s:Envelope xmlns:s="http://schemas.xmlsoap.org/soap/envelope/">
+            <s:Body xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance" xmlns:xsd="http://www.w3.org/2001/XMLSchema">
+            <VerificaSolicitudDescargaResponse xmlns="http://DescargaMasivaTerceros.sat.gob.mx">
+            <VerificaSolicitudDescargaResult CodEstatus="5000" EstadoSolicitud="3" CodigoEstadoSolicitud="5000" NumeroCFDIs="1" Mensaje="Solicitud Aceptada">
+            <IdsPaquetes>package1</IdsPaquetes>
+            </VerificaSolicitudDescargaResult></VerificaSolicitudDescargaResponse></s:Body></s:Envelope>""";
+
+    static final String FAULT = """
+            <s:Envelope xmlns:s="http://schemas.xmlsoap.org/soap/envelope/"><s:Body><s:Fault>
+            <faultcode>s:Server</faultcode><faultstring>Internal error</faultstring>
+            </s:Fault></s:Body></s:Envelope>""";
+
+    public HttpClientTransportTest() {
+    }
+
+    @BeforeAll
+    public static void setUpClass() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/ok", exchange->reply(exchange, 200, "text/xml; charset=utf-8", VERIFICA));
+        server.createContext("/fault", exchange->reply(exchange, 500, "text/xml; charset=utf-8", FAULT));
+        server.createContext("/html", exchange->reply(exchange, 503, "text/html", "<html>down</html>"));
+        server.createContext("/slow", exchange->{
+            try {
+                Thread.sleep(1000);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            reply(exchange, 200, "text/xml", VERIFICA);
+        });
+        server.setExecutor(java.util.concurrent.Executors.newCachedThreadPool());
+        server.start();
+        base = "http://127.0.0.1:"+server.getAddress().getPort();
+        transport = new HttpClientTransport(Duration.ofSeconds(5), Duration.ofMillis(300));
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+        server.stop(0);
+    }
+
+    @BeforeEach
+    public void setUp() {
+        received.clear();
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    protected static void reply(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            received.put("body", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        received.put("method", exchange.getRequestMethod());
+        exchange.getRequestHeaders().forEach((name, values)->received.put(name.toLowerCase(), values.get(0)));
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    protected static SOAPMessage newRequest() throws SOAPException {
+        SOAPMessage message = MessageFactory.newInstance().createMessage();
+        message.getSOAPBody().addChildElement(VerificaSvc.VERIFICA_NAME);
+        message.getMimeHeaders().setHeader("SOAPAction", "an action");
+        message.getMimeHeaders().setHeader("Authorization", "a token");
+        message.saveChanges();
+        return message;
+    }
+
+    /**
+     * Test of constructor, of class HttpClientTransport.
+     */
+    @Test
+    public void testConstructor() {
+        System.out.println("constructor");
+        assertThrows(IllegalArgumentException.class, ()->new HttpClientTransport((java.net.http.HttpClient)null, Duration.ofSeconds(1)));
+        assertThrows(IllegalArgumentException.class, ()->new HttpClientTransport(Duration.ZERO, Duration.ofSeconds(1)));
+        assertThrows(IllegalArgumentException.class, ()->new HttpClientTransport(transport.getClient(), Duration.ofSeconds(-1)));
+        HttpClientTransport instance = new HttpClientTransport();
+        assertEquals(HttpClientTransport.DEFAULT_READ_TIMEOUT, instance.getReadTimeout());
+        assertEquals(java.net.http.HttpClient.Version.HTTP_2, instance.getClient().version());
+        assertThrows(IllegalArgumentException.class, ()->instance.setMessageFactory(null));
+        System.out.println(instance);
+    }
+
+    /**
+     * Test of call method, of class HttpClientTransport.
+     */
+    @Test
+    public void testCall() throws Exception {
+        System.out.println("call");
+        SOAPMessage result = transport.call(newRequest(), base+"/ok");
+        assertNotNull(result.getSOAPBody().getFirstChild());
+        assertEquals("POST", received.get("method"));
+        assertEquals("an action", received.get("soapaction"));
+        assertEquals("a token", received.get("authorization"));
+        assertTrue(received.get("content-type").startsWith("text/xml"));
+        assertTrue(received.get("body").contains("VerificaSolicitudDescarga"));
+        
+        result = transport.callAsync(newRequest(), base+"/fault").get();
+        assertTrue(result.getSOAPBody().hasFault());
+        assertEquals("Internal error", result.getSOAPBody().getFault().getFaultString());
+        
+        assertThrows(IllegalArgumentException.class, ()->transport.call(null, base));
+        assertThrows(IllegalArgumentException.class, ()->transport.call(newRequest(), null));
+    }
+
+    /**
+     * Test of call method, of class HttpClientTransport, with failures.
+     */
+    @Test
+    public void testCallFailures() throws Exception {
+        System.out.println("callFailures");
+        Exception e = assertThrows(SOAPException.class, ()->transport.call(newRequest(), base+"/html"));
+        assertTrue(e.getMessage().contains("503"));
+        e = assertThrows(SOAPException.class, ()->transport.call(newRequest(), base+"/slow"));
+        assertTrue(e.getCause() instanceof java.net.http.HttpTimeoutException);
+        
+        int unused;
+        try (java.net.ServerSocket socket = new java.net.ServerSocket(0)) {
+            unused = socket.getLocalPort();
+        }
+        e = assertThrows(SOAPException.class, ()->transport.call(newRequest(), "http://127.0.0.1:"+unused+"/"));
+        assertTrue(e.getCause() instanceof IOException);
+    }
+
+    /**
+     * Test of callService method, of class AbstractSvc, with a transport.
+     */
+    @Test
+    public void testCallTheService() throws Exception {
+        System.out.println("callTheService");
+        VerificaSvc svc = new VerificaSvc(DefaultMessageFactory.newInstance()) {
+            @Override public String getLocation() {
+                return base+"/ok";
+            }
+            @Override protected void addSignedContent(SOAPMessage message, Credentials creds, String request)
+                    throws SOAPException {
+                addContent(message, creds.getRfc(), request);
+            }
+        };
+        svc.setTransport(transport);
+        assertSame(transport, svc.getTransport());
+        Credentials creds = new BatchTest.UselessCredentials("some rfc");
+        VerificaResponse response = svc.callTheService(
+                jakarta.xml.soap.SOAPConnectionFactory.newInstance().createConnection(), creds, "rid", "a token");
+        assertTrue(response.isAccept());
+        assertEquals("package1", response.getPackageIds().getPackageId(0));
+        assertEquals("a token", received.get("authorization"));
+        assertEquals(svc.getSoapAction(), received.get("soapaction"));
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198
+ *
+ * @since 2025.02.10
+ *
+ *
+ */
+public class MemoryBudgetTest {
+
+    public MemoryBudgetTest() {
+    }
+
+    @BeforeAll
+    public static void setUpClass() {
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+    }
+
+    @BeforeEach
+    public void setUp() {
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * Test of constructors and ofMaxHeap method, of class MemoryBudget.
+     */
+    @Test
+    public void testConstructor() {
+        System.out.println("constructor");
+        assertThrows(IllegalArgumentException.class, ()->new MemoryBudget(0));
+        assertThrows(IllegalArgumentException.class, ()->new MemoryBudget(10, 0));
+        assertThrows(IllegalArgumentException.class, ()->MemoryBudget.ofMaxHeap(0));
+        assertThrows(IllegalArgumentException.class, ()->MemoryBudget.ofMaxHeap(1.5));
+        MemoryBudget instance = new MemoryBudget(100);
+        assertEquals(100, instance.getCapacity());
+        assertEquals(MemoryBudget.DEFAULT_INITIAL_ESTIMATE, instance.getEstimate());
+        assertEquals(Runtime.getRuntime().maxMemory() / 4, MemoryBudget.ofMaxHeap(0.25).getCapacity(), 1);
+    }
+
+    /**
+     * Test of footprint method, of class MemoryBudget.
+     */
+    @Test
+    public void testFootprint() {
+        System.out.println("footprint");
+        assertEquals(0, MemoryBudget.footprint(0));
+        assertEquals(7, MemoryBudget.footprint(4));
+        assertEquals(1750, MemoryBudget.footprint(1000));
+    }
+
+    /**
+     * Test of reserve and release methods, of class MemoryBudget.
+     */
+    @Test
+    public void testReserve() throws Exception {
+        System.out.println("reserve");
+        MemoryBudget instance = new MemoryBudget(100, 40);
+        MemoryBudget.Reservation r1 = instance.reserve();
+        MemoryBudget.Reservation r2 = instance.reserve();
+        assertEquals(40, r1.getBytes());
+        assertEquals(80, instance.getUsed());
+        assertEquals(20, instance.getAvailable());
+        assertNull(instance.tryReserve(10, TimeUnit.MILLISECONDS));
+        assertEquals(1, instance.getTimeoutCount());
+        assertEquals(1, instance.getWaitCount());
+        
+        CompletableFuture<MemoryBudget.Reservation> waiting = CompletableFuture.supplyAsync(()->{
+            try {
+                return instance.reserve();
+            }
+            catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(50);
+        assertFalse(waiting.isDone());
+        r1.release();
+        MemoryBudget.Reservation r3 = waiting.get(5, TimeUnit.SECONDS);
+        assertEquals(80, instance.getUsed());
+        r1.release(); //released once
+        assertTrue(r1.isReleased());
+        assertEquals(0, r1.getBytes());
+        assertEquals(80, instance.getUsed());
+        r2.release();
+        r3.release();
+        assertEquals(0, instance.getUsed());
+        assertEquals(3, instance.getReservationCount());
+        assertTrue(instance.getWaitNanos() > 0);
+    }
+
+    /**
+     * Test of resize method, of class MemoryBudget.Reservation.
+     */
+    @Test
+    public void testResize() throws Exception {
+        System.out.println("resize");
+        MemoryBudget instance = new MemoryBudget(100, 40);
+        MemoryBudget.Reservation r1 = instance.reserve();
+        r1.resize(120); //exceeds budget
+        assertEquals(120, instance.getUsed());
+        assertEquals(0, instance.getAvailable());
+        assertEquals(120, instance.getMaxObserved());
+        assertEquals(60, instance.getEstimate()); //40*0.75 + 120*0.25
+        assertNull(instance.tryReserve(0, TimeUnit.MILLISECONDS));
+        r1.release();
+        r1.resize(10);
+        assertEquals(0, instance.getUsed());
+        
+        MemoryBudget small = new MemoryBudget(10, 1000);
+        MemoryBudget.Reservation big = small.reserve(); //reduced to capacity
+        assertEquals(10, big.getBytes());
+        big.release();
+        System.out.println(instance);
+    }
+}
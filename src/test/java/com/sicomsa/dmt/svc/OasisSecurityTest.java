@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import com.sicomsa.dmt.CachingCredentialsStoreTest;
+
+import jakarta.xml.soap.SOAPElement;
+import jakarta.xml.soap.SOAPMessage;
+
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198
+ *
+ * @since 2025.02.19
+ *
+ *
+ */
+public class OasisSecurityTest {
+
+    static X509Certificate certificate;
+    static X509Certificate other;
+
+    public OasisSecurityTest() {
+    }
+
+    @BeforeAll
+    public static void setUpClass() throws Exception {
+        KeyPair keyPair = CachingCredentialsStoreTest.newKeyPair();
+        Instant notAfter = Instant.now().plus(1, ChronoUnit.DAYS);
+        certificate = CachingCredentialsStoreTest.newCertificate(keyPair, notAfter);
+        other = CachingCredentialsStoreTest.newCertificate(keyPair, notAfter.plusSeconds(1));
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+    }
+
+    @BeforeEach
+    public void setUp() {
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * Test of encode method, of class OasisSecurity.
+     */
+    @Test
+    public void testEncode() throws Exception {
+        System.out.println("encode");
+        OasisSecurity instance = new OasisSecurity();
+        assertEquals(0, instance.getCachedTokenCount());
+        String token = instance.encode(certificate);
+        assertEquals(Base64.getEncoder().encodeToString(certificate.getEncoded()), token);
+        assertSame(token, instance.encode(certificate));
+        assertEquals(1, instance.getCachedTokenCount());
+        assertEquals(Base64.getEncoder().encodeToString(other.getEncoded()), instance.encode(other));
+        assertEquals(2, instance.getCachedTokenCount());
+        assertThrows(NullPointerException.class, ()->instance.encode(null));
+    }
+
+    /**
+     * Test of encode method, of class OasisSecurity, with more certificates
+     * than are cached; the least recently used are evicted.
+     */
+    @Test
+    public void testEncodeEviction() throws Exception {
+        System.out.println("encodeEviction");
+        OasisSecurity instance = new OasisSecurity();
+        KeyPair keyPair = CachingCredentialsStoreTest.newKeyPair();
+        Instant notAfter = Instant.now().plus(1, ChronoUnit.DAYS);
+        String token = instance.encode(certificate);
+        String first = null;
+        X509Certificate eldest = null;
+        for (int i = 0; i < OasisSecurity.MAX_CACHED_TOKENS; i++) {
+            X509Certificate renewed = CachingCredentialsStoreTest.newCertificate(keyPair, notAfter.plusSeconds(i));
+            String encoded = instance.encode(renewed);
+            if (eldest == null) {
+                eldest = renewed;
+                first = encoded;
+            }
+            assertSame(token, instance.encode(certificate));
+        }
+        assertEquals(OasisSecurity.MAX_CACHED_TOKENS, instance.getCachedTokenCount());
+        assertSame(token, instance.encode(certificate));
+        String encoded = instance.encode(eldest);
+        assertEquals(first, encoded);
+        assertNotSame(first, encoded);
+    }
+
+    /**
+     * Test of addBinarySecurityToken method, of class OasisSecurity.
+     */
+    @Test
+    public void testAddBinarySecurityToken() throws Exception {
+        System.out.println("addBinarySecurityToken");
+        OasisSecurity instance = new OasisSecurity();
+        SOAPMessage message = DefaultMessageFactory.newInstance().getMessageFactory().createMessage();
+        SOAPElement security = instance.addSecurity(message.getSOAPHeader());
+        SOAPElement token = instance.addBinarySecurityToken(security, "uuid-1", certificate);
+        assertEquals(instance.encode(certificate), token.getTextContent());
+        assertEquals("uuid-1", token.getAttributeValue(instance.qWsuId));
+        assertEquals(1, instance.getCachedTokenCount());
+    }
+
+    /**
+     * Test of format method, of class OasisSecurity.
+     */
+    @Test
+    public void testFormat() {
+        System.out.println("format");
+        OasisSecurity instance = new OasisSecurity();
+        Instant instant = Instant.parse("2025-02-19T10:15:30.123456Z");
+        assertEquals("2025-02-19T10:15:30.123Z", instance.format(instant));
+        instance.setFormatter(DateTimeFormatter.ISO_INSTANT);
+        assertEquals("2025-02-19T10:15:30.123456Z", instance.format(instant));
+        assertThrows(IllegalArgumentException.class, ()->instance.setFormatter(null));
+        instance.setTimestampDuration(60);
+        assertEquals(60, instance.getTimestampDuration());
+        assertThrows(IllegalArgumentException.class, ()->instance.setTimestampDuration(0));
+    }
+
+    /**
+     * Tokens encoded per second, with and without the cache.
+     */
+    @Test
+    @Disabled("benchmark, enable to run manually")
+    public void testBenchmark() throws Exception {
+        System.out.println("benchmark");
+        OasisSecurity cached = new OasisSecurity();
+        int count = 200_000;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int idx = 0; idx < count; idx++) {
+                Base64.getEncoder().encodeToString(certificate.getEncoded());
+            }
+            double plain = count * 1e9 / (System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int idx = 0; idx < count; idx++) {
+                cached.encode(certificate);
+            }
+            double fromCache = count * 1e9 / (System.nanoTime() - start);
+            System.out.printf("encoding %.0f tokens/s, cache %.0f tokens/s%n", plain, fromCache);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import com.sicomsa.dmt.DMTClient;
+import com.sicomsa.dmt.DescargaResponse;
+import com.sicomsa.dmt.Query;
+import com.sicomsa.dmt.SolicitaResponse;
+import com.sicomsa.dmt.VerificaResponse;
+
+import jakarta.xml.soap.SOAPConnection;
+import jakarta.xml.soap.SOAPConnectionFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198
+ *
+ * @since 2025.02.09
+ *
+ *
+ */
+public class PackagePipelineTest {
+
+    static String encoded;
+
+    public PackagePipelineTest() {
+    }
+
+    @BeforeAll
+    public static void setUpClass() throws IOException {
+        encoded = newPackage(
+                "a.xml", "<cfdi:Comprobante xmlns:cfdi=\"http://www.sat.gob.mx/cfd/4\" Total=\"10\"/>",
+                "b.XML", "<cfdi:Comprobante xmlns:cfdi=\"http://www.sat.gob.mx/cfd/4\" Total=\"20\"/>",
+                "metadata.txt", "Uuid~RfcEmisor");
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+    }
+
+    @BeforeEach
+    public void setUp() {
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * Returns a Base64 encoded zip file with the specified names and contents.
+     */
+    public static String newPackage(String... namesAndContents) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (int idx = 0; idx < namesAndContents.length; idx += 2) {
+                zip.putNextEntry(new ZipEntry(namesAndContents[idx]));
+                zip.write(namesAndContents[idx+1].getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return Base64.getEncoder().encodeToString(out.toByteArray());
+    }
+
+    /**
+     * Test of save method, of class PackagePipeline.
+     */
+    @Test
+    public void testSave() throws Exception {
+        System.out.println("save");
+        List<String> saved = new CopyOnWriteArrayList<>();
+        List<PackagePipeline.PackageEntry> entries = new CopyOnWriteArrayList<>();
+        PackagePipeline instance = PackagePipeline.builder()
+                .setDelegate((rfc, packageId, encodedPackage, params)->saved.add(packageId))
+                .setSink(entries::add)
+                .setQueueCapacity(1)
+                .setParseParallelism(2)
+                .build();
+        instance.save("rfc", "pid-1", encoded, null);
+        instance.save("rfc", "pid-2", encoded, null);
+        instance.save("rfc", "pid-3", "not base 64!", null);
+        assertTrue(instance.closeAndWait(10, TimeUnit.SECONDS));
+        assertTrue(instance.isTerminated());
+        assertThrows(IllegalStateException.class, ()->instance.save("rfc", "pid-4", encoded, null));
+
+        assertEquals(List.of("pid-1", "pid-2", "pid-3"), saved);
+        assertEquals(6, entries.size());
+        for (PackagePipeline.PackageEntry entry : entries) {
+            assertEquals("rfc", entry.getRfc());
+            if (entry.getName().equals("metadata.txt")) {
+                assertFalse(entry.isXml());
+                assertNull(entry.getDocument());
+            }
+            else {
+                assertTrue(entry.isXml());
+                assertEquals("Comprobante", entry.getDocument().getDocumentElement().getLocalName());
+            }
+        }
+        assertEquals(2, instance.decodeStage.getProcessedCount());
+        assertEquals(1, instance.decodeStage.getFailureCount());
+        assertEquals(2, instance.unzipStage.getProcessedCount());
+        assertEquals(6, instance.parseStage.getProcessedCount());
+        assertEquals(6, instance.sinkStage.getProcessedCount());
+        assertEquals(5, instance.getStages().size());
+        instance.getStages().forEach(stage->{
+            assertTrue(stage.isFinished());
+            assertEquals(0, stage.getQueueSize());
+            System.out.println(stage);
+        });
+        assertEquals(2, instance.parseStage.getParallelism());
+    }
+
+    /**
+     * Test of fetch method, of class PackagePipeline.
+     */
+    @Test
+    public void testFetch() throws Exception {
+        System.out.println("fetch");
+        List<String> names = new CopyOnWriteArrayList<>();
+        PackagePipeline instance = PackagePipeline.builder()
+                .setSink(entry->names.add(entry.getPackageId()+"/"+entry.getName()))
+                .setFetchParallelism(2)
+                .build();
+        SOAPConnection conn = SOAPConnectionFactory.newInstance().createConnection();
+        DMTClient client = new PackageClient();
+        instance.fetch(conn, client, "pid-1");
+        instance.fetch(conn, client, "rejected");
+        assertThrows(IllegalArgumentException.class, ()->instance.fetch(conn, null, "pid"));
+        instance.close();
+        assertTrue(instance.isClosed());
+        assertEquals(1, instance.fetchStage.getProcessedCount());
+        assertEquals(1, instance.fetchStage.getFailureCount());
+        assertEquals(3, names.size());
+        assertTrue(names.contains("pid-1/metadata.txt"));
+        assertThrows(IllegalStateException.class, ()->instance.fetch(conn, client, "pid-2"));
+    }
+
+    /**
+     * Test of save and closeAndWait methods, of class PackagePipeline, saving
+     * from several threads while the pipeline is closed; every package whose
+     * save did not fail reaches the sink.
+     */
+    @Test
+    public void testSaveWhileClosing() throws Exception {
+        System.out.println("saveWhileClosing");
+        for (int round = 0; round < 20; round++) {
+            List<String> accepted = new CopyOnWriteArrayList<>();
+            List<String> received = new CopyOnWriteArrayList<>();
+            PackagePipeline instance = PackagePipeline.builder()
+                    .setSink(entry->received.add(entry.getPackageId()))
+                    .setQueueCapacity(1)
+                    .setParseParallelism(1)
+                    .build();
+            Thread[] threads = new Thread[3];
+            for (int idx = 0; idx < threads.length; idx++) {
+                String prefix = "t"+idx+"-";
+                threads[idx] = new Thread(()->{
+                    for (int pid = 0; ; pid++) {
+                        try {
+                            instance.save("rfc", prefix+pid, encoded, null);
+                            accepted.add(prefix+pid);
+                        }
+                        catch (IllegalStateException e) {
+                            return;
+                        }
+                    }
+                });
+                threads[idx].start();
+            }
+            Thread.sleep(5);
+            assertTrue(instance.closeAndWait(10, TimeUnit.SECONDS));
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(accepted.size() * 3, received.size());
+            assertEquals(0, instance.decodeStage.getFailureCount());
+        }
+    }
+
+    /**
+     * Test of unzip method, of class PackagePipeline, with an entry bigger
+     * than the maximum entry size.
+     */
+    @Test
+    public void testMaxEntrySize() throws Exception {
+        System.out.println("maxEntrySize");
+        List<String> names = new CopyOnWriteArrayList<>();
+        PackagePipeline instance = PackagePipeline.builder()
+                .setSink(entry->names.add(entry.getPackageId()+"/"+entry.getName()))
+                .setMaxEntrySize(20)
+                .build();
+        instance.save("rfc", "small", newPackage("a.txt", "12345678901234567890"), null);
+        instance.save("rfc", "big", newPackage("a.txt", "small", "b.txt", "123456789012345678901"), null);
+        instance.close();
+        assertEquals(1, instance.unzipStage.getProcessedCount());
+        assertEquals(1, instance.unzipStage.getFailureCount());
+        assertTrue(names.contains("small/a.txt"));
+        assertFalse(names.contains("big/b.txt"));
+        assertThrows(IllegalArgumentException.class, ()->PackagePipeline.builder()
+                .setSink(entry->{}).setMaxEntrySize(0).build());
+    }
+
+    /**
+     * Test of build method, of class PackagePipeline.Builder.
+     */
+    @Test
+    public void testBuild() {
+        System.out.println("build");
+        assertThrows(IllegalArgumentException.class, ()->PackagePipeline.builder().build());
+        assertThrows(IllegalArgumentException.class, ()->PackagePipeline.builder()
+                .setSink(entry->{}).setQueueCapacity(0).build());
+        assertThrows(IllegalArgumentException.class, ()->PackagePipeline.builder()
+                .setSink(entry->{}).setUnzipParallelism(0).build());
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Client that returns the test package for any id but "rejected".
+     */
+    public static class PackageClient implements DMTClient {
+        @Override public String getRfc() {
+            return "rfc";
+        }
+        @Override public SolicitaResponse requestDownload(SOAPConnection connection, Query query) {
+            throw new UnsupportedOperationException();
+        }
+        @Override public VerificaResponse verifyRequest(SOAPConnection connection, String requestId) {
+            throw new UnsupportedOperationException();
+        }
+        @Override public DescargaResponse download(SOAPConnection connection, String packageId) {
+            if (packageId.equals("rejected")) {
+                return new DescargaResponse(Instant.now(), "5004", "No se encontró la información", packageId, null);
+            }
+            return new DescargaResponse(Instant.now(), "5000", "Solicitud Aceptada", packageId, encoded);
+        }
+        @Override public void save(String packageId, String encodedPackage) {
+        }
+        @Override public X509Certificate getCertificate() {
+            return null;
+        }
+    }
+}
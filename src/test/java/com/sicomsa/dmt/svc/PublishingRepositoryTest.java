@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import com.sicomsa.dmt.RepositoryException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+ 
+/**
+ *
+ * @author https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198
+ *
+ * @since 2025.02.08
+ *
+ *
+ */
+public class PublishingRepositoryTest {
+    
+    static final String CONTENT = "package contents";
+    static String encoded;
+
+    public PublishingRepositoryTest() {
+    }
+
+    @BeforeAll
+    public static void setUpClass() {
+        encoded = Base64.getEncoder().encodeToString(CONTENT.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+    }
+
+    @BeforeEach
+    public void setUp() {
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * Test of save method, of class PublishingRepository.
+     */
+    @Test
+    public void testSave() throws Exception {
+        System.out.println("save");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            List<String> saved = new CopyOnWriteArrayList<>();
+            PublishingRepository instance = new PublishingRepository(
+                    (rfc, packageId, encodedPackage, params)->saved.add(packageId),
+                    executor, 2);
+            instance.save("rfc", "pid-0", encoded, null); //no subscribers
+            RecordingSubscriber subscriber = new RecordingSubscriber();
+            instance.subscribe(subscriber);
+            assertEquals(1, instance.getNumberOfSubscribers());
+            instance.save("rfc", "pid-1", encoded, null);
+            instance.save("rfc", "pid-2", encoded, null);
+            instance.close();
+            instance.save("rfc", "pid-3", encoded, null); //only delegated
+            assertTrue(subscriber.completed.await(5, TimeUnit.SECONDS));
+            assertEquals(List.of("pid-0", "pid-1", "pid-2", "pid-3"), saved);
+            assertEquals(2, subscriber.packages.size());
+            PublishingRepository.PackageItem pkg = subscriber.packages.get(0);
+            assertEquals("rfc", pkg.getRfc());
+            assertEquals("pid-1", pkg.getPackageId());
+            assertEquals(CONTENT.length(), pkg.size());
+            ByteBuffer data = pkg.getData();
+            assertTrue(data.isReadOnly());
+            assertEquals(CONTENT, StandardCharsets.UTF_8.decode(data).toString());
+            assertArrayEquals(CONTENT.getBytes(StandardCharsets.UTF_8), pkg.openStream().readAllBytes());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Test of save method, of class PublishingRepository, with invalid packages.
+     */
+    @Test
+    public void testSaveInvalid() {
+        System.out.println("saveInvalid");
+        PublishingRepository instance = new PublishingRepository();
+        assertNull(instance.getDelegate());
+        instance.save("rfc", "pid", "not base 64!", null); //no subscribers, not decoded
+        instance.subscribe(new RecordingSubscriber());
+        assertThrows(RepositoryException.class, ()->instance.save("rfc", "pid", "not base 64!", null));
+        assertThrows(RepositoryException.class, ()->instance.save("rfc", "pid", null, null));
+        instance.close();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    public static class RecordingSubscriber implements Flow.Subscriber<PublishingRepository.PackageItem> {
+        final List<PublishingRepository.PackageItem> packages = new CopyOnWriteArrayList<>();
+        final CountDownLatch completed = new CountDownLatch(1);
+
+        @Override public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+        @Override public void onNext(PublishingRepository.PackageItem item) {
+            packages.add(item);
+        }
+        @Override public void onError(Throwable throwable) {
+            completed.countDown();
+        }
+        @Override public void onComplete() {
+            completed.countDown();
+        }
+    }
+}
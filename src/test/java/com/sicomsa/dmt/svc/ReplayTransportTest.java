@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import com.sicomsa.dmt.CachingCredentialsStoreTest;
+import com.sicomsa.dmt.Client;
+import com.sicomsa.dmt.DescargaResponse;
+import com.sicomsa.dmt.RealCredentials;
+import com.sicomsa.dmt.SolicitaResponse;
+import com.sicomsa.dmt.VerificaResponse;
+
+import jakarta.xml.soap.MessageFactory;
+import jakarta.xml.soap.SOAPConnection;
+import jakarta.xml.soap.SOAPConnectionFactory;
+import jakarta.xml.soap.SOAPException;
+import jakarta.xml.soap.SOAPMessage;
+import jakarta.xml.ws.WebServiceException;
+import jakarta.xml.ws.soap.SOAPFaultException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.KeyPair;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198
+ *
+ * @since 2025.02.19
+ *
+ *
+ */
+public class ReplayTransportTest {
+
+    static RealCredentials credentials;
+    static SOAPConnection conn;
+
+    public ReplayTransportTest() {
+    }
+
+    @BeforeAll
+    public static void setUpClass() throws Exception {
+        KeyPair keyPair = CachingCredentialsStoreTest.newKeyPair();
+        credentials = new RealCredentials("AAA010101AAA",
+                CachingCredentialsStoreTest.newCertificate(keyPair, Instant.now().plus(1, ChronoUnit.DAYS)),
+                keyPair.getPrivate());
+        conn = SOAPConnectionFactory.newInstance().createConnection();
+    }
+
+    @AfterAll
+    public static void tearDownClass() throws SOAPException {
+        conn.close();
+    }
+
+    @BeforeEach
+    public void setUp() {
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * Test of call method, of class ReplayTransport, with the exchanges
+     * recorded by a RecordingTransport.
+     */
+    @Test
+    public void testCall() throws Exception {
+        System.out.println("call");
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        List<String> recorded = new ArrayList<>();
+        try (SatSimulator simulator = SatSimulator.builder()
+                .setLatency(Duration.ofMillis(1))
+                .setPendingVerifications(1)
+                .setPackagesPerRequest(2)
+                .setPackageSize(10_000)
+                .build()) {
+            RecordingTransport recorder = new RecordingTransport(simulator.newTransport(), archive, true);
+            DownloadService service = simulator.newDownloadService();
+            service.setTransport(recorder);
+            recorded.addAll(session(new Client(credentials, service)));
+            recorder.close();
+            assertEquals(6, recorder.getRecordedCount());
+            assertTrue(recorder.getRecordedBytes() > 20_000);
+            System.out.println(recorder + ", archive " + archive.size() + " bytes");
+            recorder.close();
+        }
+
+        ReplayTransport instance = new ReplayTransport(new ByteArrayInputStream(archive.toByteArray()), false);
+        assertEquals(6, instance.getExchangeCount());
+        assertEquals(4, instance.getLocations().size());
+        assertNotNull(instance.getFirstInstant());
+        DownloadService service = new DownloadService();
+        service.setTransport(instance);
+        assertEquals(2, instance.getExchangeCount(((AbstractSvc<?,?>)service.getVerificaSvc()).getLocation()));
+
+        //served without the simulator
+        assertEquals(recorded, session(new Client(credentials, service)));
+        assertEquals(6, instance.getServedCount());
+        SOAPException exhausted = assertThrows(SOAPException.class,
+                ()->new Client(credentials, service).requestDownload(conn, SatSimulatorTest.newQuery()));
+        assertTrue(exhausted.getMessage().contains("no more exchanges"), exhausted.getMessage());
+
+        instance.rewind();
+        assertEquals(recorded, session(new Client(credentials, service)));
+        System.out.println(instance);
+
+        ReplayTransport looping = new ReplayTransport(new ByteArrayInputStream(archive.toByteArray()), true);
+        service.setTransport(looping);
+        for (int idx = 0; idx < 3; idx++) {
+            assertEquals(recorded, session(new Client(credentials, service)));
+        }
+        assertThrows(SOAPException.class, ()->looping.call(null, "http://unknown"));
+        assertThrows(IOException.class, ()->new ReplayTransport(new ByteArrayInputStream(new byte[] {1, 2}), true));
+        assertThrows(IllegalArgumentException.class, ()->new ReplayTransport(null, true));
+    }
+
+    /**
+     * Test of call method, of class RecordingTransport, when the exchange
+     * fails.
+     */
+    @Test
+    public void testCallFailure() throws Exception {
+        System.out.println("callFailure");
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (RecordingTransport recorder = new RecordingTransport((request, location)->{
+                    throw new SOAPException("connection refused");
+                }, archive, false)) {
+            DownloadService service = new DownloadService();
+            service.setTransport(recorder);
+            assertThrows(SOAPException.class, ()->service.autentica(conn, credentials));
+            assertEquals(1, recorder.getRecordedCount());
+        }
+        ReplayTransport instance = new ReplayTransport(new ByteArrayInputStream(archive.toByteArray()), false);
+        DownloadService service = new DownloadService();
+        service.setTransport(instance);
+        SOAPException e = assertThrows(SOAPException.class, ()->service.autentica(conn, credentials));
+        assertEquals("connection refused", e.getMessage());
+        assertThrows(IllegalArgumentException.class, ()->new RecordingTransport(null, archive, false));
+    }
+
+    /**
+     * Test of call method, of class RecordingTransport, when the messages can
+     * not be serialized; the exchange is not recorded but the result of the
+     * delegate is returned, or its exception thrown.
+     */
+    @Test
+    public void testCallUnserializable() throws Exception {
+        System.out.println("callUnserializable");
+        String location = "http://localhost/unserializable";
+        SOAPMessage expected = MessageFactory.newInstance().createMessage();
+        SOAPException failure = new SOAPException("boom");
+        AtomicInteger calls = new AtomicInteger();
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (RecordingTransport recorder = new RecordingTransport((request, at)->{
+                    if (calls.getAndIncrement() > 0) {
+                        throw failure;
+                    }
+                    return expected;
+                }, archive, false) {
+                    @Override protected byte[] toBytes(SOAPMessage message) throws SOAPException {
+                        throw new SOAPException("unable to serialize");
+                    }
+                }) {
+            assertSame(expected, recorder.call(expected, location));
+            assertSame(failure, assertThrows(SOAPException.class, ()->recorder.call(expected, location)));
+            assertEquals(1, recorder.getRecordedCount()); //only the failure
+        }
+        try (RecordingTransport recorder = new RecordingTransport((request, at)->expected, archive, true) {
+                    @Override protected byte[] toBytes(SOAPMessage message) throws SOAPException {
+                        throw new IllegalStateException("unable to serialize");
+                    }
+                }) {
+            assertSame(expected, recorder.call(expected, location));
+            assertEquals(0, recorder.getRecordedCount());
+        }
+    }
+
+    /**
+     * Test of call method, of class ReplayTransport, with failures of each
+     * type and a message over 64 KB; they are thrown again with the same type
+     * and message.
+     */
+    @Test
+    public void testCallFailureTypes() throws Exception {
+        System.out.println("callFailureTypes");
+        String location = "http://localhost/failures";
+        String large = "ñ".repeat(40_000);
+        List<Exception> failures = List.of(
+                new SOAPException(large),
+                RetryPolicyTest.newFault("boom"),
+                new CircuitOpenException(location),
+                new IllegalStateException("closed"),
+                new SOAPException());
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        AtomicInteger calls = new AtomicInteger();
+        try (RecordingTransport recorder = new RecordingTransport((request, at)->{
+                    Exception failure = failures.get(calls.getAndIncrement());
+                    if (failure instanceof SOAPException soap) {
+                        throw soap;
+                    }
+                    throw (RuntimeException)failure;
+                }, archive, false)) {
+            for (Exception failure : failures) {
+                assertSame(failure, assertThrows(Exception.class, ()->recorder.call(null, location)));
+            }
+            assertEquals(failures.size(), recorder.getRecordedCount());
+        }
+        ReplayTransport instance = new ReplayTransport(new ByteArrayInputStream(archive.toByteArray()), false);
+        assertEquals(failures.size(), instance.getExchangeCount());
+        SOAPException soap = assertThrows(SOAPException.class, ()->instance.call(null, location));
+        assertEquals(large, soap.getMessage());
+        SOAPFaultException fault = assertThrows(SOAPFaultException.class, ()->instance.call(null, location));
+        assertEquals("boom", fault.getFault().getFaultString());
+        assertEquals("Server", fault.getFault().getFaultCodeAsQName().getLocalPart());
+        WebServiceException circuit = assertThrows(WebServiceException.class, ()->instance.call(null, location));
+        assertEquals("circuit open for location:"+location, circuit.getMessage());
+        WebServiceException closed = assertThrows(WebServiceException.class, ()->instance.call(null, location));
+        assertEquals("closed", closed.getMessage());
+        assertNull(assertThrows(SOAPException.class, ()->instance.call(null, location)).getMessage());
+        assertThrows(SOAPException.class, ()->instance.call(null, location));
+    }
+
+    /**
+     * Sessions per second replayed from a recording; parsing and signing
+     * without network.
+     */
+    @Test
+    @Disabled("benchmark, enable to run manually")
+    public void testBenchmark() throws Exception {
+        System.out.println("benchmark");
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (SatSimulator simulator = SatSimulator.builder()
+                .setLatency(Duration.ofMillis(1))
+                .setPendingVerifications(1)
+                .setPackagesPerRequest(2)
+                .setPackageSize(100_000)
+                .build();
+                RecordingTransport recorder = new RecordingTransport(simulator.newTransport(), archive, false)) {
+            DownloadService service = simulator.newDownloadService();
+            service.setTransport(recorder);
+            session(new Client(credentials, service));
+        }
+        ReplayTransport replay = new ReplayTransport(new ByteArrayInputStream(archive.toByteArray()), true);
+        DownloadService service = new DownloadService();
+        service.setTransport(replay);
+        for (int round = 0; round < 5; round++) {
+            int sessions = 0;
+            long begin = System.nanoTime();
+            while (System.nanoTime() - begin < 2_000_000_000L) {
+                session(new Client(credentials, service));
+                sessions++;
+            }
+            System.out.printf("%.1f sessions/s, %.1f exchanges/s%n", sessions * 1e9 / (System.nanoTime() - begin),
+                    sessions * 6e9 / (System.nanoTime() - begin));
+        }
+        System.out.println(replay);
+    }
+
+    /**
+     * Authenticates, requests, verifies twice and downloads two packages.
+     *
+     * @return what the client received
+     */
+    protected List<String> session(Client client) throws SOAPException {
+        List<String> list = new ArrayList<>();
+        SolicitaResponse solicita = client.requestDownload(conn, SatSimulatorTest.newQuery());
+        list.add(solicita.getRequestId());
+        VerificaResponse verifica = client.verifyRequest(conn, solicita.getRequestId());
+        list.add(verifica.getStatusCode() + verifica.isDelay());
+        verifica = client.verifyRequest(conn, solicita.getRequestId());
+        list.add(verifica.getPackageIds().toString());
+        for (int idx = 0; idx < verifica.getPackageIds().size(); idx++) {
+            DescargaResponse descarga = client.download(conn, verifica.getPackageIds().getPackageId(idx));
+            list.add(descarga.getEncodedPackage());
+        }
+        return list;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import com.sicomsa.dmt.SvcSignatureException;
+
+import jakarta.xml.soap.SOAPException;
+import jakarta.xml.soap.SOAPFactory;
+import jakarta.xml.soap.SOAPFault;
+import jakarta.xml.ws.soap.SOAPFaultException;
+
+import java.time.Duration;
+
+import javax.xml.namespace.QName;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198
+ *
+ * @since 2025.02.12
+ *
+ *
+ */
+public class RetryPolicyTest {
+
+    static RetryPolicy noDelay;
+
+    public RetryPolicyTest() {
+    }
+
+    @BeforeAll
+    public static void setUpClass() {
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+    }
+
+    @BeforeEach
+    public void setUp() {
+        noDelay = new RetryPolicy(3, Duration.ZERO, Duration.ZERO, Duration.ofSeconds(10));
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    public static SOAPFaultException newFault(String text) throws SOAPException {
+        return newFault(text, "Server");
+    }
+
+    public static SOAPFaultException newFault(String text, String code) throws SOAPException {
+        SOAPFault fault = SOAPFactory.newInstance().createFault(text,
+                new QName("http://schemas.xmlsoap.org/soap/envelope/", code));
+        return new SOAPFaultException(fault);
+    }
+
+    /**
+     * Test of constructor, of class RetryPolicy.
+     */
+    @Test
+    public void testConstructor() {
+        System.out.println("constructor");
+        assertThrows(IllegalArgumentException.class, ()->new RetryPolicy(0, Duration.ZERO, Duration.ZERO, Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, ()->new RetryPolicy(1, null, Duration.ZERO, Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, ()->new RetryPolicy(1, Duration.ofSeconds(2), Duration.ofSeconds(1), Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, ()->new RetryPolicy(1, Duration.ZERO, Duration.ZERO, Duration.ofSeconds(-1)));
+        assertEquals(0, new RetryPolicy().getCallCount());
+    }
+
+    /**
+     * Test of classify method, of class RetryPolicy.
+     */
+    @Test
+    public void testClassify() throws Exception {
+        System.out.println("classify");
+        assertEquals(RetryPolicy.Failure.TRANSIENT_NETWORK, noDelay.classify(new SOAPException("timeout")));
+        assertEquals(RetryPolicy.Failure.FAULT, noDelay.classify(newFault("Internal error")));
+        assertEquals(RetryPolicy.Failure.AUTH_EXPIRED, noDelay.classify(newFault("Token invalido.")));
+        assertEquals(RetryPolicy.Failure.PERMANENT, noDelay.classify(newFault("Bad request", "Client")));
+        assertEquals(RetryPolicy.Failure.PERMANENT, noDelay.classify(newFault("Bad signature", "Client.Security")));
+        assertEquals(RetryPolicy.Failure.PERMANENT, noDelay.classify(newFault("Bad request", "Sender")));
+        assertEquals(RetryPolicy.Failure.FAULT, noDelay.classify(newFault("Unknown", "Receiver")));
+        assertEquals(RetryPolicy.Failure.PERMANENT, noDelay.classify(new SvcSignatureException("bad key")));
+        assertEquals(RetryPolicy.Failure.PERMANENT, noDelay.classify(new IllegalArgumentException()));
+    }
+
+    /**
+     * Test of execute method, of class RetryPolicy.
+     */
+    @Test
+    public void testExecute() throws Exception {
+        System.out.println("execute");
+        int[] count = new int[1];
+        String result = noDelay.execute("test", ()->{
+            if (count[0]++ < 2) {
+                throw new SOAPException("connection reset");
+            }
+            return "ok";
+        });
+        assertEquals("ok", result);
+        assertEquals(3, count[0]);
+        assertEquals(2, noDelay.getRetryCount());
+        assertEquals(1, noDelay.getRecoveredCount());
+        assertEquals(2, noDelay.getFailureCount(RetryPolicy.Failure.TRANSIENT_NETWORK));
+        
+        count[0] = 0;
+        assertThrows(SOAPFaultException.class, ()->noDelay.execute("test", ()->{
+            count[0]++;
+            throw newFault("Internal error");
+        }));
+        assertEquals(3, count[0]); //max attempts
+        assertEquals(1, noDelay.getExhaustedCount());
+        
+        count[0] = 0;
+        assertThrows(SOAPFaultException.class, ()->noDelay.execute("test", ()->{
+            count[0]++;
+            throw newFault("Token expirado");
+        }));
+        assertEquals(1, count[0]);
+        
+        count[0] = 0;
+        assertThrows(SvcSignatureException.class, ()->noDelay.execute("test", ()->{
+            count[0]++;
+            throw new SvcSignatureException("bad key");
+        }));
+        assertEquals(1, count[0]);
+
+        //client faults will not succeed by retrying
+        count[0] = 0;
+        assertThrows(SOAPFaultException.class, ()->noDelay.execute("test", ()->{
+            count[0]++;
+            throw newFault("Solicitud mal formada", "Client");
+        }));
+        assertEquals(1, count[0]);
+        assertEquals(2, noDelay.getFailureCount(RetryPolicy.Failure.PERMANENT));
+        assertEquals(1, noDelay.getFailureCount(RetryPolicy.Failure.AUTH_EXPIRED));
+        assertEquals(5, noDelay.getCallCount());
+        assertEquals(1, noDelay.getSuccessCount());
+        System.out.println(noDelay);
+    }
+
+    /**
+     * Test of execute method, of class RetryPolicy, with a time budget.
+     */
+    @Test
+    public void testElapsedBudget() throws Exception {
+        System.out.println("elapsedBudget");
+        RetryPolicy instance = new RetryPolicy(10, Duration.ofSeconds(5), Duration.ofSeconds(5), Duration.ZERO);
+        int[] count = new int[1];
+        assertThrows(SOAPException.class, ()->instance.execute("test", ()->{
+            count[0]++;
+            throw new SOAPException("timeout");
+        }));
+        assertTrue(count[0] == 1 || instance.getRetryCount() == count[0] - 1);
+        assertEquals(1, instance.getExhaustedCount());
+    }
+
+    /**
+     * Test of backoff method, of class RetryPolicy.
+     */
+    @Test
+    public void testBackoff() {
+        System.out.println("backoff");
+        RetryPolicy instance = new RetryPolicy(10, Duration.ofMillis(100), Duration.ofSeconds(1), Duration.ofMinutes(1));
+        for (int attempt = 1; attempt < 40; attempt++) {
+            long delay = instance.backoff(attempt);
+            assertTrue(delay >= 0);
+            assertTrue(delay <= Math.min(1_000_000_000L, 100_000_000L << Math.min(attempt - 1, 30)));
+        }
+        assertEquals(0, noDelay.backoff(1));
+    }
+}
@@ -0,0 +1,445 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Local HTTP simulator of the four SAT web services, to measure the real
+ * client end to end (serialization, signing, HTTP and parsing) without
+ * calling SAT.
+ * <p>Each endpoint is served on the path of its SAT location and answers
+ * with a random latency taken from a log-normal distribution. Requests are
+ * verified as in process a number of times before they are finished, and
+ * faults (HTTP 500) and overloads (status 5006) are returned at the
+ * configured rates. Signatures are not validated.</p>
+ * <p>Services reach the simulator through {@link SatSimulator#newTransport()},
+ * which sends each message to the simulator path of its location, or
+ * through {@link SatSimulator#newDownloadService()}.</p>
+ * <p>Run <code>main</code> with the test classpath to keep it running, for
+ * example:<br>
+ * <code>mvn exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.sicomsa.dmt.svc.SatSimulator -Dexec.args=8089</code></p>
+ *
+ * @author https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198
+ *
+ * @since 2025.02.16
+ *
+ */
+public class SatSimulator implements AutoCloseable {
+    
+    /**
+     * Endpoints of the web service.
+     */
+    public enum Endpoint {
+        AUTENTICA(new AuthenticationSvc(DefaultMessageFactory.newInstance())),
+        SOLICITA(new SolicitaSvc(DefaultMessageFactory.newInstance())),
+        VERIFICA(new VerificaSvc(DefaultMessageFactory.newInstance())),
+        DESCARGA(new DescargaSvc(DefaultMessageFactory.newInstance()));
+        
+        private final String path;
+        
+        Endpoint(AbstractSvc<?,?> svc) {
+            this.path = URI.create(svc.getLocation()).getPath();
+        }
+        public String getPath() {
+            return path;
+        }
+    }
+    
+    static final Pattern REQUEST_ID = Pattern.compile("IdSolicitud=\"([^\"]*)\"");
+    static final Pattern PACKAGE_ID = Pattern.compile("IdPaquete=\"([^\"]*)\"");
+    
+    protected final HttpServer server;
+    protected final ExecutorService executor;
+    protected final Map<Endpoint,Duration> medians;
+    protected final double sigma;
+    protected final int pendingVerifications;
+    protected final double faultRate;
+    protected final double overloadRate;
+    protected final int packagesPerRequest;
+    protected final String encodedPackage;
+    protected final Duration tokenLifetime;
+    
+    protected final Map<String,AtomicInteger> verifications = new ConcurrentHashMap<>();
+    protected final Map<Endpoint,AtomicLong> requests = new EnumMap<>(Endpoint.class);
+    protected final Map<Endpoint,AtomicLong> faults = new EnumMap<>(Endpoint.class);
+    protected final Map<Endpoint,AtomicLong> overloads = new EnumMap<>(Endpoint.class);
+    
+    protected SatSimulator(Builder builder) throws IOException {
+        this.medians = new EnumMap<>(builder.medians);
+        this.sigma = builder.sigma;
+        this.pendingVerifications = builder.pendingVerifications;
+        this.faultRate = builder.faultRate;
+        this.overloadRate = builder.overloadRate;
+        this.packagesPerRequest = builder.packagesPerRequest;
+        this.tokenLifetime = builder.tokenLifetime;
+        this.encodedPackage = newPackage(builder.packageSize);
+        for (Endpoint endpoint : Endpoint.values()) {
+            requests.put(endpoint, new AtomicLong());
+            faults.put(endpoint, new AtomicLong());
+            overloads.put(endpoint, new AtomicLong());
+        }
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", builder.port), builder.backlog);
+        executor = Executors.newFixedThreadPool(builder.threads, runnable->{
+            Thread thread = new Thread(runnable, "sat-simulator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        for (Endpoint endpoint : Endpoint.values()) {
+            server.createContext(endpoint.getPath(), exchange->handle(endpoint, exchange));
+        }
+        server.start();
+    }
+    
+    public static Builder builder() {
+        return new Builder();
+    }
+    
+    /**
+     * Starts a simulator with default parameters on the port received, or 8089.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = (args.length == 0 ? 8089 : Integer.parseInt(args[0]));
+        SatSimulator simulator = builder().setPort(port).build();
+        System.out.println("SAT simulator listening on "+simulator.getBaseUri());
+        Runtime.getRuntime().addShutdownHook(new Thread(()->{
+            System.out.println(simulator);
+            simulator.close();
+        }));
+        Thread.currentThread().join();
+    }
+    
+    public String getBaseUri() {
+        return "http://127.0.0.1:"+server.getAddress().getPort();
+    }
+    
+    /**
+     * Returns a transport that sends each message to the simulator path of
+     * its location.
+     */
+    public SoapTransport newTransport() {
+        return newTransport(new HttpClientTransport(Duration.ofSeconds(10), Duration.ofMinutes(1)));
+    }
+    
+    public SoapTransport newTransport(HttpClientTransport transport) {
+        String base = getBaseUri();
+        return (request, location)->transport.call(request, base+URI.create(location).getPath());
+    }
+    
+    /**
+     * Returns a new <code>DownloadService</code> whose services call this simulator.
+     */
+    public DownloadService newDownloadService() {
+        DownloadService service = new DownloadService();
+        service.setTransport(newTransport());
+        return service;
+    }
+    
+    public long getRequestCount(Endpoint endpoint) {
+        return requests.get(endpoint).get();
+    }
+    
+    public long getFaultCount(Endpoint endpoint) {
+        return faults.get(endpoint).get();
+    }
+    
+    public long getOverloadCount(Endpoint endpoint) {
+        return overloads.get(endpoint).get();
+    }
+    
+    @Override public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+    
+    @Override public String toString() {
+        StringBuilder sb = new StringBuilder("SatSimulator{").append("uri=").append(getBaseUri());
+        for (Endpoint endpoint : Endpoint.values()) {
+            sb.append(",").append(endpoint).append("=").append(getRequestCount(endpoint))
+                    .append("/").append(getFaultCount(endpoint))
+                    .append("/").append(getOverloadCount(endpoint));
+        }
+        return sb.append("}").toString();
+    }
+    
+    ////////////////////////////////////////////////////////////////////////////
+    
+    protected void handle(Endpoint endpoint, HttpExchange exchange) throws IOException {
+        try {
+            String body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            requests.get(endpoint).incrementAndGet();
+            sleep(latency(endpoint));
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (random.nextDouble() < faultRate) {
+                faults.get(endpoint).incrementAndGet();
+                reply(exchange, 500, fault("Error interno simulado"));
+                return;
+            }
+            boolean overload = (endpoint != Endpoint.AUTENTICA && random.nextDouble() < overloadRate);
+            if (overload) {
+                overloads.get(endpoint).incrementAndGet();
+            }
+            String response = switch (endpoint) {
+                case AUTENTICA -> autentica();
+                case SOLICITA -> solicita(overload);
+                case VERIFICA -> verifica(find(REQUEST_ID, body), overload);
+                case DESCARGA -> descarga(find(PACKAGE_ID, body), overload);
+            };
+            reply(exchange, 200, response);
+        }
+        finally {
+            exchange.close();
+        }
+    }
+    
+    protected String autentica() {
+        Instant created = Instant.now();
+        return """
+            <s:Envelope xmlns:s="http://schemas.xmlsoap.org/soap/envelope/" xmlns:u="http://docs.oasis-open.org/wss/2004/01/oasis-200401-wss-wssecurity-utility-1.0.xsd">
+            <s:Header><o:Security xmlns:o="http://docs.oasis-open.org/wss/2004/01/oasis-200401-wss-wssecurity-secext-1.0.xsd" s:mustUnderstand="1">
+            <u:Timestamp u:Id="_0"><u:Created>%s</u:Created><u:Expires>%s</u:Expires></u:Timestamp>
+            </o:Security></s:Header>
+            <s:Body><AutenticaResponse xmlns="http://DescargaMasivaTerceros.gob.mx"><AutenticaResult>%s</AutenticaResult></AutenticaResponse></s:Body>
+            </s:Envelope>""".formatted(created, created.plus(tokenLifetime), "sim-"+UUID.randomUUID());
+    }
+    
+    protected String solicita(boolean overload) {
+        String requestId = (overload ? "" : UUID.randomUUID().toString());
+        if (!overload) {
+            verifications.put(requestId, new AtomicInteger());
+        }
+        return """
+            <s:Envelope xmlns:s="http://schemas.xmlsoap.org/soap/envelope/"><s:Body>
+            <SolicitaDescargaResponse xmlns="http://DescargaMasivaTerceros.sat.gob.mx">
+            <SolicitaDescargaResult IdSolicitud="%s" CodEstatus="%s" Mensaje="%s"/>
+            </SolicitaDescargaResponse></s:Body></s:Envelope>""".formatted(requestId, status(overload), message(overload));
+    }
+    
+    protected String verifica(String requestId, boolean overload) {
+        AtomicInteger count = verifications.get(requestId);
+        int state;
+        String solicitudeStatus = "5000";
+        StringBuilder packages = new StringBuilder();
+        if (overload) {
+            state = 2;
+        }
+        else if (count == null) {
+            state = 5;
+            solicitudeStatus = "5004";
+        }
+        else if (count.getAndIncrement() < pendingVerifications) {
+            state = 2;
+        }
+        else {
+            state = 3;
+            for (int idx = 1; idx <= packagesPerRequest; idx++) {
+                packages.append("<IdsPaquetes>").append(requestId).append(String.format("_%02d", idx)).append("</IdsPaquetes>");
+            }
+        }
+        return """
+            <s:Envelope xmlns:s="http://schemas.xmlsoap.org/soap/envelope/"><s:Body>
+            <VerificaSolicitudDescargaResponse xmlns="http://DescargaMasivaTerceros.sat.gob.mx">
+            <VerificaSolicitudDescargaResult CodEstatus="%s" EstadoSolicitud="%d" CodigoEstadoSolicitud="%s" NumeroCFDIs="%d" Mensaje="%s">%s</VerificaSolicitudDescargaResult>
+            </VerificaSolicitudDescargaResponse></s:Body></s:Envelope>""".formatted(
+                status(overload), state, solicitudeStatus, (state == 3 ? packagesPerRequest : 0),
+                message(overload), packages);
+    }
+    
+    protected String descarga(String packageId, boolean overload) {
+        String paquete = (overload || packageId == null ? "<Paquete/>" : "<Paquete>"+encodedPackage+"</Paquete>");
+        return """
+            <s:Envelope xmlns:s="http://schemas.xmlsoap.org/soap/envelope/">
+            <s:Header><h:respuesta xmlns:h="http://DescargaMasivaTerceros.sat.gob.mx" CodEstatus="%s" Mensaje="%s"/></s:Header>
+            <s:Body><RespuestaDescargaMasivaTercerosSalida xmlns="http://DescargaMasivaTerceros.sat.gob.mx">%s</RespuestaDescargaMasivaTercerosSalida></s:Body>
+            </s:Envelope>""".formatted(status(overload), message(overload), paquete);
+    }
+    
+    protected String fault(String text) {
+        return """
+            <s:Envelope xmlns:s="http://schemas.xmlsoap.org/soap/envelope/"><s:Body><s:Fault>
+            <faultcode>s:Server</faultcode><faultstring>%s</faultstring>
+            </s:Fault></s:Body></s:Envelope>""".formatted(text);
+    }
+    
+    protected static String status(boolean overload) {
+        return (overload ? AbstractSvc.INTERNAL_ERROR_STS_CODE : "5000");
+    }
+    
+    protected static String message(boolean overload) {
+        return (overload ? "Error no controlado" : "Solicitud Aceptada");
+    }
+    
+    protected long latency(Endpoint endpoint) {
+        long median = medians.get(endpoint).toNanos();
+        if (median == 0) {
+            return 0;
+        }
+        return (long)(median * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+    }
+    
+    protected static String find(Pattern pattern, String body) {
+        Matcher matcher = pattern.matcher(body);
+        return (matcher.find() ? matcher.group(1) : null);
+    }
+    
+    protected static void reply(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+    
+    protected static void sleep(long nanos) {
+        if (nanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(nanos);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    /**
+     * Returns a Base64 encoded zip with a single entry of random bytes of the specified size.
+     */
+    protected static String newPackage(int size) throws IOException {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size + 256);
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry("simulated.xml"));
+            zip.write(data);
+            zip.closeEntry();
+        }
+        return Base64.getEncoder().encodeToString(out.toByteArray());
+    }
+    
+    ////////////////////////////////////////////////////////////////////////////
+    
+    public static class Builder {
+        protected int port;
+        protected int backlog = 256;
+        protected int threads = 64;
+        protected Map<Endpoint,Duration> medians = new EnumMap<>(Endpoint.class);
+        protected double sigma = 0.5;
+        protected int pendingVerifications = 1;
+        protected double faultRate;
+        protected double overloadRate;
+        protected int packageSize = 64 * 1024;
+        protected int packagesPerRequest = 1;
+        protected Duration tokenLifetime = Duration.ofMinutes(5);
+        
+        protected Builder() {
+            for (Endpoint endpoint : Endpoint.values()) {
+                medians.put(endpoint, Duration.ofMillis(50));
+            }
+        }
+        /**
+         * Sets the port to listen on, zero for any free port.
+         */
+        public Builder setPort(int port) {
+            this.port = port;
+            return this;
+        }
+        public Builder setThreads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+        /**
+         * Sets the median latency of every endpoint.
+         */
+        public Builder setLatency(Duration median) {
+            for (Endpoint endpoint : Endpoint.values()) {
+                medians.put(endpoint, median);
+            }
+            return this;
+        }
+        public Builder setLatency(Endpoint endpoint, Duration median) {
+            medians.put(endpoint, median);
+            return this;
+        }
+        /**
+         * Sets the spread of the log-normal latency distribution, zero for a constant latency.
+         */
+        public Builder setSigma(double sigma) {
+            this.sigma = sigma;
+            return this;
+        }
+        /**
+         * Sets the times a request is verified as in process before it is finished.
+         */
+        public Builder setPendingVerifications(int pendingVerifications) {
+            this.pendingVerifications = pendingVerifications;
+            return this;
+        }
+        public Builder setFaultRate(double faultRate) {
+            this.faultRate = faultRate;
+            return this;
+        }
+        public Builder setOverloadRate(double overloadRate) {
+            this.overloadRate = overloadRate;
+            return this;
+        }
+        /**
+         * Sets the size in bytes of the content of each package.
+         */
+        public Builder setPackageSize(int packageSize) {
+            this.packageSize = packageSize;
+            return this;
+        }
+        public Builder setPackagesPerRequest(int packagesPerRequest) {
+            this.packagesPerRequest = packagesPerRequest;
+            return this;
+        }
+        public Builder setTokenLifetime(Duration tokenLifetime) {
+            this.tokenLifetime = tokenLifetime;
+            return this;
+        }
+        public SatSimulator build() throws IOException {
+            if (port < 0 || threads < 1 || sigma < 0 || pendingVerifications < 0
+                    || !(faultRate >= 0 && faultRate <= 1) || !(overloadRate >= 0 && overloadRate <= 1)
+                    || packageSize < 0 || packagesPerRequest < 1 || tokenLifetime == null
+                    || medians.values().stream().anyMatch(d->d == null || d.isNegative())) {
+                throw new IllegalArgumentException("invalid parameters");
+            }
+            return new SatSimulator(this);
+        }
+    }
+}
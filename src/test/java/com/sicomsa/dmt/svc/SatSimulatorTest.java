@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import com.sicomsa.dmt.CachingCredentialsStoreTest;
+import com.sicomsa.dmt.Client;
+import com.sicomsa.dmt.DescargaResponse;
+import com.sicomsa.dmt.RealCredentials;
+import com.sicomsa.dmt.SolicitaResponse;
+import com.sicomsa.dmt.VerificaResponse;
+import com.sicomsa.dmt.util.QueryMap;
+
+import jakarta.xml.soap.SOAPConnection;
+import jakarta.xml.soap.SOAPConnectionFactory;
+import jakarta.xml.ws.soap.SOAPFaultException;
+
+import java.security.KeyPair;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198
+ *
+ * @since 2025.02.16
+ *
+ *
+ */
+public class SatSimulatorTest {
+
+    static RealCredentials credentials;
+    static SOAPConnection conn;
+
+    public SatSimulatorTest() {
+    }
+
+    @BeforeAll
+    public static void setUpClass() throws Exception {
+        KeyPair keyPair = CachingCredentialsStoreTest.newKeyPair();
+        credentials = new RealCredentials("AAA010101AAA",
+                CachingCredentialsStoreTest.newCertificate(keyPair, Instant.now().plus(365, ChronoUnit.DAYS)),
+                keyPair.getPrivate());
+        conn = SOAPConnectionFactory.newInstance().createConnection();
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+    }
+
+    @BeforeEach
+    public void setUp() {
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    public static QueryMap newQuery() {
+        return new QueryMap.Builder()
+                .setFechaInicial(LocalDateTime.now().minusDays(1))
+                .setFechaFinal(LocalDateTime.now())
+                .setRfcEmisor("AAA010101AAA")
+                .setTipoSolicitud("CFDI").build();
+    }
+
+    /**
+     * Test of a full download, of class SatSimulator.
+     */
+    @Test
+    public void testDownload() throws Exception {
+        System.out.println("download");
+        try (SatSimulator simulator = SatSimulator.builder()
+                .setLatency(Duration.ofMillis(1))
+                .setPendingVerifications(2)
+                .setPackagesPerRequest(2)
+                .setPackageSize(1000)
+                .build()) {
+            
+            Client client = new Client(credentials, simulator.newDownloadService());
+            SolicitaResponse solicita = client.requestDownload(conn, newQuery());
+            assertTrue(solicita.isAccept());
+            
+            VerificaResponse verifica = client.verifyRequest(conn, solicita.getRequestId());
+            assertTrue(verifica.isDelay());
+            client.verifyRequest(conn, solicita.getRequestId());
+            verifica = client.verifyRequest(conn, solicita.getRequestId());
+            assertTrue(verifica.isDownloadable());
+            assertEquals(2, verifica.getPackageIds().size());
+            
+            DescargaResponse descarga = client.download(conn, verifica.getPackageIds().getPackageId(0));
+            assertTrue(descarga.isAccept());
+            assertNotNull(descarga.getEncodedPackage());
+            
+            assertTrue(client.verifyRequest(conn, "unknown").isNoInfoFound());
+            assertEquals(1, simulator.getRequestCount(SatSimulator.Endpoint.AUTENTICA)); //token reused
+            assertEquals(4, simulator.getRequestCount(SatSimulator.Endpoint.VERIFICA));
+            System.out.println(simulator);
+        }
+    }
+
+    /**
+     * Test of faults and overloads, of class SatSimulator.
+     */
+    @Test
+    public void testFaults() throws Exception {
+        System.out.println("faults");
+        try (SatSimulator simulator = SatSimulator.builder()
+                .setLatency(Duration.ZERO)
+                .setFaultRate(1)
+                .build()) {
+            DownloadService service = simulator.newDownloadService();
+            assertThrows(SOAPFaultException.class, ()->service.autentica(conn, credentials));
+            assertEquals(1, simulator.getFaultCount(SatSimulator.Endpoint.AUTENTICA));
+        }
+        try (SatSimulator simulator = SatSimulator.builder()
+                .setLatency(Duration.ZERO)
+                .setOverloadRate(1)
+                .build()) {
+            Client client = new Client(credentials, simulator.newDownloadService());
+            SolicitaResponse solicita = client.requestDownload(conn, newQuery());
+            assertEquals(AbstractSvc.INTERNAL_ERROR_STS_CODE, solicita.getStatusCode());
+            assertEquals(1, simulator.getOverloadCount(SatSimulator.Endpoint.SOLICITA));
+        }
+        assertThrows(IllegalArgumentException.class, ()->SatSimulator.builder().setFaultRate(2).build());
+    }
+}
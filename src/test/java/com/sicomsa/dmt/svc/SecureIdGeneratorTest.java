@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import com.sicomsa.dmt.CachingCredentialsStoreTest;
+import com.sicomsa.dmt.Credentials;
+import com.sicomsa.dmt.RealCredentials;
+import com.sicomsa.dmt.util.SOAPUtils;
+
+import jakarta.xml.soap.SOAPMessage;
+
+import java.security.KeyPair;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198
+ *
+ * @since 2025.02.19
+ *
+ *
+ */
+public class SecureIdGeneratorTest {
+
+    public SecureIdGeneratorTest() {
+    }
+
+    @BeforeAll
+    public static void setUpClass() {
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+    }
+
+    @BeforeEach
+    public void setUp() {
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * Test of newId method, of class SecureIdGenerator.
+     */
+    @Test
+    public void testNewId() throws Exception {
+        System.out.println("newId");
+        SecureIdGenerator instance = new SecureIdGenerator();
+        Set<String> ids = new HashSet<>();
+        for (int idx = 0; idx < 10_000; idx++) {
+            String id = instance.newId();
+            UUID uuid = UUID.fromString(id);
+            assertEquals(id, uuid.toString());
+            assertEquals(4, uuid.version());
+            assertEquals(2, uuid.variant());
+            assertTrue(ids.add(id));
+        }
+        assertEquals(1, instance.getGeneratorCount());
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            executor.submit(instance::newId).get();
+            executor.submit(instance::newId).get();
+            executor.submit(instance::newId).get();
+        }
+        finally {
+            executor.shutdown();
+        }
+        assertTrue(instance.getGeneratorCount() > 1 && instance.getGeneratorCount() <= 3);
+        System.out.println(instance);
+    }
+
+    /**
+     * Test of setIdGenerator method, of class AuthenticationSvc.
+     */
+    @Test
+    public void testSetIdGenerator() throws Exception {
+        System.out.println("setIdGenerator");
+        KeyPair keyPair = CachingCredentialsStoreTest.newKeyPair();
+        Credentials credentials = new RealCredentials("AAA010101AAA",
+                CachingCredentialsStoreTest.newCertificate(keyPair, Instant.now().plus(1, ChronoUnit.DAYS)),
+                keyPair.getPrivate());
+        AuthenticationSvc svc = new AuthenticationSvc(DefaultMessageFactory.newInstance());
+        assertTrue(svc.getIdGenerator() instanceof SecureIdGenerator);
+        assertEquals(4, UUID.fromString(svc.createSecurityTokenUUID()).version());
+        assertThrows(IllegalArgumentException.class, ()->svc.setIdGenerator(null));
+
+        IdGenerator fixed = ()->"fixed-id";
+        svc.setIdGenerator(fixed);
+        assertSame(fixed, svc.getIdGenerator());
+        SOAPMessage message = svc.createMessageToSend(credentials, null, "");
+        String xml = SOAPUtils.toString(message);
+        assertTrue(xml.contains("wsu:Id=\"fixed-id\""), xml);
+        assertTrue(xml.contains("URI=\"#fixed-id\""), xml);
+    }
+
+    /**
+     * Ids generated per second by several threads, with UUID.randomUUID and
+     * with SecureIdGenerator.
+     */
+    @Test
+    @Disabled("benchmark, enable to run manually")
+    public void testBenchmark() throws Exception {
+        System.out.println("benchmark");
+        SecureIdGenerator generator = new SecureIdGenerator();
+        int count = 400_000;
+        for (int threads : new int[] {1, 4, 16}) {
+            for (int round = 0; round < 3; round++) {
+                System.out.printf("%d threads: randomUUID %.0f ids/s, SecureIdGenerator %.0f ids/s%n", threads,
+                        perSecond(()->UUID.randomUUID().toString(), threads, count),
+                        perSecond(generator::newId, threads, count));
+            }
+        }
+    }
+
+    protected double perSecond(Supplier<String> supplier, int threads, int count) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            Future<?>[] futures = new Future<?>[threads];
+            for (int idx = 0; idx < threads; idx++) {
+                futures[idx] = executor.submit(()->{
+                    start.await();
+                    for (int id = 0; id < count / threads; id++) {
+                        supplier.get();
+                    }
+                    return null;
+                });
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            return (count / threads) * threads * 1e9 / (System.nanoTime() - begin);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import com.sicomsa.dmt.CachingCredentialsStoreTest;
+import com.sicomsa.dmt.Credentials;
+import com.sicomsa.dmt.Query;
+import com.sicomsa.dmt.RealCredentials;
+import com.sicomsa.dmt.util.QueryMap;
+import com.sicomsa.dmt.util.QueryMapTest;
+
+import jakarta.xml.soap.SOAPMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+
+import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.dom.DOMValidateContext;
+import javax.xml.namespace.QName;
+
+import org.w3c.dom.NodeList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198
+ *
+ * @since 2025.02.18
+ *
+ *
+ */
+public class SignedRequestWriterTest {
+
+    static DefaultMessageFactory factory;
+    static KeyPair keyPair;
+    static X509Certificate certificate;
+    static Credentials credentials;
+
+    public SignedRequestWriterTest() {
+    }
+
+    @BeforeAll
+    public static void setUpClass() throws Exception {
+        factory = DefaultMessageFactory.newInstance();
+        keyPair = CachingCredentialsStoreTest.newKeyPair();
+        certificate = CachingCredentialsStoreTest.newCertificate(keyPair, Instant.now().plus(1, ChronoUnit.DAYS));
+        credentials = new RealCredentials("AAA010101AAA", certificate, keyPair.getPrivate());
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+    }
+
+    @BeforeEach
+    public void setUp() {
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * Test of write method, of class SignedRequestWriter; requests must be
+     * the same bytes addSignedContent produces.
+     */
+    @Test
+    public void testWrite() throws Exception {
+        System.out.println("write");
+        SignedRequestWriter writer = new SignedRequestWriter();
+        golden(new VerificaSvc(factory), writer, credentials, "4e3e8a9b-6a4e-4a2b-a5d2-6f5d0f5c4d3e");
+        golden(new DescargaSvc(factory), writer, credentials, "4E3E8A9B-6A4E-4A2B-A5D2-6F5D0F5C4D3E_01");
+        golden(new SolicitaSvc(factory), writer, credentials, new QueryMapTest().getFullQuery());
+        Query query = new QueryMap.Builder()
+                .setFechaInicial(java.time.LocalDateTime.of(2025, 1, 1, 0, 0))
+                .setFechaFinal(java.time.LocalDateTime.of(2025, 1, 31, 23, 59, 59))
+                .setTipoSolicitud("Metadata").build();
+        golden(new SolicitaSvc(factory), writer, credentials, query);
+        assertEquals(4, writer.getWrittenCount());
+    }
+
+    /**
+     * Test of write method, of class SignedRequestWriter, with characters
+     * that must be escaped.
+     */
+    @Test
+    public void testWriteEscaped() throws Exception {
+        System.out.println("writeEscaped");
+        Credentials escaped = new RealCredentials("Ñ&M010101A<A", certificate, keyPair.getPrivate());
+        golden(new VerificaSvc(factory), new SignedRequestWriter(), escaped, "id \"<&>\"\t\r\n end");
+
+        VerificaSvc svc = new VerificaSvc(factory);
+        svc.setSignedRequestWriter(new SignedRequestWriter(false));
+        SOAPMessage message = svc.createMessageToSend(escaped, "id", "token");
+        assertFalse(toString(message).contains("&#13;"));
+        assertTrue(validate(message));
+    }
+
+    /**
+     * Test of write method, of class SignedRequestWriter, with invalid parameters.
+     */
+    @Test
+    public void testWriteInvalid() throws Exception {
+        System.out.println("writeInvalid");
+        SignedRequestWriter instance = new SignedRequestWriter();
+        SignedRequestWriter.Element element = new SignedRequestWriter.Element(new QName("a"));
+        assertThrows(IllegalArgumentException.class, ()->instance.write(null, Map.of(), new QName[0], element));
+        assertThrows(IllegalArgumentException.class, ()->instance.write(credentials, Map.of("dmt", "uri"), new QName[0], element));
+        assertThrows(IllegalArgumentException.class, ()->element.setAttribute(new QName("uri", "b"), "c"));
+        assertThrows(UnsupportedOperationException.class,
+                ()->instance.write(new DomOnlyCredentials(credentials),
+                        Map.of("SOAP-ENV", "http://schemas.xmlsoap.org/soap/envelope/"), new QName[0], element));
+
+        VerificaSvc svc = new VerificaSvc(factory);
+        svc.setSignedRequestWriter(instance);
+        assertFalse(new DomOnlyCredentials(credentials).canSignBytes());
+        assertTrue(credentials.canSignBytes());
+        SOAPMessage message = svc.createMessageToSend(new DomOnlyCredentials(credentials), "id", "token");
+        assertEquals(0, instance.getWrittenCount());
+        assertNotNull(message.getSOAPBody());
+
+        //credentials that claim to sign bytes are not retried with SAAJ when they fail
+        Credentials failing = new DomOnlyCredentials(credentials) {
+            @Override public boolean canSignBytes() {
+                return true;
+            }
+        };
+        assertThrows(UnsupportedOperationException.class, ()->svc.createMessageToSend(failing, "id", "token"));
+        assertEquals(0, instance.getWrittenCount());
+    }
+
+    protected <Q> void golden(AbstractGenericSvc<?,Q> svc, SignedRequestWriter writer, Credentials creds, Q request) throws Exception {
+        svc.setSignedRequestWriter(null);
+        SOAPMessage expected = svc.createMessageToSend(creds, request, "token");
+        svc.setSignedRequestWriter(writer);
+        SOAPMessage result = svc.createMessageToSend(creds, request, "token");
+        String bytes = toString(result);
+        System.out.println(bytes);
+        assertEquals(toString(expected), bytes);
+        assertArrayEquals(expected.getMimeHeaders().getHeader("SOAPAction"), result.getMimeHeaders().getHeader("SOAPAction"));
+        assertArrayEquals(expected.getMimeHeaders().getHeader("Authorization"), result.getMimeHeaders().getHeader("Authorization"));
+        assertArrayEquals(expected.getMimeHeaders().getHeader("Content-Type"), result.getMimeHeaders().getHeader("Content-Type"));
+        assertTrue(validate(result));
+    }
+
+    protected String toString(SOAPMessage message) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        message.writeTo(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    protected boolean validate(SOAPMessage message) throws Exception {
+        NodeList nodes = message.getSOAPPart().getElementsByTagNameNS(AbstractSvc.DIGSN_URI, "Signature");
+        assertEquals(1, nodes.getLength());
+        DOMValidateContext context = new DOMValidateContext(certificate.getPublicKey(), nodes.item(0));
+        context.setProperty("org.jcp.xml.dsig.secureValidation", Boolean.FALSE); //SAT still uses rsa-sha1
+        XMLSignature signature = XMLSignatureFactory.getInstance("DOM").unmarshalXMLSignature(context);
+        return signature.validate(context);
+    }
+
+    /**
+     * Messages signed per second, with and without the writer.
+     */
+    @Test
+    @Disabled("benchmark, enable to run manually")
+    public void testBenchmark() throws Exception {
+        System.out.println("benchmark");
+        VerificaSvc svc = new VerificaSvc(factory);
+        SignedRequestWriter writer = new SignedRequestWriter();
+        int count = 2_000;
+        for (int round = 0; round < 5; round++) {
+            svc.setSignedRequestWriter(null);
+            double saaj = perSecond(svc, count);
+            svc.setSignedRequestWriter(writer);
+            double direct = perSecond(svc, count);
+            System.out.printf("saaj %.0f msg/s, writer %.0f msg/s%n", saaj, direct);
+        }
+    }
+
+    protected double perSecond(VerificaSvc svc, int count) throws Exception {
+        long start = System.nanoTime();
+        for (int idx = 0; idx < count; idx++) {
+            toString(svc.createMessageToSend(credentials, "request-"+idx, "token"));
+        }
+        return count * 1e9 / (System.nanoTime() - start);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Credentials that can only sign through a DOM.
+     */
+    public static class DomOnlyCredentials implements Credentials {
+        private final Credentials credentials;
+
+        public DomOnlyCredentials(Credentials credentials) {
+            this.credentials = credentials;
+        }
+        @Override public String getRfc() {
+            return credentials.getRfc();
+        }
+        @Override public X509Certificate getCertificate() {
+            return credentials.getCertificate();
+        }
+        @Override public void sign(XMLSignature signature, jakarta.xml.soap.SOAPElement element) {
+            credentials.sign(signature, element);
+        }
+    }
+}
@@ -6,6 +6,8 @@
 package com.sicomsa.dmt.svc;
 
 import java.security.cert.X509Certificate;
+import com.sicomsa.dmt.util.SOAPFactories;
+
 import javax.xml.crypto.dsig.XMLSignatureFactory;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.AfterAll;
@@ -57,6 +59,8 @@ public class SvcSignatureFactoryTest {
         XMLSignatureFactory xsf = XMLSignatureFactory.getInstance("DOM");
         SvcSignatureFactory ssf = new SvcSignatureFactory(xsf);
         assertEquals(xsf, ssf.getXMLSignatureFactory());
+        ssf = new SvcSignatureFactory();
+        assertSame(SOAPFactories.getXMLSignatureFactory(), ssf.getXMLSignatureFactory());
     }
 
 
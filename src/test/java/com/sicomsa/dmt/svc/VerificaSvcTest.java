@@ -136,6 +136,48 @@ public class VerificaSvcTest {
     
     ////////////////////////////////////////////////////////////////////////////
     
+    /**
+     * Test of callTheService method, of class VerificaSvc, with a hedging policy.
+     */
+    @Test
+    public void testCallTheServiceHedged() throws Exception {
+        System.out.println("callTheServiceHedged");
+        java.util.concurrent.atomic.AtomicInteger calls = new java.util.concurrent.atomic.AtomicInteger();
+        java.util.concurrent.CountDownLatch release = new java.util.concurrent.CountDownLatch(1);
+        VerificaResponse expected = new VerificaResponse(now, "5000", "Solicitud Aceptada", 3, "5000", "rid",
+                10, new PackageIds(List.of("package1")));
+        VerificaSvc instance = new VerificaSvc(svcFactory) {
+            @Override public SOAPMessage callService(jakarta.xml.soap.SOAPConnection connection, SOAPMessage request) throws SOAPException {
+                if (calls.incrementAndGet() == 1) {
+                    HedgingPolicyTest.await(release);
+                }
+                try {
+                    return SOAPUtils.fromString(getMessage(expected));
+                }
+                catch (IOException e) {
+                    throw new SOAPException(e);
+                }
+            }
+            @Override protected void addSignedContent(SOAPMessage message, com.sicomsa.dmt.Credentials creds, String request)
+                    throws SOAPException {
+                addContent(message, creds.getRfc(), request);
+            }
+        };
+        assertNull(instance.getHedgingPolicy());
+        HedgingPolicy policy = HedgingPolicyTest.newWarmPolicy(1);
+        instance.setHedgingPolicy(policy);
+        assertSame(policy, instance.getHedgingPolicy());
+        jakarta.xml.soap.SOAPConnection conn = jakarta.xml.soap.SOAPConnectionFactory.newInstance().createConnection();
+        com.sicomsa.dmt.Credentials creds = new com.sicomsa.dmt.solicitude.batch.BatchTest.UselessCredentials(genericRfc);
+        
+        VerificaResponse result = instance.callTheService(conn, creds, "rid", "token");
+        release.countDown();
+        assertEquals(expected.getPackageIds().getPackageId(0), result.getPackageIds().getPackageId(0));
+        assertEquals(2, calls.get());
+        assertEquals(1, policy.getHedgeCount()); //either call may reach the service first
+        assertThrows(IllegalArgumentException.class, ()->instance.callTheService(null, creds, "rid", "token"));
+    }
+    
     /**
      * Test of parseMessage method, of class VerificaSvc.
      */
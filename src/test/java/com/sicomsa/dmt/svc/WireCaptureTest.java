@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.svc;
+
+import com.sicomsa.dmt.CachingCredentialsStoreTest;
+import com.sicomsa.dmt.Client;
+import com.sicomsa.dmt.DescargaResponse;
+import com.sicomsa.dmt.RealCredentials;
+import com.sicomsa.dmt.SolicitaResponse;
+import com.sicomsa.dmt.VerificaResponse;
+import com.sicomsa.dmt.util.SOAPUtils;
+
+import jakarta.xml.soap.SOAPConnection;
+import jakarta.xml.soap.SOAPConnectionFactory;
+import jakarta.xml.soap.SOAPException;
+import jakarta.xml.soap.SOAPMessage;
+import jakarta.xml.ws.soap.SOAPFaultException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.text.MessageFormat;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198
+ *
+ * @since 2025.02.19
+ *
+ *
+ */
+public class WireCaptureTest {
+
+    static RealCredentials credentials;
+    static SOAPConnection conn;
+
+    static final String ENVELOPE =
+            "<S:Envelope xmlns:S=\"http://schemas.xmlsoap.org/soap/envelope/\"><S:Body>{0}</S:Body></S:Envelope>";
+
+    public WireCaptureTest() {
+    }
+
+    @BeforeAll
+    public static void setUpClass() throws Exception {
+        KeyPair keyPair = CachingCredentialsStoreTest.newKeyPair();
+        credentials = new RealCredentials("AAA010101AAA",
+                CachingCredentialsStoreTest.newCertificate(keyPair, Instant.now().plus(1, ChronoUnit.DAYS)),
+                keyPair.getPrivate());
+        conn = SOAPConnectionFactory.newInstance().createConnection();
+    }
+
+    @AfterAll
+    public static void tearDownClass() throws SOAPException {
+        conn.close();
+    }
+
+    @BeforeEach
+    public void setUp() {
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * Test of record method, of class WireCapture.
+     */
+    @Test
+    public void testRecord() throws Exception {
+        System.out.println("record");
+        WireCapture instance = new WireCapture(2, 300, true);
+        assertEquals(1_200, instance.getBufferSize());
+        assertTrue(instance.getExchanges().isEmpty());
+
+        SOAPMessage small = message("<ping/>");
+        SOAPMessage large = message("<data>" + "x".repeat(5_000) + "</data>");
+        SOAPMessage fault = message("<S:Fault><faultcode>S:Server</faultcode><faultstring>boom</faultstring></S:Fault>");
+
+        instance.record("uno", small, small, null);
+        instance.record("dos", small, large, null);
+        instance.record("tres", large, null, new SOAPException("connection refused"));
+
+        List<WireCapture.Exchange> exchanges = instance.getExchanges();
+        assertEquals(2, exchanges.size());
+        WireCapture.Exchange dos = exchanges.get(0);
+        assertEquals(1, dos.getSequence());
+        assertEquals("dos", dos.getService());
+        assertNull(dos.getError());
+        assertEquals(new String(bytes(small)), dos.getRequest());
+        assertEquals(300, dos.getResponse().length());
+        assertTrue(new String(bytes(large)).startsWith(dos.getResponse()));
+        assertEquals(bytes(large).length, dos.getResponseLength());
+        assertEquals(digest(large), dos.getResponseDigest());
+        assertTrue(dos.isTruncated());
+
+        WireCapture.Exchange tres = exchanges.get(1);
+        assertEquals(2, tres.getSequence());
+        assertEquals("", tres.getResponse());
+        assertEquals(0, tres.getResponseLength());
+        assertNull(tres.getResponseDigest());
+        assertTrue(tres.getError().contains("connection refused"));
+
+        instance.setDumpOnFault(true);
+        instance.record("cuatro", small, fault, null);
+        assertEquals("SOAPFault: boom", instance.getExchanges().get(1).getError());
+        assertEquals(4, instance.getRecordedCount());
+        assertEquals(2, instance.getTruncatedCount());
+        assertEquals(2, instance.getFaultCount());
+        assertTrue(instance.dump().contains("<faultstring>boom</faultstring>"));
+        System.out.println(instance);
+
+        instance.clear();
+        assertTrue(instance.getExchanges().isEmpty());
+        assertEquals(2 * WireCapture.DEFAULT_CAPACITY * WireCapture.DEFAULT_MAX_PAYLOAD, new WireCapture().getBufferSize());
+
+        assertThrows(IllegalArgumentException.class, ()->new WireCapture(0, 10, false));
+        assertThrows(IllegalArgumentException.class, ()->new WireCapture(10, 0, false));
+        assertThrows(IllegalArgumentException.class, ()->new WireCapture(1 << 16, 1 << 16, false));
+    }
+
+    /**
+     * Test of record method, of class WireCapture, without digests; messages
+     * are streamed until the head is full and stay usable.
+     */
+    @Test
+    public void testRecordWithoutDigest() throws Exception {
+        System.out.println("recordWithoutDigest");
+        WireCapture instance = new WireCapture(4, 300, false);
+        SOAPMessage small = message("<ping/>");
+        SOAPMessage large = message("<data>" + "x".repeat(50_000) + "</data>");
+        instance.record("uno", small, large, null);
+        instance.record("dos", large, small, null);
+
+        List<WireCapture.Exchange> exchanges = instance.getExchanges();
+        WireCapture.Exchange uno = exchanges.get(0);
+        assertEquals(bytes(small).length, uno.getRequestLength());
+        assertEquals(new String(bytes(small)), uno.getRequest());
+        assertFalse(bytes(small).length > 300);
+        assertEquals(300, uno.getResponse().length());
+        assertTrue(new String(bytes(large)).startsWith(uno.getResponse()));
+        assertTrue(uno.getResponseLength() > 300);
+        assertTrue(uno.getResponseLength() <= bytes(large).length);
+        assertNull(uno.getResponseDigest());
+        assertTrue(uno.isTruncated());
+
+        WireCapture.Exchange dos = exchanges.get(1);
+        assertEquals(uno.getResponse(), dos.getRequest());
+        assertEquals(new String(bytes(small)), dos.getResponse());
+        assertFalse(dos.getResponse().contains("x".repeat(300)));
+        assertEquals(2, instance.getTruncatedCount());
+        assertTrue(new String(bytes(large)).contains("x".repeat(50_000)));
+
+        //streams written in chunks stop at the first one beyond the head
+        WireCapture.Payload payload = new WireCapture.Payload(10, false);
+        payload.write(new byte[8], 0, 8);
+        assertFalse(payload.isFull());
+        assertThrows(IOException.class, ()->payload.write(new byte[8], 0, 8));
+        assertTrue(payload.isFull());
+        payload.reset();
+        assertFalse(payload.isFull());
+        WireCapture.Payload digested = new WireCapture.Payload(10, true);
+        digested.write(new byte[64], 0, 64);
+        assertFalse(digested.isFull());
+        assertNotNull(digested.getDigest());
+    }
+
+    /**
+     * Test of setDumpInterval method, of class WireCapture; dumps on faults
+     * are logged at most once per interval.
+     */
+    @Test
+    public void testSetDumpInterval() throws Exception {
+        System.out.println("setDumpInterval");
+        WireCapture instance = new WireCapture(4, 300, false);
+        assertEquals(WireCapture.DEFAULT_DUMP_INTERVAL, instance.getDumpInterval());
+        assertThrows(IllegalArgumentException.class, ()->instance.setDumpInterval(null));
+        assertThrows(IllegalArgumentException.class, ()->instance.setDumpInterval(Duration.ofSeconds(-1)));
+
+        AtomicInteger warnings = new AtomicInteger();
+        Handler handler = new Handler() {
+            @Override public void publish(LogRecord record) {
+                if (record.getLevel() == Level.WARNING) {
+                    warnings.incrementAndGet();
+                }
+            }
+            @Override public void flush() {
+            }
+            @Override public void close() {
+            }
+        };
+        Logger logger = Logger.getLogger(WireCapture.class.getName());
+        logger.addHandler(handler);
+        try {
+            SOAPMessage small = message("<ping/>");
+            instance.setDumpOnFault(true);
+            for (int idx = 0; idx < 10; idx++) {
+                instance.record("uno", small, null, new SOAPException("connection refused"));
+            }
+            assertEquals(1, warnings.get());
+            assertEquals(10, instance.getFaultCount());
+
+            instance.setDumpInterval(Duration.ofMillis(50));
+            Thread.sleep(100);
+            instance.record("uno", small, null, new SOAPException("connection refused"));
+            instance.record("uno", small, null, new SOAPException("connection refused"));
+            assertEquals(2, warnings.get());
+
+            instance.setDumpInterval(Duration.ZERO);
+            instance.record("uno", small, null, new SOAPException("connection refused"));
+            assertEquals(3, warnings.get());
+        }
+        finally {
+            logger.removeHandler(handler);
+        }
+    }
+
+    /**
+     * Test of setWireCapture method, of class DownloadService.
+     */
+    @Test
+    public void testSetWireCapture() throws Exception {
+        System.out.println("setWireCapture");
+        WireCapture capture = new WireCapture(8, 2_048, false);
+        try (SatSimulator simulator = SatSimulator.builder()
+                .setLatency(Duration.ofMillis(1))
+                .setPendingVerifications(0)
+                .setPackagesPerRequest(1)
+                .setPackageSize(100_000)
+                .build()) {
+            DownloadService service = simulator.newDownloadService();
+            service.setWireCapture(capture);
+            for (AbstractSvc<?,?> svc : service.abstractServices()) {
+                assertSame(capture, svc.getWireCapture());
+            }
+            Client client = new Client(credentials, service);
+            SolicitaResponse solicita = client.requestDownload(conn, SatSimulatorTest.newQuery());
+            VerificaResponse verifica = client.verifyRequest(conn, solicita.getRequestId());
+            DescargaResponse descarga = client.download(conn, verifica.getPackageIds().getPackageId(0));
+            assertTrue(descarga.isAccept());
+
+            List<WireCapture.Exchange> exchanges = capture.getExchanges();
+            assertEquals(4, exchanges.size());
+            assertEquals(((AbstractSvc<?,?>)service.getAutenticaSvc()).getServiceName(), exchanges.get(0).getService());
+            WireCapture.Exchange download = exchanges.get(3);
+            assertEquals(((AbstractSvc<?,?>)service.getDescargaSvc()).getServiceName(), download.getService());
+            //without digest streaming stops once the head is full
+            assertTrue(download.getResponseLength() > 2_048);
+            assertEquals(2_048, download.getResponse().length());
+            assertTrue(download.isTruncated());
+            assertEquals(0, capture.getFaultCount());
+
+            service.setWireCapture(null);
+            client.verifyRequest(conn, solicita.getRequestId());
+            assertEquals(4, capture.getRecordedCount());
+        }
+        try (SatSimulator simulator = SatSimulator.builder()
+                .setLatency(Duration.ZERO)
+                .setFaultRate(1)
+                .build()) {
+            DownloadService service = simulator.newDownloadService();
+            service.setWireCapture(capture);
+            assertThrows(SOAPFaultException.class, ()->service.autentica(conn, credentials));
+            assertEquals(1, capture.getFaultCount());
+            assertNotNull(capture.getExchanges().get(4).getError());
+        }
+    }
+
+    protected SOAPMessage message(String body) throws Exception {
+        return SOAPUtils.fromString(MessageFormat.format(ENVELOPE, body));
+    }
+
+    protected byte[] bytes(SOAPMessage message) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        message.writeTo(out);
+        return out.toByteArray();
+    }
+
+    protected String digest(SOAPMessage message) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes(message)));
+    }
+}
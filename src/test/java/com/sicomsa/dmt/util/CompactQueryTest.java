@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.util;
+
+import com.sicomsa.dmt.Query;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Disabled;
+import static org.junit.jupiter.api.Assertions.*;
+ 
+/**
+ *
+ * @author https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198
+ *
+ * @since 2025.02.04
+ *
+ *
+ */
+public class CompactQueryTest {
+    
+    static QueryMap fullQuery;
+    static QueryMap emptyQuery;
+
+    public CompactQueryTest() {
+    }
+
+    @BeforeAll
+    public static void setUpClass() {
+        fullQuery = new QueryMapTest().getFullQuery();
+        emptyQuery = new QueryMapTest().getEmptyQuery();
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+    }
+
+    @BeforeEach
+    public void setUp() {
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+    
+    protected void assertSameQuery(Query expected, Query result) {
+        assertEquals(expected.getRfcReceptores(), result.getRfcReceptores());
+        assertEquals(expected.getRfcEmisor(), result.getRfcEmisor());
+        assertEquals(expected.getRfcSolicitante(), result.getRfcSolicitante());
+        assertEquals(expected.getTipoSolicitud(), result.getTipoSolicitud());
+        assertEquals(expected.getTipoComprobante(), result.getTipoComprobante());
+        assertEquals(expected.getEstadoComprobante(), result.getEstadoComprobante());
+        assertEquals(expected.getRfcTerceros(), result.getRfcTerceros());
+        assertEquals(expected.getComplemento(), result.getComplemento());
+        assertEquals(expected.getFolio(), result.getFolio());
+        Iterator<String> names = expected.getAttributes();
+        Iterator<String> resultNames = result.getAttributes();
+        while (names.hasNext()) {
+            String name = names.next();
+            assertEquals(name, resultNames.next());
+            assertEquals(expected.getAttributeValue(name), result.getAttributeValue(name));
+        }
+        assertFalse(resultNames.hasNext());
+    }
+
+    /**
+     * Test of of method, of class CompactQuery.
+     */
+    @Test
+    public void testOf() {
+        System.out.println("of");
+        CompactQuery result = CompactQuery.of(fullQuery);
+        assertSameQuery(fullQuery, result);
+        assertSameQuery(emptyQuery, CompactQuery.of(emptyQuery));
+        assertSame(result, CompactQuery.of(result));
+        assertThrows(IllegalArgumentException.class, ()->CompactQuery.of(null));
+    }
+
+    /**
+     * Test of getFechaInicial and getFechaFinal methods, of class CompactQuery.
+     */
+    @Test
+    public void testGetFechas() {
+        System.out.println("getFechaInicial");
+        LocalDateTime date = LocalDateTime.of(2025, 1, 1, 10, 20, 30, 999);
+        CompactQuery result = QueryMap.builder().setFechaInicial(date).setFechaFinal(date).buildCompact();
+        assertEquals(date.withNano(0), result.getFechaInicial());
+        assertEquals(date.withNano(0), result.getFechaFinal());
+        assertEquals("2025-01-01T10:20:30", result.getAttributeValue(QueryMap.FECHA_INICIAL));
+        assertNull(CompactQuery.of(emptyQuery).getFechaInicial());
+    }
+
+    /**
+     * Test of getAttributes method, of class CompactQuery.
+     */
+    @Test
+    public void testGetAttributes() {
+        System.out.println("getAttributes");
+        Iterator<String> iterator = CompactQuery.of(fullQuery).getAttributes();
+        assertEquals(QueryMap.COMPLEMENTO, iterator.next());
+        assertThrows(UnsupportedOperationException.class, ()->iterator.remove());
+        assertFalse(CompactQuery.of(emptyQuery).getAttributes().hasNext());
+        assertNull(CompactQuery.of(emptyQuery).getAttributeValue(QueryMap.FOLIO));
+    }
+
+    /**
+     * Test of equals and hashCode methods, of class CompactQuery.
+     */
+    @Test
+    public void testEqualsAndHashCode() {
+        System.out.println("equals");
+        CompactQuery query1 = CompactQuery.of(fullQuery);
+        CompactQuery query2 = QueryMap.builder().resetQuery(fullQuery).buildCompact();
+        CompactQuery query3 = QueryMap.builder().resetQuery(fullQuery).setFolio("other").buildCompact();
+        assertEquals(query1, query2);
+        assertEquals(query1.hashCode(), query2.hashCode());
+        assertNotEquals(query1, query3);
+        assertNotEquals(query1, fullQuery);
+        assertNotEquals(query1, null);
+        
+        HashMap<Query,String> cache = new HashMap<>();
+        cache.put(query1, "value");
+        assertEquals("value", cache.get(query2));
+        assertNull(cache.get(query3));
+    }
+
+    /**
+     * Test of getRfcReceptores method, of class CompactQuery.
+     */
+    @Test
+    public void testGetRfcReceptores() {
+        System.out.println("getRfcReceptores");
+        CompactQuery result = CompactQuery.of(fullQuery);
+        assertEquals(fullQuery.getRfcReceptores(), result.getRfcReceptores());
+        assertThrows(UnsupportedOperationException.class, ()->result.getRfcReceptores().add("X"));
+        assertTrue(CompactQuery.of(emptyQuery).getRfcReceptores().isEmpty());
+    }
+    
+    /**
+     * Compares iterating attributes of a <code>CompactQuery</code> against a
+     * <code>QueryMap</code>, the way <code>SolicitaSvc</code> does on every request.
+     */
+    @Disabled("benchmark, enable to run manually")
+    @Test
+    public void testBenchmark() {
+        System.out.println("benchmark");
+        List<Query> queries = List.of(fullQuery, CompactQuery.of(fullQuery));
+        int iterations = 2_000_000;
+        for (int round = 0; round < 3; round++) {
+            for (Query query : queries) {
+                long start = System.nanoTime();
+                int chars = 0;
+                for (int i = 0; i < iterations; i++) {
+                    Iterator<String> names = query.getAttributes();
+                    while (names.hasNext()) {
+                        chars += query.getAttributeValue(names.next()).length();
+                    }
+                }
+                long nanos = System.nanoTime() - start;
+                System.out.println(query.getClass().getSimpleName()+": "
+                        +(nanos / iterations)+" ns/op ("+chars+")");
+            }
+        }
+    }
+    
+}
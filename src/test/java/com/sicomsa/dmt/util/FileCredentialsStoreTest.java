@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.util;
+
+import com.sicomsa.dmt.CachingCredentialsStore;
+import com.sicomsa.dmt.CachingCredentialsStoreTest;
+import com.sicomsa.dmt.Credentials;
+import com.sicomsa.dmt.RepositoryException;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.bouncycastle.openssl.jcajce.JcaPKCS8Generator;
+import org.bouncycastle.openssl.jcajce.JceOpenSSLPKCS8EncryptorBuilder;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+ 
+/**
+ *
+ * @author https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198
+ *
+ * @since 2025.02.06
+ *
+ *
+ */
+public class FileCredentialsStoreTest {
+    
+    static final char[] PWD = "12345678a".toCharArray();
+    
+    @TempDir
+    static Path dir;
+    
+    static KeyPair keyPair;
+    static File certFile;
+    static File keyFile;
+
+    public FileCredentialsStoreTest() {
+    }
+
+    @BeforeAll
+    public static void setUpClass() throws Exception {
+        keyPair = CachingCredentialsStoreTest.newKeyPair();
+        X509Certificate cert = CachingCredentialsStoreTest.newCertificate(
+                keyPair, Instant.now().plus(365, ChronoUnit.DAYS));
+        certFile = Files.write(dir.resolve("test.cer"), cert.getEncoded()).toFile();
+        keyFile = Files.write(dir.resolve("test.key"), encrypt(keyPair.getPrivate(), PWD)).toFile();
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+    }
+
+    @BeforeEach
+    public void setUp() {
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+    
+    /**
+     * Returns the DER encoded PKCS#8 EncryptedPrivateKeyInfo of the specified
+     * key, the same format of SAT .key files.
+     */
+    public static byte[] encrypt(PrivateKey key, char[] pwd) throws Exception {
+        JceOpenSSLPKCS8EncryptorBuilder builder =
+                new JceOpenSSLPKCS8EncryptorBuilder(JcaPKCS8Generator.DES3_CBC);
+        builder.setProvider(CertUtils.getProvider());
+        builder.setPassword(pwd);
+        return new JcaPKCS8Generator(key, builder.build()).generate().getContent();
+    }
+
+    /**
+     * Test of getCredentials method, of class FileCredentialsStore.
+     */
+    @Test
+    public void testGetCredentials() {
+        System.out.println("getCredentials");
+        FileCredentialsStore instance = new FileCredentialsStore()
+                .register("rfc1", certFile, keyFile, PWD)
+                .register("RFC2", certFile, keyFile, "bad".toCharArray());
+        Credentials result = instance.getCredentials("Rfc1");
+        assertEquals("RFC1", result.getRfc());
+        assertNotNull(result.getCertificate());
+        assertNull(instance.getCredentials("unknown"));
+        assertThrows(RepositoryException.class, ()->instance.getCredentials("RFC2"));
+        assertEquals(Set.of("RFC1", "RFC2"), instance.getRfcs());
+        instance.unregister("rfc2");
+        assertEquals(Set.of("RFC1"), instance.getRfcs());
+        assertThrows(IllegalArgumentException.class, ()->instance.register(null, certFile, keyFile, PWD));
+    }
+
+    /**
+     * Test of loadPrivateKey method, of class CertUtils.
+     */
+    @Test
+    public void testLoadPrivateKey() throws Exception {
+        System.out.println("loadPrivateKey");
+        PrivateKey result = CertUtils.loadPrivateKey(keyFile, PWD);
+        assertArrayEquals(keyPair.getPrivate().getEncoded(), result.getEncoded());
+        assertArrayEquals(result.getEncoded(),
+                CertUtils.loadPrivateKey(Files.readAllBytes(keyFile.toPath()), PWD).getEncoded());
+        assertThrows(NullPointerException.class, ()->CertUtils.loadPrivateKey((File)null, PWD));
+        assertNotNull(CertUtils.getProvider());
+    }
+
+    /**
+     * Test of unregister method, of class FileCredentialsStore, while
+     * credentials are read; the password is only cleared once the entry
+     * is removed, so readers either succeed or get null.
+     */
+    @Test
+    public void testUnregisterConcurrent() throws Exception {
+        System.out.println("unregisterConcurrent");
+        FileCredentialsStore instance = new FileCredentialsStore();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int i = 0; i < 20; i++) {
+                instance.register("RFC1", certFile, keyFile, PWD);
+                List<Future<Credentials>> list = new ArrayList<>();
+                for (int j = 0; j < 4; j++) {
+                    list.add(executor.submit(()->instance.getCredentials("RFC1")));
+                }
+                instance.unregister("RFC1");
+                for (Future<Credentials> future : list) {
+                    Credentials result = future.get(); //never RepositoryException
+                    assertTrue(result == null || "RFC1".equals(result.getRfc()));
+                }
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+        assertTrue(instance.getRfcs().isEmpty());
+    }
+
+    /**
+     * Test of loadAll method, of class FileCredentialsStore.
+     */
+    @Test
+    public void testLoadAll() {
+        System.out.println("loadAll");
+        FileCredentialsStore instance = new FileCredentialsStore();
+        for (int i = 0; i < 8; i++) {
+            instance.register("RFC"+i, certFile, keyFile, PWD);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            CachingCredentialsStore result = instance.loadAll(executor);
+            assertEquals(8, result.size());
+            assertEquals(8, result.getLoadCount());
+            assertNotNull(result.getCredentials("RFC7"));
+            assertEquals(1, result.getHitCount());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+    
+    /**
+     * Measures startup time loading N keys sequentially and in parallel.
+     */
+    @Disabled("benchmark, enable to run manually")
+    @Test
+    public void testBenchmark() {
+        System.out.println("benchmark");
+        int keys = 200;
+        FileCredentialsStore instance = new FileCredentialsStore();
+        for (int i = 0; i < keys; i++) {
+            instance.register("RFC"+i, certFile, keyFile, PWD);
+        }
+        long start = System.nanoTime();
+        for (String rfc : instance.getRfcs()) {
+            instance.getCredentials(rfc);
+        }
+        System.out.println("sequential: "+(System.nanoTime() - start) / 1_000_000+" ms for "+keys+" keys");
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors());
+        try {
+            start = System.nanoTime();
+            CachingCredentialsStore result = instance.loadAll(executor);
+            System.out.println("parallel: "+(System.nanoTime() - start) / 1_000_000+" ms for "+keys+" keys, "+result);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+    
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.util;
+
+import com.sicomsa.dmt.Query;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+ 
+/**
+ *
+ * @author https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198
+ *
+ * @since 2025.02.03
+ *
+ *
+ */
+public class QuerySplitterTest {
+    
+    static QueryMap dayQuery;
+    static QueryMap noDatesQuery;
+
+    public QuerySplitterTest() {
+    }
+
+    @BeforeAll
+    public static void setUpClass() {
+        dayQuery = QueryMap.builder()
+                .setFechaInicial(QueryMap.dayStart(2025, 1, 1))
+                .setFechaFinal(QueryMap.dayEnd(2025, 1, 1))
+                .setRfcEmisor("EMISOR")
+                .addReceptor("RECEPTOR")
+                .setTipoSolicitud("CFDI").build();
+        noDatesQuery = QueryMap.builder().setTipoSolicitud("CFDI").build();
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+    }
+
+    @BeforeEach
+    public void setUp() {
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * Test of constructor, of class QuerySplitter.
+     */
+    @Test
+    public void testConstructor() {
+        System.out.println("QuerySplitter");
+        assertEquals(QuerySplitter.DEFAULT_MIN_PERIOD, new QuerySplitter().getMinPeriod());
+        assertThrows(IllegalArgumentException.class, ()->new QuerySplitter(null));
+        assertThrows(IllegalArgumentException.class, ()->new QuerySplitter(Duration.ZERO));
+    }
+
+    /**
+     * Test of canSplit method, of class QuerySplitter.
+     */
+    @Test
+    public void testCanSplit() {
+        System.out.println("canSplit");
+        QuerySplitter instance = new QuerySplitter(Duration.ofHours(12));
+        assertTrue(new QuerySplitter().canSplit(dayQuery));
+        assertFalse(instance.canSplit(dayQuery)); //23:59:59 / 2 < 12 hours
+        assertFalse(instance.canSplit(noDatesQuery));
+    }
+
+    /**
+     * Test of split method, of class QuerySplitter.
+     */
+    @Test
+    public void testSplit() {
+        System.out.println("split");
+        QuerySplitter instance = new QuerySplitter();
+        List<Query> result = instance.split(dayQuery);
+        assertEquals(2, result.size());
+        Query first = result.get(0);
+        Query second = result.get(1);
+        assertEquals(dayQuery.getFechaInicial(), first.getFechaInicial());
+        assertEquals(LocalDateTime.of(2025, 1, 1, 11, 59, 59), first.getFechaFinal());
+        assertEquals(LocalDateTime.of(2025, 1, 1, 12, 0, 0), second.getFechaInicial());
+        assertEquals(dayQuery.getFechaFinal(), second.getFechaFinal());
+        for (Query query : result) {
+            assertEquals(dayQuery.getRfcEmisor(), query.getRfcEmisor());
+            assertEquals(dayQuery.getRfcReceptores(), query.getRfcReceptores());
+            assertEquals(dayQuery.getTipoSolicitud(), query.getTipoSolicitud());
+        }
+        assertThrows(IllegalArgumentException.class, ()->instance.split(null));
+        assertThrows(IllegalArgumentException.class, ()->instance.split(noDatesQuery));
+    }
+    
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) Alberto Carlos Lopez Montemayor
+ * All rights reserved.
+ */
+
+package com.sicomsa.dmt.util;
+
+
+import jakarta.xml.soap.MessageFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author https://www.linkedin.com/in/alberto-carlos-lopez-montemayor-586202198
+ *
+ * @since 2025.02.19
+ *
+ *
+ */
+public class SOAPFactoriesTest {
+
+    public SOAPFactoriesTest() {
+    }
+
+    @BeforeAll
+    public static void setUpClass() {
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+    }
+
+    @BeforeEach
+    public void setUp() {
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * Test of getMessageFactory method, of class SOAPFactories.
+     */
+    @Test
+    public void testGetMessageFactory() throws Exception {
+        System.out.println("getMessageFactory");
+        MessageFactory factory = SOAPFactories.getMessageFactory();
+        assertNotNull(factory);
+        assertSame(factory, SOAPFactories.getMessageFactory());
+        assertSame(factory, onOtherThread(SOAPFactories::getMessageFactory));
+        assertNotNull(factory.createMessage().getSOAPBody());
+    }
+
+    /**
+     * Test of getXMLSignatureFactory method, of class SOAPFactories.
+     */
+    @Test
+    public void testGetXMLSignatureFactory() throws Exception {
+        System.out.println("getXMLSignatureFactory");
+        XMLSignatureFactory factory = SOAPFactories.getXMLSignatureFactory();
+        assertNotNull(factory);
+        assertEquals(SOAPFactories.MECHANISM_TYPE, factory.getMechanismType());
+        assertSame(factory, SOAPFactories.getXMLSignatureFactory());
+        XMLSignatureFactory other = onOtherThread(SOAPFactories::getXMLSignatureFactory);
+        assertNotNull(other);
+        assertNotSame(factory, other);
+    }
+
+    protected <T> T onOtherThread(Callable<T> callable) throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            return executor.submit(callable).get();
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Messages created per second by several threads, looking up the factory
+     * on each call, through a synchronized getter, and through SOAPFactories.
+     */
+    @Test
+    @Disabled("benchmark, enable to run manually")
+    public void testBenchmark() throws Exception {
+        System.out.println("benchmark");
+        Object lock = new Object();
+        MessageFactory[] shared = new MessageFactory[1];
+        Callable<MessageFactory> newInstance = MessageFactory::newInstance;
+        Callable<MessageFactory> synchronizedGetter = ()->{
+            synchronized (lock) {
+                if (shared[0] == null) {
+                    shared[0] = MessageFactory.newInstance();
+                }
+                return shared[0];
+            }
+        };
+        Callable<MessageFactory> factories = SOAPFactories::getMessageFactory;
+        int count = 20_000;
+        for (int threads : new int[] {1, 4, 16}) {
+            for (int round = 0; round < 3; round++) {
+                System.out.printf("%d threads: newInstance %.0f msg/s, synchronized %.0f msg/s, SOAPFactories %.0f msg/s%n",
+                        threads, perSecond(newInstance, threads, count),
+                        perSecond(synchronizedGetter, threads, count),
+                        perSecond(factories, threads, count));
+            }
+        }
+    }
+
+    protected double perSecond(Callable<MessageFactory> getter, int threads, int count) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            Future<?>[] futures = new Future<?>[threads];
+            for (int idx = 0; idx < threads; idx++) {
+                futures[idx] = executor.submit(()->{
+                    start.await();
+                    for (int msg = 0; msg < count / threads; msg++) {
+                        getter.call().createMessage().getSOAPBody();
+                    }
+                    return null;
+                });
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            return (count / threads) * threads * 1e9 / (System.nanoTime() - begin);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+}